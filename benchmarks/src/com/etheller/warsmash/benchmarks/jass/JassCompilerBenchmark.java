@@ -0,0 +1,164 @@
+package com.etheller.warsmash.benchmarks.jass;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etheller.interpreter.ast.execution.compiler.JassCompiler;
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.expression.ArrayRefJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.NativeJassFunction;
+import com.etheller.interpreter.ast.function.StackJassFunction;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+import com.etheller.interpreter.ast.statement.JassArrayedAssignmentStatement;
+import com.etheller.interpreter.ast.statement.JassExitWhenStatement;
+import com.etheller.interpreter.ast.statement.JassIfStatement;
+import com.etheller.interpreter.ast.statement.JassLocalDefinitionStatement;
+import com.etheller.interpreter.ast.statement.JassLoopStatement;
+import com.etheller.interpreter.ast.statement.JassReturnStatement;
+import com.etheller.interpreter.ast.statement.JassSetStatement;
+import com.etheller.interpreter.ast.util.JassSettings;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.RealJassValue;
+
+/**
+ * Runs the same JASS, a loop doing arithmetic, array stores and native calls
+ * followed by a recursive Fibonacci, either with the interpreter or with every
+ * function compiled by {@link JassCompiler}. Each invocation runs it on a new
+ * thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JassCompilerBenchmark {
+	@Param({ "interpreter", "compiler" })
+	public String engine;
+
+	@Param({ "10000" })
+	public int loopCount;
+
+	@Param({ "15" })
+	public int fibonacci;
+
+	private GlobalScope globalScope;
+
+	@Setup(Level.Trial)
+	public void createProgram() {
+		this.globalScope = new GlobalScope();
+		this.globalScope.createGlobal("total", JassType.REAL, new RealJassValue(0));
+		this.globalScope.createGlobal("result", JassType.INTEGER, new IntegerJassValue(0));
+		this.globalScope.createGlobalArray("squares", this.globalScope.parseArrayType("integer"));
+
+		final StackJassFunction distance = (arguments, globalScope, triggerScope) -> {
+			final double x = arguments.getReal(0);
+			final double y = arguments.getReal(1);
+			arguments.pushReal(StrictMath.sqrt((x * x) + (y * y)));
+		};
+		this.globalScope.defineFunction(0, "benchmark", "Distance",
+				new NativeJassFunction(Arrays.asList(new JassParameter(JassType.REAL, "x"),
+						new JassParameter(JassType.REAL, "y")), JassType.REAL, "Distance", distance));
+
+		// function Fib takes integer n returns integer
+		// if n < 2 then
+		// return n
+		// endif
+		// return Fib(n - 1) + Fib(n - 2)
+		// endfunction
+		final JassExpression n = new ReferenceJassExpression("n");
+		this.globalScope.defineFunction(0, "benchmark", "Fib", new UserJassFunction(Arrays.asList(
+				new JassIfStatement(new ArithmeticJassExpression(n, integer(2), ArithmeticSigns.LESS),
+						Arrays.asList(new JassReturnStatement(n))),
+				new JassReturnStatement(new ArithmeticJassExpression(
+						new FunctionCallJassExpression("Fib",
+								Arrays.asList(new ArithmeticJassExpression(n, integer(1), ArithmeticSigns.SUBTRACT))),
+						new FunctionCallJassExpression("Fib",
+								Arrays.asList(new ArithmeticJassExpression(n, integer(2), ArithmeticSigns.SUBTRACT))),
+						ArithmeticSigns.ADD))),
+				Arrays.asList(new JassParameter(JassType.INTEGER, "n")), JassType.INTEGER));
+
+		// function main takes nothing returns nothing
+		// local integer i = 0
+		// loop
+		// exitwhen i >= loopCount
+		// set total = total + Distance(i, 2.0)
+		// set squares[i - i / 100 * 100] = i * i
+		// set i = i + 1
+		// endloop
+		// set result = Fib(fibonacci) + squares[1]
+		// endfunction
+		final JassExpression i = new ReferenceJassExpression("i");
+		this.globalScope.defineFunction(0, "benchmark", "main", new UserJassFunction(Arrays.asList(
+				new JassLocalDefinitionStatement("i", JassType.INTEGER, integer(0)),
+				new JassLoopStatement(Arrays.asList(
+						new JassExitWhenStatement(new ArithmeticJassExpression(i, integer(this.loopCount),
+								ArithmeticSigns.GREATER_OR_EQUALS)),
+						new JassSetStatement("total",
+								new ArithmeticJassExpression(new ReferenceJassExpression("total"),
+										new FunctionCallJassExpression("Distance",
+												Arrays.asList(i,
+														new LiteralJassExpression(new RealJassValue(2.0)))),
+										ArithmeticSigns.ADD)),
+						new JassArrayedAssignmentStatement("squares",
+								new ArithmeticJassExpression(i, new ArithmeticJassExpression(
+										new ArithmeticJassExpression(i, integer(100), ArithmeticSigns.DIVIDE),
+										integer(100), ArithmeticSigns.MULTIPLY), ArithmeticSigns.SUBTRACT),
+								new ArithmeticJassExpression(i, i, ArithmeticSigns.MULTIPLY)),
+						new JassSetStatement("i", new ArithmeticJassExpression(i, integer(1), ArithmeticSigns.ADD)))),
+				new JassSetStatement("result",
+						new ArithmeticJassExpression(
+								new FunctionCallJassExpression("Fib", Arrays.asList(integer(this.fibonacci))),
+								new ArrayRefJassExpression("squares", integer(1)), ArithmeticSigns.ADD))),
+				Collections.emptyList(), JassType.NOTHING));
+
+		if ("compiler".equals(this.engine)) {
+			// the first call compiles main, and everything it calls along with it
+			final boolean compileHotFunctions = JassSettings.COMPILE_HOT_FUNCTIONS;
+			final int hotFunctionThreshold = JassSettings.HOT_FUNCTION_THRESHOLD;
+			JassSettings.COMPILE_HOT_FUNCTIONS = true;
+			JassSettings.HOT_FUNCTION_THRESHOLD = 1;
+			try {
+				runLoop();
+			}
+			finally {
+				JassSettings.COMPILE_HOT_FUNCTIONS = compileHotFunctions;
+				JassSettings.HOT_FUNCTION_THRESHOLD = hotFunctionThreshold;
+			}
+		}
+	}
+
+	private static JassExpression integer(final int value) {
+		return new LiteralJassExpression(new IntegerJassValue(value));
+	}
+
+	@Benchmark
+	public Object runLoop() {
+		this.globalScope.runThreadUntilCompletion(
+				this.globalScope.createThread("main", Collections.emptyList(), TriggerExecutionScope.EMPTY));
+		return this.globalScope.getGlobal("result");
+	}
+}
@@ -0,0 +1,127 @@
+package com.etheller.warsmash.benchmarks.jass;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.NativeJassFunction;
+import com.etheller.interpreter.ast.function.StackJassFunction;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+import com.etheller.interpreter.ast.statement.JassExitWhenStatement;
+import com.etheller.interpreter.ast.statement.JassLocalDefinitionStatement;
+import com.etheller.interpreter.ast.statement.JassLoopStatement;
+import com.etheller.interpreter.ast.statement.JassSetStatement;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.visitor.RealJassValueVisitor;
+
+/**
+ * Runs a JASS loop that calls the same two argument native over and over,
+ * with the native registered either as a {@link JassFunction}, which gets its
+ * arguments as a new list and boxes its return value, or as a
+ * {@link StackJassFunction}, which reads and writes the call's stack frame.
+ * Each invocation runs the whole loop on a new thread.
+ *
+ * Run with -prof gc to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JassNativeCallBenchmark {
+	@Param({ "list", "stack" })
+	public String abi;
+
+	@Param({ "10000" })
+	public int callCount;
+
+	private GlobalScope globalScope;
+
+	@Setup(Level.Trial)
+	public void createProgram() {
+		this.globalScope = new GlobalScope();
+		this.globalScope.createGlobal("total", JassType.REAL, new RealJassValue(0));
+
+		final List<JassParameter> parameters = Arrays.asList(new JassParameter(JassType.REAL, "x"),
+				new JassParameter(JassType.REAL, "y"));
+		final NativeJassFunction distance;
+		if ("stack".equals(this.abi)) {
+			final StackJassFunction implementation = (arguments, globalScope, triggerScope) -> {
+				final double x = arguments.getReal(0);
+				final double y = arguments.getReal(1);
+				arguments.pushReal(StrictMath.sqrt((x * x) + (y * y)));
+			};
+			distance = new NativeJassFunction(parameters, JassType.REAL, "Distance", implementation);
+		}
+		else {
+			final JassFunction implementation = (arguments, globalScope, triggerScope) -> {
+				final Double x = arguments.get(0).visit(RealJassValueVisitor.getInstance());
+				final Double y = arguments.get(1).visit(RealJassValueVisitor.getInstance());
+				return new RealJassValue(StrictMath.sqrt((x * x) + (y * y)));
+			};
+			distance = new NativeJassFunction(parameters, JassType.REAL, "Distance", implementation);
+		}
+		this.globalScope.defineFunction(0, "benchmark", "Distance", distance);
+
+		// function main takes nothing returns nothing
+		// local integer i = 0
+		// loop
+		// exitwhen i >= callCount
+		// set total = total + Distance(i, 2.0)
+		// set i = i + 1
+		// endloop
+		// endfunction
+		final JassExpression i = new ReferenceJassExpression("i");
+		this.globalScope.defineFunction(0, "benchmark", "main", new UserJassFunction(Arrays.asList(
+				new JassLocalDefinitionStatement("i", JassType.INTEGER, integer(0)),
+				new JassLoopStatement(Arrays.asList(
+						new JassExitWhenStatement(new ArithmeticJassExpression(i, integer(this.callCount),
+								ArithmeticSigns.GREATER_OR_EQUALS)),
+						new JassSetStatement("total",
+								new ArithmeticJassExpression(new ReferenceJassExpression("total"),
+										new FunctionCallJassExpression("Distance",
+												Arrays.asList(i,
+														new LiteralJassExpression(new RealJassValue(2.0)))),
+										ArithmeticSigns.ADD)),
+						new JassSetStatement("i", new ArithmeticJassExpression(i, integer(1), ArithmeticSigns.ADD))))),
+				Collections.emptyList(), JassType.NOTHING));
+	}
+
+	private static JassExpression integer(final int value) {
+		return new LiteralJassExpression(new IntegerJassValue(value));
+	}
+
+	@Benchmark
+	public Object runLoop() {
+		this.globalScope.runThreadUntilCompletion(
+				this.globalScope.createThread("main", Collections.emptyList(), TriggerExecutionScope.EMPTY));
+		return this.globalScope.getGlobal("total");
+	}
+}
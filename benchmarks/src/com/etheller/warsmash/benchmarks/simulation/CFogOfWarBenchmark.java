@@ -0,0 +1,127 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.etheller.warsmash.util.War3ID;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayer;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CPlayerFogOfWar;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CUnitSightCalculator;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CUnitVisionFogModifier;
+
+/**
+ * Compares working out what a group of units sees with
+ * {@link CUnitVisionFogModifier}, which samples the terrain and pathing around
+ * each unit as it goes, against {@link CUnitSightCalculator}, which sweeps the
+ * precomputed line of sight table. Each invocation does the whole group once,
+ * the way the once per second fog update used to.
+ *
+ * The game data and map are chosen with the same system properties as
+ * {@link CSimulationUpdateBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CFogOfWarBenchmark {
+	private static final int MAX_POINT_ATTEMPTS = 100000;
+
+	@Param({ "modifier", "table" })
+	public String algorithm;
+
+	@Param({ "200" })
+	public int unitCount;
+
+	@Param({ "hfoo" })
+	public String unitTypeId;
+
+	@Param({ "1337" })
+	public long seed;
+
+	private HeadlessSimulationData simulationData;
+	private CSimulation simulation;
+	private CUnit[] units;
+	private CUnitVisionFogModifier[] modifiers;
+	private CPlayer player;
+	private CPlayerFogOfWar fogOfWar;
+
+	@Setup(Level.Trial)
+	public void loadSimulationData() throws IOException {
+		this.simulationData = new HeadlessSimulationData(
+				System.getProperty("warsmash.benchmark.ini", "warsmash.ini"),
+				System.getProperty("warsmash.benchmark.map", "Maps\\FrozenThrone\\(4)TwistedMeadows.w3x"));
+	}
+
+	@Setup(Level.Iteration)
+	public void createUnits() throws IOException {
+		this.simulation = this.simulationData.createSimulation(this.seed);
+		final Rectangle entireMap = this.simulationData.getEntireMap();
+		final PathingGrid pathingGrid = this.simulation.getPathingGrid();
+		final War3ID typeId = War3ID.fromString(this.unitTypeId);
+		final Random random = new Random(this.seed);
+		this.units = new CUnit[this.unitCount];
+		this.modifiers = new CUnitVisionFogModifier[this.unitCount];
+		int created = 0;
+		for (int attempt = 0; (attempt < MAX_POINT_ATTEMPTS) && (created < this.unitCount); attempt++) {
+			final float x = entireMap.x + (random.nextFloat() * entireMap.width);
+			final float y = entireMap.y + (random.nextFloat() * entireMap.height);
+			if (pathingGrid.isPathable(x, y, MovementType.FOOT)) {
+				this.units[created] = this.simulation.createUnitSimple(typeId, 0, x, y, 0);
+				this.modifiers[created] = new CUnitVisionFogModifier(this.units[created], false);
+				created++;
+			}
+		}
+		if (created < this.unitCount) {
+			throw new IllegalStateException("Not enough pathable points on this map for " + this.unitCount + " units");
+		}
+		this.simulation.update();
+		this.player = this.simulation.getPlayer(0);
+		// a fog of war of our own, because the player's fog of war keeps the cells
+		// that the units see visible while they are counted there
+		this.fogOfWar = new CPlayerFogOfWar(pathingGrid);
+	}
+
+	@Benchmark
+	public int updateVision() {
+		final CSimulation simulation = this.simulation;
+		int visibleCells = 0;
+		if ("table".equals(this.algorithm)) {
+			final CUnitSightCalculator sightCalculator = simulation.getUnitSightCalculator();
+			for (final CUnit unit : this.units) {
+				final float sightRadius = simulation.isDay() ? unit.getUnitType().getSightRadiusDay()
+						: unit.getUnitType().getSightRadiusNight();
+				visibleCells += sightCalculator.calculate(simulation, unit.getX(), unit.getY(), sightRadius,
+						unit.getUnitType().getMovementType() == MovementType.FLY);
+			}
+		}
+		else {
+			this.fogOfWar.convertVisibleToFogged();
+			final PathingGrid pathingGrid = simulation.getPathingGrid();
+			for (final CUnitVisionFogModifier modifier : this.modifiers) {
+				modifier.update(simulation, this.player, pathingGrid, this.fogOfWar);
+			}
+		}
+		return visibleCells;
+	}
+}
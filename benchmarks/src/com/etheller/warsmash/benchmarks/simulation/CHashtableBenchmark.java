@@ -0,0 +1,139 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.CHashtable;
+
+/**
+ * Does what a map with a hashtable per spell instance does every tick: saves
+ * an integer and a real under each of its handle ids, loads them back, and
+ * flushes the child tables of the instances that ended. Compares
+ * {@link CHashtable} with the table of boxed maps it replaced.
+ *
+ * Run with -prof gc to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CHashtableBenchmark {
+	private static final int CHILD_KEYS = 4;
+
+	@Param({ "boxed", "packed" })
+	public String table;
+
+	@Param({ "100", "10000" })
+	public int parentKeys;
+
+	private int[] parents;
+	private BoxedHashtable boxedTable;
+	private CHashtable packedTable;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(1234);
+		this.parents = new int[this.parentKeys];
+		for (int i = 0; i < this.parentKeys; i++) {
+			// handle ids are large and spread out
+			this.parents[i] = 0x100000 + random.nextInt(1 << 24);
+		}
+		this.boxedTable = new BoxedHashtable();
+		this.packedTable = new CHashtable();
+	}
+
+	@Benchmark
+	public double tick() {
+		if ("boxed".equals(this.table)) {
+			return tickBoxed();
+		}
+		return tickPacked();
+	}
+
+	private double tickBoxed() {
+		final BoxedHashtable table = this.boxedTable;
+		double sum = 0;
+		for (final int parent : this.parents) {
+			for (int child = 0; child < CHILD_KEYS; child++) {
+				table.save(parent, child, child + parent);
+				table.save(parent, child + CHILD_KEYS, child * 0.5);
+			}
+		}
+		for (final int parent : this.parents) {
+			for (int child = 0; child < CHILD_KEYS; child++) {
+				sum += (Integer) table.load(parent, child);
+				sum += (Double) table.load(parent, child + CHILD_KEYS);
+			}
+		}
+		for (int i = 0; i < this.parents.length; i += 2) {
+			table.flushChild(this.parents[i]);
+		}
+		return sum;
+	}
+
+	private double tickPacked() {
+		final CHashtable table = this.packedTable;
+		double sum = 0;
+		for (final int parent : this.parents) {
+			for (int child = 0; child < CHILD_KEYS; child++) {
+				table.saveInteger(parent, child, child + parent);
+				table.saveReal(parent, child, child * 0.5);
+			}
+		}
+		for (final int parent : this.parents) {
+			for (int child = 0; child < CHILD_KEYS; child++) {
+				sum += table.loadInteger(parent, child);
+				sum += table.loadReal(parent, child);
+			}
+		}
+		for (int i = 0; i < this.parents.length; i += 2) {
+			table.flushChild(this.parents[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * The hashtable as it was before, with a boxed map for every parent key and
+	 * one value for each pair of keys.
+	 */
+	private static final class BoxedHashtable {
+		private final Map<Integer, Map<Integer, Object>> parentKeyToChildTable = new HashMap<>();
+
+		public void save(final Integer parentKey, final Integer childKey, final Object object) {
+			Map<Integer, Object> childTable = this.parentKeyToChildTable.get(parentKey);
+			if (childTable == null) {
+				childTable = new HashMap<>();
+				this.parentKeyToChildTable.put(parentKey, childTable);
+			}
+			childTable.put(childKey, object);
+		}
+
+		public Object load(final Integer parentKey, final Integer childKey) {
+			final Map<Integer, Object> childTable = this.parentKeyToChildTable.get(parentKey);
+			if (childTable == null) {
+				return null;
+			}
+			return childTable.get(childKey);
+		}
+
+		public void flushChild(final Integer parentKey) {
+			this.parentKeyToChildTable.remove(parentKey);
+		}
+	}
+}
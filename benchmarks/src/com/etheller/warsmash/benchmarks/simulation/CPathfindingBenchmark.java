@@ -0,0 +1,124 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.etheller.warsmash.util.War3ID;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.behaviors.CBehaviorMove;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing.CPathfindingScheduler;
+
+/**
+ * Measures one complete path search for a lone unit, with jump point search
+ * either allowed or turned off so that the same searches run as plain A*. The
+ * start and goal points are random pathable points at a fixed distance from
+ * each other, the same ones for both variants.
+ *
+ * The game data and map are chosen with the same system properties as
+ * {@link CSimulationUpdateBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CPathfindingBenchmark {
+	private static final int SEARCH_COUNT = 64;
+	private static final int MAX_POINT_ATTEMPTS = 10000;
+
+	@Param({ "astar", "jps" })
+	public String algorithm;
+
+	@Param({ "1024", "4096" })
+	public float distance;
+
+	@Param({ "hfoo" })
+	public String unitTypeId;
+
+	@Param({ "1337" })
+	public long seed;
+
+	private HeadlessSimulationData simulationData;
+	private CSimulation simulation;
+	private CUnit unit;
+	private CBehaviorMove behaviorMove;
+	private final float[] startX = new float[SEARCH_COUNT];
+	private final float[] startY = new float[SEARCH_COUNT];
+	private final Point2D.Float[] goals = new Point2D.Float[SEARCH_COUNT];
+	private int nextSearch;
+
+	@Setup(Level.Trial)
+	public void loadSimulationData() throws IOException {
+		this.simulationData = new HeadlessSimulationData(
+				System.getProperty("warsmash.benchmark.ini", "warsmash.ini"),
+				System.getProperty("warsmash.benchmark.map", "Maps\\FrozenThrone\\(4)TwistedMeadows.w3x"));
+	}
+
+	@Setup(Level.Iteration)
+	public void chooseSearches() throws IOException {
+		this.simulation = this.simulationData.createSimulation(this.seed);
+		this.simulation.getPathfindingScheduler().setJumpPointSearchEnabled("jps".equals(this.algorithm));
+		final Rectangle entireMap = this.simulationData.getEntireMap();
+		this.unit = this.simulation.createUnitSimple(War3ID.fromString(this.unitTypeId), 0,
+				entireMap.x + (entireMap.width / 2), entireMap.y + (entireMap.height / 2), 0);
+		this.simulation.update();
+		this.behaviorMove = new CBehaviorMove(this.unit);
+
+		final PathingGrid pathingGrid = this.simulation.getPathingGrid();
+		final float collisionSize = this.unit.getUnitType().getCollisionSize();
+		final Random random = new Random(this.seed);
+		int searches = 0;
+		for (int attempt = 0; (attempt < MAX_POINT_ATTEMPTS) && (searches < SEARCH_COUNT); attempt++) {
+			final float x = entireMap.x + (random.nextFloat() * entireMap.width);
+			final float y = entireMap.y + (random.nextFloat() * entireMap.height);
+			final double angle = random.nextDouble() * Math.PI * 2;
+			final float goalX = x + (float) (Math.cos(angle) * this.distance);
+			final float goalY = y + (float) (Math.sin(angle) * this.distance);
+			if (pathingGrid.isPathable(x, y, MovementType.FOOT, collisionSize)
+					&& pathingGrid.isPathable(goalX, goalY, MovementType.FOOT, collisionSize)) {
+				this.startX[searches] = x;
+				this.startY[searches] = y;
+				this.goals[searches] = new Point2D.Float(goalX, goalY);
+				searches++;
+			}
+		}
+		if (searches < SEARCH_COUNT) {
+			throw new IllegalStateException("Not enough pathable points on this map for distance " + this.distance);
+		}
+		this.nextSearch = 0;
+	}
+
+	@Benchmark
+	public CBehaviorMove findPath() {
+		final int search = this.nextSearch;
+		this.nextSearch = (search + 1) % SEARCH_COUNT;
+		this.simulation.findNaiveSlowPath(this.unit, null, this.startX[search], this.startY[search],
+				this.goals[search], MovementType.FOOT, this.unit.getUnitType().getCollisionSize(), true,
+				this.behaviorMove);
+		final CPathfindingScheduler pathfindingScheduler = this.simulation.getPathfindingScheduler();
+		while (pathfindingScheduler.getQueueDepth() > 0) {
+			pathfindingScheduler.update(this.simulation);
+		}
+		return this.behaviorMove;
+	}
+}
@@ -0,0 +1,176 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.etheller.warsmash.util.War3ID;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.abilities.targeting.AbilityPointTarget;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.orders.OrderIds;
+
+/**
+ * Measures the cost of one {@link CSimulation#update()} tick with two armies
+ * fighting in the middle of the map. Run with "-prof gc" to get allocations per
+ * tick. Every iteration rebuilds the simulation from the same seed, so results
+ * from two runs of the same parameters are comparable.
+ *
+ * The game data and map are chosen with the system properties
+ * "warsmash.benchmark.ini" and "warsmash.benchmark.map".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CSimulationUpdateBenchmark {
+	private static final float ARMY_SPACING = 64f;
+	private static final float ARMY_SEPARATION = 1536f;
+
+	@Param({ "200", "1000", "2000" })
+	public int unitCount;
+
+	@Param({ "hfoo", "hrif" })
+	public String unitTypeId;
+
+	@Param({ "attack", "move" })
+	public String order;
+
+	@Param({ "1337" })
+	public long seed;
+
+	private HeadlessSimulationData simulationData;
+	private CSimulation simulation;
+
+	@Setup(Level.Trial)
+	public void loadSimulationData() throws IOException {
+		this.simulationData = new HeadlessSimulationData(
+				System.getProperty("warsmash.benchmark.ini", "warsmash.ini"),
+				System.getProperty("warsmash.benchmark.map", "Maps\\FrozenThrone\\(4)TwistedMeadows.w3x"));
+	}
+
+	@Setup(Level.Iteration)
+	public void spawnArmies() throws IOException {
+		this.simulation = this.simulationData.createSimulation(this.seed);
+		final Random spawnRandom = new Random(this.seed);
+		final Rectangle entireMap = this.simulationData.getEntireMap();
+		final float centerX = entireMap.x + (entireMap.width / 2);
+		final float centerY = entireMap.y + (entireMap.height / 2);
+		final War3ID typeId = War3ID.fromString(this.unitTypeId);
+		final int orderId = "move".equals(this.order) ? OrderIds.move : OrderIds.attack;
+		final int armySize = this.unitCount / 2;
+		final int columns = (int) Math.ceil(Math.sqrt(armySize));
+		final CUnit[] army = new CUnit[this.unitCount];
+		for (int i = 0; i < this.unitCount; i++) {
+			final int playerIndex = i < armySize ? 0 : 1;
+			final int indexInArmy = i % armySize;
+			final float side = playerIndex == 0 ? -1 : 1;
+			final float x = centerX + (side * (ARMY_SEPARATION / 2)) + ((indexInArmy / columns) * ARMY_SPACING * side)
+					+ (spawnRandom.nextFloat() * 8f);
+			final float y = (centerY - ((columns * ARMY_SPACING) / 2)) + ((indexInArmy % columns) * ARMY_SPACING)
+					+ (spawnRandom.nextFloat() * 8f);
+			army[i] = this.simulation.createUnitSimple(typeId, playerIndex, x, y, playerIndex == 0 ? 0 : 180);
+		}
+		// let the new units join the simulation before ordering them around
+		this.simulation.update();
+		for (int i = 0; i < this.unitCount; i++) {
+			final CUnit unit = army[i];
+			if (unit != null) {
+				final float side = unit.getPlayerIndex() == 0 ? 1 : -1;
+				unit.order(this.simulation, orderId,
+						new AbilityPointTarget(centerX + (side * ARMY_SEPARATION), unit.getY()));
+			}
+		}
+	}
+
+	@Benchmark
+	public CSimulation tick() {
+		this.simulation.update();
+		return this.simulation;
+	}
+
+	/**
+	 * The cost of the desync check, which clients run every
+	 * ClientToServerProtocol.STATE_HASH_INTERVAL_TURNS ticks; compare it with
+	 * {@link #tick()}.
+	 */
+	@Benchmark
+	public long stateHash() {
+		return this.simulation.computeStateHash(this.seed);
+	}
+
+	/**
+	 * Runs the same tick as {@link #tick()}, but reports how the time was split
+	 * between the update phases. The counters are totals for the iteration; divide
+	 * by "ticks" for the per-tick cost.
+	 */
+	@Benchmark
+	public CSimulation tickPhases(final PhaseTimes phaseTimes) {
+		final CSimulation simulation = this.simulation;
+		simulation.getGlobalScope().beginTick();
+		final long start = System.nanoTime();
+		simulation.updateUnits();
+		final long afterUnits = System.nanoTime();
+		simulation.updateUnitVision();
+		final long afterVision = System.nanoTime();
+		simulation.updateProjectiles();
+		final long afterProjectiles = System.nanoTime();
+		simulation.updatePathfinding();
+		final long afterPathfinding = System.nanoTime();
+		simulation.updateTimers();
+		final long afterTimers = System.nanoTime();
+		simulation.updateJassThreads();
+		final long afterJass = System.nanoTime();
+		phaseTimes.ticks++;
+		phaseTimes.unitNanos += afterUnits - start;
+		phaseTimes.visionNanos += afterVision - afterUnits;
+		phaseTimes.projectileNanos += afterProjectiles - afterVision;
+		phaseTimes.pathfindingNanos += afterPathfinding - afterProjectiles;
+		phaseTimes.timerNanos += afterTimers - afterPathfinding;
+		phaseTimes.jassNanos += afterJass - afterTimers;
+		phaseTimes.pathfindingQueueDepth += simulation.getPathfindingScheduler().getQueueDepth();
+		return simulation;
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class PhaseTimes {
+		public long ticks;
+		public long unitNanos;
+		public long visionNanos;
+		public long projectileNanos;
+		public long pathfindingNanos;
+		public long timerNanos;
+		public long jassNanos;
+		public long pathfindingQueueDepth;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.ticks = 0;
+			this.unitNanos = 0;
+			this.visionNanos = 0;
+			this.projectileNanos = 0;
+			this.pathfindingNanos = 0;
+			this.timerNanos = 0;
+			this.jassNanos = 0;
+			this.pathfindingQueueDepth = 0;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.etheller.warsmash.util.Quadtree;
+import com.etheller.warsmash.util.QuadtreeIntersector;
+import com.etheller.warsmash.util.SpatialHashGrid;
+import com.etheller.warsmash.util.SpatialIndex;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CWorldCollision;
+
+/**
+ * Compares the spatial index backends of {@link CWorldCollision} on the work
+ * that unit movement does to them. Each invocation is one simulation tick, in
+ * which every unit moves one step and then checks whether its new rectangle
+ * overlaps any other unit, the way CBehaviorMove uses
+ * intersectsAnythingOtherThan.
+ *
+ * This works on the spatial index directly, with plain objects instead of
+ * CUnits, so it needs no game data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CWorldCollisionBenchmark {
+	private static final float MAP_SIZE = 16384f;
+	private static final float MOVE_SPEED_PER_TICK = 270f * 0.05f;
+
+	@Param({ "quadtree", "spatialhash" })
+	public String backend;
+
+	@Param({ "1000", "4000" })
+	public int unitCount;
+
+	@Param({ "16" })
+	public float collisionSize;
+
+	@Param({ "1337" })
+	public long seed;
+
+	private SpatialIndex<BenchmarkUnit> spatialIndex;
+	private BenchmarkUnit[] units;
+	private final Rectangle newPossibleRectangle = new Rectangle();
+	private final AnyOtherUnitIntersector anyOtherUnitIntersector = new AnyOtherUnitIntersector();
+
+	@Setup(Level.Iteration)
+	public void createUnits() {
+		final Rectangle entireMap = new Rectangle(-MAP_SIZE / 2, -MAP_SIZE / 2, MAP_SIZE, MAP_SIZE);
+		final SpatialIndex.Factory factory = "spatialhash".equals(this.backend)
+				? SpatialHashGrid.factory(CWorldCollision.SPATIAL_HASH_CELL_SIZE)
+				: Quadtree.FACTORY;
+		this.spatialIndex = factory.create(entireMap);
+		final Random random = new Random(this.seed);
+		this.units = new BenchmarkUnit[this.unitCount];
+		// units start in a few groups, like armies do, so that the quadtree has to split
+		final int groupCount = Math.max(1, this.unitCount / 100);
+		final float[] groupX = new float[groupCount];
+		final float[] groupY = new float[groupCount];
+		for (int i = 0; i < groupCount; i++) {
+			groupX[i] = entireMap.x + (random.nextFloat() * entireMap.width);
+			groupY[i] = entireMap.y + (random.nextFloat() * entireMap.height);
+		}
+		for (int i = 0; i < this.unitCount; i++) {
+			final int group = i % groupCount;
+			final float x = clamp(groupX[group] + ((random.nextFloat() - 0.5f) * 1024f), entireMap.x,
+					entireMap.x + entireMap.width);
+			final float y = clamp(groupY[group] + ((random.nextFloat() - 0.5f) * 1024f), entireMap.y,
+					entireMap.y + entireMap.height);
+			final double angle = random.nextDouble() * Math.PI * 2;
+			final BenchmarkUnit unit = new BenchmarkUnit(new Rectangle(x - this.collisionSize,
+					y - this.collisionSize, this.collisionSize * 2, this.collisionSize * 2),
+					(float) Math.cos(angle) * MOVE_SPEED_PER_TICK, (float) Math.sin(angle) * MOVE_SPEED_PER_TICK);
+			this.units[i] = unit;
+			this.spatialIndex.add(unit, unit.bounds);
+		}
+	}
+
+	@Benchmark
+	public int moveAllUnits() {
+		final float minX = -MAP_SIZE / 2;
+		final float maxX = MAP_SIZE / 2;
+		int blockedUnits = 0;
+		for (final BenchmarkUnit unit : this.units) {
+			final Rectangle bounds = unit.bounds;
+			final float nextX = bounds.x + unit.xSpeed;
+			final float nextY = bounds.y + unit.ySpeed;
+			if ((nextX < minX) || ((nextX + bounds.width) > maxX)) {
+				unit.xSpeed = -unit.xSpeed;
+			}
+			if ((nextY < minX) || ((nextY + bounds.height) > maxX)) {
+				unit.ySpeed = -unit.ySpeed;
+			}
+			this.newPossibleRectangle.set(bounds.x + unit.xSpeed, bounds.y + unit.ySpeed, bounds.width,
+					bounds.height);
+			if (this.spatialIndex.intersect(this.newPossibleRectangle, this.anyOtherUnitIntersector.reset(unit))) {
+				blockedUnits++;
+			}
+			this.spatialIndex.translate(unit, bounds, unit.xSpeed, unit.ySpeed);
+		}
+		return blockedUnits;
+	}
+
+	private static float clamp(final float value, final float min, final float max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	private static final class BenchmarkUnit {
+		private final Rectangle bounds;
+		private float xSpeed;
+		private float ySpeed;
+
+		public BenchmarkUnit(final Rectangle bounds, final float xSpeed, final float ySpeed) {
+			this.bounds = bounds;
+			this.xSpeed = xSpeed;
+			this.ySpeed = ySpeed;
+		}
+	}
+
+	private static final class AnyOtherUnitIntersector implements QuadtreeIntersector<BenchmarkUnit> {
+		private BenchmarkUnit unit;
+
+		public AnyOtherUnitIntersector reset(final BenchmarkUnit unit) {
+			this.unit = unit;
+			return this;
+		}
+
+		@Override
+		public boolean onIntersect(final BenchmarkUnit intersectingObject) {
+			return intersectingObject != this.unit;
+		}
+	}
+}
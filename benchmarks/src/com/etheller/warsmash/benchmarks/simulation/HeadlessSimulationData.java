@@ -0,0 +1,122 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.warsmash.WarsmashGdxMapScreen;
+import com.etheller.warsmash.datasources.DataSource;
+import com.etheller.warsmash.parsers.w3x.War3Map;
+import com.etheller.warsmash.parsers.w3x.objectdata.Warcraft3MapRuntimeObjectData;
+import com.etheller.warsmash.parsers.w3x.w3e.War3MapW3e;
+import com.etheller.warsmash.parsers.w3x.w3i.War3MapW3i;
+import com.etheller.warsmash.units.DataTable;
+import com.etheller.warsmash.units.Element;
+import com.etheller.warsmash.util.StringBundle;
+import com.etheller.warsmash.util.War3ID;
+import com.etheller.warsmash.util.WarsmashConstants;
+import com.etheller.warsmash.util.WorldEditStrings;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.config.War3MapConfig;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRandom;
+import com.etheller.warsmash.viewer5.handlers.w3x.ui.command.CommandErrorListener;
+
+/**
+ * Loads everything that a {@link CSimulation} needs from the game data and a
+ * map file, without creating a War3MapViewer or any OpenGL state. The loaded
+ * data is kept so that fresh simulations can be created cheaply from it, one per
+ * benchmark iteration, each with its own fixed seed.
+ */
+public class HeadlessSimulationData {
+	private static final String[] MISC_DATA_FILES = { "UI\\MiscData.txt", "Units\\MiscData.txt",
+			"Units\\MiscGame.txt", "UI\\MiscUI.txt", "UI\\SoundInfo\\MiscData.txt" };
+
+	private final War3Map map;
+	private final War3MapW3i mapInformation;
+	private final War3MapW3e terrainData;
+	private final Warcraft3MapRuntimeObjectData allObjectData;
+	private final DataTable miscData;
+	private final Rectangle entireMap;
+
+	public HeadlessSimulationData(final String iniPath, final String mapPath) throws IOException {
+		final DataTable warsmashIni = new DataTable(StringBundle.EMPTY);
+		try (FileInputStream warsmashIniInputStream = new FileInputStream(iniPath)) {
+			warsmashIni.readTXT(warsmashIniInputStream, true);
+		}
+		final Element emulatorConstants = warsmashIni.get("Emulator");
+		WarsmashConstants.loadConstants(emulatorConstants, warsmashIni);
+
+		final DataSource gameDataSource = WarsmashGdxMapScreen.parseDataSources(warsmashIni);
+		final File mapFile = new File(mapPath);
+		if (mapFile.exists()) {
+			this.map = new War3Map(gameDataSource, mapFile);
+		}
+		else {
+			this.map = new War3Map(gameDataSource, mapPath);
+		}
+		this.mapInformation = this.map.readMapInformation();
+		this.terrainData = this.map.readEnvironment();
+		this.allObjectData = this.map.readModifications();
+
+		final WorldEditStrings worldEditStrings = new WorldEditStrings(this.map.getCompoundDataSource());
+		this.miscData = new DataTable(worldEditStrings);
+		for (final String miscDataFile : MISC_DATA_FILES) {
+			try (InputStream miscDataTxtStream = this.map.getResourceAsStream(miscDataFile)) {
+				this.miscData.readTXT(miscDataTxtStream, true);
+			}
+		}
+		if (this.map.has("war3mapMisc.txt")) {
+			try (InputStream miscDataTxtStream = this.map.getResourceAsStream("war3mapMisc.txt")) {
+				this.miscData.readTXT(miscDataTxtStream, true);
+			}
+		}
+
+		final float[] centerOffset = this.terrainData.getCenterOffset();
+		final int[] mapSize = this.terrainData.getMapSize();
+		this.entireMap = new Rectangle(centerOffset[0], centerOffset[1], (mapSize[0] * 128f) - 128,
+				(mapSize[1] * 128f) - 128);
+	}
+
+	/**
+	 * Creates a new simulation with no units. The pathing map is re-read from the
+	 * map file every time, because the simulation writes into it (blight, building
+	 * footprints) and runs with the same seed must start from the same state.
+	 */
+	public CSimulation createSimulation(final long seed) throws IOException {
+		final PathingGrid pathingGrid = new PathingGrid(this.map.readPathing(), this.terrainData.getCenterOffset());
+		final War3MapConfig mapConfig = new War3MapConfig(WarsmashConstants.MAX_PLAYERS);
+		final HeadlessSimulationRenderController renderController = new HeadlessSimulationRenderController();
+		final CSimulation simulation = new CSimulation(mapConfig, this.mapInformation.getVersion(), this.miscData,
+				this.allObjectData.getUnits(), this.allObjectData.getItems(), this.allObjectData.getDestructibles(),
+				this.allObjectData.getAbilities(), this.allObjectData.getUpgrades(),
+				this.allObjectData.getStandardUpgradeEffectMeta(), renderController, pathingGrid, this.entireMap,
+				new SimulationRandom(seed), NoOpCommandErrorListener.INSTANCE);
+		renderController.setSimulation(simulation);
+		simulation.setGlobalScope(new GlobalScope());
+		return simulation;
+	}
+
+	public Rectangle getEntireMap() {
+		return this.entireMap;
+	}
+
+	private static final class NoOpCommandErrorListener implements CommandErrorListener {
+		private static final NoOpCommandErrorListener INSTANCE = new NoOpCommandErrorListener();
+
+		@Override
+		public void showInterfaceError(final int playerIndex, final String message) {
+		}
+
+		@Override
+		public void showCommandErrorWithoutSound(final int playerIndex, final String message) {
+		}
+
+		@Override
+		public void showUpgradeCompleteAlert(final int playerIndex, final War3ID queuedRawcode, final int level) {
+		}
+	}
+}
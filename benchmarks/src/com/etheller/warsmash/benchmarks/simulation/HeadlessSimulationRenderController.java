@@ -0,0 +1,382 @@
+package com.etheller.warsmash.benchmarks.simulation;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+
+import com.badlogic.gdx.graphics.Color;
+import com.etheller.warsmash.util.War3ID;
+import com.etheller.warsmash.viewer5.handlers.w3x.AnimationTokens.PrimaryTag;
+import com.etheller.warsmash.viewer5.handlers.w3x.AnimationTokens.SecondaryTag;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CDestructable;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CItem;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnitAnimationListener;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CWidget;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.abilities.targeting.AbilityTarget;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.attacks.CUnitAttackInstant;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.attacks.CUnitAttackListener;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.attacks.CUnitAttackMissile;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.projectile.CAbilityCollisionProjectileListener;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.projectile.CAbilityProjectile;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.projectile.CAbilityProjectileListener;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.projectile.CAttackProjectile;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.projectile.CCollisionProjectile;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.combat.projectile.CPsuedoProjectile;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.enumtypes.CEffectType;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponent;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponentLightning;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponentModel;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderController;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.TextTagConfigType;
+
+/**
+ * A render controller that creates the simulation objects the same way that
+ * War3MapViewer does, but without any models, sounds, or terrain behind them.
+ * The terrain is treated as flat, dry ground. Building pathing maps are not
+ * loaded, so structures and destructables spawned through this controller do
+ * not block pathing.
+ */
+public class HeadlessSimulationRenderController implements SimulationRenderController {
+	private CSimulation simulation;
+
+	/**
+	 * Destructables are created without a simulation argument, so the controller
+	 * needs to be given the simulation it belongs to.
+	 */
+	public void setSimulation(final CSimulation simulation) {
+		this.simulation = simulation;
+	}
+
+	@Override
+	public CAttackProjectile createAttackProjectile(final CSimulation simulation, final float launchX,
+			final float launchY, final float launchFacing, final CUnit source, final CUnitAttackMissile attack,
+			final AbilityTarget target, final float damage, final int bounceIndex,
+			final CUnitAttackListener attackListener) {
+		return new CAttackProjectile(launchX, launchY, attack.getProjectileSpeed(), target, source, damage, attack,
+				bounceIndex, attackListener);
+	}
+
+	@Override
+	public CAbilityProjectile createProjectile(final CSimulation cSimulation, final float launchX,
+			final float launchY, final float launchFacing, final float speed, final boolean homing,
+			final CUnit source, final War3ID spellAlias, final AbilityTarget target,
+			final CAbilityProjectileListener projectileListener) {
+		return new CAbilityProjectile(launchX, launchY, speed, target, homing, source, projectileListener);
+	}
+
+	@Override
+	public CCollisionProjectile createCollisionProjectile(final CSimulation cSimulation, final float launchX,
+			final float launchY, final float launchFacing, final float projectileSpeed, final boolean homing,
+			final CUnit source, final War3ID spellAlias, final AbilityTarget target, final int maxHits,
+			final int hitsPerTarget, final float startingRadius, final float finalRadius,
+			final float collisionInterval, final CAbilityCollisionProjectileListener projectileListener,
+			final boolean provideCounts) {
+		return new CCollisionProjectile(launchX, launchY, projectileSpeed, target, homing, source, maxHits,
+				hitsPerTarget, startingRadius, finalRadius, collisionInterval, projectileListener, provideCounts);
+	}
+
+	@Override
+	public CPsuedoProjectile createPseudoProjectile(final CSimulation cSimulation, final float launchX,
+			final float launchY, final float launchFacing, final float projectileSpeed,
+			final float projectileStepInterval, final int projectileArtSkip, final boolean homing,
+			final CUnit source, final War3ID spellAlias, final CEffectType effectType, final int effectArtIndex,
+			final AbilityTarget target, final int maxHits, final int hitsPerTarget, final float startingRadius,
+			final float finalRadius, final CAbilityCollisionProjectileListener projectileListener,
+			final boolean provideCounts) {
+		return new CPsuedoProjectile(launchX, launchY, projectileSpeed, projectileStepInterval, projectileArtSkip,
+				target, homing, source, spellAlias, effectType, effectArtIndex, maxHits, hitsPerTarget,
+				startingRadius, finalRadius, projectileListener, provideCounts);
+	}
+
+	@Override
+	public SimulationRenderComponentLightning createLightning(final CSimulation simulation, final War3ID lightningId,
+			final CUnit source, final CUnit target) {
+		return SimulationRenderComponentLightning.DO_NOTHING;
+	}
+
+	@Override
+	public SimulationRenderComponentLightning createLightning(final CSimulation simulation, final War3ID lightningId,
+			final CUnit source, final CUnit target, final Float duration) {
+		return SimulationRenderComponentLightning.DO_NOTHING;
+	}
+
+	@Override
+	public SimulationRenderComponentLightning createAbilityLightning(final CSimulation simulation,
+			final War3ID lightningId, final CUnit source, final CUnit target, final int index) {
+		return SimulationRenderComponentLightning.DO_NOTHING;
+	}
+
+	@Override
+	public SimulationRenderComponentLightning createAbilityLightning(final CSimulation simulation,
+			final War3ID lightningId, final CUnit source, final CUnit target, final int index, final Float duration) {
+		return SimulationRenderComponentLightning.DO_NOTHING;
+	}
+
+	@Override
+	public CUnit createUnit(final CSimulation simulation, final War3ID typeId, final int playerIndex, final float x,
+			final float y, final float facing) {
+		final CUnit unit = simulation.internalCreateUnit(typeId, playerIndex, x, y, facing, null);
+		unit.setUnitAnimationListener(HeadlessUnitAnimationListener.INSTANCE);
+		return unit;
+	}
+
+	@Override
+	public CItem createItem(final CSimulation simulation, final War3ID typeId, final float x, final float y) {
+		return simulation.internalCreateItem(typeId, x, y);
+	}
+
+	@Override
+	public CDestructable createDestructable(final War3ID typeId, final float x, final float y, final float facing,
+			final float scale, final int variation) {
+		return this.simulation.internalCreateDestructable(typeId, x, y, null, null);
+	}
+
+	@Override
+	public CDestructable createDestructableZ(final War3ID typeId, final float x, final float y, final float z,
+			final float facing, final float scale, final int variation) {
+		return this.simulation.internalCreateDestructable(typeId, x, y, null, null);
+	}
+
+	@Override
+	public void createInstantAttackEffect(final CSimulation cSimulation, final CUnit source,
+			final CUnitAttackInstant attack, final CWidget target) {
+	}
+
+	@Override
+	public void spawnDamageSound(final CWidget damagedDestructable, final String weaponSound,
+			final String armorType) {
+	}
+
+	@Override
+	public void spawnUnitConstructionSound(final CUnit constructingUnit, final CUnit constructedStructure) {
+	}
+
+	@Override
+	public void removeUnit(final CUnit unit) {
+	}
+
+	@Override
+	public void removeDestructable(final CDestructable dest) {
+	}
+
+	@Override
+	public BufferedImage getBuildingPathingPixelMap(final War3ID rawcode) {
+		return null;
+	}
+
+	@Override
+	public BufferedImage getDestructablePathingPixelMap(final War3ID rawcode) {
+		return null;
+	}
+
+	@Override
+	public BufferedImage getDestructablePathingDeathPixelMap(final War3ID rawcode) {
+		return null;
+	}
+
+	@Override
+	public void spawnUnitConstructionFinishSound(final CUnit constructedStructure) {
+	}
+
+	@Override
+	public void spawnUnitUpgradeFinishSound(final CUnit constructedStructure) {
+	}
+
+	@Override
+	public void spawnDeathExplodeEffect(final CUnit cUnit, final War3ID explodesOnDeathBuffId) {
+	}
+
+	@Override
+	public void spawnGainLevelEffect(final CUnit cUnit) {
+	}
+
+	@Override
+	public void spawnUnitReadySound(final CUnit trainedUnit) {
+	}
+
+	@Override
+	public void unitRepositioned(final CUnit cUnit) {
+	}
+
+	@Override
+	public void spawnTextTag(final CUnit unit, final TextTagConfigType configType, final int displayAmount) {
+	}
+
+	@Override
+	public void spawnTextTag(final CUnit unit, final TextTagConfigType configType, final String message) {
+	}
+
+	@Override
+	public void spawnEffectOnUnit(final CUnit unit, final String effectPath) {
+	}
+
+	@Override
+	public void spawnTemporarySpellEffectOnUnit(final CUnit unit, final War3ID alias, final CEffectType effectType) {
+	}
+
+	@Override
+	public SimulationRenderComponentModel spawnPersistentSpellEffectOnUnit(final CUnit unit, final War3ID alias,
+			final CEffectType effectType) {
+		return SimulationRenderComponentModel.DO_NOTHING;
+	}
+
+	@Override
+	public SimulationRenderComponentModel spawnPersistentSpellEffectOnUnit(final CUnit unit, final War3ID alias,
+			final CEffectType effectType, final int index) {
+		return SimulationRenderComponentModel.DO_NOTHING;
+	}
+
+	@Override
+	public SimulationRenderComponentModel spawnSpellEffectOnPoint(final float x, final float y, final float facing,
+			final War3ID alias, final CEffectType effectType, final int index) {
+		return SimulationRenderComponentModel.DO_NOTHING;
+	}
+
+	@Override
+	public void spawnTemporarySpellEffectOnPoint(final float x, final float y, final float facing,
+			final War3ID alias, final CEffectType effectType, final int index) {
+	}
+
+	@Override
+	public void spawnUIUnitGetItemSound(final CUnit cUnit, final CItem item) {
+	}
+
+	@Override
+	public void spawnUIUnitDropItemSound(final CUnit cUnit, final CItem item) {
+	}
+
+	@Override
+	public SimulationRenderComponent spawnAbilitySoundEffect(final CUnit caster, final War3ID alias) {
+		return SimulationRenderComponent.DO_NOTHING;
+	}
+
+	@Override
+	public SimulationRenderComponent loopAbilitySoundEffect(final CUnit caster, final War3ID alias) {
+		return SimulationRenderComponent.DO_NOTHING;
+	}
+
+	@Override
+	public void stopAbilitySoundEffect(final CUnit caster, final War3ID alias) {
+	}
+
+	@Override
+	public void unitPreferredSelectionReplacement(final CUnit unit, final CUnit newUnit) {
+	}
+
+	@Override
+	public void heroRevived(final CUnit trainedUnit) {
+	}
+
+	@Override
+	public void heroDeathEvent(final CUnit cUnit) {
+	}
+
+	@Override
+	public SimulationRenderComponentModel createSpellEffectOverDestructable(final CUnit source,
+			final CDestructable target, final War3ID alias, final float artAttachmentHeight) {
+		return SimulationRenderComponentModel.DO_NOTHING;
+	}
+
+	@Override
+	public void unitUpgradingEvent(final CUnit unit, final War3ID upgradeIdType) {
+	}
+
+	@Override
+	public void unitCancelUpgradingEvent(final CUnit unit, final War3ID upgradeIdType) {
+	}
+
+	@Override
+	public void setBlight(final float x, final float y, final float radius, final boolean blighted) {
+	}
+
+	@Override
+	public void unitUpdatedType(final CUnit unit, final War3ID typeId) {
+	}
+
+	@Override
+	public void changeUnitColor(final CUnit unit, final int playerIndex) {
+	}
+
+	@Override
+	public void changeUnitVertexColor(final CUnit unit, final Color color) {
+	}
+
+	@Override
+	public void changeUnitVertexColor(final CUnit unit, final float r, final float g, final float b) {
+	}
+
+	@Override
+	public void changeUnitVertexColor(final CUnit unit, final float r, final float g, final float b, final float a) {
+	}
+
+	@Override
+	public int getTerrainHeight(final float x, final float y) {
+		return 0;
+	}
+
+	@Override
+	public boolean isTerrainRomp(final float x, final float y) {
+		return false;
+	}
+
+	@Override
+	public boolean isTerrainWater(final float x, final float y) {
+		return false;
+	}
+
+	private static final class HeadlessUnitAnimationListener implements CUnitAnimationListener {
+		private static final HeadlessUnitAnimationListener INSTANCE = new HeadlessUnitAnimationListener();
+
+		@Override
+		public void playAnimation(final boolean force, final PrimaryTag animationName,
+				final EnumSet<SecondaryTag> secondaryAnimationTags, final float speedRatio,
+				final boolean allowRarityVariations) {
+		}
+
+		@Override
+		public void playAnimationWithDuration(final boolean force, final PrimaryTag animationName,
+				final EnumSet<SecondaryTag> secondaryAnimationTags, final float duration,
+				final boolean allowRarityVariations) {
+		}
+
+		@Override
+		public void playWalkAnimation(final boolean force, final float currentMovementSpeed,
+				final boolean allowRarityVariations) {
+		}
+
+		@Override
+		public void queueAnimation(final PrimaryTag animationName, final EnumSet<SecondaryTag> secondaryAnimationTags,
+				final boolean allowRarityVariations) {
+		}
+
+		@Override
+		public void addSecondaryTag(final SecondaryTag secondaryTag) {
+		}
+
+		@Override
+		public void removeSecondaryTag(final SecondaryTag secondaryTag) {
+		}
+
+		@Override
+		public void addSecondaryTagForFutureAnimations(final SecondaryTag secondaryTag) {
+		}
+
+		@Override
+		public void removeSecondaryTagForFutureAnimations(final SecondaryTag secondaryTag) {
+		}
+
+		@Override
+		public EnumSet<SecondaryTag> getSecondaryTags() {
+			return EnumSet.noneOf(SecondaryTag.class);
+		}
+
+		@Override
+		public void lockTurrentFacing(final AbilityTarget target) {
+		}
+
+		@Override
+		public void clearTurrentFacing() {
+		}
+	}
+}
@@ -1,9 +1,12 @@
 package com.etheller.warsmash.networking;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -17,6 +20,8 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayerUnit
 import net.warsmash.networking.udp.OrderedUdpClient;
 
 public class WarsmashClient implements ServerToClientListener, GameTurnManager {
+	// per frame, so that the worst frame of the last second or so is reported
+	private static final float FRAME_TIME_DECAY = 0.99f;
 	private final OrderedUdpClient udpClient;
 	private final War3MapViewer game;
 	private final Map<Integer, CPlayerUnitOrderExecutor> indexToExecutor = new HashMap<>();
@@ -25,6 +30,13 @@ public class WarsmashClient implements ServerToClientListener, GameTurnManager {
 	private final WarsmashClientWriter writer;
 	private final Queue<QueuedMessage> queuedMessages = new ArrayDeque<>();
 	private final IntIntMap serverSlotToMapSlot;
+	private float turnLengthScale = 1;
+	private float frameTime;
+	private float tickTime;
+	private int[] laggingPlayers = new int[0];
+	private long stateHash = ClientToServerProtocol.NO_STATE_HASH;
+	private int serverSlot = -1;
+	private int stateDumpTurnTick = -1;
 
 	public WarsmashClient(final InetAddress serverAddress, final int udpPort, final War3MapViewer game,
 			final long sessionToken, final IntIntMap serverSlotToMapSlot) throws UnknownHostException, IOException {
@@ -51,6 +63,7 @@ public class WarsmashClient implements ServerToClientListener, GameTurnManager {
 	@Override
 	public void acceptJoin(final int playerIndex) {
 		System.err.println("acceptJoin " + playerIndex);
+		this.serverSlot = playerIndex;
 		this.game.setLocalPlayerServerSlot(playerIndex);
 	}
 
@@ -265,7 +278,15 @@ public class WarsmashClient implements ServerToClientListener, GameTurnManager {
 		if (WarsmashConstants.VERBOSE_LOGGING) {
 			System.out.println("turnCompleted " + gameTurnTick);
 		}
-		this.writer.finishedTurn(gameTurnTick);
+		long turnStateHash = ClientToServerProtocol.NO_STATE_HASH;
+		if ((gameTurnTick % ClientToServerProtocol.STATE_HASH_INTERVAL_TURNS) == 0) {
+			this.stateHash = this.game.simulation.computeStateHash(this.stateHash);
+			turnStateHash = this.stateHash;
+		}
+		if (gameTurnTick == this.stateDumpTurnTick) {
+			dumpState(gameTurnTick);
+		}
+		this.writer.finishedTurn(gameTurnTick, turnStateHash);
 		this.writer.send();
 		this.latestLocallyRequestedTurn = gameTurnTick;
 		while (!this.queuedMessages.isEmpty()
@@ -304,6 +325,65 @@ public class WarsmashClient implements ServerToClientListener, GameTurnManager {
 		System.out.println("got heartbeat() from server");
 	}
 
+	@Override
+	public void lagReport(final int turnMillis, final int inputDelayTurns, final long serverTimeMillis,
+			final int[] laggingPlayers) {
+		Gdx.app.postRunnable(new Runnable() {
+			@Override
+			public void run() {
+				WarsmashClient.this.turnLengthScale = turnMillis / (WarsmashConstants.SIMULATION_STEP_TIME * 1000);
+				if (!Arrays.equals(WarsmashClient.this.laggingPlayers, laggingPlayers)) {
+					if (laggingPlayers.length > 0) {
+						System.out.println("waiting for players " + Arrays.toString(laggingPlayers));
+					}
+					WarsmashClient.this.laggingPlayers = laggingPlayers;
+				}
+				// answered from the game thread, so the round trip includes the wait for
+				// the next frame
+				WarsmashClient.this.writer.clientTiming(serverTimeMillis,
+						(int) (WarsmashClient.this.frameTime * 1000), (int) (WarsmashClient.this.tickTime * 1000));
+				WarsmashClient.this.writer.send();
+			}
+		});
+	}
+
+	@Override
+	public void desync(final int desyncTurnTick, final int dumpTurnTick) {
+		System.err.println("Desync after turn " + desyncTurnTick + ", dumping state after turn " + dumpTurnTick);
+		Gdx.app.postRunnable(new Runnable() {
+			@Override
+			public void run() {
+				WarsmashClient.this.stateDumpTurnTick = dumpTurnTick;
+			}
+		});
+	}
+
+	private void dumpState(final int gameTurnTick) {
+		final String fileName = "desync_turn" + gameTurnTick + "_player" + this.serverSlot + ".txt";
+		try (PrintStream out = new PrintStream(fileName)) {
+			this.game.simulation.dumpState(out);
+			System.err.println("Wrote simulation state to " + fileName);
+		}
+		catch (final FileNotFoundException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public float getTurnLengthScale() {
+		return this.turnLengthScale;
+	}
+
+	@Override
+	public void frameTimed(final float frameTime, final float tickTime) {
+		this.frameTime = Math.max(frameTime, this.frameTime * FRAME_TIME_DECAY);
+		this.tickTime = Math.max(tickTime, this.tickTime * FRAME_TIME_DECAY);
+	}
+
+	public int[] getLaggingPlayers() {
+		return this.laggingPlayers;
+	}
+
 	@Override
 	public int getLatestCompletedTurn() {
 		return this.latestCompletedTurn;
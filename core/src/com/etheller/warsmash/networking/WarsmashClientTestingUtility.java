@@ -103,7 +103,7 @@ public class WarsmashClientTestingUtility implements ServerToClientListener {
 			if ((myTurn % 4) == 3) {
 				writer.issuePointOrder(999, 1234, 8192, 0, 0, false);
 			}
-			writer.finishedTurn(myTurn);
+			writer.finishedTurn(myTurn, ClientToServerProtocol.NO_STATE_HASH);
 			writer.send();
 		}
 	}
@@ -114,6 +114,23 @@ public class WarsmashClientTestingUtility implements ServerToClientListener {
 		System.out.println();
 	}
 
+	@Override
+	public void lagReport(final int turnMillis, final int inputDelayTurns, final long serverTimeMillis,
+			final int[] laggingPlayers) {
+		System.out.println("WarsmashClientTestingUtility.lagReport");
+		System.out.println("turnMillis = " + turnMillis + ", inputDelayTurns = " + inputDelayTurns);
+		System.out.println();
+		writer.clientTiming(serverTimeMillis, 0, 0);
+		writer.send();
+	}
+
+	@Override
+	public void desync(final int desyncTurnTick, final int dumpTurnTick) {
+		System.out.println("WarsmashClientTestingUtility.desync");
+		System.out.println("desyncTurnTick = " + desyncTurnTick + ", dumpTurnTick = " + dumpTurnTick);
+		System.out.println();
+	}
+
 	public static void main(final String[] args) {
 		final long sessionToken = 1337002L;
 		try {
@@ -1,7 +1,10 @@
 package com.etheller.warsmash.parsers.jass;
 
 import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -21,6 +24,8 @@ import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.etheller.interpreter.JassLexer;
 import com.etheller.interpreter.JassParser;
+import com.etheller.interpreter.ast.cache.JassProgramImageCache;
+import com.etheller.interpreter.ast.cache.JassProgramImageWriter;
 import com.etheller.interpreter.ast.debug.JassException;
 import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.function.JassFunction;
@@ -189,33 +194,7 @@ public class Jass2 {
 			}
 			final String jassFile = jassFilePath;
 			try {
-				JassLexer lexer;
-				try {
-					lexer = new JassLexer(CharStreams.fromStream(dataSource.getResourceAsStream(jassFile)));
-				}
-				catch (final IOException e) {
-					throw new RuntimeException(e);
-				}
-				final JassParser parser = new JassParser(new CommonTokenStream(lexer));
-//				parser.removeErrorListener(ConsoleErrorListener.INSTANCE);
-				parser.addErrorListener(new BaseErrorListener() {
-					@Override
-					public void syntaxError(final Recognizer<?, ?> recognizer, final Object offendingSymbol,
-							final int line, final int charPositionInLine, final String msg,
-							final RecognitionException e) {
-						if (!REPORT_SYNTAX_ERRORS) {
-							return;
-						}
-
-						final String sourceName = String.format("%s:%d:%d: ", jassFile, line, charPositionInLine);
-
-						System.err.println(sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
-						throw new IllegalStateException(
-								sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
-					}
-				});
-				jassProgramVisitor.setCurrentFileName(jassFile);
-				jassProgramVisitor.visit(parser.program());
+				loadJassFile(dataSource, jassFile, jassProgramVisitor, true);
 			}
 			catch (final Exception e) {
 				e.printStackTrace();
@@ -238,33 +217,7 @@ public class Jass2 {
 			}
 			final String jassFile = jassFilePath;
 			try {
-				JassLexer lexer;
-				try {
-					lexer = new JassLexer(CharStreams.fromStream(dataSource.getResourceAsStream(jassFile)));
-				}
-				catch (final IOException e) {
-					throw new RuntimeException(e);
-				}
-				final JassParser parser = new JassParser(new CommonTokenStream(lexer));
-//				parser.removeErrorListener(ConsoleErrorListener.INSTANCE);
-				parser.addErrorListener(new BaseErrorListener() {
-					@Override
-					public void syntaxError(final Recognizer<?, ?> recognizer, final Object offendingSymbol,
-							final int line, final int charPositionInLine, final String msg,
-							final RecognitionException e) {
-						if (!REPORT_SYNTAX_ERRORS) {
-							return;
-						}
-
-						final String sourceName = String.format("%s:%d:%d: ", jassFile, line, charPositionInLine);
-
-						System.err.println(sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
-						throw new IllegalStateException(
-								sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
-					}
-				});
-				jassProgramVisitor.setCurrentFileName(jassFile);
-				jassProgramVisitor.visit(parser.program());
+				loadJassFile(dataSource, jassFile, jassProgramVisitor, true);
 			}
 			catch (final Exception e) {
 				e.printStackTrace();
@@ -282,30 +235,7 @@ public class Jass2 {
 				war3MapViewer, rootFrameListener);
 		for (final String jassFile : files) {
 			try {
-				JassLexer lexer;
-				try {
-					lexer = new JassLexer(CharStreams.fromStream(dataSource.getResourceAsStream(jassFile)));
-				}
-				catch (final IOException e) {
-					throw new RuntimeException(e);
-				}
-				final JassParser parser = new JassParser(new CommonTokenStream(lexer));
-//				parser.removeErrorListener(ConsoleErrorListener.INSTANCE);
-				parser.addErrorListener(new BaseErrorListener() {
-					@Override
-					public void syntaxError(final Recognizer<?, ?> recognizer, final Object offendingSymbol,
-							final int line, final int charPositionInLine, final String msg,
-							final RecognitionException e) {
-						if (!REPORT_SYNTAX_ERRORS) {
-							return;
-						}
-
-						final String sourceName = String.format("%s:%d:%d: ", jassFile, line, charPositionInLine);
-
-						System.err.println(sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
-					}
-				});
-				jassProgramVisitor.visit(parser.program());
+				loadJassFile(dataSource, jassFile, jassProgramVisitor, false);
 			}
 			catch (final Exception e) {
 				e.printStackTrace();
@@ -315,6 +245,64 @@ public class Jass2 {
 		return environment;
 	}
 
+	private static void loadJassFile(final DataSource dataSource, final String jassFile,
+			final JassProgramVisitor jassProgramVisitor, final boolean throwOnSyntaxError) {
+		final byte[] source;
+		try (InputStream stream = dataSource.getResourceAsStream(jassFile)) {
+			source = stream.readAllBytes();
+		}
+		catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		jassProgramVisitor.setCurrentFileName(jassFile);
+		final JassProgramImageCache programImageCache = JassSettings.PROGRAM_IMAGE_CACHE_DIRECTORY == null ? null
+				: new JassProgramImageCache(Paths.get(JassSettings.PROGRAM_IMAGE_CACHE_DIRECTORY));
+		if ((programImageCache != null) && programImageCache.load(source, jassProgramVisitor)) {
+			return;
+		}
+		JassLexer lexer;
+		try {
+			lexer = new JassLexer(CharStreams.fromStream(new ByteArrayInputStream(source)));
+		}
+		catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+		final JassParser parser = new JassParser(new CommonTokenStream(lexer));
+		final boolean[] syntaxErrors = { false };
+//		parser.removeErrorListener(ConsoleErrorListener.INSTANCE);
+		parser.addErrorListener(new BaseErrorListener() {
+			@Override
+			public void syntaxError(final Recognizer<?, ?> recognizer, final Object offendingSymbol, final int line,
+					final int charPositionInLine, final String msg, final RecognitionException e) {
+				syntaxErrors[0] = true;
+				if (!REPORT_SYNTAX_ERRORS) {
+					return;
+				}
+
+				final String sourceName = String.format("%s:%d:%d: ", jassFile, line, charPositionInLine);
+
+				System.err.println(sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
+				if (throwOnSyntaxError) {
+					throw new IllegalStateException(sourceName + "line " + line + ":" + charPositionInLine + " " + msg);
+				}
+			}
+		});
+		final JassProgramImageWriter programImageWriter = programImageCache == null ? null
+				: new JassProgramImageWriter();
+		jassProgramVisitor.setProgramImageWriter(programImageWriter);
+		try {
+			jassProgramVisitor.visit(parser.program());
+		}
+		finally {
+			jassProgramVisitor.setProgramImageWriter(null);
+		}
+		// a script that did not parse cleanly is parsed again next time, so that its
+		// errors are reported again
+		if ((programImageWriter != null) && !syntaxErrors[0]) {
+			programImageCache.store(source, programImageWriter.toByteArray());
+		}
+	}
+
 	public static interface RootFrameListener {
 		void onCreate(GameUI rootFrame);
 	}
@@ -775,38 +763,30 @@ public class Jass2 {
 					return new HandleJassValue(groupType, new UnitGroup(this.stupidGroupHandleId++));
 				}
 			});
-			jassProgramVisitor.getJassNativeManager().createNative("DestroyGroup",
+			jassProgramVisitor.getJassNativeManager().createStackNative("DestroyGroup",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
 						System.err.println(
 								"DestroyGroup called but in Java we don't have a destructor, so we need to unregister later when that is implemented");
-						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GroupAddUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GroupAddUnit",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = nullable(arguments, 0,
-								ObjectJassValueVisitor.<List<CUnit>>getInstance());
-						final CUnit whichUnit = arguments.get(1).visit(ObjectJassValueVisitor.<CUnit>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
+						final CUnit whichUnit = arguments.<CUnit>getObject(1);
 						if (group != null) {
 							group.add(whichUnit);
 						}
-						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GroupRemoveUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GroupRemoveUnit",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
-						final CUnit whichUnit = arguments.get(1).visit(ObjectJassValueVisitor.<CUnit>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
+						final CUnit whichUnit = arguments.<CUnit>getObject(1);
 						group.remove(whichUnit);
-						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GroupClear",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GroupClear",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
 						group.clear();
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GroupEnumUnitsOfType",
 					(arguments, globalScope, triggerScope) -> {
@@ -826,14 +806,11 @@ public class Jass2 {
 						}
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GroupEnumUnitsOfPlayer",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GroupEnumUnitsOfPlayer",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
-						final CPlayerJass player = arguments.get(1)
-								.visit(ObjectJassValueVisitor.<CPlayerJass>getInstance());
-						final TriggerBooleanExpression filter = nullable(arguments, 2,
-								ObjectJassValueVisitor.<TriggerBooleanExpression>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
+						final CPlayerJass player = arguments.<CPlayerJass>getObject(1);
+						final TriggerBooleanExpression filter = arguments.<TriggerBooleanExpression>getObject(2);
 						for (final CUnit unit : CommonEnvironment.this.simulation.getUnits()) {
 							if (unit.getPlayerIndex() == player.getId()) {
 								if ((filter == null) || filter.evaluate(globalScope,
@@ -843,7 +820,6 @@ public class Jass2 {
 								}
 							}
 						}
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("IssuePointOrderLoc",
 					(arguments, globalScope, triggerScope) -> {
@@ -1089,13 +1065,11 @@ public class Jass2 {
 						}
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GroupEnumUnitsInRect",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GroupEnumUnitsInRect",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
-						final Rectangle rect = arguments.get(1).visit(ObjectJassValueVisitor.<Rectangle>getInstance());
-						final TriggerBooleanExpression filter = nullable(arguments, 2,
-								ObjectJassValueVisitor.<TriggerBooleanExpression>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
+						final Rectangle rect = arguments.<Rectangle>getObject(1);
+						final TriggerBooleanExpression filter = arguments.<TriggerBooleanExpression>getObject(2);
 						CommonEnvironment.this.simulation.getWorldCollision().enumUnitsInRect(rect, (unit) -> {
 							if ((filter == null) || filter.evaluate(globalScope,
 									CommonTriggerExecutionScope.filterScope(triggerScope, unit))) {
@@ -1104,7 +1078,6 @@ public class Jass2 {
 							}
 							return false;
 						});
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GroupEnumUnitsInRectCounted",
 					(arguments, globalScope, triggerScope) -> {
@@ -1134,15 +1107,13 @@ public class Jass2 {
 								});
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GroupEnumUnitsInRange",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GroupEnumUnitsInRange",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
-						final float x = arguments.get(1).visit(RealJassValueVisitor.getInstance()).floatValue();
-						final float y = arguments.get(2).visit(RealJassValueVisitor.getInstance()).floatValue();
-						final float radius = arguments.get(3).visit(RealJassValueVisitor.getInstance()).floatValue();
-						final TriggerBooleanExpression filter = nullable(arguments, 4,
-								ObjectJassValueVisitor.<TriggerBooleanExpression>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
+						final float x = (float) arguments.getReal(1);
+						final float y = (float) arguments.getReal(2);
+						final float radius = (float) arguments.getReal(3);
+						final TriggerBooleanExpression filter = arguments.<TriggerBooleanExpression>getObject(4);
 						CommonEnvironment.this.simulation.getWorldCollision().enumUnitsInRect(
 								tempRect.set(x - radius, y - radius, radius * 2, radius * 2), (unit) -> {
 									if (unit.distance(x, y) <= radius) {
@@ -1154,7 +1125,6 @@ public class Jass2 {
 									}
 									return false;
 								});
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GroupEnumUnitsInRangeOfLoc",
 					(arguments, globalScope, triggerScope) -> {
@@ -1385,14 +1355,14 @@ public class Jass2 {
 						}
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("FirstOfGroup",
+			jassProgramVisitor.getJassNativeManager().createStackNative("FirstOfGroup",
 					(arguments, globalScope, triggerScope) -> {
-						final List<CUnit> group = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<List<CUnit>>getInstance());
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(0);
 						if (group.isEmpty()) {
-							return unitType.getNullValue();
+							arguments.push(unitType.getNullValue());
+							return;
 						}
-						return new HandleJassValue(unitType, group.get(0));
+						arguments.push(new HandleJassValue(unitType, group.get(0)));
 					});
 			// ============================================================================
 			// Force API
@@ -1616,25 +1586,25 @@ public class Jass2 {
 					return new RealJassValue(rect.getCenter(this.centerHeap).y);
 				}
 			});
-			jassProgramVisitor.getJassNativeManager().createNative("GetRectMinX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetRectMinX",
 					(arguments, globalScope, triggerScope) -> {
-						final Rectangle rect = arguments.get(0).visit(ObjectJassValueVisitor.<Rectangle>getInstance());
-						return new RealJassValue(rect.getX());
+						final Rectangle rect = arguments.<Rectangle>getObject(0);
+						arguments.pushReal(rect.getX());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetRectMinY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetRectMinY",
 					(arguments, globalScope, triggerScope) -> {
-						final Rectangle rect = arguments.get(0).visit(ObjectJassValueVisitor.<Rectangle>getInstance());
-						return new RealJassValue(rect.getY());
+						final Rectangle rect = arguments.<Rectangle>getObject(0);
+						arguments.pushReal(rect.getY());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetRectMaxX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetRectMaxX",
 					(arguments, globalScope, triggerScope) -> {
-						final Rectangle rect = arguments.get(0).visit(ObjectJassValueVisitor.<Rectangle>getInstance());
-						return new RealJassValue(rect.getX() + rect.getWidth());
+						final Rectangle rect = arguments.<Rectangle>getObject(0);
+						arguments.pushReal(rect.getX() + rect.getWidth());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetRectMaxY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetRectMaxY",
 					(arguments, globalScope, triggerScope) -> {
-						final Rectangle rect = arguments.get(0).visit(ObjectJassValueVisitor.<Rectangle>getInstance());
-						return new RealJassValue(rect.getY() + rect.getHeight());
+						final Rectangle rect = arguments.<Rectangle>getObject(0);
+						arguments.pushReal(rect.getY() + rect.getHeight());
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("CreateRegion",
 					(arguments, globalScope, triggerScope) -> {
@@ -1694,41 +1664,35 @@ public class Jass2 {
 								CommonEnvironment.this.simulation.getRegionManager());
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("Location",
+			jassProgramVisitor.getJassNativeManager().createStackNative("Location",
 					(arguments, globalScope, triggerScope) -> {
-						final float x = arguments.get(0).visit(RealJassValueVisitor.getInstance()).floatValue();
-						final float y = arguments.get(1).visit(RealJassValueVisitor.getInstance()).floatValue();
-						return new HandleJassValue(locationType, new Point2D.Double(x, y));
+						final float x = (float) arguments.getReal(0);
+						final float y = (float) arguments.getReal(1);
+						arguments.push(new HandleJassValue(locationType, new Point2D.Double(x, y)));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("RemoveLocation",
+			jassProgramVisitor.getJassNativeManager().createStackNative("RemoveLocation",
 					(arguments, globalScope, triggerScope) -> {
-						final Point2D.Double whichLocation = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<Point2D.Double>getInstance());
+						final Point2D.Double whichLocation = arguments.<Point2D.Double>getObject(0);
 						System.err.println(
 								"RemoveRect called but in Java we don't have a destructor, so we need to unregister later when that is implemented");
-						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("MoveLocation",
+			jassProgramVisitor.getJassNativeManager().createStackNative("MoveLocation",
 					(arguments, globalScope, triggerScope) -> {
-						final Point2D.Double whichLocation = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<Point2D.Double>getInstance());
-						final float x = arguments.get(1).visit(RealJassValueVisitor.getInstance()).floatValue();
-						final float y = arguments.get(2).visit(RealJassValueVisitor.getInstance()).floatValue();
+						final Point2D.Double whichLocation = arguments.<Point2D.Double>getObject(0);
+						final float x = (float) arguments.getReal(1);
+						final float y = (float) arguments.getReal(2);
 						whichLocation.x = x;
 						whichLocation.y = y;
-						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetLocationX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetLocationX",
 					(arguments, globalScope, triggerScope) -> {
-						final Point2D.Double whichLocation = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<Point2D.Double>getInstance());
-						return new RealJassValue(whichLocation.x);
+						final Point2D.Double whichLocation = arguments.<Point2D.Double>getObject(0);
+						arguments.pushReal(whichLocation.x);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetLocationY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetLocationY",
 					(arguments, globalScope, triggerScope) -> {
-						final Point2D.Double whichLocation = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<Point2D.Double>getInstance());
-						return new RealJassValue(whichLocation.y);
+						final Point2D.Double whichLocation = arguments.<Point2D.Double>getObject(0);
+						arguments.pushReal(whichLocation.y);
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetLocationZ",
 					(arguments, globalScope, triggerScope) -> {
@@ -1737,12 +1701,11 @@ public class Jass2 {
 						return new RealJassValue(war3MapViewer.terrain.getGroundHeight((float) whichLocation.x,
 								(float) whichLocation.y));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitInRegion",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitInRegion",
 					(arguments, globalScope, triggerScope) -> {
-						final CRegion whichRegion = arguments.get(0)
-								.visit(ObjectJassValueVisitor.<CRegion>getInstance());
-						final CUnit whichUnit = arguments.get(1).visit(ObjectJassValueVisitor.<CUnit>getInstance());
-						return BooleanJassValue.of(whichUnit.isInRegion(whichRegion));
+						final CRegion whichRegion = arguments.<CRegion>getObject(0);
+						final CUnit whichUnit = arguments.<CUnit>getObject(1);
+						arguments.pushBoolean(whichUnit.isInRegion(whichRegion));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("IsPointInRegion",
 					(arguments, globalScope, triggerScope) -> {
@@ -1778,35 +1741,35 @@ public class Jass2 {
 			//
 			setupTriggerAPI(jassProgramVisitor, triggerType, triggeractionType, triggerconditionType, boolexprType,
 					conditionfuncType, filterfuncType, eventidType);
-			jassProgramVisitor.getJassNativeManager().createNative("GetFilterUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetFilterUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getFilterUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getFilterUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetEnumUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetEnumUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getEnumUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getEnumUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetFilterDestructable",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetFilterDestructable",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(destructableType,
-								((CommonTriggerExecutionScope) triggerScope).getFilterDestructable());
+						arguments.push(new HandleJassValue(destructableType,
+								((CommonTriggerExecutionScope) triggerScope).getFilterDestructable()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetEnumDestructable",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetEnumDestructable",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(destructableType,
-								((CommonTriggerExecutionScope) triggerScope).getEnumDestructable());
+						arguments.push(new HandleJassValue(destructableType,
+								((CommonTriggerExecutionScope) triggerScope).getEnumDestructable()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetFilterItem",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetFilterItem",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(itemType,
-								((CommonTriggerExecutionScope) triggerScope).getFilterItem());
+						arguments.push(new HandleJassValue(itemType,
+								((CommonTriggerExecutionScope) triggerScope).getFilterItem()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetEnumItem",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetEnumItem",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(itemType,
-								((CommonTriggerExecutionScope) triggerScope).getEnumItem());
+						arguments.push(new HandleJassValue(itemType,
+								((CommonTriggerExecutionScope) triggerScope).getEnumItem()));
 					});
 
 			// ============================================================================
@@ -1963,10 +1926,10 @@ public class Jass2 {
 						return new HandleJassValue(unitType,
 								((CommonTriggerExecutionScope) triggerScope).getEnteringUnit());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetEnteringUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetEnteringUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getEnteringUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getEnteringUnit()));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("TriggerRegisterLeaveRegion",
 					(arguments, globalScope, triggerScope) -> {
@@ -1977,10 +1940,10 @@ public class Jass2 {
 						return new HandleJassValue(eventType,
 								region.add(new CRegionTriggerLeave(globalScope, trigger, boolexpr)));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetLeavingUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetLeavingUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getLeavingUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getLeavingUnit()));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("TriggerRegisterTrackableHitEvent",
 					(arguments, globalScope, triggerScope) -> {
@@ -2412,11 +2375,11 @@ public class Jass2 {
 						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
 						return new IntegerJassValue(whichUnit.getGold());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("SetUnitState",
+			jassProgramVisitor.getJassNativeManager().createStackNative("SetUnitState",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						final CUnitState whichUnitState = arguments.get(1).visit(ObjectJassValueVisitor.getInstance());
-						final float value = arguments.get(2).visit(RealJassValueVisitor.getInstance()).floatValue();
+						final CUnit whichUnit = arguments.getObject(0);
+						final CUnitState whichUnitState = arguments.getObject(1);
+						final float value = (float) arguments.getReal(2);
 						if (whichUnit != null) {
 							whichUnit.setUnitState(CommonEnvironment.this.simulation, whichUnitState, value);
 						}
@@ -2424,16 +2387,16 @@ public class Jass2 {
 							System.err.println("got SetUnitState(null," + whichUnitState + "," + value
 									+ ")  call (skipping because unit is null)");
 						}
-						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitState",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitState",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final CUnitState whichUnitState = arguments.get(1).visit(ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final CUnitState whichUnitState = arguments.getObject(1);
 						if (whichUnit == null) {
-							return RealJassValue.ZERO;
+							arguments.pushReal(0);
+							return;
 						}
-						return new RealJassValue(
+						arguments.pushReal(
 								whichUnit.getUnitState(CommonEnvironment.this.simulation, whichUnitState));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("AddHeroXP",
@@ -2521,12 +2484,11 @@ public class Jass2 {
 						}
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitType",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitType",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final CUnitTypeJass whichUnitType = arguments.get(1)
-								.visit(ObjectJassValueVisitor.getInstance());
-						return BooleanJassValue.of(whichUnit.isUnitType(whichUnitType));
+						final CUnit whichUnit = arguments.getObject(0);
+						final CUnitTypeJass whichUnitType = arguments.getObject(1);
+						arguments.pushBoolean(whichUnit.isUnitType(whichUnitType));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("SetPlayerState",
 					(arguments, globalScope, triggerScope) -> {
@@ -2537,18 +2499,17 @@ public class Jass2 {
 						player.setPlayerState(CommonEnvironment.this.simulation, whichPlayerState, value);
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetPlayerState",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetPlayerState",
 					(arguments, globalScope, triggerScope) -> {
-						final CPlayer player = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final CPlayerState whichPlayerState = arguments.get(1)
-								.visit(ObjectJassValueVisitor.getInstance());
-						return new IntegerJassValue(
+						final CPlayer player = arguments.getObject(0);
+						final CPlayerState whichPlayerState = arguments.getObject(1);
+						arguments.pushInteger(
 								player.getPlayerState(CommonEnvironment.this.simulation, whichPlayerState));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitFoodUsed",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitFoodUsed",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						return new IntegerJassValue(whichUnit != null ? whichUnit.getFoodUsed() : 0);
+						final CUnit whichUnit = arguments.getObject(0);
+						arguments.pushInteger(whichUnit != null ? whichUnit.getFoodUsed() : 0);
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetUnitFoodMade",
 					(arguments, globalScope, triggerScope) -> {
@@ -2569,15 +2530,15 @@ public class Jass2 {
 						final CUnitType t = CommonEnvironment.this.simulation.getUnitData().getUnitType(war3id);
 						return new IntegerJassValue(t != null ? t.getFoodUsed() : 0);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitFacing",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitFacing",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichUnit != null ? whichUnit.getFacing() : 0.0);
+						final CUnit whichUnit = arguments.getObject(0);
+						arguments.pushReal(whichUnit != null ? whichUnit.getFacing() : 0.0);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitMoveSpeed",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitMoveSpeed",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichUnit != null ? whichUnit.getSpeed() : 0.0);
+						final CUnit whichUnit = arguments.getObject(0);
+						arguments.pushReal(whichUnit != null ? whichUnit.getSpeed() : 0.0);
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("IsUnitRace",
 					(arguments, globalScope, triggerScope) -> {
@@ -2592,42 +2553,35 @@ public class Jass2 {
 
 						return JassType.BOOLEAN.getNullValue();
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnit", (arguments, globalScope, triggerScope) -> {
-				final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-				final CUnit whichSpecifiedUnit = nullable(arguments, 1, ObjectJassValueVisitor.getInstance());
-
-				if ((whichUnit != null) && (whichSpecifiedUnit != null)) {
-					return new BooleanJassValue(whichUnit.getHandleId() == whichSpecifiedUnit.getHandleId());
-				}
-
-				return JassType.BOOLEAN.getNullValue();
-			});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitInRange",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnit",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						final CUnit otherUnit = nullable(arguments, 1, ObjectJassValueVisitor.getInstance());
-						final Double distance = arguments.get(2).visit(RealJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final CUnit whichSpecifiedUnit = arguments.getObject(1);
 
-						if ((whichUnit != null) && (otherUnit != null) && (distance != null)
-								&& (whichUnit.distance(otherUnit.getX(), otherUnit.getY()) <= distance)) {
-							return new BooleanJassValue(true);
+						if ((whichUnit != null) && (whichSpecifiedUnit != null)) {
+							arguments.pushBoolean(whichUnit.getHandleId() == whichSpecifiedUnit.getHandleId());
+							return;
 						}
 
-						return JassType.BOOLEAN.getNullValue();
+						arguments.pushBoolean(false);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitInRangeXY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitInRange",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						final Double x = arguments.get(1).visit(ObjectJassValueVisitor.getInstance());
-						final Double y = arguments.get(2).visit(ObjectJassValueVisitor.getInstance());
-						final Double distance = arguments.get(3).visit(RealJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final CUnit otherUnit = arguments.getObject(1);
+						final double distance = arguments.getReal(2);
 
-						if ((whichUnit != null) && (x != null) && (y != null) && (distance != null)
-								&& (whichUnit.distance(x, y) <= distance)) {
-							return new BooleanJassValue(true);
-						}
+						arguments.pushBoolean((whichUnit != null) && (otherUnit != null)
+								&& (whichUnit.distance(otherUnit.getX(), otherUnit.getY()) <= distance));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitInRangeXY",
+					(arguments, globalScope, triggerScope) -> {
+						final CUnit whichUnit = arguments.getObject(0);
+						final double x = arguments.getReal(1);
+						final double y = arguments.getReal(2);
+						final double distance = arguments.getReal(3);
 
-						return JassType.BOOLEAN.getNullValue();
+						arguments.pushBoolean((whichUnit != null) && (whichUnit.distance(x, y) <= distance));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("IsUnitInRangeLoc",
 					(arguments, globalScope, triggerScope) -> {
@@ -2645,26 +2599,26 @@ public class Jass2 {
 					});
 
 			// Bit Operations
-			jassProgramVisitor.getJassNativeManager().createNative("BlzBitOr",
+			jassProgramVisitor.getJassNativeManager().createStackNative("BlzBitOr",
 					(arguments, globalScope, triggerScope) -> {
-						final Integer x = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-						final Integer y = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
+						final int x = arguments.getInteger(0);
+						final int y = arguments.getInteger(1);
 
-						return new IntegerJassValue(x | y);
+						arguments.pushInteger(x | y);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("BlzBitAnd",
+			jassProgramVisitor.getJassNativeManager().createStackNative("BlzBitAnd",
 					(arguments, globalScope, triggerScope) -> {
-						final Integer x = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-						final Integer y = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
+						final int x = arguments.getInteger(0);
+						final int y = arguments.getInteger(1);
 
-						return new IntegerJassValue(x & y);
+						arguments.pushInteger(x & y);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("BlzBitXor",
+			jassProgramVisitor.getJassNativeManager().createStackNative("BlzBitXor",
 					(arguments, globalScope, triggerScope) -> {
-						final Integer x = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-						final Integer y = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
+						final int x = arguments.getInteger(0);
+						final int y = arguments.getInteger(1);
 
-						return new IntegerJassValue(x ^ y);
+						arguments.pushInteger(x ^ y);
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetPlayerTechResearched",
 					(arguments, globalScope, triggerScope) -> {
@@ -2938,40 +2892,40 @@ public class Jass2 {
 						// assigns to the return value of this and fires itself upon changing owner!!??
 						return playerType.getNullValue();
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetWidgetX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetWidgetX",
 					(arguments, globalScope, triggerScope) -> {
-						final CWidget whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget.getX());
+						final CWidget whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget.getX());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetWidgetY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetWidgetY",
 					(arguments, globalScope, triggerScope) -> {
-						final CWidget whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget.getY());
+						final CWidget whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget.getY());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetDestructableX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetDestructableX",
 					(arguments, globalScope, triggerScope) -> {
-						final CWidget whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget.getX());
+						final CWidget whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget.getX());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetDestructableY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetDestructableY",
 					(arguments, globalScope, triggerScope) -> {
-						final CWidget whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget.getY());
+						final CWidget whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget.getY());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitX",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichWidget = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget == null ? 0 : whichWidget.getX());
+						final CUnit whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget == null ? 0 : whichWidget.getX());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitY",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichWidget = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget == null ? 0 : whichWidget.getY());
+						final CUnit whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget == null ? 0 : whichWidget.getY());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitPointValue",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitPointValue",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new IntegerJassValue(whichWidget.getUnitType().getPointValue());
+						final CUnit whichWidget = arguments.getObject(0);
+						arguments.pushInteger(whichWidget.getUnitType().getPointValue());
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetUnitPointValueByType",
 					(arguments, globalScope, triggerScope) -> {
@@ -2979,15 +2933,15 @@ public class Jass2 {
 						return new IntegerJassValue(CommonEnvironment.this.simulation.getUnitData()
 								.getUnitType(new War3ID(rawcode)).getPointValue());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetItemX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetItemX",
 					(arguments, globalScope, triggerScope) -> {
-						final CItem whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget.getX());
+						final CItem whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget.getX());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetItemY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetItemY",
 					(arguments, globalScope, triggerScope) -> {
-						final CItem whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						return new RealJassValue(whichWidget.getY());
+						final CItem whichWidget = arguments.getObject(0);
+						arguments.pushReal(whichWidget.getY());
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetItemLoc",
 					(arguments, globalScope, triggerScope) -> {
@@ -2995,26 +2949,28 @@ public class Jass2 {
 						return new HandleJassValue(locationType,
 								new Point2D.Double(whichWidget.getX(), whichWidget.getY()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitLoc",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitLoc",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichWidget = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
+						final CUnit whichWidget = arguments.getObject(0);
 						if (whichWidget == null) {
-							return new HandleJassValue(locationType, new Point2D.Double(0, 0));
+							arguments.push(new HandleJassValue(locationType, new Point2D.Double(0, 0)));
+							return;
 						}
-						return new HandleJassValue(locationType,
-								new Point2D.Double(whichWidget.getX(), whichWidget.getY()));
+						arguments.push(new HandleJassValue(locationType,
+								new Point2D.Double(whichWidget.getX(), whichWidget.getY())));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitAbilityLevel",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitAbilityLevel",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichWidget = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final int rawcode = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
+						final CUnit whichWidget = arguments.getObject(0);
+						final int rawcode = arguments.getInteger(1);
 						if (whichWidget == null) {
-							return IntegerJassValue.ZERO;
+							arguments.pushInteger(0);
+							return;
 						}
 						final CAbility ability = whichWidget
 								.getAbility(GetAbilityByRawcodeVisitor.getInstance().reset(new War3ID(rawcode)));
 						// TODO below code is very stupid!!
-						return new IntegerJassValue(ability == null ? 0 : 1);
+						arguments.pushInteger(ability == null ? 0 : 1);
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("IncUnitAbilityLevel",
 					(arguments, globalScope, triggerScope) -> {
@@ -3040,13 +2996,14 @@ public class Jass2 {
 						final CPlayer whichPlayer = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
 						return new RealJassValue(whichPlayer.getHandicap());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetHandleId",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetHandleId",
 					(arguments, globalScope, triggerScope) -> {
-						final CHandle whichHandle = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
+						final CHandle whichHandle = arguments.getObject(0);
 						if (whichHandle == null) {
-							return IntegerJassValue.ZERO;
+							arguments.pushInteger(0);
+							return;
 						}
-						return new IntegerJassValue(whichHandle.getHandleId());
+						arguments.pushInteger(whichHandle.getHandleId());
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("TriggerSleepAction",
 					(arguments, globalScope, triggerScope) -> {
@@ -3065,6 +3022,7 @@ public class Jass2 {
 						}
 						return null;
 					});
+			jassProgramVisitor.getGlobals().registerYieldingNative("TriggerSleepAction");
 			jassProgramVisitor.getJassNativeManager().createNative("AddSpecialEffectTarget",
 					(arguments, globalScope, triggerScope) -> {
 						final String modelName = arguments.get(0).visit(StringJassValueVisitor.getInstance());
@@ -3170,12 +3128,11 @@ public class Jass2 {
 						}
 						return BooleanJassValue.FALSE;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("SetUnitFacing",
+			jassProgramVisitor.getJassNativeManager().createStackNative("SetUnitFacing",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final double facing = arguments.get(1).visit(RealJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final double facing = arguments.getReal(1);
 						whichUnit.setFacing((float) facing);
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("BlzSetUnitFacingEx",
 					(arguments, globalScope, triggerScope) -> {
@@ -3447,16 +3404,15 @@ public class Jass2 {
 						}
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("SetUnitPosition",
+			jassProgramVisitor.getJassNativeManager().createStackNative("SetUnitPosition",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-						final double positionX = arguments.get(1).visit(RealJassValueVisitor.getInstance());
-						final double positionY = arguments.get(2).visit(RealJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final double positionX = arguments.getReal(1);
+						final double positionY = arguments.getReal(2);
 						if (whichUnit != null) {
 							whichUnit.setPointAndCheckUnstuck((float) positionX, (float) positionY,
 									CommonEnvironment.this.simulation);
 						}
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("ShowUnit",
 					(arguments, globalScope, triggerScope) -> {
@@ -3465,13 +3421,12 @@ public class Jass2 {
 						whichUnit.setHidden(!show);
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("KillUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("KillUnit",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
 						if (whichUnit != null) {
 							whichUnit.kill(CommonEnvironment.this.simulation);
 						}
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("RemoveUnit",
 					(arguments, globalScope, triggerScope) -> {
@@ -3503,10 +3458,10 @@ public class Jass2 {
 						}
 						return null;
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetTriggerWidget",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetTriggerWidget",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(widgetType,
-								((CommonTriggerExecutionScope) triggerScope).getTriggerWidget());
+						arguments.push(new HandleJassValue(widgetType,
+								((CommonTriggerExecutionScope) triggerScope).getTriggerWidget()));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetPlayerRace",
 					(arguments, globalScope, triggerScope) -> {
@@ -3516,22 +3471,22 @@ public class Jass2 {
 						}
 						return new HandleJassValue(raceType, whichPlayer.getRace());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitUserData",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitUserData",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
 						if (whichUnit == null) {
-							return IntegerJassValue.ZERO;
+							arguments.pushInteger(0);
+							return;
 						}
-						return new IntegerJassValue(whichUnit.getTriggerEditorCustomValue());
+						arguments.pushInteger(whichUnit.getTriggerEditorCustomValue());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("SetUnitUserData",
+			jassProgramVisitor.getJassNativeManager().createStackNative("SetUnitUserData",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final int data = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final int data = arguments.getInteger(1);
 						if (whichUnit != null) {
 							whichUnit.setTriggerEditorCustomValue(data);
 						}
-						return null;
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetDestructableLife",
 					(arguments, globalScope, triggerScope) -> {
@@ -3609,13 +3564,14 @@ public class Jass2 {
 								.visit(ObjectJassValueVisitor.<List<CPlayerJass>>getInstance());
 						return BooleanJassValue.of(force.contains(whichPlayer));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetUnitTypeId",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetUnitTypeId",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
 						if (whichUnit == null) {
-							return new IntegerJassValue(0);
+							arguments.pushInteger(0);
+							return;
 						}
-						return new IntegerJassValue(whichUnit.getTypeId().getValue());
+						arguments.pushInteger(whichUnit.getTypeId().getValue());
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetItemTypeId",
 					(arguments, globalScope, triggerScope) -> {
@@ -3641,39 +3597,40 @@ public class Jass2 {
 						}
 						return new IntegerJassValue(whichItem.getItemType().getLevel());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetOwningPlayer",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetOwningPlayer",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
 						if (whichUnit == null) {
-							return playerType.getNullValue();
+							arguments.push(playerType.getNullValue());
+							return;
 						}
-						return new HandleJassValue(playerType,
-								CommonEnvironment.this.simulation.getPlayer(whichUnit.getPlayerIndex()));
+						arguments.push(new HandleJassValue(playerType,
+								CommonEnvironment.this.simulation.getPlayer(whichUnit.getPlayerIndex())));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetFilterPlayer",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetFilterPlayer",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(playerType,
-								((CommonTriggerExecutionScope) triggerScope).getFilterPlayer());
+						arguments.push(new HandleJassValue(playerType,
+								((CommonTriggerExecutionScope) triggerScope).getFilterPlayer()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetDyingUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetDyingUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getDyingUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getDyingUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetAttacker",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetAttacker",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getAttacker());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getAttacker()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetKillingUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetKillingUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getKillingUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getKillingUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetTriggerUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetTriggerUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getTriggeringUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getTriggeringUnit()));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetTriggerDestructable",
 					(arguments, globalScope, triggerScope) -> {
@@ -3685,32 +3642,32 @@ public class Jass2 {
 							return new HandleJassValue(destructableType, null);
 						}
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetOrderedUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetOrderedUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getOrderedUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getOrderedUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetManipulatedItem",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetManipulatedItem",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(itemType,
-								((CommonTriggerExecutionScope) triggerScope).getManipulatedItem());
+						arguments.push(new HandleJassValue(itemType,
+								((CommonTriggerExecutionScope) triggerScope).getManipulatedItem()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetManipulatingUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetManipulatingUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getManipulatingUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getManipulatingUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetIssuedOrderId",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetIssuedOrderId",
 					(arguments, globalScope, triggerScope) -> {
-						return new IntegerJassValue(((CommonTriggerExecutionScope) triggerScope).getIssuedOrderId());
+						arguments.pushInteger(((CommonTriggerExecutionScope) triggerScope).getIssuedOrderId());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetOrderPointX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetOrderPointX",
 					(arguments, globalScope, triggerScope) -> {
-						return new RealJassValue(((CommonTriggerExecutionScope) triggerScope).getOrderPointX());
+						arguments.pushReal(((CommonTriggerExecutionScope) triggerScope).getOrderPointX());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetOrderPointY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetOrderPointY",
 					(arguments, globalScope, triggerScope) -> {
-						return new RealJassValue(((CommonTriggerExecutionScope) triggerScope).getOrderPointY());
+						arguments.pushReal(((CommonTriggerExecutionScope) triggerScope).getOrderPointY());
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetOrderPointLoc",
 					(arguments, globalScope, triggerScope) -> {
@@ -3735,23 +3692,24 @@ public class Jass2 {
 						return new HandleJassValue(itemType,
 								((CommonTriggerExecutionScope) triggerScope).getOrderTargetItem());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetOrderTargetUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetOrderTargetUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getOrderTargetUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getOrderTargetUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetSpellAbilityUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetSpellAbilityUnit",
 					(arguments, globalScope, triggerScope) -> {
 						if (!(triggerScope instanceof CommonTriggerExecutionScope)) {
-							return unitType.getNullValue();
+							arguments.push(unitType.getNullValue());
+							return;
 						}
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getSpellAbilityUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getSpellAbilityUnit()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetSpellTargetUnit",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetSpellTargetUnit",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(unitType,
-								((CommonTriggerExecutionScope) triggerScope).getSpellTargetUnit());
+						arguments.push(new HandleJassValue(unitType,
+								((CommonTriggerExecutionScope) triggerScope).getSpellTargetUnit()));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetSpellTargetPoint",
 					(arguments, globalScope, triggerScope) -> {
@@ -3760,17 +3718,17 @@ public class Jass2 {
 						final Point2D.Double jassLocation = new Point2D.Double(spellTargetPoint.x, spellTargetPoint.y);
 						return new HandleJassValue(locationType, jassLocation);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetSpellTargetX",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetSpellTargetX",
 					(arguments, globalScope, triggerScope) -> {
 						final AbilityPointTarget spellTargetPoint = ((CommonTriggerExecutionScope) triggerScope)
 								.getSpellTargetPoint();
-						return new RealJassValue(spellTargetPoint.x);
+						arguments.pushReal(spellTargetPoint.x);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetSpellTargetY",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetSpellTargetY",
 					(arguments, globalScope, triggerScope) -> {
 						final AbilityPointTarget spellTargetPoint = ((CommonTriggerExecutionScope) triggerScope)
 								.getSpellTargetPoint();
-						return new RealJassValue(spellTargetPoint.y);
+						arguments.pushReal(spellTargetPoint.y);
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetSpellTargetLoc",
 					(arguments, globalScope, triggerScope) -> {
@@ -3779,15 +3737,15 @@ public class Jass2 {
 						return new HandleJassValue(locationType,
 								new Point2D.Double(spellTargetPoint.x, spellTargetPoint.y));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetSpellAbilityId",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetSpellAbilityId",
 					(arguments, globalScope, triggerScope) -> {
 						final War3ID spellAbilityId = ((CommonTriggerExecutionScope) triggerScope).getSpellAbilityId();
-						return new IntegerJassValue(spellAbilityId == null ? 0 : spellAbilityId.getValue());
+						arguments.pushInteger(spellAbilityId == null ? 0 : spellAbilityId.getValue());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("GetEnumPlayer",
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetEnumPlayer",
 					(arguments, globalScope, triggerScope) -> {
-						return new HandleJassValue(playerType,
-								((CommonTriggerExecutionScope) triggerScope).getEnumPlayer());
+						arguments.push(new HandleJassValue(playerType,
+								((CommonTriggerExecutionScope) triggerScope).getEnumPlayer()));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetConstructedStructure",
 					(arguments, globalScope, triggerScope) -> {
@@ -3936,12 +3894,11 @@ public class Jass2 {
 						return new HandleJassValue(playerType,
 								CommonEnvironment.this.simulation.getPlayer(war3MapViewer.getLocalPlayerIndex()));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitInGroup",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitInGroup",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = nullable(arguments, 0, ObjectJassValueVisitor.<CUnit>getInstance());
-						final List<CUnit> group = nullable(arguments, 1,
-								ObjectJassValueVisitor.<List<CUnit>>getInstance());
-						return BooleanJassValue.of((whichUnit != null) && (group != null) && group.contains(whichUnit));
+						final CUnit whichUnit = arguments.<CUnit>getObject(0);
+						final List<CUnit> group = arguments.<List<CUnit>>getObject(1);
+						arguments.pushBoolean((whichUnit != null) && (group != null) && group.contains(whichUnit));
 					});
 
 			// Patch 1.23+ crap
@@ -3958,93 +3915,201 @@ public class Jass2 {
 					(arguments, globalScope, triggerScope) -> {
 						return new HandleJassValue(hashtableType, new CHashtable());
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("SaveInteger", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveReal", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveBoolean", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveStr", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SavePlayerHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveWidgetHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveDestructableHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveItemHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveUnitHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveAbilityHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTimerHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTriggerHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTriggerConditionHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTriggerActionHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTriggerEventHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveForceHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveGroupHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveLocationHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveRectHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveBooleanExprHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveSoundHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveEffectHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveUnitPoolHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveItemPoolHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveQuestHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveQuestItemHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveDefeatConditionHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTimerDialogHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveLeaderboardHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveMultiboardHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveMultiboardItemHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTrackableHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveDialogHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveButtonHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveTextTagHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveLightningHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveImageHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveUbersplatHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveRegionHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveFogStateHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveFogModifierHandle",
-					new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveAgentHandle", new SaveHashtableValueFunc());
-			jassProgramVisitor.getJassNativeManager().createNative("SaveHashtableHandle", new SaveHashtableValueFunc());
+			jassProgramVisitor.getJassNativeManager().createStackNative("SaveInteger",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.saveInteger(arguments.getInteger(1), arguments.getInteger(2),
+									arguments.getInteger(3));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("SaveReal",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.saveReal(arguments.getInteger(1), arguments.getInteger(2), arguments.getReal(3));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("SaveBoolean",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.saveBoolean(arguments.getInteger(1), arguments.getInteger(2),
+									arguments.getBoolean(3));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("SaveStr",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table == null) {
+							arguments.pushBoolean(false);
+							return;
+						}
+						final JassValue value = arguments.get(3);
+						if (value == null) {
+							table.removeSavedString(arguments.getInteger(1), arguments.getInteger(2));
+						}
+						else {
+							table.saveString(arguments.getInteger(1), arguments.getInteger(2), value);
+						}
+						arguments.pushBoolean(true);
+					});
+			createHashtableHandleNatives(jassProgramVisitor, "Player", playerType);
+			createHashtableHandleNatives(jassProgramVisitor, "Widget", widgetType, CWidget.class);
+			createHashtableHandleNatives(jassProgramVisitor, "Destructable", destructableType,
+					CDestructable.class);
+			createHashtableHandleNatives(jassProgramVisitor, "Item", itemType, CItem.class);
+			createHashtableHandleNatives(jassProgramVisitor, "Unit", unitType, CUnit.class);
+			createHashtableHandleNatives(jassProgramVisitor, "Ability", abilityType);
+			createHashtableHandleNatives(jassProgramVisitor, "Timer", timerType);
+			createHashtableHandleNatives(jassProgramVisitor, "Trigger", triggerType);
+			createHashtableHandleNatives(jassProgramVisitor, "TriggerCondition", triggerconditionType);
+			createHashtableHandleNatives(jassProgramVisitor, "TriggerAction", triggeractionType);
+			createHashtableHandleNatives(jassProgramVisitor, "TriggerEvent", eventType);
+			createHashtableHandleNatives(jassProgramVisitor, "Force", forceType);
+			createHashtableHandleNatives(jassProgramVisitor, "Group", groupType);
+			createHashtableHandleNatives(jassProgramVisitor, "Location", locationType);
+			createHashtableHandleNatives(jassProgramVisitor, "Rect", rectType);
+			createHashtableHandleNatives(jassProgramVisitor, "BooleanExpr", boolexprType);
+			createHashtableHandleNatives(jassProgramVisitor, "Sound", soundType);
+			createHashtableHandleNatives(jassProgramVisitor, "Effect", effectType);
+			createHashtableHandleNatives(jassProgramVisitor, "UnitPool", unitpoolType);
+			createHashtableHandleNatives(jassProgramVisitor, "ItemPool", itempoolType);
+			createHashtableHandleNatives(jassProgramVisitor, "Quest", questType);
+			createHashtableHandleNatives(jassProgramVisitor, "QuestItem", questitemType);
+			createHashtableHandleNatives(jassProgramVisitor, "DefeatCondition", defeatconditionType);
+			createHashtableHandleNatives(jassProgramVisitor, "TimerDialog", timerdialogType);
+			createHashtableHandleNatives(jassProgramVisitor, "Leaderboard", leaderboardType);
+			createHashtableHandleNatives(jassProgramVisitor, "Multiboard", multiboardType);
+			createHashtableHandleNatives(jassProgramVisitor, "MultiboardItem", multiboarditemType);
+			createHashtableHandleNatives(jassProgramVisitor, "Trackable", trackableType);
+			createHashtableHandleNatives(jassProgramVisitor, "Dialog", dialogType);
+			createHashtableHandleNatives(jassProgramVisitor, "Button", buttonType);
+			createHashtableHandleNatives(jassProgramVisitor, "TextTag", texttagType);
+			createHashtableHandleNatives(jassProgramVisitor, "Lightning", lightningType);
+			createHashtableHandleNatives(jassProgramVisitor, "Image", imageType);
+			createHashtableHandleNatives(jassProgramVisitor, "Ubersplat", ubersplatType);
+			createHashtableHandleNatives(jassProgramVisitor, "Region", regionType);
+			createHashtableHandleNatives(jassProgramVisitor, "FogState", fogstateType);
+			createHashtableHandleNatives(jassProgramVisitor, "FogModifier", fogmodifierType);
+			createHashtableHandleNatives(jassProgramVisitor, "Agent", agentType);
+			createHashtableHandleNatives(jassProgramVisitor, "Hashtable", hashtableType);
 
-			jassProgramVisitor.getJassNativeManager().createNative("LoadInteger",
-					new LoadHashtableValueFunc(IntegerJassValue.ZERO));
-			jassProgramVisitor.getJassNativeManager().createNative("LoadReal",
-					new LoadHashtableValueFunc(RealJassValue.ZERO));
-			jassProgramVisitor.getJassNativeManager().createNative("LoadBoolean",
-					new LoadHashtableValueFunc(BooleanJassValue.FALSE));
-			jassProgramVisitor.getJassNativeManager().createNative("LoadStr",
-					new LoadHashtableValueFunc(StringJassValue.EMPTY_STRING));
-			jassProgramVisitor.getJassNativeManager().createNative("LoadTriggerHandle",
-					new LoadHashtableValueFunc(new HandleJassValue(triggerType, null)));
-			jassProgramVisitor.getJassNativeManager().createNative("LoadSoundHandle",
-					new LoadHashtableValueFunc(new HandleJassValue(soundType, null)));
+			jassProgramVisitor.getJassNativeManager().createStackNative("LoadInteger",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushInteger(
+								table == null ? 0 : table.loadInteger(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("LoadReal",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushReal(
+								table == null ? 0 : table.loadReal(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("LoadBoolean",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushBoolean((table != null)
+								&& table.loadBoolean(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("LoadStr",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						final Object value = table == null ? null
+								: table.loadString(arguments.getInteger(1), arguments.getInteger(2));
+						arguments.push(value == null ? StringJassValue.EMPTY_STRING : (JassValue) value);
+					});
 
-			jassProgramVisitor.getJassNativeManager().createNative("HaveSavedInteger",
-					new HaveSavedHashtableValueFunc(JassType.INTEGER));
-			jassProgramVisitor.getJassNativeManager().createNative("HaveSavedReal",
-					new HaveSavedHashtableValueFunc(JassType.REAL));
-			jassProgramVisitor.getJassNativeManager().createNative("HaveSavedBoolean",
-					new HaveSavedHashtableValueFunc(JassType.BOOLEAN));
-			jassProgramVisitor.getJassNativeManager().createNative("HaveSavedString",
-					new HaveSavedHashtableValueFunc(JassType.STRING));
-			jassProgramVisitor.getJassNativeManager().createNative("HaveSavedHandle",
-					new HaveSavedHashtableValueFunc(agentType));
+			jassProgramVisitor.getJassNativeManager().createStackNative("HaveSavedInteger",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushBoolean((table != null)
+								&& table.haveSavedInteger(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("HaveSavedReal",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushBoolean((table != null)
+								&& table.haveSavedReal(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("HaveSavedBoolean",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushBoolean((table != null)
+								&& table.haveSavedBoolean(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("HaveSavedString",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushBoolean((table != null)
+								&& table.haveSavedString(arguments.getInteger(1), arguments.getInteger(2)));
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("HaveSavedHandle",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						arguments.pushBoolean((table != null)
+								&& table.haveSavedHandle(arguments.getInteger(1), arguments.getInteger(2)));
+					});
 
-			jassProgramVisitor.getJassNativeManager().createNative("GetExpiredTimer",
+			jassProgramVisitor.getJassNativeManager().createStackNative("RemoveSavedInteger",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.removeSavedInteger(arguments.getInteger(1), arguments.getInteger(2));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("RemoveSavedReal",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.removeSavedReal(arguments.getInteger(1), arguments.getInteger(2));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("RemoveSavedBoolean",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.removeSavedBoolean(arguments.getInteger(1), arguments.getInteger(2));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("RemoveSavedString",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.removeSavedString(arguments.getInteger(1), arguments.getInteger(2));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("RemoveSavedHandle",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.removeSavedHandle(arguments.getInteger(1), arguments.getInteger(2));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("FlushChildHashtable",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.flushChild(arguments.getInteger(1));
+						}
+					});
+			jassProgramVisitor.getJassNativeManager().createStackNative("FlushParentHashtable",
+					(arguments, globalScope, triggerScope) -> {
+						final CHashtable table = arguments.<CHashtable>getObject(0);
+						if (table != null) {
+							table.flush();
+						}
+					});
+
+			jassProgramVisitor.getJassNativeManager().createStackNative("GetExpiredTimer",
 					(arguments, globalScope, triggerScope) -> {
 						if (triggerScope instanceof CommonTriggerExecutionScope) {
-							return new HandleJassValue(timerType,
-									((CommonTriggerExecutionScope) triggerScope).getExpiringTimer());
+							arguments.push(new HandleJassValue(timerType,
+									((CommonTriggerExecutionScope) triggerScope).getExpiringTimer()));
 						}
 						else {
-							return new HandleJassValue(timerType, null);
+							arguments.push(new HandleJassValue(timerType, null));
 						}
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("GetPlayerStructureCount",
@@ -4086,23 +4151,25 @@ public class Jass2 {
 						}
 						return new IntegerJassValue(count);
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitEnemy",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitEnemy",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final CPlayer whichPlayer = arguments.get(1).visit(ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final CPlayer whichPlayer = arguments.getObject(1);
 						if ((whichUnit == null) || (whichPlayer == null)) {
-							return BooleanJassValue.FALSE;
+							arguments.pushBoolean(false);
+							return;
 						}
-						return BooleanJassValue.of(!whichUnit.isUnitAlly(whichPlayer));
+						arguments.pushBoolean(!whichUnit.isUnitAlly(whichPlayer));
 					});
-			jassProgramVisitor.getJassNativeManager().createNative("IsUnitAlly",
+			jassProgramVisitor.getJassNativeManager().createStackNative("IsUnitAlly",
 					(arguments, globalScope, triggerScope) -> {
-						final CUnit whichUnit = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-						final CPlayer whichPlayer = arguments.get(1).visit(ObjectJassValueVisitor.getInstance());
+						final CUnit whichUnit = arguments.getObject(0);
+						final CPlayer whichPlayer = arguments.getObject(1);
 						if ((whichUnit == null) || (whichPlayer == null)) {
-							return BooleanJassValue.FALSE;
+							arguments.pushBoolean(false);
+							return;
 						}
-						return BooleanJassValue.of(whichUnit.isUnitAlly(whichPlayer));
+						arguments.pushBoolean(whichUnit.isUnitAlly(whichPlayer));
 					});
 			jassProgramVisitor.getJassNativeManager().createNative("IsNoVictoryCheat",
 					(arguments, globalScope, triggerScope) -> {
@@ -4762,14 +4829,14 @@ public class Jass2 {
 					final Trigger trigger = arguments.get(0).visit(ObjectJassValueVisitor.<Trigger>getInstance());
 					return BooleanJassValue.of(trigger.isWaitOnSleeps());
 				});
-		jassProgramVisitor.getJassNativeManager().createNative("GetTriggeringTrigger",
+		jassProgramVisitor.getJassNativeManager().createStackNative("GetTriggeringTrigger",
 				(arguments, globalScope, triggerScope) -> {
-					return new HandleJassValue(triggerType, triggerScope.getTriggeringTrigger());
+					arguments.push(new HandleJassValue(triggerType, triggerScope.getTriggeringTrigger()));
 				});
-		jassProgramVisitor.getJassNativeManager().createNative("GetTriggerEventId",
+		jassProgramVisitor.getJassNativeManager().createStackNative("GetTriggerEventId",
 				(arguments, globalScope, triggerScope) -> {
-					return new HandleJassValue(eventidType,
-							((CommonTriggerExecutionScope) triggerScope).getTriggerEventId());
+					arguments.push(new HandleJassValue(eventidType,
+							((CommonTriggerExecutionScope) triggerScope).getTriggerEventId()));
 				});
 		jassProgramVisitor.getJassNativeManager().createNative("GetTriggerEvalCount",
 				(arguments, globalScope, triggerScope) -> {
@@ -4784,11 +4851,17 @@ public class Jass2 {
 		jassProgramVisitor.getJassNativeManager().createNative("ExecuteFunc",
 				(arguments, globalScope, triggerScope) -> {
 					final String funcName = arguments.get(0).visit(StringJassValueVisitor.getInstance());
-					final JassFunction functionByName = globalScope.getFunctionByName(funcName);
+					final int userFunctionId = globalScope.findUserFunctionId(funcName);
 					System.out.println("ExecuteFunc (\"" + funcName + "\")");
-					if (functionByName != null) {
+					if (userFunctionId != -1) {
 						// TODO below TriggerExecutionScope.EMPTY is probably not correct
-						functionByName.call(Collections.emptyList(), globalScope, TriggerExecutionScope.EMPTY);
+						final JassThread funcThread = globalScope.createThread(
+								globalScope.getUserFunctionCodeValue(userFunctionId), TriggerExecutionScope.EMPTY);
+						funcThread.preemptible = true;
+						globalScope.runThreadUntilCompletion(funcThread);
+						if (funcThread.instructionPtr != -1) {
+							globalScope.queueThread(funcThread);
+						}
 					}
 					return null;
 				});
@@ -4886,17 +4959,17 @@ public class Jass2 {
 
 	public static void registerRandomNatives(final JassProgramVisitor jassProgramVisitor,
 			final CSimulation simulation) {
-		jassProgramVisitor.getJassNativeManager().createNative("GetRandomReal",
+		jassProgramVisitor.getJassNativeManager().createStackNative("GetRandomReal",
 				(arguments, globalScope, triggerScope) -> {
-					final float lowBound = arguments.get(0).visit(RealJassValueVisitor.getInstance()).floatValue();
-					final float highBound = arguments.get(1).visit(RealJassValueVisitor.getInstance()).floatValue();
-					return new RealJassValue(
+					final float lowBound = (float) arguments.getReal(0);
+					final float highBound = (float) arguments.getReal(1);
+					arguments.pushReal(
 							(simulation.getSeededRandom().nextFloat() * (highBound - lowBound)) + lowBound);
 				});
-		jassProgramVisitor.getJassNativeManager().createNative("GetRandomInt",
+		jassProgramVisitor.getJassNativeManager().createStackNative("GetRandomInt",
 				(arguments, globalScope, triggerScope) -> {
-					int lowBound = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-					int highBound = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
+					int lowBound = arguments.getInteger(0);
+					int highBound = arguments.getInteger(1);
 					if (lowBound > highBound) {
 						if (highBound >= 0) {
 							lowBound = highBound;
@@ -4905,7 +4978,7 @@ public class Jass2 {
 							highBound = lowBound;
 						}
 					}
-					return new IntegerJassValue(
+					arguments.pushInteger(
 							simulation.getSeededRandom().nextInt((highBound - lowBound) + 1) + lowBound);
 				});
 	}
@@ -4991,67 +5064,63 @@ public class Jass2 {
 		jassProgramVisitor.getGlobals().queueThread(preloadThread);
 	}
 
-	private static final class SaveHashtableValueFunc implements JassFunction {
-		@Override
-		public JassValue call(final List<JassValue> arguments, final GlobalScope globalScope,
-				final TriggerExecutionScope triggerScope) {
-			final CHashtable table = nullable(arguments, 0, ObjectJassValueVisitor.getInstance());
-			final Integer parentKey = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
-			final Integer childKey = arguments.get(2).visit(IntegerJassValueVisitor.getInstance());
-			table.save(parentKey, childKey, arguments.get(3));
-			if (table == null) {
-				return BooleanJassValue.FALSE;
-			}
-			return BooleanJassValue.TRUE;
-		}
-	}
-
-	private static final class LoadHashtableValueFunc implements JassFunction {
-		private final JassValue nullValue;
-
-		public LoadHashtableValueFunc(final JassValue nullValue) {
-			this.nullValue = nullValue;
-		}
-
-		@Override
-		public JassValue call(final List<JassValue> arguments, final GlobalScope globalScope,
-				final TriggerExecutionScope triggerScope) {
-			final CHashtable table = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-			final Integer parentKey = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
-			final Integer childKey = arguments.get(2).visit(IntegerJassValueVisitor.getInstance());
-			final Object loadedValue = table.load(parentKey, childKey);
-			if (loadedValue == null) {
-				return this.nullValue;
-			}
-			return (JassValue) loadedValue;
-		}
+	private static void createHashtableHandleNatives(final JassProgramVisitor jassProgramVisitor,
+			final String typeName, final HandleJassType type) {
+		createHashtableHandleNatives(jassProgramVisitor, typeName, type, null);
 	}
 
-	private static final class HaveSavedHashtableValueFunc implements JassFunction {
-		private final JassType jassType;
-
-		public HaveSavedHashtableValueFunc(final JassType jassType) {
-			this.jassType = jassType;
-		}
-
-		@Override
-		public JassValue call(final List<JassValue> arguments, final GlobalScope globalScope,
-				final TriggerExecutionScope triggerScope) {
-			final CHashtable table = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-			final Integer parentKey = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
-			final Integer childKey = arguments.get(2).visit(IntegerJassValueVisitor.getInstance());
-			final Object loadedValue = table.load(parentKey, childKey);
-			if (loadedValue != null) {
-				if (loadedValue instanceof JassValue) {
-					final JassValue loadedJassValue = (JassValue) loadedValue;
-					final JassType type = loadedJassValue.visit(JassTypeGettingValueVisitor.getInstance());
-					if (this.jassType.isAssignableFrom(type)) {
-						return BooleanJassValue.TRUE;
+	/**
+	 * Creates the natives that save and load one type of handle in a hashtable.
+	 * All handles share one lane of the hashtable, so a load only returns what was
+	 * saved if it is of the type that is asked for. Natives like GetTriggerWidget
+	 * hand out units, items and destructables as widgets, so for those types the
+	 * saved object itself is checked against javaClass instead of the type the
+	 * value was saved as, and it is loaded as the type that was asked for.
+	 */
+	private static void createHashtableHandleNatives(final JassProgramVisitor jassProgramVisitor,
+			final String typeName, final HandleJassType type, final Class<?> javaClass) {
+		jassProgramVisitor.getJassNativeManager().createStackNative("Save" + typeName + "Handle",
+				(arguments, globalScope, triggerScope) -> {
+					final CHashtable table = arguments.<CHashtable>getObject(0);
+					if (table == null) {
+						arguments.pushBoolean(false);
+						return;
 					}
-				}
-			}
-			return BooleanJassValue.FALSE;
+					final JassValue value = arguments.get(3);
+					if (value == null) {
+						table.removeSavedHandle(arguments.getInteger(1), arguments.getInteger(2));
+					}
+					else {
+						table.saveHandle(arguments.getInteger(1), arguments.getInteger(2), value);
+					}
+					arguments.pushBoolean(true);
+				});
+		if ("Agent".equals(typeName)) {
+			// there is no LoadAgentHandle
+			return;
 		}
+		jassProgramVisitor.getJassNativeManager().createStackNative("Load" + typeName + "Handle",
+				(arguments, globalScope, triggerScope) -> {
+					final CHashtable table = arguments.<CHashtable>getObject(0);
+					final Object value = table == null ? null
+							: table.loadHandle(arguments.getInteger(1), arguments.getInteger(2));
+					if (!(value instanceof HandleJassValue)) {
+						arguments.push(type.getNullValue());
+						return;
+					}
+					final HandleJassValue handleValue = (HandleJassValue) value;
+					final boolean javaValueMatches = (javaClass == null)
+							|| javaClass.isInstance(handleValue.getJavaValue());
+					if (javaValueMatches && type.isAssignableFrom(handleValue.getType())) {
+						arguments.push(handleValue);
+					}
+					else if (javaValueMatches && (javaClass != null)) {
+						arguments.push(new HandleJassValue(type, handleValue.getJavaValue()));
+					}
+					else {
+						arguments.push(type.getNullValue());
+					}
+				});
 	}
 
 	public static void registerConfigNatives(final JassProgramVisitor jassProgramVisitor, final War3MapConfig mapConfig,
@@ -5406,14 +5475,15 @@ public class Jass2 {
 					return new StringJassValue(player.getName());
 				});
 
-		jassProgramVisitor.getJassNativeManager().createNative("Player", (arguments, globalScope, triggerScope) -> {
-			final int playerIndex = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-			return new HandleJassValue(playerType, playerAPI.getPlayer(playerIndex));
-		});
-		jassProgramVisitor.getJassNativeManager().createNative("GetPlayerId",
+		jassProgramVisitor.getJassNativeManager().createStackNative("Player",
 				(arguments, globalScope, triggerScope) -> {
-					final CPlayerJass whichPlayer = arguments.get(0).visit(ObjectJassValueVisitor.getInstance());
-					return (whichPlayer == null) ? new IntegerJassValue(-1) : new IntegerJassValue(whichPlayer.getId());
+					final int playerIndex = arguments.getInteger(0);
+					arguments.push(new HandleJassValue(playerType, playerAPI.getPlayer(playerIndex)));
+				});
+		jassProgramVisitor.getJassNativeManager().createStackNative("GetPlayerId",
+				(arguments, globalScope, triggerScope) -> {
+					final CPlayerJass whichPlayer = arguments.getObject(0);
+					arguments.pushInteger((whichPlayer == null) ? -1 : whichPlayer.getId());
 				});
 
 		jassProgramVisitor.getJassNativeManager().createNative("GetPlayerNeutralAggressive",
@@ -5711,88 +5781,96 @@ public class Jass2 {
 
 	public static void registerConversionAndStringNatives(final JassProgramVisitor jassProgramVisitor,
 			final GameUI gameUI) {
-		jassProgramVisitor.getJassNativeManager().createNative("Deg2Rad", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new RealJassValue(StrictMath.toRadians(value));
-		});
-		jassProgramVisitor.getJassNativeManager().createNative("Rad2Deg", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new RealJassValue(StrictMath.toDegrees(value));
-		});
-		jassProgramVisitor.getJassNativeManager().createNative("Sin", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new RealJassValue(StrictMath.sin(value));
+		jassProgramVisitor.getJassNativeManager().createStackNative("Deg2Rad",
+				(arguments, globalScope, triggerScope) -> {
+					final double value = arguments.getReal(0);
+					arguments.pushReal(StrictMath.toRadians(value));
+				});
+		jassProgramVisitor.getJassNativeManager().createStackNative("Rad2Deg",
+				(arguments, globalScope, triggerScope) -> {
+					final double value = arguments.getReal(0);
+					arguments.pushReal(StrictMath.toDegrees(value));
+				});
+		jassProgramVisitor.getJassNativeManager().createStackNative("Sin", (arguments, globalScope, triggerScope) -> {
+			final double value = arguments.getReal(0);
+			arguments.pushReal(StrictMath.sin(value));
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Cos", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new RealJassValue(StrictMath.cos(value));
+		jassProgramVisitor.getJassNativeManager().createStackNative("Cos", (arguments, globalScope, triggerScope) -> {
+			final double value = arguments.getReal(0);
+			arguments.pushReal(StrictMath.cos(value));
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Tan", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new RealJassValue(StrictMath.tan(value));
+		jassProgramVisitor.getJassNativeManager().createStackNative("Tan", (arguments, globalScope, triggerScope) -> {
+			final double value = arguments.getReal(0);
+			arguments.pushReal(StrictMath.tan(value));
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Asin", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("Asin", (arguments, globalScope, triggerScope) -> {
+			final double value = arguments.getReal(0);
 			final double result = StrictMath.asin(value);
 			if (Double.isNaN(result)) {
-				return new RealJassValue(0);
+				arguments.pushReal(0);
+				return;
 			}
-			return new RealJassValue(result);
+			arguments.pushReal(result);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Acos", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("Acos", (arguments, globalScope, triggerScope) -> {
+			final double value = arguments.getReal(0);
 			final double result = StrictMath.acos(value);
 			if (Double.isNaN(result)) {
-				return new RealJassValue(0);
+				arguments.pushReal(0);
+				return;
 			}
-			return new RealJassValue(result);
+			arguments.pushReal(result);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Atan", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("Atan", (arguments, globalScope, triggerScope) -> {
+			final double value = arguments.getReal(0);
 			final double result = StrictMath.atan(value);
 			if (Double.isNaN(result)) {
-				return new RealJassValue(0);
+				arguments.pushReal(0);
+				return;
 			}
-			return new RealJassValue(result);
+			arguments.pushReal(result);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Atan2", (arguments, globalScope, triggerScope) -> {
-			final Double y = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			final Double x = arguments.get(1).visit(RealJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("Atan2", (arguments, globalScope, triggerScope) -> {
+			final double y = arguments.getReal(0);
+			final double x = arguments.getReal(1);
 			final double result = StrictMath.atan2(y, x);
 			if (Double.isNaN(result)) {
-				return new RealJassValue(0);
+				arguments.pushReal(0);
+				return;
 			}
-			return new RealJassValue(result);
-		});
-		jassProgramVisitor.getJassNativeManager().createNative("SquareRoot", (arguments, globalScope, triggerScope) -> {
-			final Double value = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			final double result = StrictMath.sqrt(value);
-			return new RealJassValue(result);
+			arguments.pushReal(result);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("Pow", (arguments, globalScope, triggerScope) -> {
-			final Double y = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			final Double x = arguments.get(1).visit(RealJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("SquareRoot",
+				(arguments, globalScope, triggerScope) -> {
+					final double value = arguments.getReal(0);
+					final double result = StrictMath.sqrt(value);
+					arguments.pushReal(result);
+				});
+		jassProgramVisitor.getJassNativeManager().createStackNative("Pow", (arguments, globalScope, triggerScope) -> {
+			final double y = arguments.getReal(0);
+			final double x = arguments.getReal(1);
 			final double result = StrictMath.pow(y, x);
 			if (Double.isNaN(result)) {
-				return new RealJassValue(0);
+				arguments.pushReal(0);
+				return;
 			}
-			return new RealJassValue(result);
+			arguments.pushReal(result);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("I2R", (arguments, globalScope, triggerScope) -> {
-			final Integer i = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-			return new RealJassValue(i.doubleValue());
+		jassProgramVisitor.getJassNativeManager().createStackNative("I2R", (arguments, globalScope, triggerScope) -> {
+			final int i = arguments.getInteger(0);
+			arguments.pushReal(i);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("R2I", (arguments, globalScope, triggerScope) -> {
-			final Double r = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new IntegerJassValue(r.intValue());
+		jassProgramVisitor.getJassNativeManager().createStackNative("R2I", (arguments, globalScope, triggerScope) -> {
+			final double r = arguments.getReal(0);
+			arguments.pushInteger((int) r);
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("I2S", (arguments, globalScope, triggerScope) -> {
-			final Integer i = arguments.get(0).visit(IntegerJassValueVisitor.getInstance());
-			return new StringJassValue(i.toString());
+		jassProgramVisitor.getJassNativeManager().createStackNative("I2S", (arguments, globalScope, triggerScope) -> {
+			final int i = arguments.getInteger(0);
+			arguments.push(globalScope.getStrings().ofInteger(i));
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("R2S", (arguments, globalScope, triggerScope) -> {
-			final Double r = arguments.get(0).visit(RealJassValueVisitor.getInstance());
-			return new StringJassValue(r.toString());
+		jassProgramVisitor.getJassNativeManager().createStackNative("R2S", (arguments, globalScope, triggerScope) -> {
+			final double r = arguments.getReal(0);
+			arguments.push(globalScope.getStrings().ofReal(r));
 		});
 		jassProgramVisitor.getJassNativeManager().createNative("R2SW", (arguments, globalScope, triggerScope) -> {
 			final Double r = arguments.get(0).visit(RealJassValueVisitor.getInstance());
@@ -5800,48 +5878,49 @@ public class Jass2 {
 			final int precision = arguments.get(2).visit(IntegerJassValueVisitor.getInstance());
 			return new StringJassValue(String.format("%" + precision + "." + width + "f", r));
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("S2I", (arguments, globalScope, triggerScope) -> {
-			final String s = arguments.get(0).visit(StringJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("S2I", (arguments, globalScope, triggerScope) -> {
+			final String s = arguments.getString(0);
 			try {
 				final int intValue = Integer.parseInt(s);
-				return new IntegerJassValue(intValue);
+				arguments.pushInteger(intValue);
 			}
 			catch (final Exception exc) {
-				return new IntegerJassValue(0);
+				arguments.pushInteger(0);
 			}
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("S2R", (arguments, globalScope, triggerScope) -> {
-			final String s = arguments.get(0).visit(StringJassValueVisitor.getInstance());
+		jassProgramVisitor.getJassNativeManager().createStackNative("S2R", (arguments, globalScope, triggerScope) -> {
+			final String s = arguments.getString(0);
 			try {
 				final double parsedValue = Double.parseDouble(s);
-				return new RealJassValue(parsedValue);
+				arguments.pushReal(parsedValue);
 			}
 			catch (final Exception exc) {
-				return new RealJassValue(0);
-			}
-		});
-		jassProgramVisitor.getJassNativeManager().createNative("SubString", (arguments, globalScope, triggerScope) -> {
-			final String s = arguments.get(0).visit(StringJassValueVisitor.getInstance());
-			int start = arguments.get(1).visit(IntegerJassValueVisitor.getInstance());
-			int end = arguments.get(2).visit(IntegerJassValueVisitor.getInstance());
-			if (start > s.length()) {
-				start = s.length();
+				arguments.pushReal(0);
 			}
-			if (start < 0) {
-				start = 0;
-			}
-			if (end > s.length()) {
-				end = s.length();
-			}
-			if (end < start) {
-				end = start;
-			}
-			return new StringJassValue(s.substring(start, end));
 		});
-		jassProgramVisitor.getJassNativeManager().createNative("StringLength",
+		jassProgramVisitor.getJassNativeManager().createStackNative("SubString",
+				(arguments, globalScope, triggerScope) -> {
+					final String s = arguments.getString(0);
+					int start = arguments.getInteger(1);
+					int end = arguments.getInteger(2);
+					if (start > s.length()) {
+						start = s.length();
+					}
+					if (start < 0) {
+						start = 0;
+					}
+					if (end > s.length()) {
+						end = s.length();
+					}
+					if (end < start) {
+						end = start;
+					}
+					arguments.push(new StringJassValue(s.substring(start, end)));
+				});
+		jassProgramVisitor.getJassNativeManager().createStackNative("StringLength",
 				(arguments, globalScope, triggerScope) -> {
-					final String s = arguments.get(0).visit(StringJassValueVisitor.getInstance());
-					return new IntegerJassValue(s.length());
+					final String s = arguments.getString(0);
+					arguments.pushInteger(s.length());
 				});
 		jassProgramVisitor.getJassNativeManager().createNative("StringCase", (arguments, globalScope, triggerScope) -> {
 			final String s = arguments.get(0).visit(StringJassValueVisitor.getInstance());
@@ -18,4 +18,11 @@ public class BoolExprAnd implements TriggerBooleanExpression {
 		return this.operandA.evaluate(globalScope, triggerScope) && this.operandB.evaluate(globalScope, triggerScope);
 	}
 
+	public TriggerBooleanExpression getOperandA() {
+		return this.operandA;
+	}
+
+	public TriggerBooleanExpression getOperandB() {
+		return this.operandB;
+	}
 }
@@ -35,4 +35,7 @@ public class BoolExprCondition implements TriggerBooleanExpression {
 		return booleanReturnValue.booleanValue();
 	}
 
+	public JassFunction getFunction() {
+		return this.takesNothingReturnsBooleanFunction;
+	}
 }
@@ -5,7 +5,7 @@ import java.util.function.Consumer;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
 
-public class Quadtree<T> {
+public class Quadtree<T> implements SpatialIndex<T> {
 	private static final int MAX_DEPTH = 9; // 2^9 = 512, and 512 is the biggest map size...
 	private static final int SPLIT_THRESHOLD = 6;
 
@@ -19,19 +19,29 @@ public class Quadtree<T> {
 	private final NodeAdder nodeAdder = new NodeAdder();
 	private final UniqueNodeAdder uniqueNodeAdder = new UniqueNodeAdder();
 
+	public static final SpatialIndex.Factory FACTORY = new SpatialIndex.Factory() {
+		@Override
+		public <T> SpatialIndex<T> create(final Rectangle bounds) {
+			return new Quadtree<>(bounds);
+		}
+	};
+
 	public Quadtree(final Rectangle bounds) {
 		this.bounds = bounds;
 	}
 
+	@Override
 	public void add(final T object, final Rectangle bounds) {
 		final Node<T> node = new Node<T>(object, bounds);
 		add(node, 0);
 	}
 
+	@Override
 	public void remove(final T object, final Rectangle bounds) {
 		remove(object, bounds, null);
 	}
 
+	@Override
 	public void translate(final T object, final Rectangle prevBoundsToUpdate, final float xShift, final float yShift) {
 		final Node<T> node = remove(object, prevBoundsToUpdate, null);
 		prevBoundsToUpdate.x += xShift;
@@ -39,6 +49,7 @@ public class Quadtree<T> {
 		add(node, 0);
 	}
 
+	@Override
 	public boolean intersect(final Rectangle bounds, final QuadtreeIntersector<T> intersector) {
 		if (this.leaf) {
 			for (int i = 0; i < this.nodes.size; i++) {
@@ -76,6 +87,7 @@ public class Quadtree<T> {
 		}
 	}
 
+	@Override
 	public boolean intersect(final float x, final float y, final QuadtreeIntersector<T> intersector) {
 		if (this.leaf) {
 			for (int i = 0; i < this.nodes.size; i++) {
@@ -0,0 +1,231 @@
+package com.etheller.warsmash.util;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import com.badlogic.gdx.math.Rectangle;
+
+/**
+ * Uniform grid of fixed size cells over the given bounds, where each cell is an
+ * int array of the slots of the objects overlapping it. Moving an object that
+ * stays within the same cells only updates its rectangle, and nothing is
+ * allocated unless a cell or the slot arrays have to grow. This works best when
+ * the objects are about the size of a cell or smaller, like units are.
+ *
+ * Objects outside of the bounds are kept in the nearest edge cells. Unlike the
+ * {@link Quadtree}, an intersect call passes each object to the intersector
+ * only once even when the object spans several cells, as long as the
+ * intersector does not remove other objects while it runs.
+ */
+public class SpatialHashGrid<T> implements SpatialIndex<T> {
+	private static final int INITIAL_CELL_CAPACITY = 4;
+	private static final int INITIAL_SLOT_CAPACITY = 64;
+
+	private final Rectangle bounds;
+	private final float inverseCellSize;
+	private final int columns;
+	private final int rows;
+	private final int[][] cellSlots;
+	private final int[] cellSlotCounts;
+
+	private final IdentityHashMap<T, Integer> objectToSlot = new IdentityHashMap<>();
+	private Object[] slotObjects = new Object[INITIAL_SLOT_CAPACITY];
+	private Rectangle[] slotBounds = new Rectangle[INITIAL_SLOT_CAPACITY];
+	private int[] slotMinCellX = new int[INITIAL_SLOT_CAPACITY];
+	private int[] slotMinCellY = new int[INITIAL_SLOT_CAPACITY];
+	private int[] slotMaxCellX = new int[INITIAL_SLOT_CAPACITY];
+	private int[] slotMaxCellY = new int[INITIAL_SLOT_CAPACITY];
+	private int[] freeSlots = new int[INITIAL_SLOT_CAPACITY];
+	private int freeSlotCount = 0;
+	private int slotCount = 0;
+
+	public SpatialHashGrid(final Rectangle bounds, final float cellSize) {
+		this.bounds = bounds;
+		this.inverseCellSize = 1f / cellSize;
+		this.columns = Math.max(1, (int) Math.ceil(bounds.width / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil(bounds.height / cellSize));
+		this.cellSlots = new int[this.columns * this.rows][];
+		this.cellSlotCounts = new int[this.columns * this.rows];
+	}
+
+	public static SpatialIndex.Factory factory(final float cellSize) {
+		return new SpatialIndex.Factory() {
+			@Override
+			public <T> SpatialIndex<T> create(final Rectangle bounds) {
+				return new SpatialHashGrid<>(bounds, cellSize);
+			}
+		};
+	}
+
+	@Override
+	public void add(final T object, final Rectangle bounds) {
+		final int slot = allocateSlot();
+		this.objectToSlot.put(object, slot);
+		this.slotObjects[slot] = object;
+		this.slotBounds[slot] = bounds;
+		this.slotMinCellX[slot] = getCellX(bounds.x);
+		this.slotMinCellY[slot] = getCellY(bounds.y);
+		this.slotMaxCellX[slot] = getCellX(bounds.x + bounds.width);
+		this.slotMaxCellY[slot] = getCellY(bounds.y + bounds.height);
+		addToCells(slot);
+	}
+
+	@Override
+	public void remove(final T object, final Rectangle bounds) {
+		final Integer slotObject = this.objectToSlot.remove(object);
+		if (slotObject == null) {
+			return;
+		}
+		final int slot = slotObject;
+		removeFromCells(slot);
+		this.slotObjects[slot] = null;
+		this.slotBounds[slot] = null;
+		this.freeSlots[this.freeSlotCount++] = slot;
+	}
+
+	@Override
+	public void translate(final T object, final Rectangle prevBoundsToUpdate, final float xShift,
+			final float yShift) {
+		prevBoundsToUpdate.x += xShift;
+		prevBoundsToUpdate.y += yShift;
+		final Integer slotObject = this.objectToSlot.get(object);
+		if (slotObject == null) {
+			return;
+		}
+		final int slot = slotObject;
+		final int minCellX = getCellX(prevBoundsToUpdate.x);
+		final int minCellY = getCellY(prevBoundsToUpdate.y);
+		final int maxCellX = getCellX(prevBoundsToUpdate.x + prevBoundsToUpdate.width);
+		final int maxCellY = getCellY(prevBoundsToUpdate.y + prevBoundsToUpdate.height);
+		if ((minCellX != this.slotMinCellX[slot]) || (minCellY != this.slotMinCellY[slot])
+				|| (maxCellX != this.slotMaxCellX[slot]) || (maxCellY != this.slotMaxCellY[slot])) {
+			removeFromCells(slot);
+			this.slotMinCellX[slot] = minCellX;
+			this.slotMinCellY[slot] = minCellY;
+			this.slotMaxCellX[slot] = maxCellX;
+			this.slotMaxCellY[slot] = maxCellY;
+			addToCells(slot);
+		}
+	}
+
+	@Override
+	public boolean intersect(final Rectangle bounds, final QuadtreeIntersector<T> intersector) {
+		final int minCellX = getCellX(bounds.x);
+		final int minCellY = getCellY(bounds.y);
+		final int maxCellX = getCellX(bounds.x + bounds.width);
+		final int maxCellY = getCellY(bounds.y + bounds.height);
+		for (int cellY = minCellY; cellY <= maxCellY; cellY++) {
+			for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+				final int cell = (cellY * this.columns) + cellX;
+				// backwards, so that an intersector removing the current object does not make
+				// us skip the one that gets moved into its place
+				for (int i = this.cellSlotCounts[cell] - 1; i >= 0; i--) {
+					if (i >= this.cellSlotCounts[cell]) {
+						continue;
+					}
+					final int slot = this.cellSlots[cell][i];
+					// an object spanning several cells is only checked in the first of its cells
+					// that is also in the query
+					if ((Math.max(this.slotMinCellX[slot], minCellX) != cellX)
+							|| (Math.max(this.slotMinCellY[slot], minCellY) != cellY)) {
+						continue;
+					}
+					if (this.slotBounds[slot].overlaps(bounds)) {
+						if (intersector.onIntersect(getObject(slot))) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean intersect(final float x, final float y, final QuadtreeIntersector<T> intersector) {
+		final int cell = (getCellY(y) * this.columns) + getCellX(x);
+		for (int i = this.cellSlotCounts[cell] - 1; i >= 0; i--) {
+			if (i >= this.cellSlotCounts[cell]) {
+				continue;
+			}
+			final int slot = this.cellSlots[cell][i];
+			if (this.slotBounds[slot].contains(x, y)) {
+				if (intersector.onIntersect(getObject(slot))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return this.objectToSlot.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	private T getObject(final int slot) {
+		return (T) this.slotObjects[slot];
+	}
+
+	private int getCellX(final float x) {
+		final int cellX = (int) Math.floor((x - this.bounds.x) * this.inverseCellSize);
+		return Math.max(0, Math.min(this.columns - 1, cellX));
+	}
+
+	private int getCellY(final float y) {
+		final int cellY = (int) Math.floor((y - this.bounds.y) * this.inverseCellSize);
+		return Math.max(0, Math.min(this.rows - 1, cellY));
+	}
+
+	private void addToCells(final int slot) {
+		for (int cellY = this.slotMinCellY[slot]; cellY <= this.slotMaxCellY[slot]; cellY++) {
+			for (int cellX = this.slotMinCellX[slot]; cellX <= this.slotMaxCellX[slot]; cellX++) {
+				final int cell = (cellY * this.columns) + cellX;
+				int[] slots = this.cellSlots[cell];
+				final int count = this.cellSlotCounts[cell];
+				if (slots == null) {
+					slots = this.cellSlots[cell] = new int[INITIAL_CELL_CAPACITY];
+				}
+				else if (count == slots.length) {
+					slots = this.cellSlots[cell] = Arrays.copyOf(slots, count * 2);
+				}
+				slots[count] = slot;
+				this.cellSlotCounts[cell] = count + 1;
+			}
+		}
+	}
+
+	private void removeFromCells(final int slot) {
+		for (int cellY = this.slotMinCellY[slot]; cellY <= this.slotMaxCellY[slot]; cellY++) {
+			for (int cellX = this.slotMinCellX[slot]; cellX <= this.slotMaxCellX[slot]; cellX++) {
+				final int cell = (cellY * this.columns) + cellX;
+				final int[] slots = this.cellSlots[cell];
+				final int lastIndex = this.cellSlotCounts[cell] - 1;
+				for (int i = lastIndex; i >= 0; i--) {
+					if (slots[i] == slot) {
+						slots[i] = slots[lastIndex];
+						this.cellSlotCounts[cell] = lastIndex;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private int allocateSlot() {
+		if (this.freeSlotCount > 0) {
+			return this.freeSlots[--this.freeSlotCount];
+		}
+		if (this.slotCount == this.slotObjects.length) {
+			final int capacity = this.slotCount * 2;
+			this.slotObjects = Arrays.copyOf(this.slotObjects, capacity);
+			this.slotBounds = Arrays.copyOf(this.slotBounds, capacity);
+			this.slotMinCellX = Arrays.copyOf(this.slotMinCellX, capacity);
+			this.slotMinCellY = Arrays.copyOf(this.slotMinCellY, capacity);
+			this.slotMaxCellX = Arrays.copyOf(this.slotMaxCellX, capacity);
+			this.slotMaxCellY = Arrays.copyOf(this.slotMaxCellY, capacity);
+			this.freeSlots = Arrays.copyOf(this.freeSlots, capacity);
+		}
+		return this.slotCount++;
+	}
+}
@@ -0,0 +1,31 @@
+package com.etheller.warsmash.util;
+
+import com.badlogic.gdx.math.Rectangle;
+
+/**
+ * Common interface of {@link Quadtree} and {@link SpatialHashGrid}, so that
+ * users such as the world collision can choose either one.
+ *
+ * The bounds rectangle passed to add is kept by the index, and the caller must
+ * pass the same rectangle to remove and translate.
+ */
+public interface SpatialIndex<T> {
+	void add(T object, Rectangle bounds);
+
+	void remove(T object, Rectangle bounds);
+
+	void translate(T object, Rectangle prevBoundsToUpdate, float xShift, float yShift);
+
+	/**
+	 * Calls the intersector on objects whose bounds overlap the given bounds,
+	 * stopping and returning true as soon as the intersector does. An object may
+	 * be passed to the intersector more than once.
+	 */
+	boolean intersect(Rectangle bounds, QuadtreeIntersector<T> intersector);
+
+	boolean intersect(float x, float y, QuadtreeIntersector<T> intersector);
+
+	interface Factory {
+		<T> SpatialIndex<T> create(Rectangle bounds);
+	}
+}
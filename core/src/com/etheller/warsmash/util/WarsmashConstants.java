@@ -1,5 +1,6 @@
 package com.etheller.warsmash.util;
 
+import com.etheller.interpreter.ast.util.JassSettings;
 import com.etheller.warsmash.units.DataTable;
 import com.etheller.warsmash.units.Element;
 import com.etheller.warsmash.units.GameObject;
@@ -52,6 +53,7 @@ public class WarsmashConstants {
 	public static boolean PARSE_REIGN_OF_CHAOS_BETA_MODELS_INSTEAD = false;
 
 	public static boolean USE_NINE_ITEM_INVENTORY = true;
+	public static boolean USE_SPATIAL_HASH_COLLISION = false;
 
 	public static CRaceManager RACE_MANAGER;
 
@@ -73,6 +75,22 @@ public class WarsmashConstants {
 		PARSE_REIGN_OF_CHAOS_BETA_MODELS_INSTEAD = emulatorConstants
 				.getFieldValue("ParseReignOfChaosBetaModelsInstead") == 1;
 		USE_NINE_ITEM_INVENTORY = emulatorConstants.getFieldValue("UseNineItemInventory") == 1;
+		if (emulatorConstants.getField("SpatialHashCollision") != null) {
+			USE_SPATIAL_HASH_COLLISION = emulatorConstants.getFieldValue("SpatialHashCollision") == 1;
+		}
+		if (emulatorConstants.getField("JassCompiler") != null) {
+			JassSettings.COMPILE_HOT_FUNCTIONS = emulatorConstants.getFieldValue("JassCompiler") == 1;
+		}
+		if (emulatorConstants.getField("JassTickInstructionBudget") != null) {
+			JassSettings.TICK_INSTRUCTION_BUDGET = emulatorConstants.getFieldValue("JassTickInstructionBudget");
+		}
+		if (emulatorConstants.getField("JassProfile") != null) {
+			JassSettings.PROFILE_SCRIPTS = emulatorConstants.getFieldValue("JassProfile") == 1;
+		}
+		final String jassProgramCache = emulatorConstants.getField("JassProgramCache");
+		if ((jassProgramCache != null) && !jassProgramCache.isEmpty()) {
+			JassSettings.PROGRAM_IMAGE_CACHE_DIRECTORY = jassProgramCache;
+		}
 		final String races = emulatorConstants.getField("Races");
 		RACE_MANAGER = new CRaceManager();
 		if ((races == null) || races.isEmpty()) {
@@ -17,7 +17,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.function.Consumer;
 
@@ -138,6 +137,7 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayer;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CPlayerFogOfWar;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.timers.CTimer;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.enumtypes.CEffectType;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRandom;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponent;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponentLightning;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponentLightningMovable;
@@ -249,7 +249,7 @@ public class War3MapViewer extends AbstractMdxModelViewer {
 
 	private final DynamicShadowManager dynamicShadowManager = new DynamicShadowManager();
 
-	private final Random seededRandom = new Random(1337L);
+	private final SimulationRandom seededRandom = new SimulationRandom(1337L);
 
 	private final Map<String, BufferedImage> filePathToPathingMap = new HashMap<>();
 
@@ -1367,20 +1367,30 @@ public class War3MapViewer extends AbstractMdxModelViewer {
 
 			final float rawDeltaTime = Gdx.graphics.getRawDeltaTime();
 			this.updateTime += rawDeltaTime;
-			while (this.updateTime >= WarsmashConstants.SIMULATION_STEP_TIME) {
+			final float turnTime = WarsmashConstants.SIMULATION_STEP_TIME
+					* this.gameTurnManager.getTurnLengthScale();
+			int ticks = 0;
+			long tickNanos = 0;
+			while (this.updateTime >= turnTime) {
 				if (this.gameTurnManager.getLatestCompletedTurn() >= this.simulation.getGameTurnTick()) {
-					this.updateTime -= WarsmashConstants.SIMULATION_STEP_TIME;
+					this.updateTime -= turnTime;
+					final long tickStartNanos = System.nanoTime();
 					this.simulation.update();
+					tickNanos += System.nanoTime() - tickStartNanos;
+					ticks++;
 					this.gameTurnManager.turnCompleted(this.simulation.getGameTurnTick());
 				}
 				else {
-					if (this.updateTime > (WarsmashConstants.SIMULATION_STEP_TIME * 3)) {
-						this.gameTurnManager.framesSkipped(this.updateTime / WarsmashConstants.SIMULATION_STEP_TIME);
+					if (this.updateTime > (turnTime * 3)) {
+						this.gameTurnManager.framesSkipped(this.updateTime / turnTime);
 						this.updateTime = 0;
 					}
 					break;
 				}
 			}
+			if (ticks > 0) {
+				this.gameTurnManager.frameTimed(rawDeltaTime, tickNanos / (ticks * 1e9f));
+			}
 			if (this.dncTerrain != null) {
 				this.dncTerrain.setFrameByRatio(
 						this.simulation.getGameTimeOfDay() / this.simulation.getGameplayConstants().getGameDayHours());
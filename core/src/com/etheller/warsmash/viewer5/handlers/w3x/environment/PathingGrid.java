@@ -31,6 +31,7 @@ public class PathingGrid {
 	private final int[] pathingGridSizes;
 	private final float[] centerOffset;
 	private final List<RemovablePathingMapInstance> dynamicPathingInstances;
+	private final List<PathingChangeListener> pathingChangeListeners;
 
 	public PathingGrid(final War3MapWpm terrainPathing, final float[] centerOffset) {
 		this.centerOffset = centerOffset;
@@ -38,6 +39,32 @@ public class PathingGrid {
 		this.pathingGridSizes = terrainPathing.getSize();
 		this.dynamicPathingOverlay = new short[this.pathingGrid.length];
 		this.dynamicPathingInstances = new ArrayList<>();
+		this.pathingChangeListeners = new ArrayList<>();
+	}
+
+	public void addPathingChangeListener(final PathingChangeListener listener) {
+		this.pathingChangeListeners.add(listener);
+	}
+
+	public void removePathingChangeListener(final PathingChangeListener listener) {
+		this.pathingChangeListeners.remove(listener);
+	}
+
+	private void firePathingChanged(final float positionX, final float positionY, final int rotationInput,
+			final BufferedImage pathingTextureTga) {
+		if (this.pathingChangeListeners.isEmpty()) {
+			return;
+		}
+		final int rotation = (rotationInput + 450) % 360;
+		final int divW = ((rotation % 180) != 0) ? pathingTextureTga.getHeight() : pathingTextureTga.getWidth();
+		final int divH = ((rotation % 180) != 0) ? pathingTextureTga.getWidth() : pathingTextureTga.getHeight();
+		final int minCellX = Math.max(0, getCellX(positionX) - (divW / 2));
+		final int minCellY = Math.max(0, getCellY(positionY) - (divH / 2));
+		final int maxCellX = Math.min(this.pathingGridSizes[0] - 1, (minCellX + divW) - 1);
+		final int maxCellY = Math.min(this.pathingGridSizes[1] - 1, (minCellY + divH) - 1);
+		for (int i = 0; i < this.pathingChangeListeners.size(); i++) {
+			this.pathingChangeListeners.get(i).onPathingChanged(minCellX, minCellY, maxCellX, maxCellY);
+		}
 	}
 
 	// this blit function is basically copied from HiveWE, maybe remember to mention
@@ -182,6 +209,7 @@ public class PathingGrid {
 				positionY, rotationInput, pathingTextureTga);
 		removablePathingMapInstance.blit();
 		this.dynamicPathingInstances.add(removablePathingMapInstance);
+		removablePathingMapInstance.firePathingChanged();
 		return removablePathingMapInstance;
 	}
 
@@ -371,6 +399,15 @@ public class PathingGrid {
 		return cellY;
 	}
 
+	// world position of the center of a fog of war cell
+	public float getFogOfWarWorldX(final int indexX) {
+		return (indexX * 32f * CPlayerFogOfWar.PATHING_RATIO) + this.centerOffset[0];
+	}
+
+	public float getFogOfWarWorldY(final int indexY) {
+		return (indexY * 32f * CPlayerFogOfWar.PATHING_RATIO) + this.centerOffset[1];
+	}
+
 	public boolean isCellBlockVision(final int cellX, final int cellY) {
 		final int index = (cellY * this.pathingGridSizes[0]) + cellX;
 		if (index < 0 || index >= this.pathingGrid.length) {
@@ -495,6 +532,14 @@ public class PathingGrid {
 		}
 	}
 
+	/**
+	 * Notified when a building or destructable footprint is added to or removed
+	 * from the dynamic pathing overlay. The bounds are inclusive cell coordinates.
+	 */
+	public static interface PathingChangeListener {
+		void onPathingChanged(int minCellX, int minCellY, int maxCellX, int maxCellY);
+	}
+
 	public final class RemovablePathingMapInstance {
 		private final float positionX;
 		private final float positionY;
@@ -520,16 +565,30 @@ public class PathingGrid {
 			for (final RemovablePathingMapInstance instance : PathingGrid.this.dynamicPathingInstances) {
 				instance.blit();
 			}
+			firePathingChanged();
 		}
 
 		public void add() {
 			PathingGrid.this.dynamicPathingInstances.add(this);
 			blit();
+			firePathingChanged();
+		}
+
+		private void firePathingChanged() {
+			PathingGrid.this.firePathingChanged(this.positionX, this.positionY, this.rotationInput,
+					this.pathingTextureTga);
 		}
 
+		/**
+		 * Also blocks vision wherever this blocks pathing. If it is already added,
+		 * the listeners are told, so that vision is swept again there.
+		 */
 		public void setBlocksVision() {
 			this.blocksVision = true;
-			blit();
+			if (PathingGrid.this.dynamicPathingInstances.contains(this)) {
+				blit();
+				firePathingChanged();
+			}
 		}
 	}
 }
@@ -37,7 +37,7 @@ public class CDestructable extends CWidget {
 		this.destType = destTypeInstance;
 		this.pathingInstance = pathingInstance;
 		this.pathingInstanceDeath = pathingInstanceDeath;
-		if (this.destType.getOcclusionHeight() > 0) {
+		if ((this.pathingInstance != null) && (this.destType.getOcclusionHeight() > 0)) {
 			this.pathingInstance.setBlocksVision();
 		}
 	}
@@ -2,6 +2,7 @@ package com.etheller.warsmash.viewer5.handlers.w3x.simulation;
 
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -13,8 +14,10 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.math.Rectangle;
+import com.etheller.interpreter.ast.debug.JassProfiler;
 import com.etheller.interpreter.ast.scope.GlobalScope;
 import com.etheller.interpreter.ast.scope.trigger.RemovableTriggerEvent;
 import com.etheller.interpreter.ast.scope.trigger.Trigger;
@@ -50,7 +53,7 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.data.CDestructableD
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.data.CItemData;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.data.CUnitData;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.data.CUpgradeData;
-import com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing.CPathfindingProcessor;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing.CPathfindingScheduler;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CAllianceType;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayer;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayerJass;
@@ -60,12 +63,15 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CRace;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CRaceManagerEntry;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CRacePreference;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CFogModifier;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CLineOfSightTable;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CPlayerFogOfWar;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CUnitSightCalculator;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.region.CRegionManager;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.timers.CTimer;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.JassGameEventsWar3;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.enumtypes.CEffectType;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.ResourceType;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRandom;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponent;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponentLightning;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.SimulationRenderComponentModel;
@@ -74,6 +80,8 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.util.TextTagConfigT
 import com.etheller.warsmash.viewer5.handlers.w3x.ui.command.CommandErrorListener;
 
 public class CSimulation implements CPlayerAPI {
+	// once a minute of game time
+	private static final int JASS_PROFILE_REPORT_TICKS = (int) (60 / WarsmashConstants.SIMULATION_STEP_TIME);
 	private final CAbilityData abilityData;
 	private final CUnitData unitData;
 	private final CDestructableData destructableData;
@@ -93,10 +101,11 @@ public class CSimulation implements CPlayerAPI {
 	private int gameTurnTick = 0;
 	private final PathingGrid pathingGrid;
 	private final CWorldCollision worldCollision;
-	private final CPathfindingProcessor[] pathfindingProcessors;
+	private final CPathfindingScheduler pathfindingScheduler;
+	private final CUnitSightCalculator unitSightCalculator;
 	private final int mapVersion;
 	private final CGameplayConstants gameplayConstants;
-	private final Random seededRandom;
+	private final SimulationRandom seededRandom;
 	private float currentGameDayTimeElapsed;
 	private final Map<Integer, CUnit> handleIdToUnit = new HashMap<>();
 	private final Map<Integer, CDestructable> handleIdToDestructable = new HashMap<>();
@@ -117,7 +126,7 @@ public class CSimulation implements CPlayerAPI {
 			final ObjectData parsedUnitData, final ObjectData parsedItemData, final ObjectData parsedDestructableData,
 			final ObjectData parsedAbilityData, final ObjectData parsedUpgradeData,
 			final DataTable standardUpgradeEffectMeta, final SimulationRenderController simulationRenderController,
-			final PathingGrid pathingGrid, final Rectangle entireMapBounds, final Random seededRandom,
+			final PathingGrid pathingGrid, final Rectangle entireMapBounds, final SimulationRandom seededRandom,
 			final CommandErrorListener commandErrorListener) {
 		this.mapVersion = mapVersion;
 		this.gameplayConstants = new CGameplayConstants(miscData);
@@ -138,12 +147,11 @@ public class CSimulation implements CPlayerAPI {
 		this.projectiles = new ArrayList<>();
 		this.newProjectiles = new ArrayList<>();
 		this.handleIdAllocator = new HandleIdAllocator();
-		this.worldCollision = new CWorldCollision(entireMapBounds, this.gameplayConstants.getMaxCollisionRadius());
+		this.worldCollision = new CWorldCollision(entireMapBounds, this.gameplayConstants.getMaxCollisionRadius(),
+				WarsmashConstants.USE_SPATIAL_HASH_COLLISION);
 		this.regionManager = new CRegionManager(entireMapBounds, pathingGrid);
-		this.pathfindingProcessors = new CPathfindingProcessor[WarsmashConstants.MAX_PLAYERS];
-		for (int i = 0; i < WarsmashConstants.MAX_PLAYERS; i++) {
-			this.pathfindingProcessors[i] = new CPathfindingProcessor(pathingGrid, this.worldCollision);
-		}
+		this.pathfindingScheduler = new CPathfindingScheduler(pathingGrid, this.worldCollision,
+				WarsmashConstants.MAX_PLAYERS, CPathfindingScheduler.DEFAULT_WORK_ITERATIONS_PER_TICK);
 		this.seededRandom = seededRandom;
 		this.players = new ArrayList<>();
 		this.defaultPlayerUnitOrderExecutors = new ArrayList<>();
@@ -188,6 +196,10 @@ public class CSimulation implements CPlayerAPI {
 			neutralPassive.setAlliance(cPlayer, CAllianceType.PASSIVE, true);
 		}
 
+		final CPlayerFogOfWar firstPlayerFogOfWar = this.players.get(0).getFogOfWar();
+		this.unitSightCalculator = new CUnitSightCalculator(new CLineOfSightTable(pathingGrid,
+				firstPlayerFogOfWar.getWidth(), firstPlayerFogOfWar.getHeight()));
+
 		this.commandErrorListener = commandErrorListener;
 
 		final CTimer fogUpdateTimer = new CTimer() {
@@ -437,27 +449,49 @@ public class CSimulation implements CPlayerAPI {
 			final Point2D.Float goal, final PathingGrid.MovementType movementType, final float collisionSize,
 			final boolean allowSmoothing, final CBehaviorMove queueItem) {
 		final int playerIndex = queueItem.getUnit().getPlayerIndex();
-		this.pathfindingProcessors[playerIndex].findNaiveSlowPath(ignoreIntersectionsWithThisUnit,
+		this.pathfindingScheduler.findNaiveSlowPath(playerIndex, ignoreIntersectionsWithThisUnit,
 				ignoreIntersectionsWithThisSecondUnit, startX, startY, goal, movementType, collisionSize,
-				allowSmoothing, queueItem);
+				allowSmoothing, queueItem, this.gameTurnTick);
 	}
 
 	public void removeFromPathfindingQueue(final CBehaviorMove behaviorMove) {
 		final int playerIndex = behaviorMove.getUnit().getPlayerIndex();
-		this.pathfindingProcessors[playerIndex].removeFromPathfindingQueue(behaviorMove);
+		this.pathfindingScheduler.removeFromPathfindingQueue(playerIndex, behaviorMove);
 	}
 
+	/**
+	 * Reapplies the fog modifiers. Unit sight is not part of this, it is kept up
+	 * to date every tick by {@link #updateUnitVision()}.
+	 */
 	protected void updateFogOfWar() {
 		for (final CPlayer player : this.players) {
 			player.getFogOfWar().convertVisibleToFogged();
 			player.updateFogModifiers(this);
 		}
+	}
+
+	public void updateUnitVision() {
 		for (final CUnit unit : this.units) {
 			unit.updateFogOfWar(this);
 		}
 	}
 
 	public void update() {
+		this.globalScope.beginTick();
+		updateUnits();
+		updateUnitVision();
+		updateProjectiles();
+		updatePathfinding();
+		updateTimers();
+		updateJassThreads();
+	}
+
+	/**
+	 * The update phases below are always run in this order by {@link #update()}.
+	 * They are only public so that headless tooling (like the benchmarks module)
+	 * can time each one separately.
+	 */
+	public void updateUnits() {
 		final Iterator<CUnit> unitIterator = this.units.iterator();
 		while (unitIterator.hasNext()) {
 			final CUnit unit = unitIterator.next();
@@ -473,6 +507,9 @@ public class CSimulation implements CPlayerAPI {
 			}
 		}
 		finishAddingNewUnits();
+	}
+
+	public void updateProjectiles() {
 		final Iterator<CEffect> projectileIterator = this.projectiles.iterator();
 		while (projectileIterator.hasNext()) {
 			final CEffect projectile = projectileIterator.next();
@@ -482,9 +519,13 @@ public class CSimulation implements CPlayerAPI {
 		}
 		this.projectiles.addAll(this.newProjectiles);
 		this.newProjectiles.clear();
-		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
-			pathfindingProcessor.update(this);
-		}
+	}
+
+	public void updatePathfinding() {
+		this.pathfindingScheduler.update(this);
+	}
+
+	public void updateTimers() {
 		this.gameTurnTick++;
 		final float timeOfDayBefore = getGameTimeOfDay();
 		if (!this.timeOfDaySuspended) {
@@ -516,8 +557,15 @@ public class CSimulation implements CPlayerAPI {
 				timeOfDayEvent.fire();
 			}
 		}
+	}
 
+	public void updateJassThreads() {
 		this.globalScope.runThreads();
+		final JassProfiler profiler = this.globalScope.getProfiler();
+		// headless runs have no application to log to, and read the profiler directly
+		if ((profiler != null) && (Gdx.app != null) && ((this.gameTurnTick % JASS_PROFILE_REPORT_TICKS) == 0)) {
+			Gdx.app.log("JassProfiler", profiler.getReport(this.globalScope, 10));
+		}
 	}
 
 	public void removeUnit(final CUnit unit) {
@@ -551,6 +599,14 @@ public class CSimulation implements CPlayerAPI {
 		this.currentGameDayTimeElapsed = elapsed * this.gameplayConstants.getGameDayLength();
 	}
 
+	public CUnitSightCalculator getUnitSightCalculator() {
+		return this.unitSightCalculator;
+	}
+
+	public CPathfindingScheduler getPathfindingScheduler() {
+		return this.pathfindingScheduler;
+	}
+
 	public int getGameTurnTick() {
 		return this.gameTurnTick;
 	}
@@ -571,6 +627,73 @@ public class CSimulation implements CPlayerAPI {
 		return this.seededRandom;
 	}
 
+	/**
+	 * Hashes the state that lockstep clients must agree on: the turn, the random
+	 * state, the handle counter, the timer queue, the players' resources and
+	 * where the units are and how they are doing. It only reads fields, so that
+	 * it costs a small part of a tick. The hash of the previous check is folded
+	 * in, so that a divergence in between is not lost if the state happens to
+	 * converge again.
+	 */
+	public long computeStateHash(final long previousStateHash) {
+		long hash = mixStateHash(previousStateHash, this.gameTurnTick);
+		hash = mixStateHash(hash, this.seededRandom.getState());
+		hash = mixStateHash(hash, this.handleIdAllocator.getNextId());
+		for (final CTimer timer : this.activeTimers) {
+			hash = mixStateHash(hash, timer.getEngineFireTick());
+			hash = mixStateHash(hash, Float.floatToRawIntBits(timer.getTimeoutTime()));
+		}
+		for (final CPlayer player : this.players) {
+			hash = mixStateHash(hash, player.getGold());
+			hash = mixStateHash(hash, player.getLumber());
+			hash = mixStateHash(hash, player.getFoodUsed());
+			hash = mixStateHash(hash, player.getFoodCap());
+		}
+		for (final CUnit unit : this.units) {
+			hash = mixStateHash(hash, unit.getHandleId());
+			hash = mixStateHash(hash, unit.getTypeId().getValue());
+			hash = mixStateHash(hash, unit.getPlayerIndex());
+			hash = mixStateHash(hash, Float.floatToRawIntBits(unit.getX()));
+			hash = mixStateHash(hash, Float.floatToRawIntBits(unit.getY()));
+			hash = mixStateHash(hash, Float.floatToRawIntBits(unit.getFacing()));
+			hash = mixStateHash(hash, Float.floatToRawIntBits(unit.getLife()));
+			hash = mixStateHash(hash, Float.floatToRawIntBits(unit.getMana()));
+		}
+		return hash;
+	}
+
+	private static long mixStateHash(final long hash, final long value) {
+		// a round of xxHash64
+		long lane = value * 0xC2B2AE3D27D4EB4FL;
+		lane = Long.rotateLeft(lane, 31) * 0x9E3779B185EBCA87L;
+		return (Long.rotateLeft(hash ^ lane, 27) * 0x9E3779B185EBCA87L) + 0x85EBCA77C2B2AE63L;
+	}
+
+	/**
+	 * Writes the state that {@link #computeStateHash(long)} covers as text, one
+	 * line per object in a stable order, so that the dumps of two clients can be
+	 * compared with diff.
+	 */
+	public void dumpState(final PrintStream out) {
+		out.println("turn " + this.gameTurnTick);
+		out.println("random " + Long.toHexString(this.seededRandom.getState()));
+		out.println("nextHandleId " + this.handleIdAllocator.getNextId());
+		for (final CTimer timer : this.activeTimers) {
+			out.println("timer fireTick=" + timer.getEngineFireTick() + " timeout=" + timer.getTimeoutTime()
+					+ " repeats=" + timer.isRepeats());
+		}
+		for (int i = 0; i < this.players.size(); i++) {
+			final CPlayer player = this.players.get(i);
+			out.println("player " + i + " gold=" + player.getGold() + " lumber=" + player.getLumber() + " food="
+					+ player.getFoodUsed() + "/" + player.getFoodCap());
+		}
+		for (final CUnit unit : this.units) {
+			out.println("unit " + unit.getHandleId() + " " + unit.getTypeId().asStringValue() + " player="
+					+ unit.getPlayerIndex() + " x=" + unit.getX() + " y=" + unit.getY() + " facing="
+					+ unit.getFacing() + " life=" + unit.getLife() + " mana=" + unit.getMana());
+		}
+	}
+
 	public void unitDamageEvent(final CUnit damagedUnit, final String weaponSound, final String armorType) {
 		this.simulationRenderController.spawnDamageSound(damagedUnit, weaponSound, armorType);
 	}
@@ -98,9 +98,9 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.orders.OrderIds;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CAllianceType;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayer;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayerState;
-import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CPlayerFogOfWar;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CUnitAttackVisionFogModifier;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CUnitDeathVisionFogModifier;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CUnitVision;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.region.CRegion;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.region.CRegionEnumFunction;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.region.CRegionManager;
@@ -175,6 +175,7 @@ public class CUnit extends CWidget {
 	private CUnitType unitType;
 
 	private Rectangle collisionRectangle;
+	private final long[] enumVisitEpochs = new long[CWorldCollision.MAX_ENUM_DEPTH];
 	private RemovablePathingMapInstance pathingInstance;
 
 	private final EnumSet<CUnitClassification> classifications = EnumSet.noneOf(CUnitClassification.class);
@@ -238,6 +239,7 @@ public class CUnit extends CWidget {
 	private List<CUnitAttack> unitSpecificCurrentAttacks;
 	private boolean disableAttacks;
 	private final CUnitAttackVisionFogModifier attackFogMod;
+	private final CUnitVision vision = new CUnitVision();
 
 	private final Map<CUnitAttackPreDamageListenerPriority, List<CUnitAttackPreDamageListener>> preDamageListeners = new HashMap<>();
 	private final List<CUnitAttackPostDamageListener> postDamageListeners = new ArrayList<>();
@@ -2905,6 +2907,18 @@ public class CUnit extends CWidget {
 		return distance <= range;
 	}
 
+	/**
+	 * Marks this unit as visited by the unit enumeration with the given epoch at
+	 * the given nesting depth, returning false if it already was.
+	 */
+	boolean markEnumVisited(final int depth, final long epoch) {
+		if (this.enumVisitEpochs[depth] == epoch) {
+			return false;
+		}
+		this.enumVisitEpochs[depth] = epoch;
+		return true;
+	}
+
 	public boolean canReach(final float x, final float y, final float range) {
 		return distance(x, y) <= range; // TODO use dist squared for performance
 	}
@@ -4136,6 +4150,7 @@ public class CUnit extends CWidget {
 
 	public void onRemove(final CSimulation simulation) {
 		final CPlayer player = simulation.getPlayer(this.playerIndex);
+		this.vision.clear();
 		if (WarsmashConstants.FIRE_DEATH_EVENTS_ON_REMOVEUNIT) {
 			// Firing userspace triggers here causes items to appear around the player bases
 			// in melee games.
@@ -4608,141 +4623,7 @@ public class CUnit extends CWidget {
 	}
 
 	public void updateFogOfWar(final CSimulation game) {
-		if (!isDead() && !this.hidden) {
-			final float sightRadius = game.isDay() ? this.unitType.getSightRadiusDay()
-					: this.unitType.getSightRadiusNight();
-			if (sightRadius > 0) {
-				final float radSq = (sightRadius * sightRadius)
-						/ (CPlayerFogOfWar.GRID_STEP * CPlayerFogOfWar.GRID_STEP);
-				final CPlayerFogOfWar fogOfWar = game.getPlayer(this.playerIndex).getFogOfWar();
-				final boolean flying = getUnitType().getMovementType() == MovementType.FLY;
-				final float myX = getX();
-				final float myY = getY();
-				final int myZ = flying ? Integer.MAX_VALUE : game.getTerrainHeight(myX, myY);
-				final PathingGrid pathingGrid = game.getPathingGrid();
-				fogOfWar.setState(pathingGrid.getFogOfWarIndexX(myX), pathingGrid.getFogOfWarIndexY(myY), (byte) 0);
-
-				final int myXi = pathingGrid.getFogOfWarIndexX(myX);
-				final int myYi = pathingGrid.getFogOfWarIndexY(myY);
-				final int maxXi = pathingGrid.getFogOfWarIndexX(myX + sightRadius);
-				final int maxYi = pathingGrid.getFogOfWarIndexY(myY + sightRadius);
-				for (int a = 1; a <= Math.max(maxYi - myYi, maxXi - myXi); a++) {
-					final int distance = a * a;
-
-					if ((distance <= radSq)
-							&& (flying || !pathingGrid.isBlockVision(myX, myY - ((a - 1) * CPlayerFogOfWar.GRID_STEP)))
-							&& (fogOfWar.getState(myXi, (myYi - a) + 1) == 0)
-							&& (flying || game.isTerrainWater(myX, myY - (a * CPlayerFogOfWar.GRID_STEP))
-									|| (myZ > game.getTerrainHeight(myX, myY - (a * CPlayerFogOfWar.GRID_STEP)))
-									|| (!game.isTerrainRomp(myX, myY - (a * CPlayerFogOfWar.GRID_STEP)) && (myZ == game
-											.getTerrainHeight(myX, myY - (a * CPlayerFogOfWar.GRID_STEP)))))) {
-						fogOfWar.setState(myXi, myYi - a, (byte) 0);
-					}
-					if ((distance <= radSq)
-							&& (flying || !pathingGrid.isBlockVision(myX, myY + ((a - 1) * CPlayerFogOfWar.GRID_STEP)))
-							&& (fogOfWar.getState(myXi, (myYi + a) - 1) == 0)
-							&& (flying || game.isTerrainWater(myX, myY + (a * CPlayerFogOfWar.GRID_STEP))
-									|| (myZ > game.getTerrainHeight(myX, myY + (a * CPlayerFogOfWar.GRID_STEP)))
-									|| (!game.isTerrainRomp(myX, myY + (a * CPlayerFogOfWar.GRID_STEP)) && (myZ == game
-											.getTerrainHeight(myX, myY + (a * CPlayerFogOfWar.GRID_STEP)))))) {
-						fogOfWar.setState(myXi, myYi + a, (byte) 0);
-					}
-					if ((distance <= radSq)
-							&& (flying || !pathingGrid.isBlockVision(myX - ((a - 1) * CPlayerFogOfWar.GRID_STEP), myY))
-							&& (fogOfWar.getState((myXi - a) + 1, myYi) == 0)
-							&& (flying || game.isTerrainWater(myX - (a * CPlayerFogOfWar.GRID_STEP), myY)
-									|| (myZ > game.getTerrainHeight(myX - (a * CPlayerFogOfWar.GRID_STEP), myY))
-									|| (!game.isTerrainRomp(myX - (a * CPlayerFogOfWar.GRID_STEP), myY) && (myZ == game
-											.getTerrainHeight(myX - (a * CPlayerFogOfWar.GRID_STEP), myY))))) {
-						fogOfWar.setState(myXi - a, myYi, (byte) 0);
-					}
-					if ((distance <= radSq)
-							&& (flying || !pathingGrid.isBlockVision(myX + ((a - 1) * CPlayerFogOfWar.GRID_STEP), myY))
-							&& (fogOfWar.getState((myXi + a) - 1, myYi) == 0)
-							&& (flying || game.isTerrainWater(myX + (a * CPlayerFogOfWar.GRID_STEP), myY)
-									|| (myZ > game.getTerrainHeight(myX + (a * CPlayerFogOfWar.GRID_STEP), myY))
-									|| (!game.isTerrainRomp(myX + (a * CPlayerFogOfWar.GRID_STEP), myY) && (myZ == game
-											.getTerrainHeight(myX + (a * CPlayerFogOfWar.GRID_STEP), myY))))) {
-						fogOfWar.setState(myXi + a, myYi, (byte) 0);
-					}
-				}
-
-				for (int y = 1; y <= (maxYi - myYi); y++) {
-					for (int x = 1; x <= (maxXi - myXi); x++) {
-						final float distance = (x * x) + (y * y);
-						if (distance <= radSq) {
-							final int xf = x * CPlayerFogOfWar.GRID_STEP;
-							final int yf = y * CPlayerFogOfWar.GRID_STEP;
-
-							if ((flying || game.isTerrainWater(myX - xf, myY - yf)
-									|| (myZ > game.getTerrainHeight(myX - xf, myY - yf))
-									|| (!game.isTerrainRomp(myX - xf, myY - yf)
-											&& (myZ == game.getTerrainHeight(myX - xf, myY - yf))))
-									&& (flying || !pathingGrid.isBlockVision((myX - xf) + CPlayerFogOfWar.GRID_STEP,
-											(myY - yf) + CPlayerFogOfWar.GRID_STEP))
-									&& (fogOfWar.getState((myXi - x) + 1, (myYi - y) + 1) == 0)
-									&& ((x == y)
-											|| ((x > y) && (fogOfWar.getState((myXi - x) + 1, myYi - y) == 0)
-													&& (flying || !pathingGrid.isBlockVision(
-															(myX - xf) + CPlayerFogOfWar.GRID_STEP, myY - yf)))
-											|| ((x < y) && (fogOfWar.getState(myXi - x, (myYi - y) + 1) == 0)
-													&& (flying || !pathingGrid.isBlockVision(myX - xf,
-															(myY - yf) + CPlayerFogOfWar.GRID_STEP))))) {
-								fogOfWar.setState(myXi - x, myYi - y, (byte) 0);
-							}
-							if ((flying || game.isTerrainWater(myX - xf, myY + yf)
-									|| (myZ > game.getTerrainHeight(myX - xf, myY + yf))
-									|| (!game.isTerrainRomp(myX - xf, myY + yf)
-											&& (myZ == game.getTerrainHeight(myX - xf, myY + yf))))
-									&& (flying || !pathingGrid.isBlockVision((myX - xf) + CPlayerFogOfWar.GRID_STEP,
-											(myY + yf) - CPlayerFogOfWar.GRID_STEP))
-									&& (fogOfWar.getState((myXi - x) + 1, (myYi + y) - 1) == 0)
-									&& ((x == y)
-											|| ((x > y) && (fogOfWar.getState((myXi - x) + 1, myYi + y) == 0)
-													&& (flying || !pathingGrid.isBlockVision(
-															(myX - xf) + CPlayerFogOfWar.GRID_STEP, myY + yf)))
-											|| ((x < y) && (fogOfWar.getState(myXi - x, (myYi + y) - 1) == 0)
-													&& (flying || !pathingGrid.isBlockVision(myX - xf,
-															(myY + yf) - CPlayerFogOfWar.GRID_STEP))))) {
-								fogOfWar.setState(myXi - x, myYi + y, (byte) 0);
-							}
-							if ((flying || game.isTerrainWater(myX + xf, myY - yf)
-									|| (myZ > game.getTerrainHeight(myX + xf, myY - yf))
-									|| (!game.isTerrainRomp(myX + xf, myY - yf)
-											&& (myZ == game.getTerrainHeight(myX + xf, myY - yf))))
-									&& (flying || !pathingGrid.isBlockVision((myX + xf) - CPlayerFogOfWar.GRID_STEP,
-											(myY - yf) + CPlayerFogOfWar.GRID_STEP))
-									&& (fogOfWar.getState((myXi + x) - 1, (myYi - y) + 1) == 0)
-									&& ((x == y)
-											|| ((x > y) && (fogOfWar.getState((myXi + x) - 1, myYi - y) == 0)
-													&& (flying || !pathingGrid.isBlockVision(
-															(myX + xf) - CPlayerFogOfWar.GRID_STEP, myY - yf)))
-											|| ((x < y) && (fogOfWar.getState(myXi + x, (myYi - y) + 1) == 0)
-													&& (flying || !pathingGrid.isBlockVision(myX + xf,
-															(myY - yf) + CPlayerFogOfWar.GRID_STEP))))) {
-								fogOfWar.setState(myXi + x, myYi - y, (byte) 0);
-							}
-							if ((flying || game.isTerrainWater(myX + xf, myY + yf)
-									|| (myZ > game.getTerrainHeight(myX + xf, myY + yf))
-									|| (!game.isTerrainRomp(myX + xf, myY + yf)
-											&& (myZ == game.getTerrainHeight(myX + xf, myY + yf))))
-									&& (flying || !pathingGrid.isBlockVision((myX + xf) - CPlayerFogOfWar.GRID_STEP,
-											(myY + yf) - CPlayerFogOfWar.GRID_STEP))
-									&& (fogOfWar.getState((myXi + x) - 1, (myYi + y) - 1) == 0)
-									&& ((x == y)
-											|| ((x > y) && (fogOfWar.getState((myXi + x) - 1, myYi + y) == 0)
-													&& (flying || !pathingGrid.isBlockVision(
-															(myX + xf) - CPlayerFogOfWar.GRID_STEP, myY + yf)))
-											|| ((x < y) && (fogOfWar.getState(myXi + x, (myYi + y) - 1) == 0)
-													&& (flying || !pathingGrid.isBlockVision(myX + xf,
-															(myY + yf) - CPlayerFogOfWar.GRID_STEP))))) {
-								fogOfWar.setState(myXi + x, myYi + y, (byte) 0);
-							}
-						}
-					}
-				}
-			}
-		}
+		this.vision.update(game, this);
 	}
 
 	public void setExplodesOnDeath(final boolean explodesOnDeath) {
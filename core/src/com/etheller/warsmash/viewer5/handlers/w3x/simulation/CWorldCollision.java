@@ -6,35 +6,68 @@ import java.util.Set;
 import com.badlogic.gdx.math.Rectangle;
 import com.etheller.warsmash.util.Quadtree;
 import com.etheller.warsmash.util.QuadtreeIntersector;
+import com.etheller.warsmash.util.SpatialHashGrid;
+import com.etheller.warsmash.util.SpatialIndex;
 import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
 
 public class CWorldCollision {
 	private static final float MINIMUM_COLLISION_SIZE = 0.001f /* THIS IS TO STOP QUADTREE FROM BUSTING */;
 	private static final Rectangle tempRect = new Rectangle();
-	private final Quadtree<CUnit> deadUnitCollision;
-	private final Quadtree<CUnit> groundUnitCollision;
-	private final Quadtree<CUnit> airUnitCollision;
-	private final Quadtree<CUnit> seaUnitCollision;
-	private final Quadtree<CUnit> buildingUnitCollision;
-	private final Quadtree<CUnit> anyUnitEnumerableCollision;
-	private final Quadtree<CDestructable> destructablesForEnum;
+	/**
+	 * Cell size of the spatial hash grid backend. Four pathing cells, so the
+	 * typical unit overlaps one to four cells.
+	 */
+	public static final float SPATIAL_HASH_CELL_SIZE = 128f;
+	/**
+	 * How many unit enumerations can be nested inside of each other's callbacks
+	 * before we fall back to allocating a set to find duplicates.
+	 */
+	static final int MAX_ENUM_DEPTH = 8;
+	private final SpatialIndex<CUnit> deadUnitCollision;
+	private final SpatialIndex<CUnit> groundUnitCollision;
+	private final SpatialIndex<CUnit> airUnitCollision;
+	private final SpatialIndex<CUnit> seaUnitCollision;
+	private final SpatialIndex<CUnit> buildingUnitCollision;
+	private final SpatialIndex<CUnit> anyUnitEnumerableCollision;
+	private final SpatialIndex<CDestructable> destructablesForEnum;
 	private final float maxCollisionRadius;
 	private final AnyUnitExceptTwoIntersector anyUnitExceptTwoIntersector;
 	private final EachUnitOnlyOnceIntersector eachUnitOnlyOnceIntersector;
 	private final DestructableEnumIntersector destructableEnumIntersector;
+	private final UnitEnumIntersector[] unitEnumIntersectors;
+	private final Rectangle[] enumRangeRects;
+	private int enumDepth = 0;
+	private long enumEpoch = 0;
 
 	public CWorldCollision(final Rectangle entireMapBounds, final float maxCollisionRadius) {
-		this.deadUnitCollision = new Quadtree<>(entireMapBounds);
-		this.groundUnitCollision = new Quadtree<>(entireMapBounds);
-		this.airUnitCollision = new Quadtree<>(entireMapBounds);
-		this.seaUnitCollision = new Quadtree<>(entireMapBounds);
-		this.buildingUnitCollision = new Quadtree<>(entireMapBounds);
-		this.anyUnitEnumerableCollision = new Quadtree<>(entireMapBounds);
-		this.destructablesForEnum = new Quadtree<>(entireMapBounds);
+		this(entireMapBounds, maxCollisionRadius, Quadtree.FACTORY);
+	}
+
+	public CWorldCollision(final Rectangle entireMapBounds, final float maxCollisionRadius,
+			final boolean useSpatialHashGrid) {
+		this(entireMapBounds, maxCollisionRadius,
+				useSpatialHashGrid ? SpatialHashGrid.factory(SPATIAL_HASH_CELL_SIZE) : Quadtree.FACTORY);
+	}
+
+	public CWorldCollision(final Rectangle entireMapBounds, final float maxCollisionRadius,
+			final SpatialIndex.Factory spatialIndexFactory) {
+		this.deadUnitCollision = spatialIndexFactory.create(entireMapBounds);
+		this.groundUnitCollision = spatialIndexFactory.create(entireMapBounds);
+		this.airUnitCollision = spatialIndexFactory.create(entireMapBounds);
+		this.seaUnitCollision = spatialIndexFactory.create(entireMapBounds);
+		this.buildingUnitCollision = spatialIndexFactory.create(entireMapBounds);
+		this.anyUnitEnumerableCollision = spatialIndexFactory.create(entireMapBounds);
+		this.destructablesForEnum = spatialIndexFactory.create(entireMapBounds);
 		this.maxCollisionRadius = maxCollisionRadius;
 		this.anyUnitExceptTwoIntersector = new AnyUnitExceptTwoIntersector();
 		this.eachUnitOnlyOnceIntersector = new EachUnitOnlyOnceIntersector();
 		this.destructableEnumIntersector = new DestructableEnumIntersector();
+		this.unitEnumIntersectors = new UnitEnumIntersector[MAX_ENUM_DEPTH];
+		this.enumRangeRects = new Rectangle[MAX_ENUM_DEPTH];
+		for (int i = 0; i < MAX_ENUM_DEPTH; i++) {
+			this.unitEnumIntersectors[i] = new UnitEnumIntersector(i);
+			this.enumRangeRects[i] = new Rectangle();
+		}
 	}
 
 	public void addUnit(final CUnit unit) {
@@ -138,47 +171,62 @@ public class CWorldCollision {
 	}
 
 	public void enumUnitsInRect(final Rectangle rect, final CUnitEnumFunction callback) {
-		// NOTE: allocation here seems quite wasteful, but when it was a recycled
-		// value there were times this function looped units in rect, killed a few,
-		// then entered the function again to apply xp gain in an area iterated
-		// around the killed units before finishing the other iteration...
-		// and so a recycled allocation did not work
-		final Set<CUnit> intersectedUnits = new HashSet<>();
-		this.anyUnitEnumerableCollision.intersect(rect, (unit) -> {
-			if (unit.isHidden() || !intersectedUnits.add(unit)) {
-				return false;
-			}
-			return callback.call(unit);
-		});
+		enumUnits(this.anyUnitEnumerableCollision, rect, callback, false, 0, 0, 0);
 	}
 
 	public void enumCorpsesInRect(final Rectangle rect, final CUnitEnumFunction callback) {
-		// NOTE: allocation here seems quite wasteful, see note on enumUnitsInRect
-		final Set<CUnit> intersectedUnits = new HashSet<>();
-		this.deadUnitCollision.intersect(rect, (unit) -> {
-			if (unit.isHidden() || !intersectedUnits.add(unit)) {
-				return false;
-			}
-			return callback.call(unit);
-		});
+		enumUnits(this.deadUnitCollision, rect, callback, false, 0, 0, 0);
 	}
 
 	public void enumCorpsesInRange(final float x, final float y, final float radius, final CUnitEnumFunction callback) {
-		enumCorpsesInRect(new Rectangle(x - radius, y - radius, radius * 2, radius * 2), (enumUnit) -> {
-			if (enumUnit.canReach(x, y, radius)) {
-				return callback.call(enumUnit);
-			}
-			return false;
-		});
+		enumUnits(this.deadUnitCollision, getRangeRect(x, y, radius), callback, true, x, y, radius);
 	}
 
 	public void enumUnitsInRange(final float x, final float y, final float radius, final CUnitEnumFunction callback) {
-		enumUnitsInRect(new Rectangle(x - radius, y - radius, radius * 2, radius * 2), (enumUnit) -> {
-			if (enumUnit.canReach(x, y, radius)) {
-				return callback.call(enumUnit);
-			}
-			return false;
-		});
+		enumUnits(this.anyUnitEnumerableCollision, getRangeRect(x, y, radius), callback, true, x, y, radius);
+	}
+
+	private Rectangle getRangeRect(final float x, final float y, final float radius) {
+		final Rectangle rect = this.enumDepth < MAX_ENUM_DEPTH ? this.enumRangeRects[this.enumDepth]
+				: new Rectangle();
+		return rect.set(x - radius, y - radius, radius * 2, radius * 2);
+	}
+
+	/**
+	 * Calls the callback once for each unit that is not hidden, in the rect and,
+	 * if inCircle is set, in range of the circle. A callback may start another
+	 * enumeration before returning, for example killing a unit from inside an
+	 * enumeration gives xp to heroes found by enumerating around the unit. So
+	 * instead of one shared set of visited units, every nesting depth gets its own
+	 * visit mark on each unit, and every enumeration gets a new epoch value to put
+	 * in those marks.
+	 */
+	private void enumUnits(final SpatialIndex<CUnit> collision, final Rectangle rect,
+			final CUnitEnumFunction callback, final boolean inCircle, final float x, final float y,
+			final float radius) {
+		if (this.enumDepth >= MAX_ENUM_DEPTH) {
+			// nested deeper than units have visit marks for, which should not happen in
+			// practice
+			final Set<CUnit> intersectedUnits = new HashSet<>();
+			collision.intersect(rect, (unit) -> {
+				if (unit.isHidden() || !intersectedUnits.add(unit)) {
+					return false;
+				}
+				if (inCircle && !unit.canReach(x, y, radius)) {
+					return false;
+				}
+				return callback.call(unit);
+			});
+			return;
+		}
+		final int depth = this.enumDepth++;
+		try {
+			collision.intersect(rect,
+					this.unitEnumIntersectors[depth].reset(callback, ++this.enumEpoch, inCircle, x, y, radius));
+		}
+		finally {
+			this.enumDepth--;
+		}
 	}
 
 	public void enumBuildingsInRect(final Rectangle rect, final QuadtreeIntersector<CUnit> callback) {
@@ -314,6 +362,42 @@ public class CWorldCollision {
 		}
 	}
 
+	private static final class UnitEnumIntersector implements QuadtreeIntersector<CUnit> {
+		private final int depth;
+		private CUnitEnumFunction consumerDelegate;
+		private long epoch;
+		private boolean inCircle;
+		private float x;
+		private float y;
+		private float radius;
+
+		public UnitEnumIntersector(final int depth) {
+			this.depth = depth;
+		}
+
+		public UnitEnumIntersector reset(final CUnitEnumFunction consumerDelegate, final long epoch,
+				final boolean inCircle, final float x, final float y, final float radius) {
+			this.consumerDelegate = consumerDelegate;
+			this.epoch = epoch;
+			this.inCircle = inCircle;
+			this.x = x;
+			this.y = y;
+			this.radius = radius;
+			return this;
+		}
+
+		@Override
+		public boolean onIntersect(final CUnit intersectingObject) {
+			if (intersectingObject.isHidden() || !intersectingObject.markEnumVisited(this.depth, this.epoch)) {
+				return false;
+			}
+			if (this.inCircle && !intersectingObject.canReach(this.x, this.y, this.radius)) {
+				return false;
+			}
+			return this.consumerDelegate.call(intersectingObject);
+		}
+	}
+
 	private static final class EachUnitOnlyOnceIntersector implements QuadtreeIntersector<CUnit> {
 		private CUnitEnumFunction consumerDelegate;
 		private final Set<CUnit> intersectedUnits = new HashSet<>();
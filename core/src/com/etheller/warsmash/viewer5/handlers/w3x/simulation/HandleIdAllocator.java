@@ -11,4 +11,8 @@ public class HandleIdAllocator {
 	public int createId() {
 		return this.next++;
 	}
+
+	public int getNextId() {
+		return this.next;
+	}
 }
@@ -402,6 +402,10 @@ public class CBehaviorMove implements CBehavior {
 		return this.unit;
 	}
 
+	public boolean isFirstPathfindJob() {
+		return this.firstPathfindJob;
+	}
+
 	public void pathFound(final List<Point2D.Float> waypoints, final CSimulation simulation) {
 		this.pathfindingActive = false;
 
@@ -0,0 +1,378 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
+
+/**
+ * Flow fields for group movement. When many units are ordered to the same
+ * point, they all share one field per (goal cell, movement type, collision
+ * class) instead of each running their own A* search. A field is a Dijkstra
+ * search outward from the goal over the static pathing grid, so every cell it
+ * has settled knows the next cell on its shortest way to the goal.
+ *
+ * Fields are expanded lazily, only as far as is needed to reach the units that
+ * asked for them, and in budgeted steps so that building one is spread over
+ * several ticks like any other pathfinding job. When the pathing map changes,
+ * only the fields that have already looked at the changed cells (or cells close
+ * enough for the collision size to reach them) are thrown away.
+ *
+ * Each field has arrays covering the whole map, so the arrays of evicted and
+ * thrown away fields are kept and handed to the next fields instead of being
+ * allocated again, so no more than one set beyond MAX_CACHED_FIELDS is ever
+ * made.
+ */
+public class CFlowFieldCache implements PathingGrid.PathingChangeListener {
+	private static final int MAX_CACHED_FIELDS = 16;
+	// units of a similar size share the field of the largest size in their class,
+	// which is walkable for all of them
+	private static final int COLLISION_CLASS_SIZE = 16;
+	private static final float DIAGONAL_COST = (float) Math.sqrt(2);
+	private static final byte WALKABLE_UNKNOWN = 0;
+	private static final byte WALKABLE_YES = 1;
+	private static final byte WALKABLE_NO = 2;
+	private static final byte NO_DIRECTION = -1;
+	private static final int[] DIRECTION_X_OFFSETS = { -1, 0, 1, 1, 1, 0, -1, -1 };
+	private static final int[] DIRECTION_Y_OFFSETS = { 1, 1, 1, 0, -1, -1, -1, 0 };
+
+	private final PathingGrid pathingGrid;
+	private final Map<Long, FlowField> keyToField = new LinkedHashMap<Long, FlowField>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Long, FlowField> eldest) {
+			if (size() > MAX_CACHED_FIELDS) {
+				eldest.getValue().release();
+				return true;
+			}
+			return false;
+		}
+	};
+	private final ArrayDeque<CellArrays> freeCellArrays = new ArrayDeque<>();
+
+	public CFlowFieldCache(final PathingGrid pathingGrid) {
+		this.pathingGrid = pathingGrid;
+		pathingGrid.addPathingChangeListener(this);
+	}
+
+	public static int getCollisionClass(final float collisionSize) {
+		return (int) Math.ceil(collisionSize / COLLISION_CLASS_SIZE) * COLLISION_CLASS_SIZE;
+	}
+
+	public boolean contains(final int goalCellX, final int goalCellY, final MovementType movementType,
+			final float collisionSize) {
+		return this.keyToField.containsKey(key(goalCellX, goalCellY, movementType, collisionSize));
+	}
+
+	public FlowField get(final int goalCellX, final int goalCellY, final MovementType movementType,
+			final float collisionSize) {
+		final Long key = key(goalCellX, goalCellY, movementType, collisionSize);
+		FlowField field = this.keyToField.get(key);
+		if (field == null) {
+			field = new FlowField(goalCellX, goalCellY, movementType, getCollisionClass(collisionSize));
+			this.keyToField.put(key, field);
+		}
+		return field;
+	}
+
+	@Override
+	public void onPathingChanged(final int minCellX, final int minCellY, final int maxCellX, final int maxCellY) {
+		final Iterator<FlowField> iterator = this.keyToField.values().iterator();
+		while (iterator.hasNext()) {
+			final FlowField field = iterator.next();
+			if (field.hasExplored(minCellX, minCellY, maxCellX, maxCellY)) {
+				field.release();
+				iterator.remove();
+			}
+		}
+	}
+
+	private long key(final int goalCellX, final int goalCellY, final MovementType movementType,
+			final float collisionSize) {
+		final long goalCell = ((long) goalCellY * this.pathingGrid.getWidth()) + goalCellX;
+		return (goalCell << 24) | ((long) movementType.ordinal() << 16) | getCollisionClass(collisionSize);
+	}
+
+	private CellArrays obtainCellArrays() {
+		final CellArrays cellArrays = this.freeCellArrays.poll();
+		if (cellArrays == null) {
+			return new CellArrays(this.pathingGrid.getWidth() * this.pathingGrid.getHeight());
+		}
+		cellArrays.reset();
+		return cellArrays;
+	}
+
+	/**
+	 * The per cell state of one field, which is reused by a later field once the
+	 * field that had it is gone.
+	 */
+	private static final class CellArrays {
+		private final float[] distances;
+		private final byte[] directions;
+		private final byte[] walkable;
+		private final boolean[] settled;
+		private int[] heap;
+		private float[] heapKeys;
+
+		private CellArrays(final int cellCount) {
+			this.distances = new float[cellCount];
+			this.directions = new byte[cellCount];
+			this.walkable = new byte[cellCount];
+			this.settled = new boolean[cellCount];
+			this.heap = new int[64];
+			this.heapKeys = new float[64];
+			Arrays.fill(this.distances, Float.POSITIVE_INFINITY);
+			Arrays.fill(this.directions, NO_DIRECTION);
+		}
+
+		private void reset() {
+			Arrays.fill(this.distances, Float.POSITIVE_INFINITY);
+			Arrays.fill(this.directions, NO_DIRECTION);
+			Arrays.fill(this.walkable, WALKABLE_UNKNOWN);
+			Arrays.fill(this.settled, false);
+		}
+	}
+
+	public final class FlowField {
+		private final MovementType movementType;
+		private final int collisionClass;
+		private final int width;
+		private final int goalCellX;
+		private final int goalCellY;
+		private CellArrays cellArrays;
+		private float[] distances;
+		private byte[] directions;
+		private byte[] walkable;
+		private boolean[] settled;
+		// open set, a binary heap of cell indices with lazy deletion of stale entries
+		private int[] heap;
+		private float[] heapKeys;
+		private int heapSize;
+		private boolean valid = true;
+		// bounds of the cells whose walkability the field has looked at
+		private int exploredMinX = Integer.MAX_VALUE;
+		private int exploredMinY = Integer.MAX_VALUE;
+		private int exploredMaxX = Integer.MIN_VALUE;
+		private int exploredMaxY = Integer.MIN_VALUE;
+
+		private FlowField(final int goalCellX, final int goalCellY, final MovementType movementType,
+				final int collisionClass) {
+			this.movementType = movementType;
+			this.collisionClass = collisionClass;
+			this.width = CFlowFieldCache.this.pathingGrid.getWidth();
+			this.goalCellX = goalCellX;
+			this.goalCellY = goalCellY;
+			this.cellArrays = obtainCellArrays();
+			this.distances = this.cellArrays.distances;
+			this.directions = this.cellArrays.directions;
+			this.walkable = this.cellArrays.walkable;
+			this.settled = this.cellArrays.settled;
+			this.heap = this.cellArrays.heap;
+			this.heapKeys = this.cellArrays.heapKeys;
+			if (isWalkable(goalCellX, goalCellY)) {
+				final int goalIndex = (goalCellY * this.width) + goalCellX;
+				this.distances[goalIndex] = 0;
+				push(goalIndex, 0);
+			}
+		}
+
+		/**
+		 * False once the pathing map has changed where the field has looked, or the
+		 * field was evicted from the cache; a new field should be requested from the
+		 * cache.
+		 */
+		public boolean isValid() {
+			return this.valid;
+		}
+
+		/**
+		 * @return true if a pathing change in the given cells could change a cell
+		 *         that this field has already looked at
+		 */
+		private boolean hasExplored(final int minCellX, final int minCellY, final int maxCellX,
+				final int maxCellY) {
+			// the walkability of a cell depends on the cells within the collision size
+			final int margin = (int) Math.ceil(this.collisionClass / 32f) + 1;
+			return ((minCellX - margin) <= this.exploredMaxX) && ((maxCellX + margin) >= this.exploredMinX)
+					&& ((minCellY - margin) <= this.exploredMaxY) && ((maxCellY + margin) >= this.exploredMinY);
+		}
+
+		/**
+		 * Hands the arrays of this field to the pool. The field must not be used
+		 * again, which the null arrays make sure of.
+		 */
+		private void release() {
+			this.valid = false;
+			// the heap may have grown, so the pool keeps the bigger one
+			this.cellArrays.heap = this.heap;
+			this.cellArrays.heapKeys = this.heapKeys;
+			if (CFlowFieldCache.this.freeCellArrays.size() < MAX_CACHED_FIELDS) {
+				CFlowFieldCache.this.freeCellArrays.push(this.cellArrays);
+			}
+			this.cellArrays = null;
+			this.distances = null;
+			this.directions = null;
+			this.walkable = null;
+			this.settled = null;
+			this.heap = null;
+			this.heapKeys = null;
+			this.heapSize = 0;
+		}
+
+		public boolean isWalkable(final int cellX, final int cellY) {
+			if ((cellX < 0) || (cellY < 0) || (cellX >= this.width)
+					|| (cellY >= CFlowFieldCache.this.pathingGrid.getHeight())) {
+				return false;
+			}
+			final int index = (cellY * this.width) + cellX;
+			byte walkable = this.walkable[index];
+			if (walkable == WALKABLE_UNKNOWN) {
+				this.exploredMinX = Math.min(this.exploredMinX, cellX);
+				this.exploredMinY = Math.min(this.exploredMinY, cellY);
+				this.exploredMaxX = Math.max(this.exploredMaxX, cellX);
+				this.exploredMaxY = Math.max(this.exploredMaxY, cellY);
+				walkable = CFlowFieldCache.this.pathingGrid.isCellPathable(cellX, cellY, this.movementType,
+						this.collisionClass) ? WALKABLE_YES : WALKABLE_NO;
+				this.walkable[index] = walkable;
+			}
+			return walkable == WALKABLE_YES;
+		}
+
+		public boolean isReached(final int cellX, final int cellY) {
+			return this.settled[(cellY * this.width) + cellX];
+		}
+
+		/**
+		 * True when the search has settled every cell that can reach the goal, so a
+		 * cell that is not reached by now never will be.
+		 */
+		public boolean isExhausted() {
+			return this.heapSize == 0;
+		}
+
+		/**
+		 * Continues the search from the goal until the given cell is settled, or
+		 * until maxCells more cells have been settled.
+		 *
+		 * @return the number of cells that were settled
+		 */
+		public int expandUntilReached(final int cellX, final int cellY, final int maxCells) {
+			final int targetIndex = (cellY * this.width) + cellX;
+			int settledCells = 0;
+			while ((this.heapSize > 0) && !this.settled[targetIndex] && (settledCells < maxCells)) {
+				final int current = this.heap[0];
+				final float currentDistance = this.heapKeys[0];
+				pop();
+				if (this.settled[current] || (currentDistance > this.distances[current])) {
+					continue; // stale heap entry
+				}
+				this.settled[current] = true;
+				settledCells++;
+				final int currentX = current % this.width;
+				final int currentY = current / this.width;
+				for (int direction = 0; direction < DIRECTION_X_OFFSETS.length; direction++) {
+					final int xOffset = DIRECTION_X_OFFSETS[direction];
+					final int yOffset = DIRECTION_Y_OFFSETS[direction];
+					final int nextX = currentX + xOffset;
+					final int nextY = currentY + yOffset;
+					if (!isWalkable(nextX, nextY)) {
+						continue;
+					}
+					float cost = 1f;
+					if ((xOffset != 0) && (yOffset != 0)) {
+						// no cutting across the corner of an unwalkable cell
+						if (!isWalkable(currentX, nextY) || !isWalkable(nextX, currentY)) {
+							continue;
+						}
+						cost = DIAGONAL_COST;
+					}
+					final int next = (nextY * this.width) + nextX;
+					final float nextDistance = currentDistance + cost;
+					if (nextDistance < this.distances[next]) {
+						this.distances[next] = nextDistance;
+						// the unit at the next cell walks back the way the search came
+						this.directions[next] = (byte) ((direction + 4) % DIRECTION_X_OFFSETS.length);
+						push(next, nextDistance);
+					}
+				}
+			}
+			return settledCells;
+		}
+
+		/**
+		 * Follows the field from a reached cell to the goal, with one waypoint
+		 * wherever the direction changes, ending at the exact goal point.
+		 */
+		public LinkedList<Point2D.Float> buildPath(final int cellX, final int cellY, final Point2D.Float goal) {
+			final LinkedList<Point2D.Float> path = new LinkedList<>();
+			final PathingGrid pathingGrid = CFlowFieldCache.this.pathingGrid;
+			int x = cellX;
+			int y = cellY;
+			byte lastDirection = NO_DIRECTION;
+			int steps = 0;
+			while (((x != this.goalCellX) || (y != this.goalCellY)) && (steps < this.directions.length)) {
+				final byte direction = this.directions[(y * this.width) + x];
+				if (direction == NO_DIRECTION) {
+					break;
+				}
+				if ((lastDirection != NO_DIRECTION) && (direction != lastDirection)) {
+					path.add(new Point2D.Float(pathingGrid.getWorldX(x), pathingGrid.getWorldY(y)));
+				}
+				x += DIRECTION_X_OFFSETS[direction];
+				y += DIRECTION_Y_OFFSETS[direction];
+				lastDirection = direction;
+				steps++;
+			}
+			path.add(goal);
+			return path;
+		}
+
+		private void push(final int value, final float key) {
+			if (this.heapSize == this.heap.length) {
+				this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+				this.heapKeys = Arrays.copyOf(this.heapKeys, this.heapKeys.length * 2);
+			}
+			int index = this.heapSize++;
+			while (index > 0) {
+				final int parent = (index - 1) >>> 1;
+				if (this.heapKeys[parent] <= key) {
+					break;
+				}
+				this.heap[index] = this.heap[parent];
+				this.heapKeys[index] = this.heapKeys[parent];
+				index = parent;
+			}
+			this.heap[index] = value;
+			this.heapKeys[index] = key;
+		}
+
+		private void pop() {
+			this.heapSize--;
+			final int value = this.heap[this.heapSize];
+			final float key = this.heapKeys[this.heapSize];
+			int index = 0;
+			while (true) {
+				int child = (index * 2) + 1;
+				if (child >= this.heapSize) {
+					break;
+				}
+				if (((child + 1) < this.heapSize) && (this.heapKeys[child + 1] < this.heapKeys[child])) {
+					child++;
+				}
+				if (this.heapKeys[child] >= key) {
+					break;
+				}
+				this.heap[index] = this.heap[child];
+				this.heapKeys[index] = this.heapKeys[child];
+				index = child;
+			}
+			this.heap[index] = value;
+			this.heapKeys[index] = key;
+		}
+	}
+}
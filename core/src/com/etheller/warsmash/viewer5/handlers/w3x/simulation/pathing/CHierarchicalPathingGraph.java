@@ -0,0 +1,619 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
+
+/**
+ * Hierarchical (HPA*) view of the static pathing grid. The grid is split into
+ * square clusters, and wherever two neighboring clusters share walkable border
+ * cells there is an entrance. Entrances inside a cluster are connected with
+ * precomputed distances, so a long distance search only has to walk the small
+ * abstract graph of entrances instead of every cell on the map.
+ *
+ * The result of an abstract search is a corridor of clusters, and the cell
+ * level A* in {@link CPathfindingProcessor} is then only allowed to expand
+ * nodes inside that corridor. That is where the refinement to a real path
+ * happens, including the avoidance of units that this graph does not know
+ * about.
+ *
+ * There is one abstract graph per movement type and collision class (see
+ * {@link CFlowFieldCache#getCollisionClass(float)}), built for the largest
+ * collision size of its class. When a building or tree changes the pathing map,
+ * only the clusters under its footprint are rebuilt. Building and rebuilding is
+ * charged to the pathfinding work budget and spread over as many searches as it
+ * takes; until a graph is up to date, searches go without a corridor.
+ */
+public class CHierarchicalPathingGraph implements PathingGrid.PathingChangeListener {
+	public static final int CLUSTER_SIZE = 16;
+	private static final int CLUSTER_CELL_COUNT = CLUSTER_SIZE * CLUSTER_SIZE;
+	// Entrances longer than this get a transition at both ends instead of one in
+	// the middle
+	private static final int MAX_SINGLE_TRANSITION_ENTRANCE_LENGTH = 6;
+	// Searches between clusters closer than this are cheap enough without a
+	// corridor
+	private static final int MIN_CLUSTER_DISTANCE = 2;
+	private static final float DIAGONAL_COST = (float) Math.sqrt(2);
+	// checking the walkability of a cell or settling it in a cluster local search
+	// is much cheaper than an A* iteration, which checks unit collision for every
+	// neighbor
+	private static final int CELLS_PER_WORK_ITERATION = 8;
+	private static final int CLUSTER_WORK = CLUSTER_CELL_COUNT / CELLS_PER_WORK_ITERATION;
+	private static final int BORDER_WORK = CLUSTER_SIZE / CELLS_PER_WORK_ITERATION;
+
+	private final PathingGrid pathingGrid;
+	private final int width;
+	private final int height;
+	private final int clustersX;
+	private final int clustersY;
+	private final EnumMap<MovementType, List<ClusterGraph>> movementTypeToGraphs = new EnumMap<>(
+			MovementType.class);
+
+	// scratch state for cluster local searches, shared by all graphs
+	private final float[] localDistances = new float[CLUSTER_CELL_COUNT];
+	private final int[] localSearchIds = new int[CLUSTER_CELL_COUNT];
+	private final IndexedMinHeap localOpenSet = new IndexedMinHeap(CLUSTER_CELL_COUNT);
+	private int localSearchId = 0;
+	private final float[] startNodeDistances = new float[CLUSTER_CELL_COUNT];
+	private final float[] goalNodeDistances = new float[CLUSTER_CELL_COUNT];
+	private final List<AbstractNode> corridorNodes = new ArrayList<>();
+	private int corridorWork;
+
+	public CHierarchicalPathingGraph(final PathingGrid pathingGrid) {
+		this.pathingGrid = pathingGrid;
+		this.width = pathingGrid.getWidth();
+		this.height = pathingGrid.getHeight();
+		this.clustersX = ((this.width + CLUSTER_SIZE) - 1) / CLUSTER_SIZE;
+		this.clustersY = ((this.height + CLUSTER_SIZE) - 1) / CLUSTER_SIZE;
+		pathingGrid.addPathingChangeListener(this);
+	}
+
+	public int getClusterCount() {
+		return this.clustersX * this.clustersY;
+	}
+
+	public int getClusterIndex(final int cellX, final int cellY) {
+		return ((cellY / CLUSTER_SIZE) * this.clustersX) + (cellX / CLUSTER_SIZE);
+	}
+
+	/**
+	 * Runs the abstract search from the start cell to the goal cell, and stamps
+	 * every cluster of the resulting corridor (plus a ring of neighboring clusters,
+	 * so that the refined path has room to avoid units) into clusterStamps. Up to
+	 * workBudget work iterations go to bringing the graph up to date first, see
+	 * {@link #getCorridorWork()} for how many were used.
+	 *
+	 * @return false if the two cells are too close for a corridor to help, if the
+	 *         graph is still being rebuilt, or if the static pathing has no route
+	 *         between them; either way the caller should search without a corridor
+	 */
+	public boolean findCorridor(final MovementType movementType, final float collisionSize, final int startCellX,
+			final int startCellY, final int goalCellX, final int goalCellY, final int[] clusterStamps,
+			final int stamp, final int workBudget) {
+		this.corridorWork = 0;
+		if ((Math.abs((startCellX / CLUSTER_SIZE) - (goalCellX / CLUSTER_SIZE)) < MIN_CLUSTER_DISTANCE)
+				&& (Math.abs((startCellY / CLUSTER_SIZE) - (goalCellY / CLUSTER_SIZE)) < MIN_CLUSTER_DISTANCE)) {
+			return false;
+		}
+		if (!isInBounds(startCellX, startCellY) || !isInBounds(goalCellX, goalCellY)) {
+			return false;
+		}
+		final ClusterGraph graph = getGraph(movementType, CFlowFieldCache.getCollisionClass(collisionSize));
+		this.corridorWork = graph.rebuildDirtyClusters(workBudget);
+		if (graph.anyDirty) {
+			return false;
+		}
+		if (!graph.walkable[(startCellY * this.width) + startCellX]
+				|| !graph.walkable[(goalCellY * this.width) + goalCellX]) {
+			return false;
+		}
+		final AbstractNode lastNode = graph.search(startCellX, startCellY, goalCellX, goalCellY);
+		if (lastNode == null) {
+			return false;
+		}
+		this.corridorNodes.clear();
+		for (AbstractNode node = lastNode; node != null; node = node.cameFrom) {
+			this.corridorNodes.add(node);
+		}
+		stampCluster(getClusterIndex(startCellX, startCellY), clusterStamps, stamp);
+		stampCluster(getClusterIndex(goalCellX, goalCellY), clusterStamps, stamp);
+		for (int i = 0; i < this.corridorNodes.size(); i++) {
+			stampCluster(this.corridorNodes.get(i).cluster, clusterStamps, stamp);
+		}
+		this.corridorNodes.clear();
+		return true;
+	}
+
+	/**
+	 * @return the work iterations that the last {@link #findCorridor} spent on
+	 *         building or rebuilding the graph
+	 */
+	public int getCorridorWork() {
+		return this.corridorWork;
+	}
+
+	private void stampCluster(final int cluster, final int[] clusterStamps, final int stamp) {
+		final int clusterX = cluster % this.clustersX;
+		final int clusterY = cluster / this.clustersX;
+		for (int j = Math.max(0, clusterY - 1); j <= Math.min(this.clustersY - 1, clusterY + 1); j++) {
+			for (int i = Math.max(0, clusterX - 1); i <= Math.min(this.clustersX - 1, clusterX + 1); i++) {
+				clusterStamps[(j * this.clustersX) + i] = stamp;
+			}
+		}
+	}
+
+	@Override
+	public void onPathingChanged(final int minCellX, final int minCellY, final int maxCellX, final int maxCellY) {
+		for (final List<ClusterGraph> graphs : this.movementTypeToGraphs.values()) {
+			for (int i = 0; i < graphs.size(); i++) {
+				graphs.get(i).markDirty(minCellX, minCellY, maxCellX, maxCellY);
+			}
+		}
+	}
+
+	private ClusterGraph getGraph(final MovementType movementType, final int collisionClass) {
+		List<ClusterGraph> graphs = this.movementTypeToGraphs.get(movementType);
+		if (graphs == null) {
+			graphs = new ArrayList<>();
+			this.movementTypeToGraphs.put(movementType, graphs);
+		}
+		for (int i = 0; i < graphs.size(); i++) {
+			final ClusterGraph graph = graphs.get(i);
+			if (graph.collisionClass == collisionClass) {
+				return graph;
+			}
+		}
+		final ClusterGraph graph = new ClusterGraph(movementType, collisionClass);
+		graphs.add(graph);
+		return graph;
+	}
+
+	private boolean isInBounds(final int cellX, final int cellY) {
+		return (cellX >= 0) && (cellY >= 0) && (cellX < this.width) && (cellY < this.height);
+	}
+
+	private static float octileDistance(final int dx, final int dy) {
+		final int absDx = Math.abs(dx);
+		final int absDy = Math.abs(dy);
+		final int min = Math.min(absDx, absDy);
+		return (Math.max(absDx, absDy) - min) + (min * DIAGONAL_COST);
+	}
+
+	private final class ClusterGraph {
+		private final MovementType movementType;
+		private final int collisionClass;
+		private final int dirtyMarginCells;
+		private final boolean[] walkable;
+		// entrances on the border between a cluster and its neighbor at +x or +y
+		private final List<AbstractNode>[] eastBorderNodes;
+		private final List<AbstractNode>[] northBorderNodes;
+		private final List<AbstractNode>[] clusterNodes;
+		private final boolean[] dirtyClusters;
+		private final boolean[] dirtyBorders;
+		private final boolean[] clustersToReconnect;
+		private boolean anyDirty;
+		private int searchId = 0;
+		private final PriorityQueue<AbstractNode> openSet = new PriorityQueue<>(new Comparator<AbstractNode>() {
+			@Override
+			public int compare(final AbstractNode a, final AbstractNode b) {
+				return Float.compare(a.f, b.f);
+			}
+		});
+
+		@SuppressWarnings("unchecked")
+		private ClusterGraph(final MovementType movementType, final int collisionClass) {
+			this.movementType = movementType;
+			this.collisionClass = collisionClass;
+			this.dirtyMarginCells = (int) Math.ceil(collisionClass / 32f) + 1;
+			this.walkable = new boolean[CHierarchicalPathingGraph.this.width
+					* CHierarchicalPathingGraph.this.height];
+			final int clusterCount = getClusterCount();
+			this.eastBorderNodes = new List[clusterCount];
+			this.northBorderNodes = new List[clusterCount];
+			this.clusterNodes = new List[clusterCount];
+			for (int i = 0; i < clusterCount; i++) {
+				this.eastBorderNodes[i] = new ArrayList<>();
+				this.northBorderNodes[i] = new ArrayList<>();
+				this.clusterNodes[i] = new ArrayList<>();
+			}
+			this.dirtyClusters = new boolean[clusterCount];
+			this.dirtyBorders = new boolean[clusterCount * 2];
+			this.clustersToReconnect = new boolean[clusterCount];
+			markDirty(0, 0, CHierarchicalPathingGraph.this.width - 1, CHierarchicalPathingGraph.this.height - 1);
+		}
+
+		private void markDirty(final int minCellX, final int minCellY, final int maxCellX, final int maxCellY) {
+			final int minClusterX = Math.max(0, minCellX - this.dirtyMarginCells) / CLUSTER_SIZE;
+			final int minClusterY = Math.max(0, minCellY - this.dirtyMarginCells) / CLUSTER_SIZE;
+			final int maxClusterX = Math.min(CHierarchicalPathingGraph.this.width - 1,
+					maxCellX + this.dirtyMarginCells) / CLUSTER_SIZE;
+			final int maxClusterY = Math.min(CHierarchicalPathingGraph.this.height - 1,
+					maxCellY + this.dirtyMarginCells) / CLUSTER_SIZE;
+			for (int clusterY = minClusterY; clusterY <= maxClusterY; clusterY++) {
+				for (int clusterX = minClusterX; clusterX <= maxClusterX; clusterX++) {
+					this.dirtyClusters[(clusterY * CHierarchicalPathingGraph.this.clustersX) + clusterX] = true;
+				}
+			}
+			this.anyDirty = true;
+		}
+
+		/**
+		 * Rebuilds the dirty clusters, then the borders around them, then the
+		 * connections inside the clusters next to those borders, until workBudget
+		 * runs out. The flags say what is left, so the next call picks up from there.
+		 *
+		 * @return the work iterations used
+		 */
+		private int rebuildDirtyClusters(final int workBudget) {
+			if (!this.anyDirty) {
+				return 0;
+			}
+			int work = 0;
+			final int clustersX = CHierarchicalPathingGraph.this.clustersX;
+			final int clustersY = CHierarchicalPathingGraph.this.clustersY;
+			for (int cluster = 0; cluster < this.dirtyClusters.length; cluster++) {
+				if (this.dirtyClusters[cluster]) {
+					if (work >= workBudget) {
+						return work;
+					}
+					final int clusterX = cluster % clustersX;
+					final int clusterY = cluster / clustersX;
+					updateWalkable(clusterX, clusterY);
+					work += CLUSTER_WORK;
+					this.dirtyBorders[cluster * 2] = true;
+					this.dirtyBorders[(cluster * 2) + 1] = true;
+					if (clusterX > 0) {
+						this.dirtyBorders[(cluster - 1) * 2] = true;
+					}
+					if (clusterY > 0) {
+						this.dirtyBorders[((cluster - clustersX) * 2) + 1] = true;
+					}
+					this.dirtyClusters[cluster] = false;
+				}
+			}
+			for (int cluster = 0; cluster < this.clusterNodes.length; cluster++) {
+				final int clusterX = cluster % clustersX;
+				final int clusterY = cluster / clustersX;
+				if (this.dirtyBorders[cluster * 2] || this.dirtyBorders[(cluster * 2) + 1]) {
+					if (work >= workBudget) {
+						return work;
+					}
+				}
+				if (this.dirtyBorders[cluster * 2]) {
+					this.dirtyBorders[cluster * 2] = false;
+					if (clusterX < (clustersX - 1)) {
+						rebuildBorder(this.eastBorderNodes[cluster], clusterX, clusterY, true);
+						work += BORDER_WORK;
+						this.clustersToReconnect[cluster] = true;
+						this.clustersToReconnect[cluster + 1] = true;
+					}
+				}
+				if (this.dirtyBorders[(cluster * 2) + 1]) {
+					this.dirtyBorders[(cluster * 2) + 1] = false;
+					if (clusterY < (clustersY - 1)) {
+						rebuildBorder(this.northBorderNodes[cluster], clusterX, clusterY, false);
+						work += BORDER_WORK;
+						this.clustersToReconnect[cluster] = true;
+						this.clustersToReconnect[cluster + clustersX] = true;
+					}
+				}
+			}
+			for (int cluster = 0; cluster < this.clusterNodes.length; cluster++) {
+				if (this.clustersToReconnect[cluster]) {
+					if (work >= workBudget) {
+						return work;
+					}
+					this.clustersToReconnect[cluster] = false;
+					reconnectCluster(cluster);
+					// one local search per entrance node of the cluster
+					work += Math.max(1, this.clusterNodes[cluster].size()) * CLUSTER_WORK;
+				}
+			}
+			this.anyDirty = false;
+			return work;
+		}
+
+		private void updateWalkable(final int clusterX, final int clusterY) {
+			final int width = CHierarchicalPathingGraph.this.width;
+			final int maxCellX = Math.min(width, (clusterX + 1) * CLUSTER_SIZE);
+			final int maxCellY = Math.min(CHierarchicalPathingGraph.this.height, (clusterY + 1) * CLUSTER_SIZE);
+			for (int cellY = clusterY * CLUSTER_SIZE; cellY < maxCellY; cellY++) {
+				for (int cellX = clusterX * CLUSTER_SIZE; cellX < maxCellX; cellX++) {
+					this.walkable[(cellY * width) + cellX] = CHierarchicalPathingGraph.this.pathingGrid
+							.isCellPathable(cellX, cellY, this.movementType, this.collisionClass);
+				}
+			}
+		}
+
+		/**
+		 * Finds the entrances on the border between a cluster and its neighbor at +x
+		 * (east) or +y (north). Each maximal run of cells that are walkable on both
+		 * sides is one entrance, with a pair of linked nodes at one or two transition
+		 * points along the run.
+		 */
+		private void rebuildBorder(final List<AbstractNode> borderNodes, final int clusterX, final int clusterY,
+				final boolean east) {
+			borderNodes.clear();
+			final int width = CHierarchicalPathingGraph.this.width;
+			final int insideFixed = east ? (((clusterX + 1) * CLUSTER_SIZE) - 1) : (((clusterY + 1) * CLUSTER_SIZE) - 1);
+			final int runStart = east ? clusterY * CLUSTER_SIZE : clusterX * CLUSTER_SIZE;
+			final int runEnd = Math.min(east ? CHierarchicalPathingGraph.this.height : width,
+					runStart + CLUSTER_SIZE);
+			int entranceStart = -1;
+			for (int along = runStart; along <= runEnd; along++) {
+				boolean open = false;
+				if (along < runEnd) {
+					if (east) {
+						open = this.walkable[(along * width) + insideFixed]
+								&& this.walkable[(along * width) + insideFixed + 1];
+					}
+					else {
+						open = this.walkable[(insideFixed * width) + along]
+								&& this.walkable[((insideFixed + 1) * width) + along];
+					}
+				}
+				if (open) {
+					if (entranceStart == -1) {
+						entranceStart = along;
+					}
+				}
+				else if (entranceStart != -1) {
+					final int entranceEnd = along - 1;
+					if (((entranceEnd - entranceStart) + 1) <= MAX_SINGLE_TRANSITION_ENTRANCE_LENGTH) {
+						addTransition(borderNodes, insideFixed, (entranceStart + entranceEnd) / 2, east);
+					}
+					else {
+						addTransition(borderNodes, insideFixed, entranceStart, east);
+						addTransition(borderNodes, insideFixed, entranceEnd, east);
+					}
+					entranceStart = -1;
+				}
+			}
+		}
+
+		private void addTransition(final List<AbstractNode> borderNodes, final int insideFixed, final int along,
+				final boolean east) {
+			final AbstractNode inside;
+			final AbstractNode outside;
+			if (east) {
+				inside = new AbstractNode(insideFixed, along, getClusterIndex(insideFixed, along));
+				outside = new AbstractNode(insideFixed + 1, along, getClusterIndex(insideFixed + 1, along));
+			}
+			else {
+				inside = new AbstractNode(along, insideFixed, getClusterIndex(along, insideFixed));
+				outside = new AbstractNode(along, insideFixed + 1, getClusterIndex(along, insideFixed + 1));
+			}
+			inside.peer = outside;
+			outside.peer = inside;
+			borderNodes.add(inside);
+			borderNodes.add(outside);
+		}
+
+		private void reconnectCluster(final int cluster) {
+			final int clustersX = CHierarchicalPathingGraph.this.clustersX;
+			final List<AbstractNode> nodes = this.clusterNodes[cluster];
+			nodes.clear();
+			collectClusterNodes(nodes, this.eastBorderNodes[cluster], cluster);
+			collectClusterNodes(nodes, this.northBorderNodes[cluster], cluster);
+			if ((cluster % clustersX) > 0) {
+				collectClusterNodes(nodes, this.eastBorderNodes[cluster - 1], cluster);
+			}
+			if (cluster >= clustersX) {
+				collectClusterNodes(nodes, this.northBorderNodes[cluster - clustersX], cluster);
+			}
+			final int nodeCount = nodes.size();
+			for (int i = 0; i < nodeCount; i++) {
+				final AbstractNode node = nodes.get(i);
+				searchCluster(this, cluster, node.cellX, node.cellY);
+				int reachable = 0;
+				for (int j = 0; j < nodeCount; j++) {
+					if ((j != i) && !Float.isInfinite(getLocalDistance(nodes.get(j)))) {
+						reachable++;
+					}
+				}
+				node.intraTargets = new AbstractNode[reachable];
+				node.intraCosts = new float[reachable];
+				int edgeIndex = 0;
+				for (int j = 0; j < nodeCount; j++) {
+					final AbstractNode other = nodes.get(j);
+					final float distance = getLocalDistance(other);
+					if ((j != i) && !Float.isInfinite(distance)) {
+						node.intraTargets[edgeIndex] = other;
+						node.intraCosts[edgeIndex] = distance;
+						edgeIndex++;
+					}
+				}
+			}
+		}
+
+		private void collectClusterNodes(final List<AbstractNode> clusterNodes,
+				final List<AbstractNode> borderNodes, final int cluster) {
+			for (int i = 0; i < borderNodes.size(); i++) {
+				final AbstractNode node = borderNodes.get(i);
+				if (node.cluster == cluster) {
+					clusterNodes.add(node);
+				}
+			}
+		}
+
+		private AbstractNode search(final int startCellX, final int startCellY, final int goalCellX,
+				final int goalCellY) {
+			this.searchId++;
+			final int startCluster = getClusterIndex(startCellX, startCellY);
+			final int goalCluster = getClusterIndex(goalCellX, goalCellY);
+			final List<AbstractNode> startNodes = this.clusterNodes[startCluster];
+			final List<AbstractNode> goalNodes = this.clusterNodes[goalCluster];
+
+			searchCluster(this, goalCluster, goalCellX, goalCellY);
+			for (int i = 0; i < goalNodes.size(); i++) {
+				CHierarchicalPathingGraph.this.goalNodeDistances[i] = getLocalDistance(goalNodes.get(i));
+				goalNodes.get(i).goalIndex = i;
+				goalNodes.get(i).goalSearchId = this.searchId;
+			}
+			searchCluster(this, startCluster, startCellX, startCellY);
+			for (int i = 0; i < startNodes.size(); i++) {
+				CHierarchicalPathingGraph.this.startNodeDistances[i] = getLocalDistance(startNodes.get(i));
+			}
+
+			this.openSet.clear();
+			for (int i = 0; i < startNodes.size(); i++) {
+				final float distance = CHierarchicalPathingGraph.this.startNodeDistances[i];
+				if (!Float.isInfinite(distance)) {
+					final AbstractNode node = startNodes.get(i);
+					node.touch(this.searchId);
+					node.g = distance;
+					node.f = distance + heuristic(node, goalCellX, goalCellY);
+					this.openSet.add(node);
+				}
+			}
+
+			AbstractNode bestGoalNode = null;
+			float bestGoalCost = Float.POSITIVE_INFINITY;
+			while (!this.openSet.isEmpty()) {
+				final AbstractNode current = this.openSet.poll();
+				if (current.closed) {
+					continue;
+				}
+				if (current.f >= bestGoalCost) {
+					break;
+				}
+				current.closed = true;
+				if (current.goalSearchId == this.searchId) {
+					final float goalDistance = CHierarchicalPathingGraph.this.goalNodeDistances[current.goalIndex];
+					if ((current.g + goalDistance) < bestGoalCost) {
+						bestGoalCost = current.g + goalDistance;
+						bestGoalNode = current;
+					}
+				}
+				if (current.peer != null) {
+					relax(current, current.peer, 1f, goalCellX, goalCellY);
+				}
+				if (current.intraTargets != null) {
+					for (int i = 0; i < current.intraTargets.length; i++) {
+						relax(current, current.intraTargets[i], current.intraCosts[i], goalCellX, goalCellY);
+					}
+				}
+			}
+			this.openSet.clear();
+			return bestGoalNode;
+		}
+
+		private void relax(final AbstractNode current, final AbstractNode neighbor, final float cost,
+				final int goalCellX, final int goalCellY) {
+			neighbor.touch(this.searchId);
+			final float tentativeScore = current.g + cost;
+			if (!neighbor.closed && (tentativeScore < neighbor.g)) {
+				neighbor.g = tentativeScore;
+				neighbor.f = tentativeScore + heuristic(neighbor, goalCellX, goalCellY);
+				neighbor.cameFrom = current;
+				this.openSet.add(neighbor);
+			}
+		}
+
+		private float heuristic(final AbstractNode node, final int goalCellX, final int goalCellY) {
+			return octileDistance(goalCellX - node.cellX, goalCellY - node.cellY);
+		}
+	}
+
+	private float getLocalDistance(final AbstractNode node) {
+		final int localIndex = ((node.cellY % CLUSTER_SIZE) * CLUSTER_SIZE) + (node.cellX % CLUSTER_SIZE);
+		if (this.localSearchIds[localIndex] != this.localSearchId) {
+			return Float.POSITIVE_INFINITY;
+		}
+		return this.localDistances[localIndex];
+	}
+
+	/**
+	 * Dijkstra over the walkable cells of one cluster, from one cell. The results
+	 * are read back with {@link #getLocalDistance(AbstractNode)} until the next
+	 * call.
+	 */
+	private void searchCluster(final ClusterGraph graph, final int cluster, final int fromCellX,
+			final int fromCellY) {
+		this.localSearchId++;
+		final int originX = (cluster % this.clustersX) * CLUSTER_SIZE;
+		final int originY = (cluster / this.clustersX) * CLUSTER_SIZE;
+		final int sizeX = Math.min(CLUSTER_SIZE, this.width - originX);
+		final int sizeY = Math.min(CLUSTER_SIZE, this.height - originY);
+		final boolean[] walkable = graph.walkable;
+		final int fromIndex = ((fromCellY - originY) * CLUSTER_SIZE) + (fromCellX - originX);
+		this.localDistances[fromIndex] = 0;
+		this.localSearchIds[fromIndex] = this.localSearchId;
+		this.localOpenSet.addOrUpdate(fromIndex, 0);
+		while (!this.localOpenSet.isEmpty()) {
+			final int current = this.localOpenSet.poll();
+			final float currentDistance = this.localDistances[current];
+			final int localX = current % CLUSTER_SIZE;
+			final int localY = current / CLUSTER_SIZE;
+			for (int dy = -1; dy <= 1; dy++) {
+				for (int dx = -1; dx <= 1; dx++) {
+					if ((dx == 0) && (dy == 0)) {
+						continue;
+					}
+					final int nextX = localX + dx;
+					final int nextY = localY + dy;
+					if ((nextX < 0) || (nextY < 0) || (nextX >= sizeX) || (nextY >= sizeY)) {
+						continue;
+					}
+					if (!walkable[((originY + nextY) * this.width) + originX + nextX]) {
+						continue;
+					}
+					float cost = 1f;
+					if ((dx != 0) && (dy != 0)) {
+						// no cutting across the corner of an unwalkable cell
+						if (!walkable[((originY + localY) * this.width) + originX + nextX]
+								|| !walkable[((originY + nextY) * this.width) + originX + localX]) {
+							continue;
+						}
+						cost = DIAGONAL_COST;
+					}
+					final int next = (nextY * CLUSTER_SIZE) + nextX;
+					final float nextDistance = currentDistance + cost;
+					if ((this.localSearchIds[next] != this.localSearchId) || (nextDistance < this.localDistances[next])) {
+						this.localSearchIds[next] = this.localSearchId;
+						this.localDistances[next] = nextDistance;
+						this.localOpenSet.addOrUpdate(next, nextDistance);
+					}
+				}
+			}
+		}
+	}
+
+	private static final class AbstractNode {
+		private final int cellX;
+		private final int cellY;
+		private final int cluster;
+		private AbstractNode peer;
+		private AbstractNode[] intraTargets;
+		private float[] intraCosts;
+		// state of the current abstract search
+		private int searchId;
+		private float g;
+		private float f;
+		private boolean closed;
+		private AbstractNode cameFrom;
+		private int goalSearchId;
+		private int goalIndex;
+
+		private AbstractNode(final int cellX, final int cellY, final int cluster) {
+			this.cellX = cellX;
+			this.cellY = cellY;
+			this.cluster = cluster;
+		}
+
+		private void touch(final int searchId) {
+			if (searchId != this.searchId) {
+				this.g = Float.POSITIVE_INFINITY;
+				this.f = Float.POSITIVE_INFINITY;
+				this.closed = false;
+				this.cameFrom = null;
+				this.searchId = searchId;
+			}
+		}
+	}
+}
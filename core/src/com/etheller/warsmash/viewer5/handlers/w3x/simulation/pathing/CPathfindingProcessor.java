@@ -1,12 +1,12 @@
 package com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing;
 
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
+import java.util.List;
 
 import com.badlogic.gdx.math.Rectangle;
 import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
@@ -18,35 +18,97 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.behaviors.CBehavior
 
 public class CPathfindingProcessor {
 	private static final Rectangle tempRect = new Rectangle();
+	private static final Rectangle jumpPointSearchRect = new Rectangle();
+	private static final byte NO_DIRECTION = -1;
+	private static final double DIAGONAL_LENGTH = Math.sqrt(2);
+	// jump point search is limited to the bounding box of the start and goal grown
+	// by this much, and only used if no other units are inside that box
+	private static final float JUMP_POINT_SEARCH_MARGIN = 512f;
+	// a jump scans nodes in a straight line, which costs a bitset lookup or two per
+	// node instead of unit collision checks
+	private static final int JUMP_POINT_SCANS_PER_WORK_ITERATION = 32;
+	// settling a flow field cell is much cheaper than an A* iteration, which checks
+	// unit collision for every neighbor
+	private static final int FLOW_FIELD_CELLS_PER_WORK_ITERATION = 8;
+	// move orders with at least this many units queued to the same goal cell share
+	// a flow field
+	private static final int FLOW_FIELD_MIN_GROUP_SIZE = 4;
 	private final PathingGrid pathingGrid;
 	private final CWorldCollision worldCollision;
+	private final CHierarchicalPathingGraph hierarchicalPathingGraph;
+	private final CFlowFieldCache flowFieldCache;
+	private final CPathingBitsets pathingBitsets;
+	private boolean jumpPointSearchEnabled = true;
 	private final LinkedList<PathfindingJob> moveQueue = new LinkedList<>();
-	// things with modified state per current job:
-	private final Node[][] nodes;
-	private final Node[][] cornerNodes;
-	private final Node[] goalSet = new Node[4];
+	private final SearchGraph cellGraph;
+	private final SearchGraph cornerGraph;
+	// things with modified state per current job, indexed by node, and sized for
+	// the corner graph which is the larger one. Allocated on the first job, because
+	// most player slots never search for a path
+	private double[] nodeScores;
+	private int[] nodeCameFrom;
+	private byte[] nodeCameFromDirection;
+	private int[] nodeJobIds;
+	private IndexedMinHeap openSet;
+	private final int[] goalSet = new int[9];
+	private final float[] goalSetX = new float[9];
+	private final float[] goalSetY = new float[9];
 	private int goals = 0;
+	// the result path is collected here back to front before it is copied out
+	private float[] pathBufferX = new float[64];
+	private float[] pathBufferY = new float[64];
+	private int pathBufferSize = 0;
+	// state of the current jump point search
+	private CPathingBitsets.Bitset jumpBitset;
+	private int jumpGraphWidth;
+	private int jumpMinX;
+	private int jumpMinY;
+	private int jumpMaxX;
+	private int jumpMaxY;
+	private int jumpGoalX;
+	private int jumpGoalY;
+	private int jumpScans;
+	private int jumpPointSearchWork;
 	private int pathfindJobId = 0;
 	private int totalIterations = 0;
 	private int totalJobLoops = 0;
+	// metrics for the pathfinding scheduler
+	private int completedJobs = 0;
+	private long totalWaitTicks = 0;
+	private int maxWaitTicks = 0;
 	private final int pathingGridCellCount;
+	// clusters stamped with the current pathfindJobId are inside the corridor
+	private final int[] corridorClusterStamps;
 
-	public CPathfindingProcessor(final PathingGrid pathingGrid, final CWorldCollision worldCollision) {
+	public CPathfindingProcessor(final PathingGrid pathingGrid, final CWorldCollision worldCollision,
+			final CHierarchicalPathingGraph hierarchicalPathingGraph, final CFlowFieldCache flowFieldCache,
+			final CPathingBitsets pathingBitsets) {
 		this.pathingGrid = pathingGrid;
 		this.worldCollision = worldCollision;
-		this.nodes = new Node[pathingGrid.getHeight()][pathingGrid.getWidth()];
-		this.cornerNodes = new Node[pathingGrid.getHeight() + 1][pathingGrid.getWidth() + 1];
-		for (int i = 0; i < this.nodes.length; i++) {
-			for (int j = 0; j < this.nodes[i].length; j++) {
-				this.nodes[i][j] = new Node(new Point2D.Float(pathingGrid.getWorldX(j), pathingGrid.getWorldY(i)));
+		this.hierarchicalPathingGraph = hierarchicalPathingGraph;
+		this.flowFieldCache = flowFieldCache;
+		this.pathingBitsets = pathingBitsets;
+		this.corridorClusterStamps = new int[hierarchicalPathingGraph.getClusterCount()];
+		final int width = pathingGrid.getWidth();
+		final int height = pathingGrid.getHeight();
+		final float[] cellWorldX = new float[width];
+		final float[] cellWorldY = new float[height];
+		final float[] cornerWorldX = new float[width + 1];
+		final float[] cornerWorldY = new float[height + 1];
+		for (int i = 0; i <= width; i++) {
+			if (i < width) {
+				cellWorldX[i] = pathingGrid.getWorldX(i);
 			}
+			cornerWorldX[i] = pathingGrid.getWorldXFromCorner(i);
 		}
-		for (int i = 0; i < this.cornerNodes.length; i++) {
-			for (int j = 0; j < this.cornerNodes[i].length; j++) {
-				this.cornerNodes[i][j] = new Node(
-						new Point2D.Float(pathingGrid.getWorldXFromCorner(j), pathingGrid.getWorldYFromCorner(i)));
+		for (int i = 0; i <= height; i++) {
+			if (i < height) {
+				cellWorldY[i] = pathingGrid.getWorldY(i);
 			}
+			cornerWorldY[i] = pathingGrid.getWorldYFromCorner(i);
 		}
+		this.cellGraph = new SearchGraph(GridMapping.CELLS, cellWorldX, cellWorldY);
+		this.cornerGraph = new SearchGraph(GridMapping.CORNERS, cornerWorldX, cornerWorldY);
 		this.pathingGridCellCount = pathingGrid.getWidth() * pathingGrid.getHeight();
 	}
 
@@ -69,9 +131,9 @@ public class CPathfindingProcessor {
 	public void findNaiveSlowPath(final CUnit ignoreIntersectionsWithThisUnit,
 			final CUnit ignoreIntersectionsWithThisSecondUnit, final float startX, final float startY,
 			final Point2D.Float goal, final PathingGrid.MovementType movementType, final float collisionSize,
-			final boolean allowSmoothing, final CBehaviorMove queueItem) {
+			final boolean allowSmoothing, final CBehaviorMove queueItem, final int gameTurnTick) {
 		this.moveQueue.offer(new PathfindingJob(ignoreIntersectionsWithThisUnit, ignoreIntersectionsWithThisSecondUnit,
-				startX, startY, goal, movementType, collisionSize, allowSmoothing, queueItem));
+				startX, startY, goal, movementType, collisionSize, allowSmoothing, queueItem, gameTurnTick));
 	}
 
 	public void removeFromPathfindingQueue(final CBehaviorMove behaviorMove) {
@@ -111,27 +173,21 @@ public class CPathfindingProcessor {
 		return (((2 * (int) collisionSize) / 32) % 2) == 1;
 	}
 
-	public double f(final Node n) {
-		return n.g + h(n);
-	}
-
-	public double g(final Node n) {
-		return n.g;
-	}
-
-	private boolean isGoal(final Node n) {
+	private boolean isGoal(final int node) {
 		for (int i = 0; i < this.goals; i++) {
-			if (n == this.goalSet[i]) {
+			if (node == this.goalSet[i]) {
 				return true;
 			}
 		}
 		return false;
 	}
 
-	public float h(final Node n) {
+	private float h(final SearchGraph graph, final int node) {
+		final float x = graph.getWorldX(node);
+		final float y = graph.getWorldY(node);
 		float bestDistance = 0;
 		for (int i = 0; i < this.goals; i++) {
-			final float possibleDistance = (float) n.point.distance(this.goalSet[i].point);
+			final float possibleDistance = (float) Point2D.distance(x, y, this.goalSetX[i], this.goalSetY[i]);
 			if (possibleDistance > bestDistance) {
 				bestDistance = possibleDistance; // always overestimate
 			}
@@ -139,26 +195,64 @@ public class CPathfindingProcessor {
 		return bestDistance;
 	}
 
-	public static final class Node {
-		public Direction cameFromDirection;
-		private final Point2D.Float point;
-		private double f;
-		private double g;
-		private Node cameFrom;
-		private int pathfindJobId;
+	private void touch(final int node) {
+		if (this.nodeJobIds[node] != this.pathfindJobId) {
+			this.nodeScores[node] = Double.POSITIVE_INFINITY;
+			this.nodeCameFrom[node] = -1;
+			this.nodeCameFromDirection[node] = NO_DIRECTION;
+			this.nodeJobIds[node] = this.pathfindJobId;
+		}
+	}
 
-		private Node(final Point2D.Float point) {
-			this.point = point;
+	private void addPathPoint(final float x, final float y) {
+		if (this.pathBufferSize == this.pathBufferX.length) {
+			this.pathBufferX = Arrays.copyOf(this.pathBufferX, this.pathBufferSize * 2);
+			this.pathBufferY = Arrays.copyOf(this.pathBufferY, this.pathBufferSize * 2);
 		}
+		this.pathBufferX[this.pathBufferSize] = x;
+		this.pathBufferY[this.pathBufferSize] = y;
+		this.pathBufferSize++;
+	}
 
-		private void touch(final int pathfindJobId) {
-			if (pathfindJobId != this.pathfindJobId) {
-				this.g = Float.POSITIVE_INFINITY;
-				this.f = Float.POSITIVE_INFINITY;
-				this.cameFrom = null;
-				this.cameFromDirection = null;
-				this.pathfindJobId = pathfindJobId;
-			}
+	private List<Point2D.Float> copyPathBuffer(final Point2D.Float goal) {
+		final List<Point2D.Float> path = new ArrayList<>(this.pathBufferSize + 1);
+		for (int i = this.pathBufferSize - 1; i >= 0; i--) {
+			path.add(new Point2D.Float(this.pathBufferX[i], this.pathBufferY[i]));
+		}
+		path.add(goal);
+		return path;
+	}
+
+	private boolean isInCorridor(final float x, final float y) {
+		return this.corridorClusterStamps[this.hierarchicalPathingGraph.getClusterIndex(this.pathingGrid.getCellX(x),
+				this.pathingGrid.getCellY(y))] == this.pathfindJobId;
+	}
+
+	/**
+	 * Either the grid of cell centers or the grid of cell corners. Nodes are
+	 * indexed as y * width + x.
+	 */
+	private static final class SearchGraph {
+		private final GridMapping gridMapping;
+		private final int width;
+		private final int height;
+		private final float[] worldX;
+		private final float[] worldY;
+
+		private SearchGraph(final GridMapping gridMapping, final float[] worldX, final float[] worldY) {
+			this.gridMapping = gridMapping;
+			this.width = worldX.length;
+			this.height = worldY.length;
+			this.worldX = worldX;
+			this.worldY = worldY;
+		}
+
+		private float getWorldX(final int node) {
+			return this.worldX[node % this.width];
+		}
+
+		private float getWorldY(final int node) {
+			return this.worldY[node / this.width];
 		}
 	}
 
@@ -212,9 +306,54 @@ public class CPathfindingProcessor {
 		};
 	}
 
-	public void update(final CSimulation simulation) {
+	public int getQueueDepth() {
+		return this.moveQueue.size();
+	}
+
+	public int getOldestJobEnqueueTick() {
+		final PathfindingJob job = this.moveQueue.peek();
+		if (job == null) {
+			return Integer.MAX_VALUE;
+		}
+		return job.enqueueTick;
+	}
+
+	public int getCompletedJobs() {
+		return this.completedJobs;
+	}
+
+	public long getTotalWaitTicks() {
+		return this.totalWaitTicks;
+	}
+
+	public int getMaxWaitTicks() {
+		return this.maxWaitTicks;
+	}
+
+	public void resetMetrics() {
+		this.completedJobs = 0;
+		this.totalWaitTicks = 0;
+		this.maxWaitTicks = 0;
+	}
+
+	private void pollCompletedJob(final CSimulation simulation) {
+		final PathfindingJob job = this.moveQueue.poll();
+		final int waitTicks = simulation.getGameTurnTick() - job.enqueueTick;
+		this.completedJobs++;
+		this.totalWaitTicks += waitTicks;
+		this.maxWaitTicks = Math.max(this.maxWaitTicks, waitTicks);
+	}
+
+	/**
+	 * Works on the queued jobs in order until they are all done or the work budget
+	 * is used up. A job that is interrupted by the budget continues where it left
+	 * off on the next call.
+	 *
+	 * @return the number of work iterations that were used
+	 */
+	public int update(final CSimulation simulation, final int workBudget) {
 		int workIterations = 0;
-		JobsLoop: while (!this.moveQueue.isEmpty()) {
+		JobsLoop: while (!this.moveQueue.isEmpty() && (workIterations < workBudget)) {
 			this.totalJobLoops++;
 			final PathfindingJob job = this.moveQueue.peek();
 			if (!job.jobStarted) {
@@ -236,207 +375,176 @@ public class CPathfindingProcessor {
 						+ "," + job.goalY);
 				if ((job.startX == job.goalX) && (job.startY == job.goalY)) {
 					job.queueItem.pathFound(Collections.emptyList(), simulation);
-					this.moveQueue.poll();
+					pollCompletedJob(simulation);
 					continue JobsLoop;
 				}
-				tempRect.set(0, 0, job.collisionSize * 2, job.collisionSize * 2);
-				if (isCollisionSizeBetterSuitedForCorners(job.collisionSize)) {
-					job.searchGraph = this.cornerNodes;
-					job.gridMapping = GridMapping.CORNERS;
-					System.out.println("using corners");
+				if ((job.weightForHittingWalls == 1E9f) && job.queueItem.isFirstPathfindJob() && isGroupMove(job)) {
+					job.flowField = this.flowFieldCache.get(this.pathingGrid.getCellX(job.goalX),
+							this.pathingGrid.getCellY(job.goalY), job.movementType, job.collisionSize);
 				}
 				else {
-					job.searchGraph = this.nodes;
-					job.gridMapping = GridMapping.CELLS;
-					System.out.println("using cells");
-				}
-				final int goalCellY = job.gridMapping.getY(this.pathingGrid, job.goalY);
-				final int goalCellX = job.gridMapping.getX(this.pathingGrid, job.goalX);
-				final Node mostLikelyGoal = job.searchGraph[goalCellY][goalCellX];
-				mostLikelyGoal.touch(this.pathfindJobId);
-				final double bestGoalDistance = mostLikelyGoal.point.distance(job.goalX, job.goalY);
-				Arrays.fill(this.goalSet, null);
-				this.goals = 0;
-				for (int i = goalCellX - 1; i <= (goalCellX + 1); i++) {
-					for (int j = goalCellY - 1; j <= (goalCellY + 1); j++) {
-						if ((j >= 0) && (j <= job.searchGraph.length)) {
-							if ((i >= 0) && (i < job.searchGraph[j].length)) {
-								final Node possibleGoal = job.searchGraph[j][i];
-								possibleGoal.touch(this.pathfindJobId);
-								if (possibleGoal.point.distance(job.goalX, job.goalY) <= bestGoalDistance) {
-									this.goalSet[this.goals++] = possibleGoal;
-								}
-							}
+					if (this.jumpPointSearchEnabled && isJumpPointSearchSafe(job)) {
+						final boolean pathFound = jumpPointSearch(job, simulation, workBudget - workIterations);
+						workIterations += this.jumpPointSearchWork;
+						if (pathFound) {
+							pollCompletedJob(simulation);
+							continue JobsLoop;
 						}
+						// no path in the search box, or the budget ran out first, so the A* search
+						// takes over and continues on later updates if it needs to. It must not see
+						// node scores from the jump point search
+						this.pathfindJobId++;
 					}
+					workIterations += startSearch(job, workBudget - workIterations);
 				}
-				final int startGridY = job.gridMapping.getY(this.pathingGrid, job.startY);
-				final int startGridX = job.gridMapping.getX(this.pathingGrid, job.startX);
-				job.openSet = new PriorityQueue<>(new Comparator<Node>() {
-					@Override
-					public int compare(final Node a, final Node b) {
-						return Double.compare(f(a), f(b));
-					}
-				});
+			}
 
-				job.start = job.searchGraph[startGridY][startGridX];
-				job.start.touch(this.pathfindJobId);
-				if (job.startX > job.start.point.x) {
-					job.startGridMinX = startGridX;
-					job.startGridMaxX = startGridX + 1;
-				}
-				else if (job.startX < job.start.point.x) {
-					job.startGridMinX = startGridX - 1;
-					job.startGridMaxX = startGridX;
-				}
-				else {
-					job.startGridMinX = startGridX;
-					job.startGridMaxX = startGridX;
-				}
-				if (job.startY > job.start.point.y) {
-					job.startGridMinY = startGridY;
-					job.startGridMaxY = startGridY + 1;
+			if (job.flowField != null) {
+				final int startCellX = this.pathingGrid.getCellX(job.startX);
+				final int startCellY = this.pathingGrid.getCellY(job.startY);
+				if (!job.flowField.isValid()) {
+					job.flowField = this.flowFieldCache.get(this.pathingGrid.getCellX(job.goalX),
+							this.pathingGrid.getCellY(job.goalY), job.movementType, job.collisionSize);
 				}
-				else if (job.startY < job.start.point.y) {
-					job.startGridMinY = startGridY - 1;
-					job.startGridMaxY = startGridY;
-				}
-				else {
-					job.startGridMinY = startGridY;
-					job.startGridMaxY = startGridY;
-				}
-				for (int cellX = job.startGridMinX; cellX <= job.startGridMaxX; cellX++) {
-					for (int cellY = job.startGridMinY; cellY <= job.startGridMaxY; cellY++) {
-						if ((cellX >= 0) && (cellX < this.pathingGrid.getWidth()) && (cellY >= 0)
-								&& (cellY < this.pathingGrid.getHeight())) {
-							final Node possibleNode = job.searchGraph[cellY][cellX];
-							possibleNode.touch(this.pathfindJobId);
-							final float x = possibleNode.point.x;
-							final float y = possibleNode.point.y;
-							if (pathableBetween(job.ignoreIntersectionsWithThisUnit,
-									job.ignoreIntersectionsWithThisSecondUnit, job.startX, job.startY, job.movementType,
-									job.collisionSize, x, y)) {
-
-								final double tentativeScore = possibleNode.point.distance(job.startX, job.startY);
-								possibleNode.g = tentativeScore;
-								possibleNode.f = tentativeScore + h(possibleNode);
-								job.openSet.add(possibleNode);
-
-							}
-							else {
-								final double tentativeScore = job.weightForHittingWalls;
-								possibleNode.g = tentativeScore;
-								possibleNode.f = tentativeScore + h(possibleNode);
-								job.openSet.add(possibleNode);
-
-							}
-						}
+				if (job.flowField.isWalkable(startCellX, startCellY)) {
+					final int settledCells = job.flowField.expandUntilReached(startCellX, startCellY,
+							(workBudget - workIterations) * FLOW_FIELD_CELLS_PER_WORK_ITERATION);
+					workIterations += settledCells / FLOW_FIELD_CELLS_PER_WORK_ITERATION;
+					if (job.flowField.isReached(startCellX, startCellY)) {
+						job.queueItem.pathFound(job.flowField.buildPath(startCellX, startCellY, job.goal), simulation);
+						pollCompletedJob(simulation);
+						continue JobsLoop;
+					}
+					if (!job.flowField.isExhausted()) {
+						// continue expanding the field on the next update
+						break JobsLoop;
 					}
 				}
+				// the shared field cannot get this unit to the goal, so search for it alone
+				job.flowField = null;
+				workIterations += startSearch(job, workBudget - workIterations);
 			}
 
-			while (!job.openSet.isEmpty()) {
-				Node current = job.openSet.poll();
-				current.touch(this.pathfindJobId);
+			final SearchGraph graph = job.searchGraph;
+			while (!this.openSet.isEmpty()) {
+				int current = this.openSet.poll();
+				touch(current);
 				if (isGoal(current)) {
-					final LinkedList<Point2D.Float> totalPath = new LinkedList<>();
-					Direction lastCameFromDirection = null;
-
-					if ((current.cameFrom != null)
+					this.pathBufferSize = 0;
+					final int cameFrom = this.nodeCameFrom[current];
+					if ((cameFrom != -1)
 							&& pathableBetween(job.ignoreIntersectionsWithThisUnit,
-									job.ignoreIntersectionsWithThisSecondUnit, current.point.x, current.point.y,
-									job.movementType, job.collisionSize, job.goalX, job.goalY)
+									job.ignoreIntersectionsWithThisSecondUnit, graph.getWorldX(current),
+									graph.getWorldY(current), job.movementType, job.collisionSize, job.goalX, job.goalY)
 							&& pathableBetween(job.ignoreIntersectionsWithThisUnit,
-									job.ignoreIntersectionsWithThisSecondUnit, current.cameFrom.point.x,
-									current.cameFrom.point.y, job.movementType, job.collisionSize, current.point.x,
-									current.point.y)
+									job.ignoreIntersectionsWithThisSecondUnit, graph.getWorldX(cameFrom),
+									graph.getWorldY(cameFrom), job.movementType, job.collisionSize,
+									graph.getWorldX(current), graph.getWorldY(current))
 							&& pathableBetween(job.ignoreIntersectionsWithThisUnit,
-									job.ignoreIntersectionsWithThisSecondUnit, current.cameFrom.point.x,
-									current.cameFrom.point.y, job.movementType, job.collisionSize, job.goalX, job.goalY)
+									job.ignoreIntersectionsWithThisSecondUnit, graph.getWorldX(cameFrom),
+									graph.getWorldY(cameFrom), job.movementType, job.collisionSize, job.goalX,
+									job.goalY)
 							&& job.allowSmoothing) {
 						// do some basic smoothing to walk straight to the goal if it is not obstructed,
 						// skipping the last grid location
-						totalPath.addFirst(job.goal);
-						current = current.cameFrom;
+						current = cameFrom;
 					}
 					else {
-						totalPath.addFirst(job.goal);
-						totalPath.addFirst(current.point);
+						addPathPoint(graph.getWorldX(current), graph.getWorldY(current));
 					}
-					lastCameFromDirection = current.cameFromDirection;
-					Node lastNode = null;
+					byte lastCameFromDirection = this.nodeCameFromDirection[current];
+					int lastNode = -1;
 					int stepsBackward = 0;
-					while (current.cameFrom != null) {
+					boolean infiniteCycle = false;
+					while (this.nodeCameFrom[current] != -1) {
 						lastNode = current;
-						current = current.cameFrom;
-						if ((lastCameFromDirection == null) || (current.cameFromDirection != lastCameFromDirection)
-								|| (current.cameFromDirection == null)) {
-							if ((current.cameFromDirection != null) || (lastNode == null)
+						current = this.nodeCameFrom[current];
+						final byte currentCameFromDirection = this.nodeCameFromDirection[current];
+						if ((lastCameFromDirection == NO_DIRECTION)
+								|| (currentCameFromDirection != lastCameFromDirection)
+								|| (currentCameFromDirection == NO_DIRECTION)) {
+							final float currentX = graph.getWorldX(current);
+							final float currentY = graph.getWorldY(current);
+							if ((currentCameFromDirection != NO_DIRECTION) || (lastNode == -1)
 									|| !pathableBetween(job.ignoreIntersectionsWithThisUnit,
 											job.ignoreIntersectionsWithThisSecondUnit, job.startX, job.startY,
-											job.movementType, job.collisionSize, current.point.x, current.point.y)
+											job.movementType, job.collisionSize, currentX, currentY)
 									|| !pathableBetween(job.ignoreIntersectionsWithThisUnit,
-											job.ignoreIntersectionsWithThisSecondUnit, current.point.x, current.point.y,
-											job.movementType, job.collisionSize, lastNode.point.x, lastNode.point.y)
+											job.ignoreIntersectionsWithThisSecondUnit, currentX, currentY,
+											job.movementType, job.collisionSize, graph.getWorldX(lastNode),
+											graph.getWorldY(lastNode))
 									|| !pathableBetween(job.ignoreIntersectionsWithThisUnit,
 											job.ignoreIntersectionsWithThisSecondUnit, job.startX, job.startY,
-											job.movementType, job.collisionSize, lastNode.point.x, lastNode.point.y)
+											job.movementType, job.collisionSize, graph.getWorldX(lastNode),
+											graph.getWorldY(lastNode))
 									|| !job.allowSmoothing) {
 								// Add the point if it's not the first one, or if we can only complete
 								// the journey by specifically walking to the first one
-								totalPath.addFirst(current.point);
-								lastCameFromDirection = current.cameFromDirection;
+								addPathPoint(currentX, currentY);
+								lastCameFromDirection = currentCameFromDirection;
 							}
 						}
 						if (stepsBackward > this.pathingGridCellCount) {
 							new IllegalStateException(
 									"PATHING SYSTEM ERROR: The path finding algorithm hit an infinite cycle at or near pt: "
-											+ current.cameFrom.point
+											+ graph.getWorldX(current) + "," + graph.getWorldY(current)
 											+ ".\nThis means the A* search algorithm heuristic 'admissable' constraint was probably violated.\n\nUnit1:"
 											+ CUnit.maybeMeaningfulName(job.ignoreIntersectionsWithThisUnit)
 											+ "\nUnit2:"
 											+ CUnit.maybeMeaningfulName(job.ignoreIntersectionsWithThisSecondUnit))
 									.printStackTrace();
-							totalPath.clear();
+							infiniteCycle = true;
 							break;
 						}
 						stepsBackward++;
 					}
-					job.queueItem.pathFound(totalPath, simulation);
-					this.moveQueue.poll();
+					if (infiniteCycle) {
+						job.queueItem.pathFound(Collections.emptyList(), simulation);
+					}
+					else {
+						job.queueItem.pathFound(copyPathBuffer(job.goal), simulation);
+					}
+					pollCompletedJob(simulation);
 					System.out.println("Task " + this.pathfindJobId + " took " + this.totalIterations
 							+ " iterations and " + this.totalJobLoops + " job loops!");
 					continue JobsLoop;
 				}
 
+				final int currentGridX = current % graph.width;
+				final int currentGridY = current / graph.width;
+				final float currentX = graph.worldX[currentGridX];
+				final float currentY = graph.worldY[currentGridY];
+				final byte currentCameFromDirection = this.nodeCameFromDirection[current];
+				final double currentScore = this.nodeScores[current];
 				for (final Direction direction : Direction.VALUES) {
-					final float x = current.point.x + (direction.xOffset * 32);
-					final float y = current.point.y + (direction.yOffset * 32);
-					if (this.pathingGrid.contains(x, y)) {
+					final float x = currentX + (direction.xOffset * 32);
+					final float y = currentY + (direction.yOffset * 32);
+					final int neighborGridX = currentGridX + direction.xOffset;
+					final int neighborGridY = currentGridY + direction.yOffset;
+					if (this.pathingGrid.contains(x, y) && (neighborGridX >= 0) && (neighborGridX < graph.width)
+							&& (neighborGridY >= 0) && (neighborGridY < graph.height)
+							&& (!job.corridorActive || isInCorridor(x, y))) {
 						double turnCost;
-						if ((current.cameFromDirection != null) && (direction != current.cameFromDirection)) {
+						if ((currentCameFromDirection != NO_DIRECTION)
+								&& (direction.ordinal() != currentCameFromDirection)) {
 							turnCost = 0.25;
 						}
 						else {
 							turnCost = 0;
 						}
-						double tentativeScore = current.g + ((direction.length + turnCost) * 32);
+						double tentativeScore = currentScore + ((direction.length + turnCost) * 32);
 						if (!pathableBetween(job.ignoreIntersectionsWithThisUnit,
-								job.ignoreIntersectionsWithThisSecondUnit, current.point.x, current.point.y,
-								job.movementType, job.collisionSize, x, y)) {
+								job.ignoreIntersectionsWithThisSecondUnit, currentX, currentY, job.movementType,
+								job.collisionSize, x, y)) {
 							tentativeScore += (direction.length) * job.weightForHittingWalls;
 						}
-						final Node neighbor = job.searchGraph[job.gridMapping.getY(this.pathingGrid, y)][job.gridMapping
-								.getX(this.pathingGrid, x)];
-						neighbor.touch(this.pathfindJobId);
-						if (tentativeScore < neighbor.g) {
-							neighbor.cameFrom = current;
-							neighbor.cameFromDirection = direction;
-							neighbor.g = tentativeScore;
-							neighbor.f = tentativeScore + h(neighbor);
-							if (!job.openSet.contains(neighbor)) {
-								job.openSet.add(neighbor);
-							}
+						final int neighbor = (neighborGridY * graph.width) + neighborGridX;
+						touch(neighbor);
+						if (tentativeScore < this.nodeScores[neighbor]) {
+							this.nodeCameFrom[neighbor] = current;
+							this.nodeCameFromDirection[neighbor] = (byte) direction.ordinal();
+							this.nodeScores[neighbor] = tentativeScore;
+							this.openSet.addOrUpdate(neighbor, tentativeScore + h(graph, neighbor));
 						}
 					}
 				}
@@ -445,16 +553,377 @@ public class CPathfindingProcessor {
 				if (this.totalIterations > 20000) {
 					break;
 				}
-				if (workIterations >= 1500) {
+				if (workIterations >= workBudget) {
 					// breaking jobs loop will implicitly exit without calling pathFound() below
 					break JobsLoop;
 				}
 			}
 			job.queueItem.pathFound(Collections.emptyList(), simulation);
-			this.moveQueue.poll();
+			pollCompletedJob(simulation);
 			System.out.println("Task " + this.pathfindJobId + " took " + this.totalIterations + " iterations and "
 					+ this.totalJobLoops + " job loops!");
 		}
+		return workIterations;
+	}
+
+	private boolean isGroupMove(final PathfindingJob job) {
+		final int goalCellX = this.pathingGrid.getCellX(job.goalX);
+		final int goalCellY = this.pathingGrid.getCellY(job.goalY);
+		if (this.flowFieldCache.contains(goalCellX, goalCellY, job.movementType, job.collisionSize)) {
+			return true;
+		}
+		final int collisionClass = CFlowFieldCache.getCollisionClass(job.collisionSize);
+		int groupSize = 0;
+		for (final PathfindingJob otherJob : this.moveQueue) {
+			if ((otherJob.movementType == job.movementType)
+					&& (CFlowFieldCache.getCollisionClass(otherJob.collisionSize) == collisionClass)
+					&& (this.pathingGrid.getCellX(otherJob.goal.x) == goalCellX)
+					&& (this.pathingGrid.getCellY(otherJob.goal.y) == goalCellY)) {
+				groupSize++;
+				if (groupSize >= FLOW_FIELD_MIN_GROUP_SIZE) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	public void setJumpPointSearchEnabled(final boolean jumpPointSearchEnabled) {
+		this.jumpPointSearchEnabled = jumpPointSearchEnabled;
+	}
+
+	private void ensureSearchState() {
+		if (this.openSet == null) {
+			final int nodeCount = this.cornerGraph.width * this.cornerGraph.height;
+			this.nodeScores = new double[nodeCount];
+			this.nodeCameFrom = new int[nodeCount];
+			this.nodeCameFromDirection = new byte[nodeCount];
+			this.nodeJobIds = new int[nodeCount];
+			this.openSet = new IndexedMinHeap(nodeCount);
+		}
+		this.openSet.clear();
+	}
+
+	/**
+	 * Jump point search only knows about static pathing, so it is only used when
+	 * the goal is reachable and no unit that could block this one is anywhere near
+	 * the search area.
+	 */
+	private boolean isJumpPointSearchSafe(final PathfindingJob job) {
+		if (job.weightForHittingWalls != 1E9f) {
+			return false;
+		}
+		final float minX = Math.min(job.startX, job.goalX) - JUMP_POINT_SEARCH_MARGIN;
+		final float minY = Math.min(job.startY, job.goalY) - JUMP_POINT_SEARCH_MARGIN;
+		final float maxX = Math.max(job.startX, job.goalX) + JUMP_POINT_SEARCH_MARGIN;
+		final float maxY = Math.max(job.startY, job.goalY) + JUMP_POINT_SEARCH_MARGIN;
+		jumpPointSearchRect.set(minX, minY, maxX - minX, maxY - minY);
+		return !this.worldCollision.intersectsAnythingOtherThan(jumpPointSearchRect,
+				job.ignoreIntersectionsWithThisUnit, job.ignoreIntersectionsWithThisSecondUnit, job.movementType);
+	}
+
+	/**
+	 * Jump point search (Harabor and Grastien) over the bitset walkability of the
+	 * job's grid mapping, without cutting corners, like the A* neighbor check.
+	 * Stops expanding nodes once its work reaches the given budget, and leaves its
+	 * cost in jumpPointSearchWork.
+	 *
+	 * @return true if a path was found and handed to the job, false if there is
+	 *         none in the search box or the budget was used up first
+	 */
+	private boolean jumpPointSearch(final PathfindingJob job, final CSimulation simulation, final int workBudget) {
+		ensureSearchState();
+		final boolean corners = isCollisionSizeBetterSuitedForCorners(job.collisionSize);
+		final SearchGraph graph = corners ? this.cornerGraph : this.cellGraph;
+		this.jumpBitset = this.pathingBitsets.get(job.movementType, job.collisionSize, corners);
+		this.jumpGraphWidth = graph.width;
+		final int startX = graph.gridMapping.getX(this.pathingGrid, job.startX);
+		final int startY = graph.gridMapping.getY(this.pathingGrid, job.startY);
+		this.jumpGoalX = graph.gridMapping.getX(this.pathingGrid, job.goalX);
+		this.jumpGoalY = graph.gridMapping.getY(this.pathingGrid, job.goalY);
+		final int margin = (int) (JUMP_POINT_SEARCH_MARGIN / 32);
+		this.jumpMinX = Math.max(0, Math.min(startX, this.jumpGoalX) - margin);
+		this.jumpMinY = Math.max(0, Math.min(startY, this.jumpGoalY) - margin);
+		this.jumpMaxX = Math.min(graph.width - 1, Math.max(startX, this.jumpGoalX) + margin);
+		this.jumpMaxY = Math.min(graph.height - 1, Math.max(startY, this.jumpGoalY) + margin);
+		this.jumpScans = 0;
+		this.jumpPointSearchWork = 1;
+		if (!isJumpWalkable(startX, startY) || !isJumpWalkable(this.jumpGoalX, this.jumpGoalY)) {
+			return false;
+		}
+		final int start = (startY * graph.width) + startX;
+		final int goal = (this.jumpGoalY * graph.width) + this.jumpGoalX;
+		touch(start);
+		this.nodeScores[start] = 0;
+		this.openSet.addOrUpdate(start, octileDistance(startX, startY, this.jumpGoalX, this.jumpGoalY));
+		int expandedNodes = 0;
+		while (!this.openSet.isEmpty()) {
+			if ((expandedNodes + (this.jumpScans / JUMP_POINT_SCANS_PER_WORK_ITERATION)) >= workBudget) {
+				break;
+			}
+			final int current = this.openSet.poll();
+			expandedNodes++;
+			if (current == goal) {
+				this.pathBufferSize = 0;
+				int node = this.nodeCameFrom[goal];
+				while ((node != -1) && (this.nodeCameFrom[node] != -1)) {
+					addPathPoint(graph.getWorldX(node), graph.getWorldY(node));
+					node = this.nodeCameFrom[node];
+				}
+				this.jumpPointSearchWork = expandedNodes + (this.jumpScans / JUMP_POINT_SCANS_PER_WORK_ITERATION);
+				job.queueItem.pathFound(copyPathBuffer(job.goal), simulation);
+				return true;
+			}
+			final int currentX = current % graph.width;
+			final int currentY = current / graph.width;
+			final int parent = this.nodeCameFrom[current];
+			if (parent == -1) {
+				for (final Direction direction : Direction.VALUES) {
+					if ((direction.xOffset == 0) || (direction.yOffset == 0)
+							|| (isJumpWalkable(currentX + direction.xOffset, currentY)
+									&& isJumpWalkable(currentX, currentY + direction.yOffset))) {
+						addJumpSuccessor(current, currentX, currentY, direction.xOffset, direction.yOffset);
+					}
+				}
+			}
+			else {
+				final int dx = Integer.signum(currentX - (parent % graph.width));
+				final int dy = Integer.signum(currentY - (parent / graph.width));
+				if ((dx != 0) && (dy != 0)) {
+					final boolean walkableX = isJumpWalkable(currentX + dx, currentY);
+					final boolean walkableY = isJumpWalkable(currentX, currentY + dy);
+					if (walkableY) {
+						addJumpSuccessor(current, currentX, currentY, 0, dy);
+					}
+					if (walkableX) {
+						addJumpSuccessor(current, currentX, currentY, dx, 0);
+					}
+					if (walkableX && walkableY) {
+						addJumpSuccessor(current, currentX, currentY, dx, dy);
+					}
+				}
+				else if (dx != 0) {
+					final boolean walkableNext = isJumpWalkable(currentX + dx, currentY);
+					final boolean walkableUp = isJumpWalkable(currentX, currentY + 1);
+					final boolean walkableDown = isJumpWalkable(currentX, currentY - 1);
+					if (walkableNext) {
+						addJumpSuccessor(current, currentX, currentY, dx, 0);
+						if (walkableUp) {
+							addJumpSuccessor(current, currentX, currentY, dx, 1);
+						}
+						if (walkableDown) {
+							addJumpSuccessor(current, currentX, currentY, dx, -1);
+						}
+					}
+					if (walkableUp) {
+						addJumpSuccessor(current, currentX, currentY, 0, 1);
+					}
+					if (walkableDown) {
+						addJumpSuccessor(current, currentX, currentY, 0, -1);
+					}
+				}
+				else {
+					final boolean walkableNext = isJumpWalkable(currentX, currentY + dy);
+					final boolean walkableRight = isJumpWalkable(currentX + 1, currentY);
+					final boolean walkableLeft = isJumpWalkable(currentX - 1, currentY);
+					if (walkableNext) {
+						addJumpSuccessor(current, currentX, currentY, 0, dy);
+						if (walkableRight) {
+							addJumpSuccessor(current, currentX, currentY, 1, dy);
+						}
+						if (walkableLeft) {
+							addJumpSuccessor(current, currentX, currentY, -1, dy);
+						}
+					}
+					if (walkableRight) {
+						addJumpSuccessor(current, currentX, currentY, 1, 0);
+					}
+					if (walkableLeft) {
+						addJumpSuccessor(current, currentX, currentY, -1, 0);
+					}
+				}
+			}
+		}
+		this.jumpPointSearchWork = expandedNodes + (this.jumpScans / JUMP_POINT_SCANS_PER_WORK_ITERATION);
+		return false;
+	}
+
+	private void addJumpSuccessor(final int current, final int currentX, final int currentY, final int dx,
+			final int dy) {
+		final int jumpPoint = jump(currentX + dx, currentY + dy, dx, dy);
+		if (jumpPoint != -1) {
+			touch(jumpPoint);
+			final int jumpPointX = jumpPoint % this.jumpGraphWidth;
+			final int jumpPointY = jumpPoint / this.jumpGraphWidth;
+			final double tentativeScore = this.nodeScores[current]
+					+ octileDistance(currentX, currentY, jumpPointX, jumpPointY);
+			if (tentativeScore < this.nodeScores[jumpPoint]) {
+				this.nodeCameFrom[jumpPoint] = current;
+				this.nodeScores[jumpPoint] = tentativeScore;
+				this.openSet.addOrUpdate(jumpPoint,
+						tentativeScore + octileDistance(jumpPointX, jumpPointY, this.jumpGoalX, this.jumpGoalY));
+			}
+		}
+	}
+
+	/**
+	 * Walks from (x, y) in direction (dx, dy) until reaching the goal, a node with
+	 * a forced neighbor, or an unwalkable node.
+	 *
+	 * @return the node index of the jump point, or -1 if there is none
+	 */
+	private int jump(int x, int y, final int dx, final int dy) {
+		while (true) {
+			this.jumpScans++;
+			if (!isJumpWalkable(x, y)) {
+				return -1;
+			}
+			if ((x == this.jumpGoalX) && (y == this.jumpGoalY)) {
+				return (y * this.jumpGraphWidth) + x;
+			}
+			if ((dx != 0) && (dy != 0)) {
+				if ((jump(x + dx, y, dx, 0) != -1) || (jump(x, y + dy, 0, dy) != -1)) {
+					return (y * this.jumpGraphWidth) + x;
+				}
+				// no cutting across the corner of an unwalkable node
+				if (!isJumpWalkable(x + dx, y) || !isJumpWalkable(x, y + dy)) {
+					return -1;
+				}
+			}
+			else if (dx != 0) {
+				if ((isJumpWalkable(x, y - 1) && !isJumpWalkable(x - dx, y - 1))
+						|| (isJumpWalkable(x, y + 1) && !isJumpWalkable(x - dx, y + 1))) {
+					return (y * this.jumpGraphWidth) + x;
+				}
+			}
+			else {
+				if ((isJumpWalkable(x - 1, y) && !isJumpWalkable(x - 1, y - dy))
+						|| (isJumpWalkable(x + 1, y) && !isJumpWalkable(x + 1, y - dy))) {
+					return (y * this.jumpGraphWidth) + x;
+				}
+			}
+			x += dx;
+			y += dy;
+		}
+	}
+
+	private boolean isJumpWalkable(final int x, final int y) {
+		return (x >= this.jumpMinX) && (y >= this.jumpMinY) && (x <= this.jumpMaxX) && (y <= this.jumpMaxY)
+				&& this.jumpBitset.isWalkable(x, y);
+	}
+
+	private static double octileDistance(final int x1, final int y1, final int x2, final int y2) {
+		final int dx = Math.abs(x2 - x1);
+		final int dy = Math.abs(y2 - y1);
+		final int min = Math.min(dx, dy);
+		return ((Math.max(dx, dy) - min) + (min * DIAGONAL_LENGTH)) * 32;
+	}
+
+	/**
+	 * @return the work iterations spent on the hierarchical graph, the rest of the
+	 *         search is counted as it runs
+	 */
+	private int startSearch(final PathfindingJob job, final int workBudget) {
+		ensureSearchState();
+		tempRect.set(0, 0, job.collisionSize * 2, job.collisionSize * 2);
+		if (isCollisionSizeBetterSuitedForCorners(job.collisionSize)) {
+			job.searchGraph = this.cornerGraph;
+			System.out.println("using corners");
+		}
+		else {
+			job.searchGraph = this.cellGraph;
+			System.out.println("using cells");
+		}
+		final SearchGraph graph = job.searchGraph;
+		final int goalCellY = graph.gridMapping.getY(this.pathingGrid, job.goalY);
+		final int goalCellX = graph.gridMapping.getX(this.pathingGrid, job.goalX);
+		final int mostLikelyGoal = (goalCellY * graph.width) + goalCellX;
+		touch(mostLikelyGoal);
+		final double bestGoalDistance = Point2D.distance(graph.getWorldX(mostLikelyGoal),
+				graph.getWorldY(mostLikelyGoal), job.goalX, job.goalY);
+		this.goals = 0;
+		for (int i = goalCellX - 1; i <= (goalCellX + 1); i++) {
+			for (int j = goalCellY - 1; j <= (goalCellY + 1); j++) {
+				if ((j >= 0) && (j < graph.height)) {
+					if ((i >= 0) && (i < graph.width)) {
+						final int possibleGoal = (j * graph.width) + i;
+						touch(possibleGoal);
+						final float possibleGoalX = graph.worldX[i];
+						final float possibleGoalY = graph.worldY[j];
+						if (Point2D.distance(possibleGoalX, possibleGoalY, job.goalX, job.goalY) <= bestGoalDistance) {
+							this.goalSet[this.goals] = possibleGoal;
+							this.goalSetX[this.goals] = possibleGoalX;
+							this.goalSetY[this.goals] = possibleGoalY;
+							this.goals++;
+						}
+					}
+				}
+			}
+		}
+		// Long trips with a reachable goal search only inside the cluster corridor from
+		// the hierarchical graph. Otherwise the soft walls need the whole grid to find
+		// the closest approach to an unreachable goal.
+		int corridorWork = 0;
+		job.corridorActive = false;
+		if (job.weightForHittingWalls == 1E9f) {
+			job.corridorActive = this.hierarchicalPathingGraph.findCorridor(job.movementType, job.collisionSize,
+					this.pathingGrid.getCellX(job.startX), this.pathingGrid.getCellY(job.startY),
+					this.pathingGrid.getCellX(job.goalX), this.pathingGrid.getCellY(job.goalY),
+					this.corridorClusterStamps, this.pathfindJobId, workBudget);
+			corridorWork = this.hierarchicalPathingGraph.getCorridorWork();
+		}
+		final int startGridY = graph.gridMapping.getY(this.pathingGrid, job.startY);
+		final int startGridX = graph.gridMapping.getX(this.pathingGrid, job.startX);
+		final int start = (startGridY * graph.width) + startGridX;
+		touch(start);
+		final float startNodeX = graph.getWorldX(start);
+		final float startNodeY = graph.getWorldY(start);
+		if (job.startX > startNodeX) {
+			job.startGridMinX = startGridX;
+			job.startGridMaxX = startGridX + 1;
+		}
+		else if (job.startX < startNodeX) {
+			job.startGridMinX = startGridX - 1;
+			job.startGridMaxX = startGridX;
+		}
+		else {
+			job.startGridMinX = startGridX;
+			job.startGridMaxX = startGridX;
+		}
+		if (job.startY > startNodeY) {
+			job.startGridMinY = startGridY;
+			job.startGridMaxY = startGridY + 1;
+		}
+		else if (job.startY < startNodeY) {
+			job.startGridMinY = startGridY - 1;
+			job.startGridMaxY = startGridY;
+		}
+		else {
+			job.startGridMinY = startGridY;
+			job.startGridMaxY = startGridY;
+		}
+		for (int cellX = job.startGridMinX; cellX <= job.startGridMaxX; cellX++) {
+			for (int cellY = job.startGridMinY; cellY <= job.startGridMaxY; cellY++) {
+				if ((cellX >= 0) && (cellX < graph.width) && (cellY >= 0) && (cellY < graph.height)) {
+					final int possibleNode = (cellY * graph.width) + cellX;
+					touch(possibleNode);
+					final float x = graph.worldX[cellX];
+					final float y = graph.worldY[cellY];
+					final double tentativeScore;
+					if (pathableBetween(job.ignoreIntersectionsWithThisUnit,
+							job.ignoreIntersectionsWithThisSecondUnit, job.startX, job.startY, job.movementType,
+							job.collisionSize, x, y)) {
+						tentativeScore = Point2D.distance(x, y, job.startX, job.startY);
+					}
+					else {
+						tentativeScore = job.weightForHittingWalls;
+					}
+					this.nodeScores[possibleNode] = tentativeScore;
+					this.openSet.addOrUpdate(possibleNode, tentativeScore + h(graph, possibleNode));
+				}
+			}
+		}
+		return corridorWork;
 	}
 
 	public static final class PathfindingJob {
@@ -467,14 +936,14 @@ public class CPathfindingProcessor {
 		private final float collisionSize;
 		private final boolean allowSmoothing;
 		private final CBehaviorMove queueItem;
+		private final int enqueueTick;
 		private boolean jobStarted;
 		public float goalY;
 		public float goalX;
 		public float weightForHittingWalls;
-		Node[][] searchGraph;
-		GridMapping gridMapping;
-		PriorityQueue<Node> openSet;
-		Node start;
+		boolean corridorActive;
+		CFlowFieldCache.FlowField flowField;
+		SearchGraph searchGraph;
 		int startGridMinX;
 		int startGridMinY;
 		int startGridMaxX;
@@ -483,7 +952,7 @@ public class CPathfindingProcessor {
 		public PathfindingJob(final CUnit ignoreIntersectionsWithThisUnit,
 				final CUnit ignoreIntersectionsWithThisSecondUnit, final float startX, final float startY,
 				final Point2D.Float goal, final PathingGrid.MovementType movementType, final float collisionSize,
-				final boolean allowSmoothing, final CBehaviorMove queueItem) {
+				final boolean allowSmoothing, final CBehaviorMove queueItem, final int enqueueTick) {
 			this.ignoreIntersectionsWithThisUnit = ignoreIntersectionsWithThisUnit;
 			this.ignoreIntersectionsWithThisSecondUnit = ignoreIntersectionsWithThisSecondUnit;
 			this.startX = startX;
@@ -493,6 +962,7 @@ public class CPathfindingProcessor {
 			this.collisionSize = collisionSize;
 			this.allowSmoothing = allowSmoothing;
 			this.queueItem = queueItem;
+			this.enqueueTick = enqueueTick;
 			this.jobStarted = false;
 		}
 	}
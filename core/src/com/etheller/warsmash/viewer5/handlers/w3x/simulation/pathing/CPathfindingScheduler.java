@@ -0,0 +1,178 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing;
+
+import java.awt.geom.Point2D;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CWorldCollision;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.behaviors.CBehaviorMove;
+
+/**
+ * Shares one pathfinding budget per tick between the per-player
+ * {@link CPathfindingProcessor}s, so that one player's mass order cannot make a
+ * tick arbitrarily slow.
+ *
+ * Every player with queued jobs first gets an equal share of the budget, in
+ * round-robin order starting one player further each tick. Whatever the players
+ * do not use goes to whichever player has the oldest job still waiting. Nothing
+ * here depends on wall clock time, so every client makes the same decisions on
+ * the same tick.
+ */
+public class CPathfindingScheduler {
+	// a fixed cap no matter how many players are pathing, the same as two players
+	// used to get with 1500 each
+	public static final int DEFAULT_WORK_ITERATIONS_PER_TICK = 3000;
+
+	private final CPathfindingProcessor[] pathfindingProcessors;
+	private final int workIterationsPerTick;
+	private int nextPlayerIndex = 0;
+
+	private int lastTickWorkIterations;
+	private int maxQueueDepth;
+
+	public CPathfindingScheduler(final PathingGrid pathingGrid, final CWorldCollision worldCollision,
+			final int playerCount, final int workIterationsPerTick) {
+		this.workIterationsPerTick = workIterationsPerTick;
+		final CHierarchicalPathingGraph hierarchicalPathingGraph = new CHierarchicalPathingGraph(pathingGrid);
+		final CFlowFieldCache flowFieldCache = new CFlowFieldCache(pathingGrid);
+		final CPathingBitsets pathingBitsets = new CPathingBitsets(pathingGrid);
+		this.pathfindingProcessors = new CPathfindingProcessor[playerCount];
+		for (int i = 0; i < playerCount; i++) {
+			this.pathfindingProcessors[i] = new CPathfindingProcessor(pathingGrid, worldCollision,
+					hierarchicalPathingGraph, flowFieldCache, pathingBitsets);
+		}
+	}
+
+	public void findNaiveSlowPath(final int playerIndex, final CUnit ignoreIntersectionsWithThisUnit,
+			final CUnit ignoreIntersectionsWithThisSecondUnit, final float startX, final float startY,
+			final Point2D.Float goal, final PathingGrid.MovementType movementType, final float collisionSize,
+			final boolean allowSmoothing, final CBehaviorMove queueItem, final int gameTurnTick) {
+		this.pathfindingProcessors[playerIndex].findNaiveSlowPath(ignoreIntersectionsWithThisUnit,
+				ignoreIntersectionsWithThisSecondUnit, startX, startY, goal, movementType, collisionSize,
+				allowSmoothing, queueItem, gameTurnTick);
+	}
+
+	/**
+	 * Jump point search is on by default; turning it off makes every search that
+	 * would have used it run A* instead, which is useful for comparing the two.
+	 */
+	public void setJumpPointSearchEnabled(final boolean jumpPointSearchEnabled) {
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			pathfindingProcessor.setJumpPointSearchEnabled(jumpPointSearchEnabled);
+		}
+	}
+
+	public void removeFromPathfindingQueue(final int playerIndex, final CBehaviorMove behaviorMove) {
+		this.pathfindingProcessors[playerIndex].removeFromPathfindingQueue(behaviorMove);
+	}
+
+	public void update(final CSimulation simulation) {
+		final int queueDepth = getQueueDepth();
+		this.maxQueueDepth = Math.max(this.maxQueueDepth, queueDepth);
+		int remainingWork = this.workIterationsPerTick;
+		int activeProcessors = 0;
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			if (pathfindingProcessor.getQueueDepth() > 0) {
+				activeProcessors++;
+			}
+		}
+		if (activeProcessors > 0) {
+			final int playerCount = this.pathfindingProcessors.length;
+			final int fairShare = Math.max(1, remainingWork / activeProcessors);
+			for (int i = 0; (i < playerCount) && (remainingWork > 0); i++) {
+				final CPathfindingProcessor pathfindingProcessor = this.pathfindingProcessors[(this.nextPlayerIndex
+						+ i) % playerCount];
+				if (pathfindingProcessor.getQueueDepth() > 0) {
+					remainingWork -= pathfindingProcessor.update(simulation, Math.min(fairShare, remainingWork));
+				}
+			}
+			while (remainingWork > 0) {
+				final CPathfindingProcessor oldestProcessor = getProcessorWithOldestJob();
+				if (oldestProcessor == null) {
+					break;
+				}
+				final int workIterations = oldestProcessor.update(simulation, remainingWork);
+				if (workIterations <= 0) {
+					break;
+				}
+				remainingWork -= workIterations;
+			}
+			this.nextPlayerIndex = (this.nextPlayerIndex + 1) % playerCount;
+		}
+		this.lastTickWorkIterations = this.workIterationsPerTick - remainingWork;
+	}
+
+	private CPathfindingProcessor getProcessorWithOldestJob() {
+		CPathfindingProcessor oldestProcessor = null;
+		int oldestEnqueueTick = Integer.MAX_VALUE;
+		final int playerCount = this.pathfindingProcessors.length;
+		// ties go to whoever is first in this tick's round-robin order
+		for (int i = 0; i < playerCount; i++) {
+			final CPathfindingProcessor pathfindingProcessor = this.pathfindingProcessors[(this.nextPlayerIndex + i)
+					% playerCount];
+			if ((pathfindingProcessor.getQueueDepth() > 0)
+					&& (pathfindingProcessor.getOldestJobEnqueueTick() < oldestEnqueueTick)) {
+				oldestEnqueueTick = pathfindingProcessor.getOldestJobEnqueueTick();
+				oldestProcessor = pathfindingProcessor;
+			}
+		}
+		return oldestProcessor;
+	}
+
+	public int getQueueDepth() {
+		int queueDepth = 0;
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			queueDepth += pathfindingProcessor.getQueueDepth();
+		}
+		return queueDepth;
+	}
+
+	public int getMaxQueueDepth() {
+		return this.maxQueueDepth;
+	}
+
+	public int getLastTickWorkIterations() {
+		return this.lastTickWorkIterations;
+	}
+
+	public int getCompletedJobs() {
+		int completedJobs = 0;
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			completedJobs += pathfindingProcessor.getCompletedJobs();
+		}
+		return completedJobs;
+	}
+
+	/**
+	 * @return the average number of ticks between queueing a job and its path
+	 *         being found, over all jobs completed since the last reset
+	 */
+	public float getAverageWaitTicks() {
+		long totalWaitTicks = 0;
+		int completedJobs = 0;
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			totalWaitTicks += pathfindingProcessor.getTotalWaitTicks();
+			completedJobs += pathfindingProcessor.getCompletedJobs();
+		}
+		if (completedJobs == 0) {
+			return 0;
+		}
+		return totalWaitTicks / (float) completedJobs;
+	}
+
+	public int getMaxWaitTicks() {
+		int maxWaitTicks = 0;
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			maxWaitTicks = Math.max(maxWaitTicks, pathfindingProcessor.getMaxWaitTicks());
+		}
+		return maxWaitTicks;
+	}
+
+	public void resetMetrics() {
+		this.maxQueueDepth = 0;
+		for (final CPathfindingProcessor pathfindingProcessor : this.pathfindingProcessors) {
+			pathfindingProcessor.resetMetrics();
+		}
+	}
+}
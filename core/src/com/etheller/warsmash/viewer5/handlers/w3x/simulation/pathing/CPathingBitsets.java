@@ -0,0 +1,135 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
+
+/**
+ * Static walkability of the pathfinding graph nodes packed into bitsets, one
+ * per movement type, collision size and grid mapping (cell centers or cell
+ * corners). A node is walkable when
+ * {@link PathingGrid#isPathable(float, float, MovementType, float)} is true at
+ * its world position. Bitsets are built the first time they are asked for, and
+ * only the area under a changed pathing map is recomputed afterwards.
+ */
+public class CPathingBitsets implements PathingGrid.PathingChangeListener {
+	private final PathingGrid pathingGrid;
+	private final List<Bitset> bitsets = new ArrayList<>();
+
+	public CPathingBitsets(final PathingGrid pathingGrid) {
+		this.pathingGrid = pathingGrid;
+		pathingGrid.addPathingChangeListener(this);
+	}
+
+	public Bitset get(final MovementType movementType, final float collisionSize, final boolean corners) {
+		for (int i = 0; i < this.bitsets.size(); i++) {
+			final Bitset bitset = this.bitsets.get(i);
+			if ((bitset.movementType == movementType) && (bitset.collisionSize == collisionSize)
+					&& (bitset.corners == corners)) {
+				bitset.update();
+				return bitset;
+			}
+		}
+		final Bitset bitset = new Bitset(movementType, collisionSize, corners);
+		this.bitsets.add(bitset);
+		bitset.update();
+		return bitset;
+	}
+
+	@Override
+	public void onPathingChanged(final int minCellX, final int minCellY, final int maxCellX, final int maxCellY) {
+		for (int i = 0; i < this.bitsets.size(); i++) {
+			this.bitsets.get(i).markDirty(minCellX, minCellY, maxCellX, maxCellY);
+		}
+	}
+
+	public final class Bitset {
+		private final MovementType movementType;
+		private final float collisionSize;
+		private final boolean corners;
+		private final int width;
+		private final int height;
+		private final int marginNodes;
+		private final long[] bits;
+		private boolean dirty;
+		private int dirtyMinX;
+		private int dirtyMinY;
+		private int dirtyMaxX;
+		private int dirtyMaxY;
+
+		private Bitset(final MovementType movementType, final float collisionSize, final boolean corners) {
+			this.movementType = movementType;
+			this.collisionSize = collisionSize;
+			this.corners = corners;
+			final int extraNode = corners ? 1 : 0;
+			this.width = CPathingBitsets.this.pathingGrid.getWidth() + extraNode;
+			this.height = CPathingBitsets.this.pathingGrid.getHeight() + extraNode;
+			this.marginNodes = (int) Math.ceil(collisionSize / 32f) + 1;
+			this.bits = new long[((this.width * this.height) + 63) >>> 6];
+			this.dirty = true;
+			this.dirtyMinX = 0;
+			this.dirtyMinY = 0;
+			this.dirtyMaxX = this.width - 1;
+			this.dirtyMaxY = this.height - 1;
+		}
+
+		public int getWidth() {
+			return this.width;
+		}
+
+		public int getHeight() {
+			return this.height;
+		}
+
+		public boolean isWalkable(final int x, final int y) {
+			if ((x < 0) || (y < 0) || (x >= this.width) || (y >= this.height)) {
+				return false;
+			}
+			final int index = (y * this.width) + x;
+			return (this.bits[index >>> 6] & (1L << index)) != 0;
+		}
+
+		private void markDirty(final int minCellX, final int minCellY, final int maxCellX, final int maxCellY) {
+			final int minX = Math.max(0, minCellX - this.marginNodes);
+			final int minY = Math.max(0, minCellY - this.marginNodes);
+			final int maxX = Math.min(this.width - 1, maxCellX + this.marginNodes);
+			final int maxY = Math.min(this.height - 1, maxCellY + this.marginNodes);
+			if (this.dirty) {
+				this.dirtyMinX = Math.min(this.dirtyMinX, minX);
+				this.dirtyMinY = Math.min(this.dirtyMinY, minY);
+				this.dirtyMaxX = Math.max(this.dirtyMaxX, maxX);
+				this.dirtyMaxY = Math.max(this.dirtyMaxY, maxY);
+			}
+			else {
+				this.dirty = true;
+				this.dirtyMinX = minX;
+				this.dirtyMinY = minY;
+				this.dirtyMaxX = maxX;
+				this.dirtyMaxY = maxY;
+			}
+		}
+
+		private void update() {
+			if (!this.dirty) {
+				return;
+			}
+			this.dirty = false;
+			final PathingGrid pathingGrid = CPathingBitsets.this.pathingGrid;
+			for (int y = this.dirtyMinY; y <= this.dirtyMaxY; y++) {
+				final float worldY = this.corners ? pathingGrid.getWorldYFromCorner(y) : pathingGrid.getWorldY(y);
+				for (int x = this.dirtyMinX; x <= this.dirtyMaxX; x++) {
+					final float worldX = this.corners ? pathingGrid.getWorldXFromCorner(x) : pathingGrid.getWorldX(x);
+					final int index = (y * this.width) + x;
+					if (pathingGrid.isPathable(worldX, worldY, this.movementType, this.collisionSize)) {
+						this.bits[index >>> 6] |= (1L << index);
+					}
+					else {
+						this.bits[index >>> 6] &= ~(1L << index);
+					}
+				}
+			}
+		}
+	}
+}
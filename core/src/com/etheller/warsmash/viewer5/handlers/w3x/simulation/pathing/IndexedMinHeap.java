@@ -0,0 +1,133 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.pathing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of int elements in the range [0, capacity), each with a
+ * double key. Every element is in the heap at most once, and the heap knows
+ * where each element is, so lowering the key of an element that is already in
+ * the heap moves it up in place instead of adding a duplicate. Nothing is
+ * allocated after construction, which is the point of this class compared to a
+ * PriorityQueue of node objects.
+ */
+final class IndexedMinHeap {
+	private final int[] elements;
+	private final double[] keys;
+	// heap position of each element, or -1 if the element is not in the heap
+	private final int[] positions;
+	private int size;
+
+	IndexedMinHeap(final int capacity) {
+		this.elements = new int[capacity];
+		this.keys = new double[capacity];
+		this.positions = new int[capacity];
+		Arrays.fill(this.positions, -1);
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean contains(final int element) {
+		return this.positions[element] != -1;
+	}
+
+	/**
+	 * Adds the element, or moves it to the new key if it is already in the heap.
+	 */
+	public void addOrUpdate(final int element, final double key) {
+		final int position = this.positions[element];
+		if (position == -1) {
+			final int index = this.size++;
+			this.elements[index] = element;
+			this.keys[index] = key;
+			this.positions[element] = index;
+			siftUp(index);
+		}
+		else {
+			final double oldKey = this.keys[position];
+			this.keys[position] = key;
+			if (key < oldKey) {
+				siftUp(position);
+			}
+			else {
+				siftDown(position);
+			}
+		}
+	}
+
+	public int peek() {
+		return this.elements[0];
+	}
+
+	public double peekKey() {
+		return this.keys[0];
+	}
+
+	public int poll() {
+		final int element = this.elements[0];
+		this.positions[element] = -1;
+		this.size--;
+		if (this.size > 0) {
+			move(this.size, 0);
+			siftDown(0);
+		}
+		return element;
+	}
+
+	public void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.positions[this.elements[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+	private void siftUp(int index) {
+		final int element = this.elements[index];
+		final double key = this.keys[index];
+		while (index > 0) {
+			final int parent = (index - 1) >>> 1;
+			if (this.keys[parent] <= key) {
+				break;
+			}
+			move(parent, index);
+			index = parent;
+		}
+		this.elements[index] = element;
+		this.keys[index] = key;
+		this.positions[element] = index;
+	}
+
+	private void siftDown(int index) {
+		final int element = this.elements[index];
+		final double key = this.keys[index];
+		while (true) {
+			int child = (index * 2) + 1;
+			if (child >= this.size) {
+				break;
+			}
+			if (((child + 1) < this.size) && (this.keys[child + 1] < this.keys[child])) {
+				child++;
+			}
+			if (this.keys[child] >= key) {
+				break;
+			}
+			move(child, index);
+			index = child;
+		}
+		this.elements[index] = element;
+		this.keys[index] = key;
+		this.positions[element] = index;
+	}
+
+	private void move(final int from, final int to) {
+		final int element = this.elements[from];
+		this.elements[to] = element;
+		this.keys[to] = this.keys[from];
+		this.positions[element] = to;
+	}
+}
@@ -29,6 +29,7 @@ import com.etheller.warsmash.viewer5.handlers.w3x.simulation.orders.COrderTarget
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.orders.COrderTargetWidget;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CFogModifier;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision.CPlayerFogOfWar;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.CTriggerEventIndex;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.JassGameEventsWar3;
 
 public class CPlayer extends CBasePlayer {
@@ -45,7 +46,7 @@ public class CPlayer extends CBasePlayer {
 	private final Map<War3ID, Integer> rawcodeToTechtreeMaxAllowed = new HashMap<>();
 	private final List<CUnit> heroes = new ArrayList<>();
 	private final List<CFogModifier> fogModifiers = new ArrayList<>();
-	private final EnumMap<JassGameEventsWar3, List<CPlayerEvent>> eventTypeToEvents = new EnumMap<>(
+	private final EnumMap<JassGameEventsWar3, CTriggerEventIndex<CPlayerEvent>> eventTypeToEvents = new EnumMap<>(
 			JassGameEventsWar3.class);
 
 	// Player state data
@@ -312,21 +313,17 @@ public class CPlayer extends CBasePlayer {
 	private void firePlayerUnitEvents(final CUnit hero,
 			final CommonTriggerExecutionScope.UnitEventScopeBuilder eventScopeBuilder,
 			final JassGameEventsWar3 eventType) {
-		final List<CPlayerEvent> eventList = getEventList(eventType);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(eventType);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(hero, eventScopeBuilder.create(eventType, event.getTrigger(), hero));
-			}
+			eventList.fire(hero, 0, trigger -> eventScopeBuilder.create(eventType, trigger, hero));
 		}
 	}
 
 	public void firePlayerEvents(final CommonTriggerExecutionScope.PlayerEventScopeBuilder eventScopeBuilder,
 			final JassGameEventsWar3 eventType) {
-		final List<CPlayerEvent> eventList = getEventList(eventType);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(eventType);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(this, eventScopeBuilder.create(eventType, event.getTrigger(), this));
-			}
+			eventList.fire(this, trigger -> eventScopeBuilder.create(eventType, trigger, this));
 		}
 	}
 
@@ -356,104 +353,93 @@ public class CPlayer extends CBasePlayer {
 	}
 
 	public void fireUnitDeathEvents(final CUnit dyingUnit, final CUnit killingUnit) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_DEATH);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_DEATH);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(dyingUnit, CommonTriggerExecutionScope.unitDeathScope(
-						JassGameEventsWar3.EVENT_PLAYER_UNIT_DEATH, event.getTrigger(), dyingUnit, killingUnit));
-			}
+			eventList.fire(dyingUnit, 0, trigger -> CommonTriggerExecutionScope
+					.unitDeathScope(JassGameEventsWar3.EVENT_PLAYER_UNIT_DEATH, trigger, dyingUnit, killingUnit));
 		}
 	}
 
 	public void fireOrderEvents(final CUnit unit, final CSimulation game, final COrderNoTarget orderNoTarget) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_ORDER);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_ORDER);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit,
-						CommonTriggerExecutionScope.unitOrderScope(JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_ORDER,
-								event.getTrigger(), unit, orderNoTarget.getOrderId()));
-			}
+			final int orderId = orderNoTarget.getOrderId();
+			eventList.fire(unit, 0, trigger -> CommonTriggerExecutionScope
+					.unitOrderScope(JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_ORDER, trigger, unit, orderId));
 		}
 	}
 
 	public void fireOrderEvents(final CUnit unit, final CSimulation game, final COrderTargetPoint order) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_POINT_ORDER);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_POINT_ORDER);
 		if (eventList != null) {
 			final AbilityPointTarget target = order.getTarget(game);
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit,
-						CommonTriggerExecutionScope.unitOrderPointScope(
-								JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_POINT_ORDER, event.getTrigger(), unit,
-								order.getOrderId(), target.x, target.y));
-			}
+			final int orderId = order.getOrderId();
+			eventList.fire(unit, 0,
+					trigger -> CommonTriggerExecutionScope.unitOrderPointScope(
+							JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_POINT_ORDER, trigger, unit, orderId, target.x,
+							target.y));
 		}
 	}
 
 	public void fireOrderEvents(final CUnit unit, final CSimulation game, final COrderTargetWidget order) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_TARGET_ORDER);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_TARGET_ORDER);
 		if (eventList != null) {
 			final CWidget target = order.getTarget(game);
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit,
-						CommonTriggerExecutionScope.unitOrderTargetScope(
-								JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_TARGET_ORDER, event.getTrigger(), unit,
-								order.getOrderId(), target));
-			}
+			final int orderId = order.getOrderId();
+			eventList.fire(unit, 0, trigger -> CommonTriggerExecutionScope.unitOrderTargetScope(
+					JassGameEventsWar3.EVENT_PLAYER_UNIT_ISSUED_TARGET_ORDER, trigger, unit, orderId, target));
 		}
 	}
 
 	public void fireConstructFinishEvents(final CUnit unit, final CSimulation game, final CUnit constructingUnit) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_CONSTRUCT_FINISH);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_CONSTRUCT_FINISH);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit,
-						CommonTriggerExecutionScope.unitConstructFinishScope(
-								JassGameEventsWar3.EVENT_PLAYER_UNIT_CONSTRUCT_FINISH, event.getTrigger(), unit,
-								constructingUnit));
-			}
+			eventList.fire(unit, 0, trigger -> CommonTriggerExecutionScope.unitConstructFinishScope(
+					JassGameEventsWar3.EVENT_PLAYER_UNIT_CONSTRUCT_FINISH, trigger, unit, constructingUnit));
 		}
 	}
 
 	public void fireTrainFinishEvents(final CUnit unit, final CSimulation game, final CUnit trainedUnit) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_TRAIN_FINISH);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_TRAIN_FINISH);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit, CommonTriggerExecutionScope.unitTrainFinishScope(
-						JassGameEventsWar3.EVENT_PLAYER_UNIT_TRAIN_FINISH, event.getTrigger(), unit, trainedUnit));
-			}
+			eventList.fire(unit, 0, trigger -> CommonTriggerExecutionScope
+					.unitTrainFinishScope(JassGameEventsWar3.EVENT_PLAYER_UNIT_TRAIN_FINISH, trigger, unit, trainedUnit));
 		}
 	}
 
 	public void fireResearchFinishEvents(final CUnit unit, final CSimulation game, final War3ID researched) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_RESEARCH_FINISH);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_RESEARCH_FINISH);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit, CommonTriggerExecutionScope.unitResearchFinishScope(
-						JassGameEventsWar3.EVENT_PLAYER_UNIT_RESEARCH_FINISH, event.getTrigger(), unit, researched));
-			}
+			eventList.fire(unit, 0, trigger -> CommonTriggerExecutionScope.unitResearchFinishScope(
+					JassGameEventsWar3.EVENT_PLAYER_UNIT_RESEARCH_FINISH, trigger, unit, researched));
 		}
 	}
 
 	public void firePickUpItemEvents(final CUnit unit, final CItem item, final CSimulation game) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_PICKUP_ITEM);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_PICKUP_ITEM);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(unit, CommonTriggerExecutionScope.unitPickupItemScope(
-						JassGameEventsWar3.EVENT_PLAYER_UNIT_PICKUP_ITEM, event.getTrigger(), unit, item));
-			}
+			eventList.fire(unit, 0, trigger -> CommonTriggerExecutionScope
+					.unitPickupItemScope(JassGameEventsWar3.EVENT_PLAYER_UNIT_PICKUP_ITEM, trigger, unit, item));
 		}
 	}
 
-	private List<CPlayerEvent> getOrCreateEventList(final JassGameEventsWar3 eventType) {
-		List<CPlayerEvent> playerEvents = this.eventTypeToEvents.get(eventType);
+	private CTriggerEventIndex<CPlayerEvent> getOrCreateEventList(final JassGameEventsWar3 eventType) {
+		CTriggerEventIndex<CPlayerEvent> playerEvents = this.eventTypeToEvents.get(eventType);
 		if (playerEvents == null) {
-			playerEvents = new ArrayList<>();
+			playerEvents = new CTriggerEventIndex<>(eventType);
 			this.eventTypeToEvents.put(eventType, playerEvents);
 		}
 		return playerEvents;
 	}
 
-	private List<CPlayerEvent> getEventList(final JassGameEventsWar3 eventType) {
+	private CTriggerEventIndex<CPlayerEvent> getEventList(final JassGameEventsWar3 eventType) {
 		return this.eventTypeToEvents.get(eventType);
 	}
 
@@ -474,7 +460,7 @@ public class CPlayer extends CBasePlayer {
 
 	@Override
 	public void removeEvent(final CPlayerEvent playerEvent) {
-		final List<CPlayerEvent> eventList = getEventList(playerEvent.getEventType());
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(playerEvent.getEventType());
 		if (eventList != null) {
 			eventList.remove(playerEvent);
 		}
@@ -612,27 +598,25 @@ public class CPlayer extends CBasePlayer {
 
 	public void fireAbilityEffectEventsTarget(final CAbility spellAbility, final CUnit spellAbilityUnit,
 			final CUnit spellTargetUnit, final War3ID alias) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(spellAbilityUnit,
-						CommonTriggerExecutionScope.unitSpellEffectTargetScope(
-								JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT, event.getTrigger(), spellAbility,
-								spellAbilityUnit, spellTargetUnit, alias));
-			}
+			eventList.fire(spellAbilityUnit, alias.getValue(),
+					trigger -> CommonTriggerExecutionScope.unitSpellEffectTargetScope(
+							JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT, trigger, spellAbility, spellAbilityUnit,
+							spellTargetUnit, alias));
 		}
 	}
 
 	public void fireAbilityEffectEventsPoint(final CAbility spellAbility, final CUnit spellAbilityUnit,
 			final AbilityPointTarget abilityPointTarget, final War3ID alias) {
-		final List<CPlayerEvent> eventList = getEventList(JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT);
+		final CTriggerEventIndex<CPlayerEvent> eventList = getEventList(
+				JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT);
 		if (eventList != null) {
-			for (final CPlayerEvent event : eventList) {
-				event.fire(spellAbilityUnit,
-						CommonTriggerExecutionScope.unitSpellEffectPointScope(
-								JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT, event.getTrigger(), spellAbility,
-								spellAbilityUnit, abilityPointTarget, alias));
-			}
+			eventList.fire(spellAbilityUnit, alias.getValue(),
+					trigger -> CommonTriggerExecutionScope.unitSpellEffectPointScope(
+							JassGameEventsWar3.EVENT_PLAYER_UNIT_SPELL_EFFECT, trigger, spellAbility, spellAbilityUnit,
+							abilityPointTarget, alias));
 		}
 	}
 
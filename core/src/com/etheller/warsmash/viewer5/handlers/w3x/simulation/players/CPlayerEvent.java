@@ -1,15 +1,13 @@
 package com.etheller.warsmash.viewer5.handlers.w3x.simulation.players;
 
 import com.etheller.interpreter.ast.scope.GlobalScope;
-import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
 import com.etheller.interpreter.ast.scope.trigger.RemovableTriggerEvent;
 import com.etheller.interpreter.ast.scope.trigger.Trigger;
 import com.etheller.interpreter.ast.scope.trigger.TriggerBooleanExpression;
-import com.etheller.warsmash.parsers.jass.scope.CommonTriggerExecutionScope;
-import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.CTriggerEvent;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.JassGameEventsWar3;
 
-public class CPlayerEvent implements RemovableTriggerEvent {
+public class CPlayerEvent implements RemovableTriggerEvent, CTriggerEvent {
 	private final GlobalScope globalScope;
 	private final CPlayerJass player;
 	private final Trigger trigger;
@@ -25,10 +23,21 @@ public class CPlayerEvent implements RemovableTriggerEvent {
 		this.filter = filter;
 	}
 
+	@Override
+	public GlobalScope getGlobalScope() {
+		return this.globalScope;
+	}
+
+	@Override
 	public Trigger getTrigger() {
 		return this.trigger;
 	}
 
+	@Override
+	public TriggerBooleanExpression getFilter() {
+		return this.filter;
+	}
+
 	public JassGameEventsWar3 getEventType() {
 		return this.eventType;
 	}
@@ -37,14 +46,4 @@ public class CPlayerEvent implements RemovableTriggerEvent {
 	public void remove() {
 		this.player.removeEvent(this);
 	}
-
-	public void fire(final CUnit hero, final TriggerExecutionScope scope) {
-		this.globalScope.queueTrigger(this.filter, CommonTriggerExecutionScope.filterScope(scope, hero), this.trigger,
-				scope, scope);
-	}
-
-	public void fire(final CPlayer player, final TriggerExecutionScope scope) {
-		this.globalScope.queueTrigger(this.filter, CommonTriggerExecutionScope.filterScope(scope, player), this.trigger,
-				scope, scope);
-	}
 }
@@ -0,0 +1,236 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+
+/**
+ * Everything the unit sight sweep needs to know about the map, sampled once at
+ * the center of each fog of war cell: the terrain layer height, whether the
+ * cell is water or a ramp, and whether pathing blocks vision there. Only the
+ * vision blocking is dynamic, and only the fog cells under a changed pathing
+ * map are sampled again. Each change to it bumps a revision and is remembered
+ * for a while, so that {@link CUnitVision} can tell whether a sight it
+ * calculated earlier crosses a changed cell.
+ *
+ * Also caches a {@link RayTemplate} for each sight radius that has been used.
+ */
+public class CLineOfSightTable implements PathingGrid.PathingChangeListener {
+	private static final byte WATER = 0x1;
+	private static final byte ROMP = 0x2;
+	private static final byte BLOCK_VISION = 0x4;
+	// a power of two; a sight older than this many changes is always recalculated
+	private static final int CHANGE_HISTORY_SIZE = 64;
+	private static final int CHANGE_HISTORY_MASK = CHANGE_HISTORY_SIZE - 1;
+
+	private final PathingGrid pathingGrid;
+	private final int width;
+	private final int height;
+	private final int[] heights;
+	private final byte[] flags;
+	private final List<RayTemplate> rayTemplates = new ArrayList<>();
+	private boolean built = false;
+	private final int[] changeMinIndexX = new int[CHANGE_HISTORY_SIZE];
+	private final int[] changeMinIndexY = new int[CHANGE_HISTORY_SIZE];
+	private final int[] changeMaxIndexX = new int[CHANGE_HISTORY_SIZE];
+	private final int[] changeMaxIndexY = new int[CHANGE_HISTORY_SIZE];
+	private int revision;
+
+	public CLineOfSightTable(final PathingGrid pathingGrid, final int width, final int height) {
+		this.pathingGrid = pathingGrid;
+		this.width = width;
+		this.height = height;
+		this.heights = new int[width * height];
+		this.flags = new byte[width * height];
+		pathingGrid.addPathingChangeListener(this);
+	}
+
+	/**
+	 * The terrain is not necessarily loaded when the simulation is created, so the
+	 * table is filled in the first time a unit looks around.
+	 */
+	public void ensureBuilt(final CSimulation game) {
+		if (!this.built) {
+			this.built = true;
+			for (int indexY = 0; indexY < this.height; indexY++) {
+				final float worldY = this.pathingGrid.getFogOfWarWorldY(indexY);
+				for (int indexX = 0; indexX < this.width; indexX++) {
+					final float worldX = this.pathingGrid.getFogOfWarWorldX(indexX);
+					final int index = (indexY * this.width) + indexX;
+					this.heights[index] = game.getTerrainHeight(worldX, worldY);
+					byte cellFlags = 0;
+					if (game.isTerrainWater(worldX, worldY)) {
+						cellFlags |= WATER;
+					}
+					if (game.isTerrainRomp(worldX, worldY)) {
+						cellFlags |= ROMP;
+					}
+					this.flags[index] = cellFlags;
+				}
+			}
+			updateBlockVision(0, 0, this.width - 1, this.height - 1);
+		}
+	}
+
+	@Override
+	public void onPathingChanged(final int minCellX, final int minCellY, final int maxCellX, final int maxCellY) {
+		if (this.built) {
+			final int minIndexX = Math.max(0, minCellX / CPlayerFogOfWar.PATHING_RATIO);
+			final int minIndexY = Math.max(0, minCellY / CPlayerFogOfWar.PATHING_RATIO);
+			final int maxIndexX = Math.min(this.width - 1, (maxCellX / CPlayerFogOfWar.PATHING_RATIO) + 1);
+			final int maxIndexY = Math.min(this.height - 1, (maxCellY / CPlayerFogOfWar.PATHING_RATIO) + 1);
+			if (updateBlockVision(minIndexX, minIndexY, maxIndexX, maxIndexY)) {
+				final int slot = this.revision & CHANGE_HISTORY_MASK;
+				this.changeMinIndexX[slot] = minIndexX;
+				this.changeMinIndexY[slot] = minIndexY;
+				this.changeMaxIndexX[slot] = maxIndexX;
+				this.changeMaxIndexY[slot] = maxIndexY;
+				this.revision++;
+			}
+		}
+	}
+
+	/**
+	 * @return whether any cell changed whether it blocks vision
+	 */
+	private boolean updateBlockVision(final int minIndexX, final int minIndexY, final int maxIndexX,
+			final int maxIndexY) {
+		boolean changed = false;
+		for (int indexY = minIndexY; indexY <= maxIndexY; indexY++) {
+			final float worldY = this.pathingGrid.getFogOfWarWorldY(indexY);
+			for (int indexX = minIndexX; indexX <= maxIndexX; indexX++) {
+				final float worldX = this.pathingGrid.getFogOfWarWorldX(indexX);
+				final int index = (indexY * this.width) + indexX;
+				final byte previousFlags = this.flags[index];
+				if (this.pathingGrid.isBlockVision(worldX, worldY)) {
+					this.flags[index] |= BLOCK_VISION;
+				}
+				else {
+					this.flags[index] &= ~BLOCK_VISION;
+				}
+				changed |= previousFlags != this.flags[index];
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return the count of changes to vision blocking so far
+	 */
+	public int getRevision() {
+		return this.revision;
+	}
+
+	/**
+	 * @return whether vision blocking changed anywhere in the given fog of war
+	 *         cells after the given revision, or may have because that revision
+	 *         is too old to tell
+	 */
+	public boolean isBlockVisionChanged(final int sinceRevision, final int minIndexX, final int minIndexY,
+			final int maxIndexX, final int maxIndexY) {
+		if ((this.revision - sinceRevision) > CHANGE_HISTORY_SIZE) {
+			return true;
+		}
+		for (int revision = sinceRevision; revision != this.revision; revision++) {
+			final int slot = revision & CHANGE_HISTORY_MASK;
+			if ((this.changeMinIndexX[slot] <= maxIndexX) && (this.changeMaxIndexX[slot] >= minIndexX)
+					&& (this.changeMinIndexY[slot] <= maxIndexY) && (this.changeMaxIndexY[slot] >= minIndexY)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getWidth() {
+		return this.width;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	public boolean isBlockVision(final int index) {
+		return (this.flags[index] & BLOCK_VISION) != 0;
+	}
+
+	/**
+	 * Whether a viewer standing at the given terrain height can see into the cell,
+	 * ignoring anything in between.
+	 */
+	public boolean isVisibleFromHeight(final int index, final int viewerHeight) {
+		final byte cellFlags = this.flags[index];
+		if ((cellFlags & WATER) != 0) {
+			return true;
+		}
+		final int cellHeight = this.heights[index];
+		return (viewerHeight > cellHeight) || (((cellFlags & ROMP) == 0) && (viewerHeight == cellHeight));
+	}
+
+	public RayTemplate getRayTemplate(final float sightRadius) {
+		for (int i = 0; i < this.rayTemplates.size(); i++) {
+			final RayTemplate rayTemplate = this.rayTemplates.get(i);
+			if (rayTemplate.sightRadius == sightRadius) {
+				return rayTemplate;
+			}
+		}
+		final RayTemplate rayTemplate = new RayTemplate(sightRadius);
+		this.rayTemplates.add(rayTemplate);
+		return rayTemplate;
+	}
+
+	/**
+	 * The cell offsets within a sight radius, in the order the sweep has to visit
+	 * them: first the straight rays along the axes, then one quadrant row by row,
+	 * so that the cells that an offset depends on were always visited before it.
+	 */
+	public static final class RayTemplate {
+		private final float sightRadius;
+		private final int axisLength;
+		private final int[] quadrantX;
+		private final int[] quadrantY;
+
+		private RayTemplate(final float sightRadius) {
+			this.sightRadius = sightRadius;
+			final float radSq = (sightRadius * sightRadius) / (CPlayerFogOfWar.GRID_STEP * CPlayerFogOfWar.GRID_STEP);
+			int axisLength = 0;
+			while (((axisLength + 1) * (axisLength + 1)) <= radSq) {
+				axisLength++;
+			}
+			this.axisLength = axisLength;
+			final int[] quadrantX = new int[axisLength * axisLength];
+			final int[] quadrantY = new int[axisLength * axisLength];
+			int count = 0;
+			for (int y = 1; y <= axisLength; y++) {
+				for (int x = 1; x <= axisLength; x++) {
+					final float distance = (x * x) + (y * y);
+					if (distance <= radSq) {
+						quadrantX[count] = x;
+						quadrantY[count] = y;
+						count++;
+					}
+				}
+			}
+			this.quadrantX = Arrays.copyOf(quadrantX, count);
+			this.quadrantY = Arrays.copyOf(quadrantY, count);
+		}
+
+		public int getAxisLength() {
+			return this.axisLength;
+		}
+
+		public int getQuadrantCount() {
+			return this.quadrantX.length;
+		}
+
+		public int getQuadrantX(final int i) {
+			return this.quadrantX[i];
+		}
+
+		public int getQuadrantY(final int i) {
+			return this.quadrantY[i];
+		}
+	}
+}
@@ -10,6 +10,10 @@ public class CPlayerFogOfWar {
 	private final int width;
 	private final int height;
 	private final ByteBuffer fogOfWarBuffer;
+	// how many units see each cell, see CUnitVision
+	private final short[] visibleCounts;
+	// cells that a fog modifier made visible since the last convertVisibleToFogged
+	private final boolean[] modifierVisible;
 
 	public CPlayerFogOfWar(final PathingGrid pathingGrid) {
 		width = (pathingGrid.getWidth() / PATHING_RATIO) + 1;
@@ -21,6 +25,8 @@ public class CPlayerFogOfWar {
 			fogOfWarBuffer.put((byte) -1);
 		}
 		fogOfWarBuffer.clear();
+		this.visibleCounts = new short[fogOfWarBufferLen];
+		this.modifierVisible = new boolean[fogOfWarBufferLen];
 	}
 
 	public int getWidth() {
@@ -58,13 +64,38 @@ public class CPlayerFogOfWar {
 	public void setState(final int indexX, final int indexY, final byte fogOfWarState) {
 		final int writeIndex = (indexY * getWidth()) + indexX;
 		if ((writeIndex >= 0) && (writeIndex < fogOfWarBuffer.capacity())) {
+			if (fogOfWarState == 0) {
+				modifierVisible[writeIndex] = true;
+			}
+			else if (visibleCounts[writeIndex] > 0) {
+				// unit sight wins over modifiers that fog or mask, like it did back when
+				// unit sight was applied after the modifiers
+				return;
+			}
 			fogOfWarBuffer.put(writeIndex, fogOfWarState);
 		}
 	}
 
+	public void addVisibleCell(final int index) {
+		if (visibleCounts[index]++ == 0) {
+			fogOfWarBuffer.put(index, (byte) 0);
+		}
+	}
+
+	public void removeVisibleCell(final int index) {
+		if ((--visibleCounts[index] == 0) && !modifierVisible[index]) {
+			fogOfWarBuffer.put(index, (byte) 127);
+		}
+	}
+
+	/**
+	 * Fogs every visible cell that no unit sees, before the fog modifiers are
+	 * applied again.
+	 */
 	public void convertVisibleToFogged() {
 		for (int i = 0; i < fogOfWarBuffer.capacity(); i++) {
-			if (fogOfWarBuffer.get(i) == 0) {
+			modifierVisible[i] = false;
+			if ((fogOfWarBuffer.get(i) == 0) && (visibleCounts[i] == 0)) {
 				fogOfWarBuffer.put(i, (byte) 127);
 			}
 		}
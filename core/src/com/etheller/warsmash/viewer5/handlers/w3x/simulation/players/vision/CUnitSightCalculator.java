@@ -0,0 +1,146 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision;
+
+import java.util.Arrays;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+
+/**
+ * Finds the fog of war cells that a unit sees from a point, without touching
+ * any player's fog of war, so that the result can be reference counted by
+ * {@link CUnitVision}. Each calculation only looks at its own cells when
+ * deciding whether vision continues past a cell, so what one unit sees does
+ * not depend on what other units of the same player see.
+ *
+ * This is the same sweep as {@link CUnitVisionFogModifier}, but driven by the
+ * {@link CLineOfSightTable} instead of sampling the terrain and pathing at
+ * positions relative to the unit.
+ */
+public class CUnitSightCalculator {
+	private final CLineOfSightTable lineOfSightTable;
+	private final int width;
+	private final int height;
+	// cell is visible in the current calculation when its stamp is the current stamp
+	private final int[] visibleStamps;
+	private int stamp = 0;
+	private int[] cells = new int[64];
+	private int cellCount;
+
+	public CUnitSightCalculator(final CLineOfSightTable lineOfSightTable) {
+		this.lineOfSightTable = lineOfSightTable;
+		this.width = lineOfSightTable.getWidth();
+		this.height = lineOfSightTable.getHeight();
+		this.visibleStamps = new int[this.width * this.height];
+	}
+
+	public CLineOfSightTable getLineOfSightTable() {
+		return this.lineOfSightTable;
+	}
+
+	/**
+	 * @return the number of visible cells, which are then in {@link #getCells()}
+	 */
+	public int calculate(final CSimulation game, final float myX, final float myY, final float sightRadius,
+			final boolean flying) {
+		if (this.stamp == Integer.MAX_VALUE) {
+			Arrays.fill(this.visibleStamps, 0);
+			this.stamp = 0;
+		}
+		this.stamp++;
+		this.cellCount = 0;
+		final PathingGrid pathingGrid = game.getPathingGrid();
+		final int myXi = pathingGrid.getFogOfWarIndexX(myX);
+		final int myYi = pathingGrid.getFogOfWarIndexY(myY);
+		if ((myXi < 0) || (myYi < 0) || (myXi >= this.width) || (myYi >= this.height)) {
+			return 0;
+		}
+		final CLineOfSightTable table = this.lineOfSightTable;
+		table.ensureBuilt(game);
+		final int myZ = flying ? Integer.MAX_VALUE : game.getTerrainHeight(myX, myY);
+		final CLineOfSightTable.RayTemplate rayTemplate = table.getRayTemplate(sightRadius);
+		markVisible((myYi * this.width) + myXi);
+
+		// Cells are only ever marked within the map, and every cell that a cell
+		// depends on is between it and the viewer, so none of the indices below need
+		// bounds checks once the target cell is known to be on the map.
+		final int axisLength = rayTemplate.getAxisLength();
+		for (int a = 1; a <= axisLength; a++) {
+			sweepAxis(myXi, myYi - a, 0, -1, flying, myZ);
+			sweepAxis(myXi, myYi + a, 0, 1, flying, myZ);
+			sweepAxis(myXi - a, myYi, -1, 0, flying, myZ);
+			sweepAxis(myXi + a, myYi, 1, 0, flying, myZ);
+		}
+
+		final int quadrantCount = rayTemplate.getQuadrantCount();
+		for (int i = 0; i < quadrantCount; i++) {
+			final int x = rayTemplate.getQuadrantX(i);
+			final int y = rayTemplate.getQuadrantY(i);
+			sweepQuadrant(myXi - x, myYi - y, -1, -1, x, y, flying, myZ);
+			sweepQuadrant(myXi - x, myYi + y, -1, 1, x, y, flying, myZ);
+			sweepQuadrant(myXi + x, myYi - y, 1, -1, x, y, flying, myZ);
+			sweepQuadrant(myXi + x, myYi + y, 1, 1, x, y, flying, myZ);
+		}
+		return this.cellCount;
+	}
+
+	private void sweepAxis(final int targetX, final int targetY, final int stepX, final int stepY,
+			final boolean flying, final int myZ) {
+		if ((targetX < 0) || (targetY < 0) || (targetX >= this.width) || (targetY >= this.height)) {
+			return;
+		}
+		final int target = (targetY * this.width) + targetX;
+		final int previous = target - (stepY * this.width) - stepX;
+		final CLineOfSightTable table = this.lineOfSightTable;
+		if ((flying || !table.isBlockVision(previous)) && isVisible(previous)
+				&& (flying || table.isVisibleFromHeight(target, myZ))) {
+			markVisible(target);
+		}
+	}
+
+	private void sweepQuadrant(final int targetX, final int targetY, final int stepX, final int stepY, final int x,
+			final int y, final boolean flying, final int myZ) {
+		if ((targetX < 0) || (targetY < 0) || (targetX >= this.width) || (targetY >= this.height)) {
+			return;
+		}
+		final int target = (targetY * this.width) + targetX;
+		final int previousRow = stepY * this.width;
+		final int diagonal = target - previousRow - stepX;
+		final CLineOfSightTable table = this.lineOfSightTable;
+		if ((flying || table.isVisibleFromHeight(target, myZ)) && (flying || !table.isBlockVision(diagonal))
+				&& isVisible(diagonal)) {
+			final boolean visible;
+			if (x == y) {
+				visible = true;
+			}
+			else if (x > y) {
+				final int side = target - stepX;
+				visible = isVisible(side) && (flying || !table.isBlockVision(side));
+			}
+			else {
+				final int side = target - previousRow;
+				visible = isVisible(side) && (flying || !table.isBlockVision(side));
+			}
+			if (visible) {
+				markVisible(target);
+			}
+		}
+	}
+
+	public int[] getCells() {
+		return this.cells;
+	}
+
+	private boolean isVisible(final int index) {
+		return this.visibleStamps[index] == this.stamp;
+	}
+
+	private void markVisible(final int index) {
+		if (this.visibleStamps[index] != this.stamp) {
+			this.visibleStamps[index] = this.stamp;
+			if (this.cellCount == this.cells.length) {
+				this.cells = Arrays.copyOf(this.cells, this.cellCount * 2);
+			}
+			this.cells[this.cellCount++] = index;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.vision;
+
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
+import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid.MovementType;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CSimulation;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnitType;
+
+/**
+ * The fog of war cells that one unit is currently counted as seeing in its
+ * owner's {@link CPlayerFogOfWar}. Checked every tick, but the sight is only
+ * recalculated when something it depends on changed: the fog cell the unit is
+ * in, its sight radius (which includes day and night), whether it flies, its
+ * owner, whether it is dead or hidden, or whether something that blocks vision,
+ * such as a tree, appeared or went away within its sight radius.
+ */
+public final class CUnitVision {
+	private static final int[] NO_CELLS = new int[0];
+
+	private CPlayerFogOfWar fogOfWar;
+	private int indexX;
+	private int indexY;
+	private float sightRadius;
+	private boolean flying;
+	private int lineOfSightRevision;
+	// the fog of war cells within the sight radius, whether visible or not
+	private int minIndexX;
+	private int minIndexY;
+	private int maxIndexX;
+	private int maxIndexY;
+	private int[] cells = NO_CELLS;
+	private int cellCount;
+
+	public void update(final CSimulation game, final CUnit unit) {
+		CPlayerFogOfWar fogOfWar = null;
+		int indexX = 0;
+		int indexY = 0;
+		float sightRadius = 0;
+		boolean flying = false;
+		if (!unit.isDead() && !unit.isHidden()) {
+			final CUnitType unitType = unit.getUnitType();
+			sightRadius = game.isDay() ? unitType.getSightRadiusDay() : unitType.getSightRadiusNight();
+			if (sightRadius > 0) {
+				final PathingGrid pathingGrid = game.getPathingGrid();
+				fogOfWar = game.getPlayer(unit.getPlayerIndex()).getFogOfWar();
+				indexX = pathingGrid.getFogOfWarIndexX(unit.getX());
+				indexY = pathingGrid.getFogOfWarIndexY(unit.getY());
+				flying = unitType.getMovementType() == MovementType.FLY;
+			}
+		}
+		final CUnitSightCalculator sightCalculator = game.getUnitSightCalculator();
+		final CLineOfSightTable lineOfSightTable = sightCalculator.getLineOfSightTable();
+		if (fogOfWar == this.fogOfWar) {
+			if (fogOfWar == null) {
+				return;
+			}
+			if ((indexX == this.indexX) && (indexY == this.indexY) && (sightRadius == this.sightRadius)
+					&& (flying == this.flying)) {
+				final int revision = lineOfSightTable.getRevision();
+				if ((revision == this.lineOfSightRevision) || !lineOfSightTable.isBlockVisionChanged(
+						this.lineOfSightRevision, this.minIndexX, this.minIndexY, this.maxIndexX, this.maxIndexY)) {
+					this.lineOfSightRevision = revision;
+					return;
+				}
+			}
+		}
+		clear();
+		if (fogOfWar != null) {
+			final int cellCount = sightCalculator.calculate(game, unit.getX(), unit.getY(), sightRadius, flying);
+			if (this.cells.length < cellCount) {
+				this.cells = new int[cellCount];
+			}
+			System.arraycopy(sightCalculator.getCells(), 0, this.cells, 0, cellCount);
+			this.cellCount = cellCount;
+			for (int i = 0; i < cellCount; i++) {
+				fogOfWar.addVisibleCell(this.cells[i]);
+			}
+			this.fogOfWar = fogOfWar;
+			this.indexX = indexX;
+			this.indexY = indexY;
+			this.sightRadius = sightRadius;
+			this.flying = flying;
+			final PathingGrid pathingGrid = game.getPathingGrid();
+			this.lineOfSightRevision = lineOfSightTable.getRevision();
+			// a cell of slack, the index conversion truncates
+			this.minIndexX = pathingGrid.getFogOfWarIndexX(unit.getX() - sightRadius) - 1;
+			this.minIndexY = pathingGrid.getFogOfWarIndexY(unit.getY() - sightRadius) - 1;
+			this.maxIndexX = pathingGrid.getFogOfWarIndexX(unit.getX() + sightRadius) + 1;
+			this.maxIndexY = pathingGrid.getFogOfWarIndexY(unit.getY() + sightRadius) + 1;
+		}
+	}
+
+	/**
+	 * Stops counting this unit's sight, for when the unit is removed from the
+	 * game.
+	 */
+	public void clear() {
+		if (this.fogOfWar != null) {
+			for (int i = 0; i < this.cellCount; i++) {
+				this.fogOfWar.removeVisibleCell(this.cells[i]);
+			}
+			this.fogOfWar = null;
+		}
+		this.cellCount = 0;
+	}
+}
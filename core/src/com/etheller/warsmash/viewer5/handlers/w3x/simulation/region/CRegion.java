@@ -1,16 +1,17 @@
 package com.etheller.warsmash.viewer5.handlers.w3x.simulation.region;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import com.badlogic.gdx.math.Rectangle;
 import com.etheller.interpreter.ast.scope.trigger.RemovableTriggerEvent;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.CTriggerEventIndex;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.JassGameEventsWar3;
 
 public class CRegion {
 	private Rectangle currentBounds;
 	private boolean complexRegion;
-	private final List<CRegionTriggerEnter> enterTriggers = new ArrayList<>();
-	private final List<CRegionTriggerLeave> leaveTriggers = new ArrayList<>();
+	private final CTriggerEventIndex<CRegionTriggerEnter> enterTriggers = new CTriggerEventIndex<>(
+			JassGameEventsWar3.EVENT_GAME_ENTER_REGION);
+	private final CTriggerEventIndex<CRegionTriggerLeave> leaveTriggers = new CTriggerEventIndex<>(
+			JassGameEventsWar3.EVENT_GAME_LEAVE_REGION);
 
 	public void addRect(final Rectangle rect, final CRegionManager regionManager) {
 		if (this.currentBounds == null) {
@@ -129,11 +130,11 @@ public class CRegion {
 		return this.currentBounds.contains(x, y);
 	}
 
-	public List<CRegionTriggerEnter> getEnterTriggers() {
+	public CTriggerEventIndex<CRegionTriggerEnter> getEnterTriggers() {
 		return this.enterTriggers;
 	}
 
-	public List<CRegionTriggerLeave> getLeaveTriggers() {
+	public CTriggerEventIndex<CRegionTriggerLeave> getLeaveTriggers() {
 		return this.leaveTriggers;
 	}
 
@@ -4,10 +4,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.badlogic.gdx.math.Rectangle;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+import com.etheller.warsmash.parsers.jass.scope.CommonTriggerExecutionScope;
 import com.etheller.warsmash.util.Quadtree;
 import com.etheller.warsmash.util.QuadtreeIntersector;
 import com.etheller.warsmash.viewer5.handlers.w3x.environment.PathingGrid;
 import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger.JassGameEventsWar3;
 
 public class CRegionManager {
 	private static Rectangle tempRect = new Rectangle();
@@ -188,15 +191,13 @@ public class CRegionManager {
 	}
 
 	public void onUnitEnterRegion(final CUnit unit, final CRegion region) {
-		for (final CRegionTriggerEnter enterTrigger : region.getEnterTriggers()) {
-			enterTrigger.fire(unit, region);
-		}
+		region.getEnterTriggers().fire(unit, 0, trigger -> CommonTriggerExecutionScope.unitEnterRegionScope(
+				JassGameEventsWar3.EVENT_GAME_ENTER_REGION, trigger, TriggerExecutionScope.EMPTY, unit, region));
 	}
 
 	public void onUnitLeaveRegion(final CUnit unit, final CRegion region) {
-		for (final CRegionTriggerLeave leaveTrigger : region.getLeaveTriggers()) {
-			leaveTrigger.fire(unit, region);
-		}
+		region.getLeaveTriggers().fire(unit, 0, trigger -> CommonTriggerExecutionScope.unitLeaveRegionScope(
+				JassGameEventsWar3.EVENT_GAME_LEAVE_REGION, trigger, TriggerExecutionScope.EMPTY, unit, region));
 	}
 
 }
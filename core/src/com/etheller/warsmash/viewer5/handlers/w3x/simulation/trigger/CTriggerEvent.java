@@ -0,0 +1,17 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger;
+
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.trigger.Trigger;
+import com.etheller.interpreter.ast.scope.trigger.TriggerBooleanExpression;
+
+/**
+ * A trigger registered on some game event, along with the filter it was
+ * registered with, if any.
+ */
+public interface CTriggerEvent {
+	GlobalScope getGlobalScope();
+
+	Trigger getTrigger();
+
+	TriggerBooleanExpression getFilter();
+}
@@ -0,0 +1,63 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger;
+
+import java.util.List;
+
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.trigger.Trigger;
+import com.etheller.interpreter.ast.scope.trigger.TriggerBooleanExpression;
+import com.etheller.warsmash.parsers.jass.scope.CommonTriggerExecutionScope;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayerJass;
+
+/**
+ * Everything one game event has to run: the filters, conditions and actions of
+ * the triggers it reached, in the order they were registered. Queued as a
+ * single callback, and the scope of each trigger is only made once its turn
+ * comes.
+ */
+public final class CTriggerEventBatch implements GlobalScope.QueuedCallback {
+	private final List<? extends CTriggerEvent> events;
+	private final CUnit filterUnit;
+	private final CPlayerJass filterPlayer;
+	private final ScopeBuilder scopeBuilder;
+
+	public CTriggerEventBatch(final List<? extends CTriggerEvent> events, final CUnit filterUnit,
+			final ScopeBuilder scopeBuilder) {
+		this.events = events;
+		this.filterUnit = filterUnit;
+		this.filterPlayer = null;
+		this.scopeBuilder = scopeBuilder;
+	}
+
+	public CTriggerEventBatch(final List<? extends CTriggerEvent> events, final CPlayerJass filterPlayer,
+			final ScopeBuilder scopeBuilder) {
+		this.events = events;
+		this.filterUnit = null;
+		this.filterPlayer = filterPlayer;
+		this.scopeBuilder = scopeBuilder;
+	}
+
+	@Override
+	public void fire(final GlobalScope globalScope) {
+		for (final CTriggerEvent event : this.events) {
+			final Trigger trigger = event.getTrigger();
+			final CommonTriggerExecutionScope scope = this.scopeBuilder.create(trigger);
+			final TriggerBooleanExpression filter = event.getFilter();
+			if (filter != null) {
+				final CommonTriggerExecutionScope filterScope = this.filterPlayer == null
+						? CommonTriggerExecutionScope.filterScope(scope, this.filterUnit)
+						: CommonTriggerExecutionScope.filterScope(scope, this.filterPlayer);
+				if (!filter.evaluate(globalScope, filterScope)) {
+					continue;
+				}
+			}
+			if (trigger.evaluate(globalScope, scope)) {
+				trigger.execute(globalScope, scope);
+			}
+		}
+	}
+
+	public static interface ScopeBuilder {
+		CommonTriggerExecutionScope create(Trigger trigger);
+	}
+}
@@ -0,0 +1,176 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.etheller.interpreter.ast.scope.trigger.Trigger;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.CUnit;
+import com.etheller.warsmash.viewer5.handlers.w3x.simulation.players.CPlayerJass;
+
+/**
+ * The triggers registered on one type of event of one player or region, indexed
+ * by the ability or unit type that their {@link CTriggerGuard} waits for. When
+ * the event fires, only the triggers without a guard and the ones waiting for
+ * this ability or unit type are reached, so a map with a trigger for every
+ * spell does not evaluate all of them on every cast.
+ *
+ * The index is built again when the conditions of one of its triggers change,
+ * and keeps the order the triggers were registered in.
+ */
+public final class CTriggerEventIndex<EVENT extends CTriggerEvent> implements Trigger.ConditionsChangeListener {
+	private static final Bucket EMPTY_BUCKET = new Bucket();
+
+	private final JassGameEventsWar3 eventType;
+	private final List<EVENT> events = new ArrayList<>();
+	private final Bucket unguardedEvents = new Bucket();
+	private final Map<Integer, Bucket> spellAbilityIdToEvents = new HashMap<>();
+	private final Map<Integer, Bucket> unitTypeIdToEvents = new HashMap<>();
+	private boolean built;
+
+	public CTriggerEventIndex(final JassGameEventsWar3 eventType) {
+		this.eventType = eventType;
+	}
+
+	public void add(final EVENT event) {
+		this.events.add(event);
+		event.getTrigger().addConditionsChangeListener(this);
+		this.built = false;
+	}
+
+	public void remove(final EVENT event) {
+		if (this.events.remove(event)) {
+			event.getTrigger().removeConditionsChangeListener(this);
+		}
+		this.built = false;
+	}
+
+	@Override
+	public void onConditionsChanged(final Trigger trigger) {
+		this.built = false;
+	}
+
+	public boolean isEmpty() {
+		return this.events.isEmpty();
+	}
+
+	public void fire(final CUnit unit, final int spellAbilityId, final CTriggerEventBatch.ScopeBuilder scopeBuilder) {
+		final List<EVENT> reachedEvents = collect(spellAbilityId, unit == null ? 0 : unit.getTypeId().getValue());
+		if (reachedEvents != null) {
+			reachedEvents.get(0).getGlobalScope()
+					.queueCallback(new CTriggerEventBatch(reachedEvents, unit, scopeBuilder));
+		}
+	}
+
+	public void fire(final CPlayerJass player, final CTriggerEventBatch.ScopeBuilder scopeBuilder) {
+		final List<EVENT> reachedEvents = collect(0, 0);
+		if (reachedEvents != null) {
+			reachedEvents.get(0).getGlobalScope()
+					.queueCallback(new CTriggerEventBatch(reachedEvents, player, scopeBuilder));
+		}
+	}
+
+	/**
+	 * @return the enabled triggers that this event could pass, in the order they
+	 *         were registered, or null if there are none
+	 */
+	public List<EVENT> collect(final int spellAbilityId, final int unitTypeId) {
+		if (this.events.isEmpty()) {
+			return null;
+		}
+		if (!this.built) {
+			build();
+		}
+		final Bucket spellAbilityEvents = getBucket(this.spellAbilityIdToEvents, spellAbilityId);
+		final Bucket unitTypeEvents = getBucket(this.unitTypeIdToEvents, unitTypeId);
+		List<EVENT> reachedEvents = null;
+		int unguardedIndex = 0;
+		int spellAbilityIndex = 0;
+		int unitTypeIndex = 0;
+		while (true) {
+			final int unguardedPosition = this.unguardedEvents.get(unguardedIndex);
+			final int spellAbilityPosition = spellAbilityEvents.get(spellAbilityIndex);
+			final int unitTypePosition = unitTypeEvents.get(unitTypeIndex);
+			final int position = Math.min(unguardedPosition, Math.min(spellAbilityPosition, unitTypePosition));
+			if (position == Integer.MAX_VALUE) {
+				break;
+			}
+			if (position == unguardedPosition) {
+				unguardedIndex++;
+			}
+			else if (position == spellAbilityPosition) {
+				spellAbilityIndex++;
+			}
+			else {
+				unitTypeIndex++;
+			}
+			final EVENT event = this.events.get(position);
+			if (event.getTrigger().isEnabled()) {
+				if (reachedEvents == null) {
+					reachedEvents = new ArrayList<>();
+				}
+				reachedEvents.add(event);
+			}
+		}
+		return reachedEvents;
+	}
+
+	private void build() {
+		this.unguardedEvents.clear();
+		this.spellAbilityIdToEvents.clear();
+		this.unitTypeIdToEvents.clear();
+		for (int position = 0; position < this.events.size(); position++) {
+			final EVENT event = this.events.get(position);
+			// a filter runs before the conditions, so triggers with one are always reached
+			final CTriggerGuard guard = event.getFilter() == null ? CTriggerGuard.find(event.getTrigger()) : null;
+			if ((guard == null) || !guard.isKnownBy(this.eventType)) {
+				this.unguardedEvents.add(position);
+			}
+			else {
+				final Map<Integer, Bucket> valueToEvents = guard
+						.getSubject() == CTriggerGuard.Subject.SPELL_ABILITY_ID ? this.spellAbilityIdToEvents
+								: this.unitTypeIdToEvents;
+				Bucket bucket = valueToEvents.get(guard.getValue());
+				if (bucket == null) {
+					bucket = new Bucket();
+					valueToEvents.put(guard.getValue(), bucket);
+				}
+				bucket.add(position);
+			}
+		}
+		this.built = true;
+	}
+
+	private static Bucket getBucket(final Map<Integer, Bucket> valueToEvents, final int value) {
+		if (valueToEvents.isEmpty()) {
+			return EMPTY_BUCKET;
+		}
+		final Bucket bucket = valueToEvents.get(value);
+		return bucket == null ? EMPTY_BUCKET : bucket;
+	}
+
+	/**
+	 * Positions in the event list, in ascending order.
+	 */
+	private static final class Bucket {
+		private int[] positions = new int[4];
+		private int size;
+
+		public void add(final int position) {
+			if (this.size == this.positions.length) {
+				this.positions = Arrays.copyOf(this.positions, this.size * 2);
+			}
+			this.positions[this.size++] = position;
+		}
+
+		public int get(final int index) {
+			return index < this.size ? this.positions[index] : Integer.MAX_VALUE;
+		}
+
+		public void clear() {
+			this.size = 0;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.trigger;
+
+import java.util.List;
+
+import com.etheller.interpreter.ast.debug.DebuggingJassStatement;
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.NotJassExpression;
+import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.LinkedUserJassFunction;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.trigger.Trigger;
+import com.etheller.interpreter.ast.scope.trigger.TriggerBooleanExpression;
+import com.etheller.interpreter.ast.statement.JassIfStatement;
+import com.etheller.interpreter.ast.statement.JassReturnStatement;
+import com.etheller.interpreter.ast.statement.JassStatement;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.warsmash.parsers.jass.triggers.BoolExprAnd;
+import com.etheller.warsmash.parsers.jass.triggers.BoolExprCondition;
+
+/**
+ * A comparison that a trigger makes first thing in its first condition, and
+ * that has to hold for the trigger to run at all, such as the ones the World
+ * Editor writes for an "Ability Comparison" or a "Unit-Type Comparison":
+ *
+ * <pre>
+ * if ( not ( GetSpellAbilityId() == 'A000' ) ) then
+ *     return false
+ * endif
+ * </pre>
+ *
+ * The comparison only calls natives that read the event, so when it does not
+ * hold, skipping the trigger is the same as evaluating it.
+ */
+public final class CTriggerGuard {
+	private final Subject subject;
+	private final String unitFunctionName;
+	private final int value;
+
+	private CTriggerGuard(final Subject subject, final String unitFunctionName, final int value) {
+		this.subject = subject;
+		this.unitFunctionName = unitFunctionName;
+		this.value = value;
+	}
+
+	public Subject getSubject() {
+		return this.subject;
+	}
+
+	public int getValue() {
+		return this.value;
+	}
+
+	/**
+	 * @return true if the event knows what the guard compares, so it can tell for
+	 *         itself whether the guard holds
+	 */
+	public boolean isKnownBy(final JassGameEventsWar3 eventType) {
+		if (this.subject == Subject.SPELL_ABILITY_ID) {
+			return isSpellAbilityIdPassedBy(eventType);
+		}
+		return "GetTriggerUnit".equals(this.unitFunctionName)
+				|| this.unitFunctionName.equals(getTriggeringUnitAlias(eventType));
+	}
+
+	public static CTriggerGuard find(final Trigger trigger) {
+		final List<TriggerBooleanExpression> conditions = trigger.getConditions();
+		if (conditions.isEmpty()) {
+			return null;
+		}
+		return find(conditions.get(0));
+	}
+
+	private static CTriggerGuard find(final TriggerBooleanExpression condition) {
+		if (condition instanceof BoolExprAnd) {
+			return find(((BoolExprAnd) condition).getOperandA());
+		}
+		if (condition instanceof BoolExprCondition) {
+			final JassFunction function = ((BoolExprCondition) condition).getFunction();
+			if (function instanceof LinkedUserJassFunction) {
+				return find(((LinkedUserJassFunction) function).getUserFunction().getStatements());
+			}
+			if (function instanceof UserJassFunction) {
+				return find(((UserJassFunction) function).getStatements());
+			}
+		}
+		return null;
+	}
+
+	private static CTriggerGuard find(final List<JassStatement> statements) {
+		if (statements.isEmpty()) {
+			return null;
+		}
+		final JassStatement firstStatement = undecorate(statements.get(0));
+		if (firstStatement instanceof JassIfStatement) {
+			final JassIfStatement ifStatement = (JassIfStatement) firstStatement;
+			final List<JassStatement> thenStatements = ifStatement.getThenStatements();
+			if ((thenStatements.size() == 1) && isReturnFalse(undecorate(thenStatements.get(0)))
+					&& (ifStatement.getCondition() instanceof NotJassExpression)) {
+				return fromComparison(((NotJassExpression) ifStatement.getCondition()).getExpression());
+			}
+		}
+		else if (firstStatement instanceof JassReturnStatement) {
+			return fromComparison(((JassReturnStatement) firstStatement).getExpression());
+		}
+		return null;
+	}
+
+	private static JassStatement undecorate(final JassStatement statement) {
+		if (statement instanceof DebuggingJassStatement) {
+			return ((DebuggingJassStatement) statement).getDelegate();
+		}
+		return statement;
+	}
+
+	private static boolean isReturnFalse(final JassStatement statement) {
+		if (statement instanceof JassReturnStatement) {
+			final JassExpression expression = ((JassReturnStatement) statement).getExpression();
+			if (expression instanceof LiteralJassExpression) {
+				final JassValue value = ((LiteralJassExpression) expression).getValue();
+				return (value instanceof BooleanJassValue) && !((BooleanJassValue) value).getValue();
+			}
+		}
+		return false;
+	}
+
+	private static CTriggerGuard fromComparison(final JassExpression expression) {
+		if (!(expression instanceof ArithmeticJassExpression)) {
+			return null;
+		}
+		final ArithmeticJassExpression comparison = (ArithmeticJassExpression) expression;
+		if (comparison.getArithmeticSign() != ArithmeticSigns.EQUALS) {
+			return null;
+		}
+		final JassExpression left = comparison.getLeftExpression();
+		final JassExpression right = comparison.getRightExpression();
+		if (right instanceof LiteralJassExpression) {
+			return fromComparison(left, ((LiteralJassExpression) right).getValue());
+		}
+		if (left instanceof LiteralJassExpression) {
+			return fromComparison(right, ((LiteralJassExpression) left).getValue());
+		}
+		return null;
+	}
+
+	private static CTriggerGuard fromComparison(final JassExpression expression, final JassValue literal) {
+		if (!(literal instanceof IntegerJassValue) || !(expression instanceof FunctionCallJassExpression)) {
+			return null;
+		}
+		final int value = ((IntegerJassValue) literal).getValue();
+		final FunctionCallJassExpression functionCall = (FunctionCallJassExpression) expression;
+		final List<JassExpression> arguments = functionCall.getArguments();
+		switch (functionCall.getFunctionName()) {
+		case "GetSpellAbilityId":
+			if (arguments.isEmpty()) {
+				return new CTriggerGuard(Subject.SPELL_ABILITY_ID, null, value);
+			}
+			break;
+		case "GetUnitTypeId":
+			if ((arguments.size() == 1) && (arguments.get(0) instanceof FunctionCallJassExpression)) {
+				final FunctionCallJassExpression unitFunctionCall = (FunctionCallJassExpression) arguments.get(0);
+				if (unitFunctionCall.getArguments().isEmpty()) {
+					return new CTriggerGuard(Subject.UNIT_TYPE_ID, unitFunctionCall.getFunctionName(), value);
+				}
+			}
+			break;
+		}
+		return null;
+	}
+
+	/**
+	 * @return true for the events that are fired with the id of their spell. The
+	 *         others are fired with 0, so they cannot skip a trigger by its spell
+	 */
+	private static boolean isSpellAbilityIdPassedBy(final JassGameEventsWar3 eventType) {
+		switch (eventType) {
+		case EVENT_PLAYER_UNIT_SPELL_EFFECT:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return the event response that is always the same unit as GetTriggerUnit()
+	 *         for this type of event, if there is one
+	 */
+	private static String getTriggeringUnitAlias(final JassGameEventsWar3 eventType) {
+		switch (eventType) {
+		case EVENT_PLAYER_UNIT_DEATH:
+			return "GetDyingUnit";
+		case EVENT_PLAYER_UNIT_SPELL_CHANNEL:
+		case EVENT_PLAYER_UNIT_SPELL_CAST:
+		case EVENT_PLAYER_UNIT_SPELL_EFFECT:
+		case EVENT_PLAYER_UNIT_SPELL_FINISH:
+		case EVENT_PLAYER_UNIT_SPELL_ENDCAST:
+			return "GetSpellAbilityUnit";
+		case EVENT_PLAYER_UNIT_ISSUED_ORDER:
+		case EVENT_PLAYER_UNIT_ISSUED_POINT_ORDER:
+		case EVENT_PLAYER_UNIT_ISSUED_TARGET_ORDER:
+			return "GetOrderedUnit";
+		case EVENT_PLAYER_UNIT_CONSTRUCT_FINISH:
+			return "GetConstructedStructure";
+		case EVENT_PLAYER_UNIT_RESEARCH_FINISH:
+			return "GetResearchingUnit";
+		case EVENT_PLAYER_UNIT_PICKUP_ITEM:
+			return "GetManipulatingUnit";
+		case EVENT_GAME_ENTER_REGION:
+			return "GetEnteringUnit";
+		case EVENT_GAME_LEAVE_REGION:
+			return "GetLeavingUnit";
+		default:
+			return null;
+		}
+	}
+
+	public static enum Subject {
+		SPELL_ABILITY_ID,
+		UNIT_TYPE_ID;
+	}
+}
@@ -1,30 +1,480 @@
 package com.etheller.warsmash.viewer5.handlers.w3x.simulation.util;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * The storage behind a JASS hashtable. Every entry lives in one open
+ * addressing table, keyed by its parent and child key packed into a long, so
+ * that saving and loading neither boxes the keys nor goes through a table per
+ * parent key.
+ *
+ * Like in the game, an entry has a lane for each kind of value: an integer, a
+ * real, a boolean, a string and a handle can all be saved under the same keys
+ * without replacing each other. Integers, reals and booleans are kept unboxed.
+ *
+ * The entries of each parent key are linked together, so that flushing a child
+ * table only visits the entries that it removes.
+ */
 public class CHashtable {
-	private final Map<Integer, Map<Integer, Object>> parentKeyToChildTable = new HashMap<>();
+	private static final int INTEGER_LANE = 1;
+	private static final int REAL_LANE = 1 << 1;
+	private static final int BOOLEAN_LANE = 1 << 2;
+	private static final int STRING_LANE = 1 << 3;
+	private static final int HANDLE_LANE = 1 << 4;
+	private static final int LANES = INTEGER_LANE | REAL_LANE | BOOLEAN_LANE | STRING_LANE | HANDLE_LANE;
+	// the value of the boolean lane
+	private static final int BOOLEAN_VALUE = 1 << 5;
+	// a removed entry, which lookups have to probe past
+	private static final int DELETED = 1 << 6;
+	private static final int FREE = 0;
 
-	public void save(final Integer parentKey, final Integer childKey, final Object object) {
-		Map<Integer, Object> childTable = this.parentKeyToChildTable.get(parentKey);
-		if (childTable == null) {
-			childTable = new HashMap<>();
-			this.parentKeyToChildTable.put(parentKey, childTable);
+	private static final int MINIMUM_CAPACITY = 16;
+	private static final int NONE = -1;
+
+	private long[] keys;
+	private byte[] states;
+	private int[] integers;
+	private double[] reals;
+	private Object[] strings;
+	private Object[] handles;
+	private int[] nextInParent;
+	private int[] previousInParent;
+	private int shift;
+	// live entries, and live plus deleted ones
+	private int size;
+	private int usedSlots;
+
+	private int[] parentKeys;
+	private int[] parentHeads;
+	private boolean[] parentSlotsUsed;
+	private int parentShift;
+	private int parentCount;
+	// parents that are still in the table without any entries, after a flush or
+	// after their last entry was removed
+	private int emptyParentCount;
+
+	public CHashtable() {
+		allocate(MINIMUM_CAPACITY);
+		allocateParents(MINIMUM_CAPACITY);
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	int getCapacity() {
+		return this.keys.length;
+	}
+
+	int getParentCapacity() {
+		return this.parentKeys.length;
+	}
+
+	public void saveInteger(final int parentKey, final int childKey, final int value) {
+		final int slot = insert(parentKey, childKey);
+		this.integers[slot] = value;
+		this.states[slot] |= INTEGER_LANE;
+	}
+
+	public int loadInteger(final int parentKey, final int childKey) {
+		final int slot = find(parentKey, childKey);
+		if ((slot == NONE) || ((this.states[slot] & INTEGER_LANE) == 0)) {
+			return 0;
+		}
+		return this.integers[slot];
+	}
+
+	public boolean haveSavedInteger(final int parentKey, final int childKey) {
+		return hasLane(parentKey, childKey, INTEGER_LANE);
+	}
+
+	public void removeSavedInteger(final int parentKey, final int childKey) {
+		removeLane(parentKey, childKey, INTEGER_LANE);
+	}
+
+	public void saveReal(final int parentKey, final int childKey, final double value) {
+		final int slot = insert(parentKey, childKey);
+		this.reals[slot] = value;
+		this.states[slot] |= REAL_LANE;
+	}
+
+	public double loadReal(final int parentKey, final int childKey) {
+		final int slot = find(parentKey, childKey);
+		if ((slot == NONE) || ((this.states[slot] & REAL_LANE) == 0)) {
+			return 0;
 		}
-		if (object == null) {
-			childTable.remove(childKey);
+		return this.reals[slot];
+	}
+
+	public boolean haveSavedReal(final int parentKey, final int childKey) {
+		return hasLane(parentKey, childKey, REAL_LANE);
+	}
+
+	public void removeSavedReal(final int parentKey, final int childKey) {
+		removeLane(parentKey, childKey, REAL_LANE);
+	}
+
+	public void saveBoolean(final int parentKey, final int childKey, final boolean value) {
+		final int slot = insert(parentKey, childKey);
+		if (value) {
+			this.states[slot] |= BOOLEAN_LANE | BOOLEAN_VALUE;
 		}
 		else {
-			childTable.put(childKey, object);
+			this.states[slot] = (byte) ((this.states[slot] | BOOLEAN_LANE) & ~BOOLEAN_VALUE);
 		}
 	}
 
-	public Object load(final Integer parentKey, final Integer childKey) {
-		final Map<Integer, Object> childTable = this.parentKeyToChildTable.get(parentKey);
-		if (childTable != null) {
-			return childTable.get(childKey);
+	public boolean loadBoolean(final int parentKey, final int childKey) {
+		final int slot = find(parentKey, childKey);
+		return (slot != NONE) && ((this.states[slot] & BOOLEAN_VALUE) != 0);
+	}
+
+	public boolean haveSavedBoolean(final int parentKey, final int childKey) {
+		return hasLane(parentKey, childKey, BOOLEAN_LANE);
+	}
+
+	public void removeSavedBoolean(final int parentKey, final int childKey) {
+		removeLane(parentKey, childKey, BOOLEAN_LANE | BOOLEAN_VALUE);
+	}
+
+	public void saveString(final int parentKey, final int childKey, final Object value) {
+		final int slot = insert(parentKey, childKey);
+		this.strings[slot] = value;
+		this.states[slot] |= STRING_LANE;
+	}
+
+	/**
+	 * @return the saved string, or null if there is none
+	 */
+	public Object loadString(final int parentKey, final int childKey) {
+		final int slot = find(parentKey, childKey);
+		if (slot == NONE) {
+			return null;
+		}
+		return this.strings[slot];
+	}
+
+	public boolean haveSavedString(final int parentKey, final int childKey) {
+		return hasLane(parentKey, childKey, STRING_LANE);
+	}
+
+	public void removeSavedString(final int parentKey, final int childKey) {
+		removeLane(parentKey, childKey, STRING_LANE);
+	}
+
+	public void saveHandle(final int parentKey, final int childKey, final Object value) {
+		final int slot = insert(parentKey, childKey);
+		this.handles[slot] = value;
+		this.states[slot] |= HANDLE_LANE;
+	}
+
+	/**
+	 * @return the saved handle, or null if there is none
+	 */
+	public Object loadHandle(final int parentKey, final int childKey) {
+		final int slot = find(parentKey, childKey);
+		if (slot == NONE) {
+			return null;
+		}
+		return this.handles[slot];
+	}
+
+	public boolean haveSavedHandle(final int parentKey, final int childKey) {
+		return hasLane(parentKey, childKey, HANDLE_LANE);
+	}
+
+	public void removeSavedHandle(final int parentKey, final int childKey) {
+		removeLane(parentKey, childKey, HANDLE_LANE);
+	}
+
+	/**
+	 * Removes everything saved under the parent key, visiting only those entries.
+	 */
+	public void flushChild(final int parentKey) {
+		final int parentSlot = findParent(parentKey);
+		if (parentSlot == NONE) {
+			return;
+		}
+		int slot = this.parentHeads[parentSlot];
+		if (slot != NONE) {
+			this.emptyParentCount++;
 		}
-		return null;
+		while (slot != NONE) {
+			final int next = this.nextInParent[slot];
+			this.states[slot] = DELETED;
+			this.strings[slot] = null;
+			this.handles[slot] = null;
+			this.size--;
+			slot = next;
+		}
+		this.parentHeads[parentSlot] = NONE;
+	}
+
+	public void flush() {
+		allocate(MINIMUM_CAPACITY);
+		allocateParents(MINIMUM_CAPACITY);
+		this.size = 0;
+		this.usedSlots = 0;
+	}
+
+	private boolean hasLane(final int parentKey, final int childKey, final int lane) {
+		final int slot = find(parentKey, childKey);
+		return (slot != NONE) && ((this.states[slot] & lane) != 0);
+	}
+
+	private void removeLane(final int parentKey, final int childKey, final int lane) {
+		final int slot = find(parentKey, childKey);
+		if (slot == NONE) {
+			return;
+		}
+		final int state = this.states[slot] & ~lane;
+		if ((lane & STRING_LANE) != 0) {
+			this.strings[slot] = null;
+		}
+		if ((lane & HANDLE_LANE) != 0) {
+			this.handles[slot] = null;
+		}
+		if ((state & LANES) == 0) {
+			unlink(slot, parentKey);
+			this.states[slot] = DELETED;
+			this.size--;
+		}
+		else {
+			this.states[slot] = (byte) state;
+		}
+	}
+
+	private static long pack(final int parentKey, final int childKey) {
+		return ((long) parentKey << 32) | (childKey & 0xFFFFFFFFL);
+	}
+
+	private int slotOf(final long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> this.shift);
+	}
+
+	private int find(final int parentKey, final int childKey) {
+		final long key = pack(parentKey, childKey);
+		final int mask = this.keys.length - 1;
+		int slot = slotOf(key);
+		while (true) {
+			final byte state = this.states[slot];
+			if (state == FREE) {
+				return NONE;
+			}
+			if ((state != DELETED) && (this.keys[slot] == key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * @return the slot of the entry for these keys, which is made if there was
+	 *         none, with no lanes set
+	 */
+	private int insert(final int parentKey, final int childKey) {
+		final long key = pack(parentKey, childKey);
+		final int mask = this.keys.length - 1;
+		int slot = slotOf(key);
+		int deletedSlot = NONE;
+		while (true) {
+			final byte state = this.states[slot];
+			if (state == FREE) {
+				break;
+			}
+			if (state == DELETED) {
+				if (deletedSlot == NONE) {
+					deletedSlot = slot;
+				}
+			}
+			else if (this.keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (deletedSlot != NONE) {
+			slot = deletedSlot;
+		}
+		else {
+			if (((this.usedSlots + 1) << 1) > this.keys.length) {
+				// grow only if the table is really filling up, otherwise just clear out
+				// the deleted entries
+				rehash(((this.size + 1) << 2) > this.keys.length ? this.keys.length << 1 : this.keys.length);
+				return insert(parentKey, childKey);
+			}
+			this.usedSlots++;
+		}
+		this.keys[slot] = key;
+		this.states[slot] = 0;
+		this.size++;
+		link(slot, parentKey);
+		return slot;
+	}
+
+	private void link(final int slot, final int parentKey) {
+		int parentSlot = findParent(parentKey);
+		if (parentSlot == NONE) {
+			if (((this.parentCount + 1) << 1) > this.parentKeys.length) {
+				// the empty parents are dropped, and the table only grows if the parents
+				// that are left would still fill more than a quarter of it
+				final int liveParentCount = this.parentCount - this.emptyParentCount;
+				if (((liveParentCount + 1) << 2) > this.parentKeys.length) {
+					resizeParents(this.parentKeys.length << 1);
+				}
+				else {
+					resizeParents(this.parentKeys.length);
+				}
+			}
+			parentSlot = insertParent(parentKey);
+		}
+		else if (this.parentHeads[parentSlot] == NONE) {
+			this.emptyParentCount--;
+		}
+		final int head = this.parentHeads[parentSlot];
+		this.nextInParent[slot] = head;
+		this.previousInParent[slot] = NONE;
+		if (head != NONE) {
+			this.previousInParent[head] = slot;
+		}
+		this.parentHeads[parentSlot] = slot;
+	}
+
+	private void unlink(final int slot, final int parentKey) {
+		final int next = this.nextInParent[slot];
+		final int previous = this.previousInParent[slot];
+		if (next != NONE) {
+			this.previousInParent[next] = previous;
+		}
+		if (previous != NONE) {
+			this.nextInParent[previous] = next;
+		}
+		else {
+			this.parentHeads[findParent(parentKey)] = next;
+			if (next == NONE) {
+				this.emptyParentCount++;
+			}
+		}
+	}
+
+	private void rehash(final int capacity) {
+		final long[] oldKeys = this.keys;
+		final byte[] oldStates = this.states;
+		final int[] oldIntegers = this.integers;
+		final double[] oldReals = this.reals;
+		final Object[] oldStrings = this.strings;
+		final Object[] oldHandles = this.handles;
+		allocate(capacity);
+		final int mask = capacity - 1;
+		for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+			final byte state = oldStates[oldSlot];
+			if ((state == FREE) || (state == DELETED)) {
+				continue;
+			}
+			final long key = oldKeys[oldSlot];
+			int slot = slotOf(key);
+			while (this.states[slot] != FREE) {
+				slot = (slot + 1) & mask;
+			}
+			this.keys[slot] = key;
+			this.states[slot] = state;
+			this.integers[slot] = oldIntegers[oldSlot];
+			this.reals[slot] = oldReals[oldSlot];
+			this.strings[slot] = oldStrings[oldSlot];
+			this.handles[slot] = oldHandles[oldSlot];
+		}
+		this.usedSlots = this.size;
+		relink(this.parentKeys.length);
+	}
+
+	/**
+	 * Makes the links between the entries of each parent key again, keeping only
+	 * the parent keys that still have entries.
+	 */
+	private void relink(final int parentCapacity) {
+		allocateParents(parentCapacity);
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			final byte state = this.states[slot];
+			if ((state != FREE) && (state != DELETED)) {
+				final int parentKey = (int) (this.keys[slot] >>> 32);
+				int parentSlot = findParent(parentKey);
+				if (parentSlot == NONE) {
+					parentSlot = insertParent(parentKey);
+				}
+				final int head = this.parentHeads[parentSlot];
+				this.nextInParent[slot] = head;
+				this.previousInParent[slot] = NONE;
+				if (head != NONE) {
+					this.previousInParent[head] = slot;
+				}
+				this.parentHeads[parentSlot] = slot;
+			}
+		}
+	}
+
+	/**
+	 * Moves the parents that still have entries to a new parent table. The links
+	 * between the entries stay as they are.
+	 */
+	private void resizeParents(final int parentCapacity) {
+		final int[] oldParentKeys = this.parentKeys;
+		final int[] oldParentHeads = this.parentHeads;
+		final boolean[] oldParentSlotsUsed = this.parentSlotsUsed;
+		allocateParents(parentCapacity);
+		for (int oldSlot = 0; oldSlot < oldParentKeys.length; oldSlot++) {
+			if (oldParentSlotsUsed[oldSlot] && (oldParentHeads[oldSlot] != NONE)) {
+				this.parentHeads[insertParent(oldParentKeys[oldSlot])] = oldParentHeads[oldSlot];
+			}
+		}
+	}
+
+	private int parentSlotOf(final int parentKey) {
+		return (parentKey * 0x9E3779B9) >>> this.parentShift;
+	}
+
+	private int findParent(final int parentKey) {
+		final int mask = this.parentKeys.length - 1;
+		int slot = parentSlotOf(parentKey);
+		while (this.parentSlotsUsed[slot]) {
+			if (this.parentKeys[slot] == parentKey) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return NONE;
+	}
+
+	private int insertParent(final int parentKey) {
+		final int mask = this.parentKeys.length - 1;
+		int slot = parentSlotOf(parentKey);
+		while (this.parentSlotsUsed[slot]) {
+			slot = (slot + 1) & mask;
+		}
+		this.parentSlotsUsed[slot] = true;
+		this.parentKeys[slot] = parentKey;
+		this.parentHeads[slot] = NONE;
+		this.parentCount++;
+		return slot;
+	}
+
+	private void allocate(final int capacity) {
+		this.keys = new long[capacity];
+		this.states = new byte[capacity];
+		this.integers = new int[capacity];
+		this.reals = new double[capacity];
+		this.strings = new Object[capacity];
+		this.handles = new Object[capacity];
+		this.nextInParent = new int[capacity];
+		this.previousInParent = new int[capacity];
+		this.shift = Long.numberOfLeadingZeros(capacity - 1);
+	}
+
+	private void allocateParents(final int capacity) {
+		this.parentKeys = new int[capacity];
+		this.parentHeads = new int[capacity];
+		Arrays.fill(this.parentHeads, NONE);
+		this.parentSlotsUsed = new boolean[capacity];
+		this.parentShift = Integer.numberOfLeadingZeros(capacity - 1);
+		this.parentCount = 0;
+		this.emptyParentCount = 0;
 	}
 }
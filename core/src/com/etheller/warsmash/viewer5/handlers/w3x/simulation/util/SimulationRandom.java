@@ -0,0 +1,37 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.util;
+
+import java.util.Random;
+
+/**
+ * Gives the same numbers as {@link Random} with the same seed, but keeps its
+ * own copy of the generator state where the state hash and the desync dumps of
+ * the simulation can read it. It uses the linear congruential formula that
+ * {@link Random} documents.
+ */
+public class SimulationRandom extends Random {
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	private long state;
+
+	public SimulationRandom(final long seed) {
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(final long seed) {
+		super.setSeed(seed);
+		this.state = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	@Override
+	protected int next(final int bits) {
+		this.state = ((this.state * MULTIPLIER) + ADDEND) & MASK;
+		return (int) (this.state >>> (48 - bits));
+	}
+
+	public long getState() {
+		return this.state;
+	}
+}
@@ -1906,6 +1906,15 @@ public class MenuUI {
 										public void framesSkipped(final float skippedCount) {
 
 										}
+
+										@Override
+										public float getTurnLengthScale() {
+											return 1;
+										}
+
+										@Override
+										public void frameTimed(final float frameTime, final float tickTime) {
+										}
 									});
 								}
 
@@ -0,0 +1,233 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Test;
+
+import com.etheller.interpreter.JassLexer;
+import com.etheller.interpreter.JassParser;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+import com.etheller.interpreter.ast.util.JassSettings;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.visitor.IntegerJassValueVisitor;
+import com.etheller.interpreter.ast.visitors.JassProgramVisitor;
+
+/**
+ * Runs the same script with the interpreter alone and with every function
+ * compiled by {@link JassCompiler} on its first call, and compares the natives
+ * they call. Compile failures are thrown, so that they fail the test instead of
+ * quietly falling back to the interpreter.
+ */
+class JassCompilerTest {
+	private static final String SCRIPT = """
+			globals
+				integer counter = 0
+				real total = 0
+				integer array squares
+			endglobals
+			native TraceI takes integer i returns nothing
+			native TraceR takes real r returns nothing
+			native TraceS takes string s returns nothing
+			native TraceB takes boolean b returns nothing
+			native Add takes integer a, integer b returns integer
+			native Half takes real r returns real
+			native Nap takes nothing returns nothing
+			function Fib takes integer n returns integer
+				if n < 2 then
+					return n
+				endif
+				return Fib(n - 1) + Fib(n - 2)
+			endfunction
+			function Arithmetic takes integer k, real x returns nothing
+				call TraceI(k * 7 - 3)
+				call TraceI(k / 2)
+				call TraceI(-k / 2)
+				call TraceR(x * k + 0.25)
+				call TraceR(k / 2.0)
+				call TraceR(-x)
+				call TraceB(k > 2 and x <= 2.5)
+				call TraceB(not (k == 3) or x != 2.5)
+				call TraceB(1.0 == 1)
+				call TraceS("a" + "b")
+			endfunction
+			function Loops takes integer n returns integer
+				local integer i = 0
+				local integer j
+				local integer sum = 0
+				loop
+					exitwhen i >= n
+					set j = 0
+					loop
+						exitwhen j > i
+						set sum = sum + i * j
+						set j = j + 1
+					endloop
+					if sum > 100 then
+						set sum = sum - 50
+					elseif sum == 3 then
+						set sum = sum + 1
+					endif
+					set i = i + 1
+				endloop
+				return sum
+			endfunction
+			function Arrays takes integer n returns integer
+				local integer array values
+				local integer i = 0
+				local integer sum = 0
+				loop
+					exitwhen i >= n
+					set squares[i] = i * i
+					set values[n - 1 - i] = squares[i] + 1
+					set i = i + 1
+				endloop
+				set i = 0
+				loop
+					exitwhen i >= n
+					set sum = sum + values[i] * (i + 1)
+					set i = i + 1
+				endloop
+				return sum
+			endfunction
+			function Natives takes integer n returns real
+				local integer i = 0
+				loop
+					exitwhen i >= n
+					set counter = Add(counter, i)
+					set total = total + Half(i)
+					set i = i + 1
+				endloop
+				call TraceI(counter)
+				return total
+			endfunction
+			function Run takes nothing returns nothing
+				call Arithmetic(3, 2.5)
+				call Arithmetic(-4, 0.5)
+				call TraceI(Fib(12))
+				call TraceI(Loops(15))
+				call TraceI(Arrays(10))
+				call TraceR(Natives(20))
+			endfunction
+			function Napper takes nothing returns nothing
+				call TraceI(1)
+				call Nap()
+				call TraceI(2)
+			endfunction
+			""";
+
+	@Test
+	void testCompiledRunsBehaveTheSame() {
+		final Program interpreted = new Program(false);
+		final Program compiled = new Program(true);
+		for (int i = 0; i < 3; i++) {
+			assertFalse(interpreted.run("Run").isSleeping());
+			assertFalse(compiled.run("Run").isSleeping());
+		}
+		assertEquals(interpreted.trace, compiled.trace);
+		assertTrue(compiled.executedInstructions() < interpreted.executedInstructions());
+	}
+
+	@Test
+	void testUnexpectedYieldDeoptimizes() {
+		final Program interpreted = new Program(false);
+		final JassThread interpretedThread = interpreted.run("Napper");
+		assertTrue(interpretedThread.isSleeping());
+		assertEquals(List.of("TraceI 1"), interpreted.trace);
+		interpreted.resume(interpretedThread);
+		assertEquals(List.of("TraceI 1", "TraceI 2"), interpreted.trace);
+
+		final Program compiled = new Program(true);
+		// the first call compiles Napper, and the second runs it compiled, which
+		// only sleeps once the whole function has run
+		compiled.resume(compiled.run("Napper"));
+		final JassThread compiledThread = compiled.run("Napper");
+		assertTrue(compiledThread.isSleeping());
+		assertTrue(compiled.globals.isYieldingNative("Nap"));
+		assertFalse(compiled.globals.isYieldingNative("TraceI"));
+		compiled.resume(compiledThread);
+		compiled.trace.clear();
+
+		// from then on Napper is interpreted and sleeps where it should
+		final JassThread deoptimizedThread = compiled.run("Napper");
+		assertTrue(deoptimizedThread.isSleeping());
+		assertEquals(List.of("TraceI 1"), compiled.trace);
+		compiled.resume(deoptimizedThread);
+		assertEquals(interpreted.trace, compiled.trace);
+	}
+
+	private static final class Program {
+		private final boolean compile;
+		private final JassProgramVisitor visitor = new JassProgramVisitor();
+		private final List<String> trace = new ArrayList<>();
+		private final GlobalScope globals;
+
+		public Program(final boolean compile) {
+			this.compile = compile;
+			this.visitor.getJassNativeManager().createStackNative("TraceI",
+					(arguments, globalScope, triggerScope) -> this.trace.add("TraceI " + arguments.getInteger(0)));
+			this.visitor.getJassNativeManager().createStackNative("TraceR",
+					(arguments, globalScope, triggerScope) -> this.trace.add("TraceR " + arguments.getReal(0)));
+			this.visitor.getJassNativeManager().createStackNative("TraceS",
+					(arguments, globalScope, triggerScope) -> this.trace.add("TraceS " + arguments.getString(0)));
+			this.visitor.getJassNativeManager().createStackNative("TraceB",
+					(arguments, globalScope, triggerScope) -> this.trace.add("TraceB " + arguments.getBoolean(0)));
+			this.visitor.getJassNativeManager().createNative("Add",
+					(arguments, globalScope, triggerScope) -> IntegerJassValue
+							.of(arguments.get(0).visit(IntegerJassValueVisitor.getInstance())
+									+ arguments.get(1).visit(IntegerJassValueVisitor.getInstance())));
+			this.visitor.getJassNativeManager().createStackNative("Half",
+					(arguments, globalScope, triggerScope) -> arguments.pushReal(arguments.getReal(0) / 2));
+			this.visitor.getJassNativeManager().createNative("Nap", (arguments, globalScope, triggerScope) -> {
+				globalScope.getCurrentThread().setSleeping(true);
+				return null;
+			});
+			this.visitor.setCurrentFileName("test.j");
+			this.visitor.visit(
+					new JassParser(new CommonTokenStream(new JassLexer(CharStreams.fromString(SCRIPT)))).program());
+			this.globals = this.visitor.getGlobals();
+		}
+
+		public JassThread run(final String functionName) {
+			final JassThread thread = this.globals.createThread(functionName, Collections.emptyList(),
+					TriggerExecutionScope.EMPTY);
+			runThread(thread);
+			return thread;
+		}
+
+		public void resume(final JassThread thread) {
+			thread.setSleeping(false);
+			runThread(thread);
+		}
+
+		private void runThread(final JassThread thread) {
+			final boolean compileHotFunctions = JassSettings.COMPILE_HOT_FUNCTIONS;
+			final int hotFunctionThreshold = JassSettings.HOT_FUNCTION_THRESHOLD;
+			final boolean continueExecutingOnError = JassSettings.CONTINUE_EXECUTING_ON_ERROR;
+			JassSettings.COMPILE_HOT_FUNCTIONS = this.compile;
+			JassSettings.HOT_FUNCTION_THRESHOLD = 1;
+			JassSettings.CONTINUE_EXECUTING_ON_ERROR = false;
+			try {
+				this.globals.runThreadUntilCompletion(thread);
+			}
+			finally {
+				JassSettings.COMPILE_HOT_FUNCTIONS = compileHotFunctions;
+				JassSettings.HOT_FUNCTION_THRESHOLD = hotFunctionThreshold;
+				JassSettings.CONTINUE_EXECUTING_ON_ERROR = continueExecutingOnError;
+			}
+		}
+
+		public long executedInstructions() {
+			return this.globals.getExecutedInstructionCount();
+		}
+	}
+}
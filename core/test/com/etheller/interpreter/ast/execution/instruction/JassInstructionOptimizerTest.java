@@ -0,0 +1,305 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import com.etheller.interpreter.JassLexer;
+import com.etheller.interpreter.JassParser;
+import com.etheller.interpreter.ast.debug.DebuggingJassFunction;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+import com.etheller.interpreter.ast.util.JassSettings;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.CodeJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.StringJassValue;
+import com.etheller.interpreter.ast.visitors.JassProgramVisitor;
+
+/**
+ * Runs the same scripts with and without {@link JassInstructionOptimizer} and
+ * compares the natives they call. The common.j and Blizzard.j check needs
+ * -Dwarsmash.jass.dir=<folder with both>, since they are not part of the tree.
+ */
+class JassInstructionOptimizerTest {
+	private static final Pattern NATIVE = Pattern
+			.compile("native\\s+(\\w+)\\s+takes\\s+.*?\\s+returns\\s+(\\w+)");
+	private static final int INSTRUCTION_BUDGET = 200000;
+
+	private static final String SCRIPT = """
+			globals
+				integer counter = 0
+				constant integer LIMIT = 10 * 3 - 5
+			endglobals
+			native TraceI takes integer i returns nothing
+			native TraceR takes real r returns nothing
+			native TraceS takes string s returns nothing
+			native TraceB takes boolean b returns nothing
+			function Fib takes integer n returns integer
+				if n < 2 then
+					return n
+				endif
+				return Fib(n - 1) + Fib(n - 2)
+			endfunction
+			function Folded takes nothing returns nothing
+				local integer unused = 7
+				local integer i = 2 * 3 + 4 - -1
+				local real r = 1.5 * 2 + 3 / 2
+				local string s = "a" + "b" + "c"
+				set unused = 8
+				call TraceI(i)
+				call TraceI(7 / 2)
+				call TraceR(r)
+				call TraceS(s)
+				call TraceB(not (1 < 2))
+				call TraceB(2.0 == 2 and "x" != "y")
+				if false then
+					call TraceI(-1)
+				elseif 1 + 1 == 2 then
+					call TraceI(2)
+				else
+					call TraceI(-2)
+				endif
+				if true then
+					call TraceS("always")
+				endif
+				if 0 == 1 then
+					call TraceI(1 / 0)
+				endif
+			endfunction
+			function Loops takes integer n returns integer
+				local integer i = 0
+				local integer sum = 0
+				local integer last = 0
+				loop
+					exitwhen i >= n
+					set last = i
+					if i * 2 > 7 then
+						set sum = sum + i * 3
+					else
+						set sum = sum - 1
+					endif
+					loop
+						exitwhen true
+						set sum = sum + 1000
+					endloop
+					set i = i + 1
+				endloop
+				set last = 0
+				return sum
+			endfunction
+			function Mixed takes real x, integer k returns real
+				local integer j = k
+				set j = j + 1
+				set j = j * 2
+				return x * j + k - 0.5
+			endfunction
+			function main takes nothing returns nothing
+				call Folded()
+				call TraceI(Fib(15))
+				call TraceI(Loops(20))
+				call TraceR(Mixed(1.25, 3))
+				set counter = LIMIT
+				call TraceI(counter)
+			endfunction
+			""";
+
+	@Test
+	void testScriptBehavesTheSame() {
+		final Program original = new Program(false, false);
+		original.load("test.j", SCRIPT);
+		final Program optimized = new Program(true, false);
+		optimized.load("test.j", SCRIPT);
+		final Program stripped = new Program(true, true);
+		stripped.load("test.j", SCRIPT);
+
+		assertTrue(original.run("main", Collections.emptyList()));
+		assertTrue(optimized.run("main", Collections.emptyList()));
+		assertTrue(stripped.run("main", Collections.emptyList()));
+		assertEquals(original.trace, optimized.trace);
+		assertEquals(original.trace, stripped.trace);
+		assertTrue(optimized.executedInstructions() < original.executedInstructions());
+		assertTrue(stripped.executedInstructions() < optimized.executedInstructions());
+	}
+
+	@Test
+	void testBlizzardFunctionsBehaveTheSame() throws IOException {
+		final String jassDirectory = System.getProperty("warsmash.jass.dir");
+		Assumptions.assumeTrue(jassDirectory != null, "warsmash.jass.dir is not set");
+		final Path commonj = Paths.get(jassDirectory, "common.j");
+		final Path blizzardj = Paths.get(jassDirectory, "Blizzard.j");
+		Assumptions.assumeTrue(Files.exists(commonj) && Files.exists(blizzardj));
+		final String commonjText = new String(Files.readAllBytes(commonj), StandardCharsets.UTF_8);
+		final String blizzardjText = new String(Files.readAllBytes(blizzardj), StandardCharsets.UTF_8);
+
+		final Program original = new Program(false, false);
+		original.loadWithStubNatives(commonjText, blizzardjText);
+		final Program optimized = new Program(true, false);
+		optimized.loadWithStubNatives(commonjText, blizzardjText);
+
+		int comparedFunctions = 0;
+		for (final String functionName : new TreeSet<>(original.globals.getUserFunctionNames())) {
+			final List<JassValue> arguments = original.createArguments(functionName);
+			if (arguments == null) {
+				continue;
+			}
+			original.trace.clear();
+			optimized.trace.clear();
+			final boolean originalFinished = original.run(functionName, arguments);
+			final boolean optimizedFinished = optimized.run(functionName, arguments);
+			if (!originalFinished || !optimizedFinished) {
+				// one of them ran out of instructions in a different place, so the
+				// globals of the two may no longer match
+				break;
+			}
+			assertEquals(original.trace, optimized.trace, functionName);
+			comparedFunctions++;
+		}
+		assertTrue(comparedFunctions > 0);
+	}
+
+	private static String describe(final JassValue value) {
+		if (value instanceof StringJassValue) {
+			return "\"" + ((StringJassValue) value).getValue() + "\"";
+		}
+		if (value instanceof CodeJassValue) {
+			return "code";
+		}
+		return String.valueOf(value);
+	}
+
+	private static final class Program {
+		private final boolean optimize;
+		private final boolean stripDebugLineNumbers;
+		private final JassProgramVisitor visitor = new JassProgramVisitor();
+		private final List<String> trace = new ArrayList<>();
+		private GlobalScope globals;
+
+		public Program(final boolean optimize, final boolean stripDebugLineNumbers) {
+			this.optimize = optimize;
+			this.stripDebugLineNumbers = stripDebugLineNumbers;
+			for (final String name : new String[] { "TraceI", "TraceR", "TraceS", "TraceB" }) {
+				this.visitor.getJassNativeManager().createStackNative(name, (arguments, globalScope,
+						triggerScope) -> this.trace.add(name + " " + describe(arguments.get(0))));
+			}
+		}
+
+		public void loadWithStubNatives(final String commonj, final String blizzardj) {
+			final Matcher matcher = NATIVE.matcher(commonj);
+			while (matcher.find()) {
+				final String name = matcher.group(1);
+				final String returnType = matcher.group(2);
+				this.visitor.getJassNativeManager().createStackNative(name, (arguments, globalScope, triggerScope) -> {
+					final StringBuilder call = new StringBuilder(name);
+					for (int i = 0; i < arguments.size(); i++) {
+						call.append(' ').append(describe(arguments.get(i)));
+					}
+					this.trace.add(call.toString());
+					if (!"nothing".equals(returnType)) {
+						arguments.push(globalScope.parseType(returnType).getNullValue());
+					}
+				});
+			}
+			load("common.j", commonj);
+			load("Blizzard.j", blizzardj);
+		}
+
+		public void load(final String fileName, final String text) {
+			final boolean optimizeInstructions = JassSettings.OPTIMIZE_INSTRUCTIONS;
+			final boolean stripDebugLineNumbers = JassSettings.STRIP_DEBUG_LINE_NUMBERS;
+			JassSettings.OPTIMIZE_INSTRUCTIONS = this.optimize;
+			JassSettings.STRIP_DEBUG_LINE_NUMBERS = this.stripDebugLineNumbers;
+			try {
+				this.visitor.setCurrentFileName(fileName);
+				this.visitor.visit(
+						new JassParser(new CommonTokenStream(new JassLexer(CharStreams.fromString(text)))).program());
+				this.globals = this.visitor.getGlobals();
+			}
+			finally {
+				JassSettings.OPTIMIZE_INSTRUCTIONS = optimizeInstructions;
+				JassSettings.STRIP_DEBUG_LINE_NUMBERS = stripDebugLineNumbers;
+			}
+		}
+
+		/**
+		 * @return arguments for the function, or null if it takes a type that this
+		 *         test cannot make up values for
+		 */
+		public List<JassValue> createArguments(final String functionName) {
+			JassFunction function = this.globals.getFunctionByName(functionName);
+			if (function instanceof DebuggingJassFunction) {
+				function = ((DebuggingJassFunction) function).getDelegate();
+			}
+			final List<JassValue> arguments = new ArrayList<>();
+			for (final JassParameter parameter : ((UserJassFunction) function).getParameters()) {
+				final JassType type = parameter.getType();
+				if (type == JassType.INTEGER) {
+					arguments.add(IntegerJassValue.of(3));
+				}
+				else if (type == JassType.REAL) {
+					arguments.add(new RealJassValue(2.5));
+				}
+				else if (type == JassType.BOOLEAN) {
+					arguments.add(BooleanJassValue.TRUE);
+				}
+				else if (type == JassType.STRING) {
+					arguments.add(new StringJassValue("a"));
+				}
+				else {
+					return null;
+				}
+			}
+			return arguments;
+		}
+
+		/**
+		 * @return true if the function finished within the instruction budget
+		 */
+		public boolean run(final String functionName, final List<JassValue> arguments) {
+			final int tickInstructionBudget = JassSettings.TICK_INSTRUCTION_BUDGET;
+			JassSettings.TICK_INSTRUCTION_BUDGET = INSTRUCTION_BUDGET;
+			try {
+				this.globals.beginTick();
+				final JassThread thread = this.globals.createThread(functionName, arguments,
+						TriggerExecutionScope.EMPTY);
+				thread.preemptible = true;
+				this.globals.runThreadUntilCompletion(thread);
+				return thread.instructionPtr == -1;
+			}
+			catch (final RuntimeException exception) {
+				this.trace.add("error");
+				return true;
+			}
+			finally {
+				JassSettings.TICK_INSTRUCTION_BUDGET = tickInstructionBudget;
+			}
+		}
+
+		public long executedInstructions() {
+			return this.globals.getExecutedInstructionCount();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.etheller.warsmash.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Plays games of simulated players against a {@link LockstepPacer}, on a clock
+ * that only moves when the test moves it. Each player has its own latency,
+ * jitter, frame time and simulation step cost, and paces itself the way
+ * War3MapViewer does.
+ */
+class LockstepPacerTest {
+	private static final int GAME_MILLIS = 60000;
+	// measurements start after this, once the pacer had time to adapt
+	private static final int WARMUP_MILLIS = 10000;
+	private static final int LAG_REPORT_INTERVAL_TURNS = 20;
+
+	@Test
+	void testInputDelayGrowsToCoverSlowLink() {
+		final SimulatedGame adaptive = new SimulatedGame(1, new LockstepPacer(4, 2, 20, 100),
+				new SimulatedPlayer(10, 5, 16, 5), new SimulatedPlayer(150, 40, 16, 5));
+		adaptive.run();
+		assertTrue(adaptive.pacer.getInputDelay() >= 6, "input delay " + adaptive.pacer.getInputDelay());
+		assertEquals(50, adaptive.pacer.getTurnMillis());
+		for (final SimulatedPlayer player : adaptive.players) {
+			assertTrue(player.getStalledFraction() < 0.02, "stalled " + player.getStalledFraction());
+		}
+
+		final SimulatedGame fixed = new SimulatedGame(1, new LockstepPacer(4, 4, 4, 50),
+				new SimulatedPlayer(10, 5, 16, 5), new SimulatedPlayer(150, 40, 16, 5));
+		fixed.run();
+		assertTrue(fixed.players[0].getStalledFraction() > 0.2, "stalled " + fixed.players[0].getStalledFraction());
+	}
+
+	@Test
+	void testTurnLengthFollowsSlowestSimulation() {
+		final SimulatedGame adaptive = new SimulatedGame(2, new LockstepPacer(4, 2, 20, 100),
+				new SimulatedPlayer(10, 5, 16, 5), new SimulatedPlayer(10, 5, 16, 70));
+		adaptive.run();
+		final int turnMillis = adaptive.pacer.getTurnMillis();
+		assertTrue((turnMillis >= 88) && (turnMillis <= 100), "turn length " + turnMillis);
+		assertTrue(adaptive.players[0].getStalledFraction() < 0.05,
+				"stalled " + adaptive.players[0].getStalledFraction());
+
+		final SimulatedGame fixed = new SimulatedGame(2, new LockstepPacer(4, 2, 20, 50),
+				new SimulatedPlayer(10, 5, 16, 5), new SimulatedPlayer(10, 5, 16, 70));
+		fixed.run();
+		assertTrue(fixed.players[0].getStalledFraction() > 0.2, "stalled " + fixed.players[0].getStalledFraction());
+	}
+
+	@Test
+	void testInputDelayShrinksOnFastLink() {
+		final SimulatedGame game = new SimulatedGame(3, new LockstepPacer(4, 2, 20, 100),
+				new SimulatedPlayer(2, 1, 16, 5), new SimulatedPlayer(2, 1, 16, 5), new SimulatedPlayer(3, 2, 16, 5));
+		game.run();
+		assertEquals(2, game.pacer.getInputDelay());
+		assertEquals(50, game.pacer.getTurnMillis());
+		for (final SimulatedPlayer player : game.players) {
+			assertTrue(player.getStalledFraction() < 0.02, "stalled " + player.getStalledFraction());
+		}
+	}
+
+	@Test
+	void testStaysWithinBounds() {
+		final SimulatedGame game = new SimulatedGame(4, new LockstepPacer(4, 2, 20, 100),
+				new SimulatedPlayer(10, 5, 16, 5), new SimulatedPlayer(800, 50, 16, 500));
+		game.run();
+		assertEquals(20, game.pacer.getInputDelay());
+		assertEquals(100, game.pacer.getTurnMillis());
+	}
+
+	private static final class SimulatedGame {
+		private final Random random;
+		private final LockstepPacer pacer;
+		private final SimulatedPlayer[] players;
+		private final PriorityQueue<Delivery> deliveries = new PriorityQueue<>();
+		private long now;
+		private int deliveryCount;
+		private int currentTurnTick;
+
+		public SimulatedGame(final long seed, final LockstepPacer pacer, final SimulatedPlayer... players) {
+			this.random = new Random(seed);
+			this.pacer = pacer;
+			this.players = players;
+		}
+
+		public void run() {
+			for (int i = 0; i < this.players.length; i++) {
+				this.pacer.addPlayer(i);
+			}
+			this.currentTurnTick = this.pacer.getInputDelay();
+			startTurn();
+			while (this.now < GAME_MILLIS) {
+				this.now++;
+				while (!this.deliveries.isEmpty() && (this.deliveries.peek().arrivalTime <= this.now)) {
+					this.deliveries.poll().action.run();
+				}
+				for (int i = 0; i < this.players.length; i++) {
+					final SimulatedPlayer player = this.players[i];
+					if (this.now >= player.nextFrameTime) {
+						frame(i, player);
+					}
+				}
+			}
+		}
+
+		private void startTurn() {
+			final int gameTurnTick = this.currentTurnTick++;
+			final boolean lagReport = (gameTurnTick % LAG_REPORT_INTERVAL_TURNS) == 0;
+			if (lagReport) {
+				this.pacer.adjust();
+			}
+			final int turnMillis = this.pacer.getTurnMillis();
+			final long serverTimeMillis = this.now;
+			for (final SimulatedPlayer player : this.players) {
+				player.lastArrivalFromServer = deliver(player, player.lastArrivalFromServer, () -> {
+					if (lagReport) {
+						player.turnMillis = turnMillis;
+						player.pendingLagReportTimes.add(serverTimeMillis);
+					}
+					player.latestCompletedTurn = gameTurnTick;
+				});
+			}
+		}
+
+		private void frame(final int playerIndex, final SimulatedPlayer player) {
+			final long frameMillis = this.now - player.lastFrameTime;
+			player.lastFrameTime = this.now;
+			player.updateTime += frameMillis;
+			int ticks = 0;
+			while (player.updateTime >= player.turnMillis) {
+				if (player.latestCompletedTurn >= player.gameTurnTick) {
+					player.updateTime -= player.turnMillis;
+					player.gameTurnTick++;
+					ticks++;
+					final int finishedTurn = player.gameTurnTick;
+					player.lastArrivalToServer = deliver(player, player.lastArrivalToServer,
+							() -> this.pacer.turnFinished(playerIndex, finishedTurn));
+					player.lastArrivalToServer = deliver(player, player.lastArrivalToServer, () -> {
+						while (this.pacer.canStartTurn(this.currentTurnTick)) {
+							startTurn();
+						}
+					});
+				}
+				else {
+					if (this.now > WARMUP_MILLIS) {
+						player.stalledMillis += frameMillis;
+					}
+					if (player.updateTime > (player.turnMillis * 3)) {
+						player.updateTime = 0;
+					}
+					break;
+				}
+			}
+			if (ticks > 0) {
+				player.frameTime = Math.max(frameMillis, player.frameTime * 0.99f);
+				player.tickTime = Math.max(player.tickMillis, player.tickTime * 0.99f);
+			}
+			while (!player.pendingLagReportTimes.isEmpty()) {
+				final long serverTimeMillis = player.pendingLagReportTimes.poll();
+				final int reportedFrameMillis = (int) player.frameTime;
+				final int reportedTickMillis = (int) player.tickTime;
+				player.lastArrivalToServer = deliver(player, player.lastArrivalToServer, () -> {
+					this.pacer.roundTrip(playerIndex, this.now - serverTimeMillis);
+					this.pacer.clientTimes(playerIndex, reportedFrameMillis, reportedTickMillis);
+				});
+			}
+			player.nextFrameTime = this.now + Math.max(player.frameMillis, ticks * player.tickMillis);
+		}
+
+		/**
+		 * @return when it arrives, messages are delivered in order like the udp
+		 *         layer does
+		 */
+		private long deliver(final SimulatedPlayer player, final long lastArrivalTime, final Runnable action) {
+			final long arrivalTime = Math.max(lastArrivalTime,
+					this.now + player.oneWayMillis + this.random.nextInt(player.jitterMillis + 1));
+			this.deliveries.add(new Delivery(arrivalTime, this.deliveryCount++, action));
+			return arrivalTime;
+		}
+	}
+
+	private static final class SimulatedPlayer {
+		private final int oneWayMillis;
+		private final int jitterMillis;
+		private final int frameMillis;
+		private final int tickMillis;
+		private final PriorityQueue<Long> pendingLagReportTimes = new PriorityQueue<>();
+		private int turnMillis = LockstepPacer.SIMULATION_STEP_MILLIS;
+		private int latestCompletedTurn = -1;
+		private int gameTurnTick;
+		private float updateTime;
+		private long lastFrameTime;
+		private long nextFrameTime;
+		private long lastArrivalFromServer;
+		private long lastArrivalToServer;
+		private float frameTime;
+		private float tickTime;
+		private long stalledMillis;
+
+		public SimulatedPlayer(final int oneWayMillis, final int jitterMillis, final int frameMillis,
+				final int tickMillis) {
+			this.oneWayMillis = oneWayMillis;
+			this.jitterMillis = jitterMillis;
+			this.frameMillis = frameMillis;
+			this.tickMillis = tickMillis;
+		}
+
+		public double getStalledFraction() {
+			return this.stalledMillis / (double) (GAME_MILLIS - WARMUP_MILLIS);
+		}
+	}
+
+	private static final class Delivery implements Comparable<Delivery> {
+		private final long arrivalTime;
+		private final int order;
+		private final Runnable action;
+
+		public Delivery(final long arrivalTime, final int order, final Runnable action) {
+			this.arrivalTime = arrivalTime;
+			this.order = order;
+			this.action = action;
+		}
+
+		@Override
+		public int compareTo(final Delivery other) {
+			final int timeComparison = Long.compare(this.arrivalTime, other.arrivalTime);
+			if (timeComparison != 0) {
+				return timeComparison;
+			}
+			return Integer.compare(this.order, other.order);
+		}
+	}
+}
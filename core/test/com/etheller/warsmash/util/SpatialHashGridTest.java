@@ -0,0 +1,77 @@
+package com.etheller.warsmash.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.badlogic.gdx.math.Rectangle;
+
+class SpatialHashGridTest {
+
+	class Thing {
+		String name;
+		Rectangle bounds;
+
+		public Thing(final String name, final Rectangle bounds) {
+			this.name = name;
+			this.bounds = bounds;
+		}
+	}
+
+	@Test
+	void testMatchesBruteForceWhileMoving() {
+		final SpatialHashGrid<Thing> grid = new SpatialHashGrid<>(new Rectangle(-8192, -8192, 16384, 16384), 128);
+		final Random random = new Random(1337);
+		final int count = 1000;
+		final List<Thing> things = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			// a few are bigger than a cell, like buildings, and a few poke out of the map
+			final float size = (i % 50) == 0 ? 400 : 32;
+			final float x = (random.nextFloat() * 17000) - 8500;
+			final float y = (random.nextFloat() * 17000) - 8500;
+			final Thing thing = new Thing("Thing" + i, new Rectangle(x, y, size, size));
+			things.add(thing);
+			grid.add(thing, thing.bounds);
+		}
+		for (int k = 0; k < 100; k++) {
+			for (int i = 0; i < count; i++) {
+				final Thing thing = things.get(i);
+				grid.translate(thing, thing.bounds, (random.nextFloat() - 0.5f) * 100,
+						(random.nextFloat() - 0.5f) * 100);
+			}
+			for (int i = count - 1; i >= (count - 10); i--) {
+				final Thing thing = things.remove(i);
+				grid.remove(thing, thing.bounds);
+			}
+			for (int i = 0; i < 10; i++) {
+				final Thing thing = new Thing("Thing" + k + "_" + i, new Rectangle(
+						(random.nextFloat() * 16000) - 8000, (random.nextFloat() * 16000) - 8000, 32, 32));
+				things.add(thing);
+				grid.add(thing, thing.bounds);
+			}
+
+			final Rectangle query = new Rectangle((random.nextFloat() * 16000) - 8000,
+					(random.nextFloat() * 16000) - 8000, 1500, 1500);
+			final Set<Thing> expected = new HashSet<>();
+			for (final Thing thing : things) {
+				if (thing.bounds.overlaps(query)) {
+					expected.add(thing);
+				}
+			}
+			final List<Thing> found = new ArrayList<>();
+			grid.intersect(query, (thing) -> {
+				found.add(thing);
+				return false;
+			});
+			assertEquals(expected.size(), found.size());
+			assertEquals(expected, new HashSet<>(found));
+		}
+		assertEquals(things.size(), grid.size());
+	}
+}
@@ -0,0 +1,157 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CHashtableTest {
+	@Test
+	void testLanesAreIndependent() {
+		final CHashtable table = new CHashtable();
+		final Object handle = new Object();
+		table.saveInteger(1, 2, 42);
+		table.saveReal(1, 2, 1.5);
+		table.saveBoolean(1, 2, true);
+		table.saveString(1, 2, "text");
+		table.saveHandle(1, 2, handle);
+		assertEquals(1, table.size());
+
+		table.removeSavedInteger(1, 2);
+		assertFalse(table.haveSavedInteger(1, 2));
+		assertEquals(0, table.loadInteger(1, 2));
+		assertEquals(1.5, table.loadReal(1, 2));
+		assertTrue(table.loadBoolean(1, 2));
+		assertEquals("text", table.loadString(1, 2));
+		assertEquals(handle, table.loadHandle(1, 2));
+
+		table.saveBoolean(1, 2, false);
+		assertTrue(table.haveSavedBoolean(1, 2));
+		assertFalse(table.loadBoolean(1, 2));
+		table.removeSavedBoolean(1, 2);
+		table.removeSavedReal(1, 2);
+		table.removeSavedString(1, 2);
+		assertEquals(1, table.size());
+		assertEquals(handle, table.loadHandle(1, 2));
+		assertNull(table.loadString(1, 2));
+
+		table.removeSavedHandle(1, 2);
+		assertEquals(0, table.size());
+		assertFalse(table.haveSavedHandle(1, 2));
+	}
+
+	@Test
+	void testRemovedSlotsAreReused() {
+		final CHashtable table = new CHashtable();
+		table.saveInteger(0, 0, -1);
+		for (int i = 1; i < 100000; i++) {
+			table.saveInteger(i, i, i);
+			assertEquals(i, table.loadInteger(i, i));
+			table.removeSavedInteger(i, i);
+		}
+		assertEquals(1, table.size());
+		assertEquals(-1, table.loadInteger(0, 0));
+		// the churn only ever left one entry and some removed slots behind
+		assertTrue(table.getCapacity() <= 64);
+	}
+
+	@Test
+	void testRehashKeepsEntriesAndLinks() {
+		final CHashtable table = new CHashtable();
+		for (int parent = -25; parent < 25; parent++) {
+			for (int child = -20; child < 20; child++) {
+				table.saveInteger(parent, child, (parent * 1000) + child);
+			}
+		}
+		assertEquals(2000, table.size());
+		for (int parent = -25; parent < 25; parent++) {
+			for (int child = -20; child < 20; child++) {
+				assertEquals((parent * 1000) + child, table.loadInteger(parent, child));
+			}
+		}
+
+		// the links were made again for the grown table, so flushing one parent
+		// still removes exactly its entries
+		table.removeSavedInteger(-3, 5);
+		table.flushChild(-3);
+		assertEquals(2000 - 40, table.size());
+		for (int child = -20; child < 20; child++) {
+			assertFalse(table.haveSavedInteger(-3, child));
+			assertEquals(-4000 + child, table.loadInteger(-4, child));
+			assertEquals(-2000 + child, table.loadInteger(-2, child));
+		}
+	}
+
+	@Test
+	void testFlushChildThenReinsert() {
+		final CHashtable table = new CHashtable();
+		for (int child = 0; child < 10; child++) {
+			table.saveInteger(1, child, child);
+			table.saveString(2, child, "two");
+		}
+		table.flushChild(1);
+		assertEquals(10, table.size());
+		assertFalse(table.haveSavedInteger(1, 3));
+
+		for (int child = 0; child < 10; child++) {
+			table.saveReal(1, child, child * 0.5);
+		}
+		assertEquals(20, table.size());
+		assertFalse(table.haveSavedInteger(1, 3));
+		assertEquals(1.5, table.loadReal(1, 3));
+
+		// the head of the new links, one in the middle and the tail
+		table.removeSavedReal(1, 9);
+		table.removeSavedReal(1, 4);
+		table.removeSavedReal(1, 0);
+		assertEquals(17, table.size());
+		table.flushChild(1);
+		assertEquals(10, table.size());
+		for (int child = 0; child < 10; child++) {
+			assertFalse(table.haveSavedReal(1, child));
+			assertEquals("two", table.loadString(2, child));
+		}
+
+		// many parents that were flushed are dropped when the parent table is full
+		for (int parent = 10; parent < 1000; parent++) {
+			table.saveInteger(parent, 0, parent);
+			table.flushChild(parent);
+		}
+		table.saveInteger(1, 1, 11);
+		assertEquals(11, table.size());
+		table.flushChild(2);
+		assertEquals(1, table.size());
+		assertEquals(11, table.loadInteger(1, 1));
+	}
+
+	@Test
+	void testFlushedParentsDoNotGrowParentTable() {
+		final CHashtable table = new CHashtable();
+		for (int parent = 0; parent < 10; parent++) {
+			table.saveInteger(parent, 0, parent);
+		}
+		// a parent per handle that is flushed when the handle goes away
+		for (int parent = 10; parent < 100000; parent++) {
+			table.saveInteger(parent, 0, parent);
+			table.saveString(parent, 1, "handle");
+			table.flushChild(parent);
+		}
+		// a parent that loses its last entry is dropped the same way
+		for (int parent = 100000; parent < 200000; parent++) {
+			table.saveInteger(parent, 0, parent);
+			table.removeSavedInteger(parent, 0);
+		}
+		assertEquals(10, table.size());
+		for (int parent = 0; parent < 10; parent++) {
+			assertEquals(parent, table.loadInteger(parent, 0));
+		}
+		assertTrue(table.getParentCapacity() <= 64);
+
+		table.flushChild(4);
+		assertEquals(9, table.size());
+		assertFalse(table.haveSavedInteger(4, 0));
+		assertEquals(5, table.loadInteger(5, 0));
+	}
+}
@@ -0,0 +1,35 @@
+package com.etheller.warsmash.viewer5.handlers.w3x.simulation.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SimulationRandomTest {
+	@Test
+	void testSameNumbersAsRandom() {
+		final Random random = new Random(1337L);
+		final SimulationRandom simulationRandom = new SimulationRandom(1337L);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(random.nextInt(100), simulationRandom.nextInt(100));
+			assertEquals(random.nextFloat(), simulationRandom.nextFloat());
+			assertEquals(random.nextDouble(), simulationRandom.nextDouble());
+			assertEquals(random.nextLong(), simulationRandom.nextLong());
+		}
+	}
+
+	@Test
+	void testStateFollowsDraws() {
+		final SimulationRandom first = new SimulationRandom(1337L);
+		final SimulationRandom second = new SimulationRandom(1337L);
+		assertEquals(first.getState(), second.getState());
+		first.nextInt();
+		assertNotEquals(first.getState(), second.getState());
+		second.nextInt();
+		assertEquals(first.getState(), second.getState());
+		second.setSeed(1337L);
+		assertNotEquals(first.getState(), second.getState());
+	}
+}
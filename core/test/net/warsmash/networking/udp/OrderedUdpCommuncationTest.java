@@ -0,0 +1,244 @@
+package net.warsmash.networking.udp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs two {@link OrderedUdpCommuncation}s against each other over a simulated
+ * link that drops, delays and reorders datagrams, on a clock that only moves
+ * when the test moves it.
+ */
+class OrderedUdpCommuncationTest {
+	private static final int UPDATE_INTERVAL_MILLIS = 10;
+
+	@Test
+	void testDeliversInOrderOverLossyLink() throws IOException {
+		final LossyLink link = new LossyLink(new Random(1234), 0.2, 20, 10);
+		final int messageCount = 2000;
+		int sent = 0;
+		while ((link.a.receivedValues.size() < messageCount) || (link.b.receivedValues.size() < messageCount)) {
+			if ((sent < messageCount) && ((link.now % 5) == 0)) {
+				link.a.send(sent);
+				link.b.send(-sent);
+				sent++;
+			}
+			link.step();
+			assertTrue(link.now < 600000, "did not deliver everything");
+		}
+		for (int i = 0; i < messageCount; i++) {
+			assertEquals(Integer.valueOf(-i), link.a.receivedValues.get(i));
+			assertEquals(Integer.valueOf(i), link.b.receivedValues.get(i));
+		}
+		assertTrue(link.a.cantReplaySeqNos.isEmpty());
+		assertTrue(link.b.cantReplaySeqNos.isEmpty());
+		// every lost message is sent again about once, not once per message that
+		// arrived after it
+		assertTrue(link.a.getRetransmitCount() < (messageCount / 2), "retransmits " + link.a.getRetransmitCount());
+	}
+
+	@Test
+	void testRecoversLossWithinAboutOneRoundTrip() throws IOException {
+		final LossyLink link = new LossyLink(new Random(1), 0, 50, 0);
+		for (int i = 0; i < 20; i++) {
+			link.a.send(i);
+			link.step(10);
+		}
+		link.step(200);
+		final long roundTripMillis = link.a.getRoundTripMillis();
+		assertTrue((roundTripMillis >= 100) && (roundTripMillis <= 130), "round trip " + roundTripMillis);
+
+		link.dropNextFromA = true;
+		link.a.send(20);
+		final long lostAt = link.now;
+		for (int i = 21; i < 40; i++) {
+			link.step(10);
+			link.a.send(i);
+		}
+		while (link.b.receivedValues.size() < 21) {
+			link.step();
+		}
+		// about one round trip until the acknowledgements of the messages after it
+		// show it missing, then one way for the resend
+		final long recoveryMillis = link.now - lostAt;
+		assertTrue(recoveryMillis < (roundTripMillis * 2), "recovered in " + recoveryMillis);
+	}
+
+	@Test
+	void testRecoversAfterOutage() throws IOException {
+		final LossyLink link = new LossyLink(new Random(1), 0, 20, 0);
+		int sent = 0;
+		// a turn every 50ms, and a five second outage in the middle, which is far
+		// more messages than the send window holds
+		while (link.now < 10000) {
+			link.down = (link.now >= 2000) && (link.now < 7000);
+			if ((link.now % 50) == 0) {
+				link.a.send(sent);
+				link.b.send(-sent);
+				sent++;
+			}
+			link.step();
+		}
+		while ((link.a.receivedValues.size() < sent) || (link.b.receivedValues.size() < sent)) {
+			link.step();
+			assertTrue(link.now < 30000, "did not catch up after the outage");
+		}
+		for (int i = 0; i < sent; i++) {
+			assertEquals(Integer.valueOf(-i), link.a.receivedValues.get(i));
+			assertEquals(Integer.valueOf(i), link.b.receivedValues.get(i));
+		}
+		assertTrue(link.a.cantReplaySeqNos.isEmpty());
+		assertTrue(link.b.cantReplaySeqNos.isEmpty());
+	}
+
+	@Test
+	void testClosesWhenOtherSideStopsAcknowledging() throws IOException {
+		final LossyLink link = new LossyLink(new Random(1), 1, 20, 0);
+		for (int i = 0; i < 200; i++) {
+			link.a.send(i);
+			link.step();
+		}
+		assertTrue(link.a.cantReplaySeqNos.isEmpty());
+		link.step((int) OrderedUdpCommuncation.CONNECTION_TIMEOUT_MILLIS);
+		assertTrue(link.a.isClosed());
+		assertEquals(1, link.a.cantReplaySeqNos.size());
+		assertEquals(Integer.valueOf(0), link.a.cantReplaySeqNos.get(0));
+	}
+
+	private static final class LossyLink {
+		private final Random random;
+		private final double lossChance;
+		private final int delayMillis;
+		private final int jitterMillis;
+		private final PriorityQueue<Datagram> inFlight = new PriorityQueue<>();
+		private final Endpoint a = new Endpoint(this);
+		private final Endpoint b = new Endpoint(this);
+		private long now;
+		private int datagramCount;
+		private boolean dropNextFromA;
+		private boolean down;
+
+		public LossyLink(final Random random, final double lossChance, final int delayMillis,
+				final int jitterMillis) {
+			this.random = random;
+			this.lossChance = lossChance;
+			this.delayMillis = delayMillis;
+			this.jitterMillis = jitterMillis;
+			this.a.other = this.b;
+			this.b.other = this.a;
+		}
+
+		public void send(final Endpoint destination, final ByteBuffer data) {
+			if ((destination == this.b) && this.dropNextFromA) {
+				this.dropNextFromA = false;
+				return;
+			}
+			if (this.down || (this.random.nextDouble() < this.lossChance)) {
+				return;
+			}
+			final ByteBuffer copy = ByteBuffer.allocate(data.remaining()).order(ByteOrder.BIG_ENDIAN);
+			copy.put(data);
+			copy.flip();
+			final int jitter = this.jitterMillis == 0 ? 0 : this.random.nextInt(this.jitterMillis);
+			this.inFlight.add(new Datagram(this.now + this.delayMillis + jitter, this.datagramCount++, destination,
+					copy));
+		}
+
+		public void step(final int millis) {
+			for (int i = 0; i < millis; i++) {
+				step();
+			}
+		}
+
+		public void step() {
+			this.now++;
+			while (!this.inFlight.isEmpty() && (this.inFlight.peek().arrivalTime <= this.now)) {
+				final Datagram datagram = this.inFlight.poll();
+				datagram.destination.parse(datagram.data);
+			}
+			if ((this.now % UPDATE_INTERVAL_MILLIS) == 0) {
+				this.a.update();
+				this.b.update();
+			}
+		}
+	}
+
+	private static final class Datagram implements Comparable<Datagram> {
+		private final long arrivalTime;
+		private final int order;
+		private final Endpoint destination;
+		private final ByteBuffer data;
+
+		public Datagram(final long arrivalTime, final int order, final Endpoint destination, final ByteBuffer data) {
+			this.arrivalTime = arrivalTime;
+			this.order = order;
+			this.destination = destination;
+			this.data = data;
+		}
+
+		@Override
+		public int compareTo(final Datagram other) {
+			final int timeComparison = Long.compare(this.arrivalTime, other.arrivalTime);
+			if (timeComparison != 0) {
+				return timeComparison;
+			}
+			return Integer.compare(this.order, other.order);
+		}
+	}
+
+	private static final class Endpoint extends OrderedUdpCommuncation {
+		private final LossyLink link;
+		private final List<Integer> receivedValues;
+		private final List<Integer> cantReplaySeqNos;
+		private final ByteBuffer dataBuffer = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+		private Endpoint other;
+
+		public Endpoint(final LossyLink link) {
+			this(link, new ArrayList<>(), new ArrayList<>());
+		}
+
+		private Endpoint(final LossyLink link, final List<Integer> receivedValues,
+				final List<Integer> cantReplaySeqNos) {
+			super(new OrderedUdpClientListener() {
+				@Override
+				public void parse(final ByteBuffer buffer) {
+					receivedValues.add(buffer.getInt());
+				}
+
+				@Override
+				public void cantReplay(final int seqNo) {
+					cantReplaySeqNos.add(seqNo);
+				}
+			});
+			this.link = link;
+			this.receivedValues = receivedValues;
+			this.cantReplaySeqNos = cantReplaySeqNos;
+		}
+
+		public void send(final int value) throws IOException {
+			this.dataBuffer.clear();
+			this.dataBuffer.putInt(value);
+			this.dataBuffer.flip();
+			send(this.dataBuffer);
+		}
+
+		@Override
+		protected void trySend(final ByteBuffer data) {
+			this.link.send(this.other, data);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return this.link.now;
+		}
+	}
+}
@@ -75,6 +75,7 @@ public class JassRunner {
 				return null;
 			}
 		});
+		jassProgramVisitor.getGlobals().registerYieldingNative("Sleep");
 		for (final String arg : args) {
 			try {
 				jassProgramVisitor.setCurrentFileName(arg);
@@ -0,0 +1,139 @@
+package com.etheller.interpreter.ast.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import com.etheller.interpreter.ast.util.JassSettings;
+import com.etheller.interpreter.ast.visitors.JassProgramVisitor;
+
+/**
+ * Keeps program images of parsed JASS files in a folder, named by a hash of the
+ * file contents, so that a script that was parsed once before can be loaded
+ * without running the parser again.
+ *
+ * An image file is a header, followed by the declarations that
+ * {@link JassProgramImageWriter} recorded. The header holds a checksum of the
+ * declarations, which is checked before anything is declared, so a damaged
+ * image is parsed again instead of leaving half a program behind.
+ */
+public class JassProgramImageCache {
+	private static final int MAGIC = 0x4A415353; // JASS
+	// bump when the image format or the parser output changes
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final String FILE_EXTENSION = ".jpi";
+
+	private final Path directory;
+
+	public JassProgramImageCache(final Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @return true if there was an image for this source, and everything in it was
+	 *         declared on the visitor
+	 */
+	public boolean load(final byte[] source, final JassProgramVisitor programVisitor) {
+		final Path imagePath = getImagePath(source);
+		if (!Files.isRegularFile(imagePath)) {
+			return false;
+		}
+		final MappedByteBuffer image;
+		try (FileChannel channel = FileChannel.open(imagePath, StandardOpenOption.READ)) {
+			image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		catch (final IOException e) {
+			System.err.println("Unable to read JASS program image " + imagePath + ": " + e);
+			return false;
+		}
+		if ((image.remaining() < HEADER_SIZE) || (image.getInt() != MAGIC) || (image.getInt() != VERSION)) {
+			System.err.println("Ignoring JASS program image with unknown format: " + imagePath);
+			return false;
+		}
+		final int length = image.getInt();
+		final int checksum = image.getInt();
+		if (length != image.remaining()) {
+			System.err.println("Ignoring truncated JASS program image: " + imagePath);
+			return false;
+		}
+		final ByteBuffer declarations = image.slice();
+		final CRC32 crc = new CRC32();
+		crc.update(declarations.duplicate());
+		if ((int) crc.getValue() != checksum) {
+			System.err.println("Ignoring damaged JASS program image: " + imagePath);
+			return false;
+		}
+		new JassProgramImageReader(declarations, programVisitor).load();
+		return true;
+	}
+
+	public void store(final byte[] source, final byte[] declarations) {
+		final Path imagePath = getImagePath(source);
+		final CRC32 crc = new CRC32();
+		crc.update(declarations);
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(declarations.length);
+		header.putInt((int) crc.getValue());
+		header.flip();
+		try {
+			Files.createDirectories(this.directory);
+			// written next to the image and moved over it, so that another instance
+			// loading the same script never maps a half written file
+			final Path temporaryPath = Files.createTempFile(this.directory, "image", ".tmp");
+			boolean moved = false;
+			try {
+				try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+					final ByteBuffer[] buffers = { header, ByteBuffer.wrap(declarations) };
+					// a gathering write may stop short, like any other channel write
+					while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+						channel.write(buffers);
+					}
+				}
+				Files.move(temporaryPath, imagePath, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				moved = true;
+			}
+			finally {
+				if (!moved) {
+					Files.deleteIfExists(temporaryPath);
+				}
+			}
+		}
+		catch (final IOException e) {
+			System.err.println("Unable to write JASS program image " + imagePath + ": " + e);
+		}
+	}
+
+	private Path getImagePath(final byte[] source) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		// the parser only keeps debug statements when debugging, so images made with
+		// and without it are different
+		digest.update((byte) VERSION);
+		digest.update((byte) (JassSettings.DEBUG ? 1 : 0));
+		final byte[] hash = digest.digest(source);
+		final StringBuilder fileName = new StringBuilder(hash.length * 2);
+		for (final byte hashByte : hash) {
+			fileName.append(Character.forDigit((hashByte >> 4) & 0xF, 16));
+			fileName.append(Character.forDigit(hashByte & 0xF, 16));
+		}
+		fileName.append(FILE_EXTENSION);
+		return this.directory.resolve(fileName.toString());
+	}
+}
@@ -0,0 +1,279 @@
+package com.etheller.interpreter.ast.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.etheller.interpreter.ast.debug.DebuggingJassStatement;
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.expression.ArrayRefJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionReferenceJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.NegateJassExpression;
+import com.etheller.interpreter.ast.expression.NotJassExpression;
+import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.statement.JassArrayedAssignmentStatement;
+import com.etheller.interpreter.ast.statement.JassCallStatement;
+import com.etheller.interpreter.ast.statement.JassDoNothingStatement;
+import com.etheller.interpreter.ast.statement.JassExitWhenStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseIfStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseStatement;
+import com.etheller.interpreter.ast.statement.JassIfStatement;
+import com.etheller.interpreter.ast.statement.JassLocalDefinitionStatement;
+import com.etheller.interpreter.ast.statement.JassLocalStatement;
+import com.etheller.interpreter.ast.statement.JassLoopStatement;
+import com.etheller.interpreter.ast.statement.JassReturnNothingStatement;
+import com.etheller.interpreter.ast.statement.JassReturnStatement;
+import com.etheller.interpreter.ast.statement.JassSetStatement;
+import com.etheller.interpreter.ast.statement.JassStatement;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.visitors.JassProgramVisitor;
+
+/**
+ * Replays a program image made by {@link JassProgramImageWriter} into a
+ * {@link JassProgramVisitor}, declaring everything in the same order as the
+ * parser did. Types are stored by name and looked up as they are read, so each
+ * declaration only sees the types declared before it, like in the parser.
+ */
+public class JassProgramImageReader {
+	static final int TYPE_DEFINITION = 1;
+	static final int GLOBAL = 2;
+	static final int NATIVE = 3;
+	static final int FUNCTION = 4;
+
+	static final int ARRAYED_ASSIGNMENT_STATEMENT = 10;
+	static final int CALL_STATEMENT = 11;
+	static final int DO_NOTHING_STATEMENT = 12;
+	static final int EXIT_WHEN_STATEMENT = 13;
+	static final int IF_ELSE_IF_STATEMENT = 14;
+	static final int IF_ELSE_STATEMENT = 15;
+	static final int IF_STATEMENT = 16;
+	static final int LOCAL_DEFINITION_STATEMENT = 17;
+	static final int LOCAL_STATEMENT = 18;
+	static final int LOOP_STATEMENT = 19;
+	static final int RETURN_NOTHING_STATEMENT = 20;
+	static final int RETURN_STATEMENT = 21;
+	static final int SET_STATEMENT = 22;
+	static final int DEBUGGING_STATEMENT = 23;
+
+	static final int ARITHMETIC_EXPRESSION = 30;
+	static final int ARRAY_REF_EXPRESSION = 31;
+	static final int FUNCTION_CALL_EXPRESSION = 32;
+	static final int FUNCTION_REFERENCE_EXPRESSION = 33;
+	static final int NEGATE_EXPRESSION = 34;
+	static final int NOT_EXPRESSION = 35;
+	static final int REFERENCE_EXPRESSION = 36;
+	static final int NULL_LITERAL = 37;
+	static final int INTEGER_LITERAL = 38;
+	static final int REAL_LITERAL = 39;
+	static final int STRING_LITERAL = 40;
+	static final int BOOLEAN_LITERAL = 41;
+
+	private static final String ARRAY_TYPE_SUFFIX = " array";
+	private static final ArithmeticSigns[] ARITHMETIC_SIGNS = ArithmeticSigns.values();
+
+	private final ByteBuffer buffer;
+	private final JassProgramVisitor programVisitor;
+	private final GlobalScope globals;
+
+	public JassProgramImageReader(final ByteBuffer buffer, final JassProgramVisitor programVisitor) {
+		this.buffer = buffer;
+		this.programVisitor = programVisitor;
+		this.globals = programVisitor.getGlobals();
+	}
+
+	public void load() {
+		while (this.buffer.hasRemaining()) {
+			final int declaration = this.buffer.get();
+			switch (declaration) {
+			case TYPE_DEFINITION:
+				this.programVisitor.loadTypeDefinition(readString(), readString());
+				break;
+			case GLOBAL: {
+				final String name = readString();
+				final JassType type = readType();
+				final JassExpression initializer = readBoolean() ? readExpression() : null;
+				try {
+					this.programVisitor.defineGlobal(name, type, initializer);
+				}
+				catch (final Exception exc) {
+					throw new RuntimeException(name, exc);
+				}
+				break;
+			}
+			case NATIVE: {
+				final int lineNo = this.buffer.getInt();
+				final String name = readString();
+				final List<JassParameter> parameters = readParameters();
+				this.programVisitor.defineNative(lineNo, name, parameters, readType());
+				break;
+			}
+			case FUNCTION: {
+				final int lineNo = this.buffer.getInt();
+				final String name = readString();
+				final List<JassParameter> parameters = readParameters();
+				final JassType returnType = readType();
+				this.programVisitor.defineFunction(lineNo, name,
+						new UserJassFunction(readStatements(), parameters, returnType));
+				break;
+			}
+			default:
+				throw new IllegalStateException("Bad declaration in JASS program image: " + declaration);
+			}
+		}
+	}
+
+	private List<JassParameter> readParameters() {
+		final int count = this.buffer.getInt();
+		final List<JassParameter> parameters = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			final String identifier = readString();
+			parameters.add(new JassParameter(readType(), identifier));
+		}
+		return parameters;
+	}
+
+	private JassType readType() {
+		final String name = readString();
+		if (name.endsWith(ARRAY_TYPE_SUFFIX)) {
+			return this.globals.parseArrayType(name.substring(0, name.length() - ARRAY_TYPE_SUFFIX.length()));
+		}
+		return this.globals.parseType(name);
+	}
+
+	private List<JassStatement> readStatements() {
+		final int count = this.buffer.getInt();
+		final List<JassStatement> statements = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			statements.add(readStatement());
+		}
+		return statements;
+	}
+
+	private JassStatement readStatement() {
+		final int statement = this.buffer.get();
+		switch (statement) {
+		case ARRAYED_ASSIGNMENT_STATEMENT: {
+			final String identifier = readString();
+			final JassExpression indexExpression = readExpression();
+			return new JassArrayedAssignmentStatement(identifier, indexExpression, readExpression());
+		}
+		case CALL_STATEMENT: {
+			final String functionName = readString();
+			return new JassCallStatement(functionName, readExpressions());
+		}
+		case DO_NOTHING_STATEMENT:
+			return new JassDoNothingStatement();
+		case EXIT_WHEN_STATEMENT:
+			return new JassExitWhenStatement(readExpression());
+		case IF_ELSE_IF_STATEMENT: {
+			final JassExpression condition = readExpression();
+			final List<JassStatement> thenStatements = readStatements();
+			return new JassIfElseIfStatement(condition, thenStatements, readStatement());
+		}
+		case IF_ELSE_STATEMENT: {
+			final JassExpression condition = readExpression();
+			final List<JassStatement> thenStatements = readStatements();
+			return new JassIfElseStatement(condition, thenStatements, readStatements());
+		}
+		case IF_STATEMENT: {
+			final JassExpression condition = readExpression();
+			return new JassIfStatement(condition, readStatements());
+		}
+		case LOCAL_DEFINITION_STATEMENT: {
+			final String identifier = readString();
+			final JassType type = readType();
+			return new JassLocalDefinitionStatement(identifier, type, readExpression());
+		}
+		case LOCAL_STATEMENT: {
+			final String identifier = readString();
+			return new JassLocalStatement(identifier, readType());
+		}
+		case LOOP_STATEMENT:
+			return new JassLoopStatement(readStatements());
+		case RETURN_NOTHING_STATEMENT:
+			return new JassReturnNothingStatement();
+		case RETURN_STATEMENT:
+			return new JassReturnStatement(readExpression());
+		case SET_STATEMENT: {
+			final String identifier = readString();
+			return new JassSetStatement(identifier, readExpression());
+		}
+		case DEBUGGING_STATEMENT: {
+			final int lineNo = this.buffer.getInt();
+			return new DebuggingJassStatement(lineNo, readStatement());
+		}
+		default:
+			throw new IllegalStateException("Bad statement in JASS program image: " + statement);
+		}
+	}
+
+	private List<JassExpression> readExpressions() {
+		final int count = this.buffer.getInt();
+		final List<JassExpression> expressions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			expressions.add(readExpression());
+		}
+		return expressions;
+	}
+
+	private JassExpression readExpression() {
+		final int expression = this.buffer.get();
+		switch (expression) {
+		case ARITHMETIC_EXPRESSION: {
+			final ArithmeticSigns sign = ARITHMETIC_SIGNS[this.buffer.get()];
+			final JassExpression leftExpression = readExpression();
+			return new ArithmeticJassExpression(leftExpression, readExpression(), sign);
+		}
+		case ARRAY_REF_EXPRESSION: {
+			final String identifier = readString();
+			return new ArrayRefJassExpression(identifier, readExpression());
+		}
+		case FUNCTION_CALL_EXPRESSION: {
+			final String functionName = readString();
+			return new FunctionCallJassExpression(functionName, readExpressions());
+		}
+		case FUNCTION_REFERENCE_EXPRESSION:
+			return new FunctionReferenceJassExpression(readString());
+		case NEGATE_EXPRESSION:
+			return new NegateJassExpression(readExpression());
+		case NOT_EXPRESSION:
+			return new NotJassExpression(readExpression());
+		case REFERENCE_EXPRESSION:
+			return new ReferenceJassExpression(readString());
+		case NULL_LITERAL:
+			return new LiteralJassExpression(null);
+		case INTEGER_LITERAL:
+			return new LiteralJassExpression(new IntegerJassValue(this.buffer.getInt()));
+		case REAL_LITERAL:
+			return new LiteralJassExpression(new RealJassValue(this.buffer.getDouble()));
+		case STRING_LITERAL:
+			return new LiteralJassExpression(this.globals.getStrings().intern(readString()));
+		case BOOLEAN_LITERAL:
+			return new LiteralJassExpression(readBoolean() ? BooleanJassValue.TRUE : BooleanJassValue.FALSE);
+		default:
+			throw new IllegalStateException("Bad expression in JASS program image: " + expression);
+		}
+	}
+
+	private boolean readBoolean() {
+		return this.buffer.get() != 0;
+	}
+
+	private String readString() {
+		final int length = this.buffer.getInt();
+		final byte[] utf8 = new byte[length];
+		this.buffer.get(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+}
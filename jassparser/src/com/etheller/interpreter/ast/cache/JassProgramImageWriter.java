@@ -0,0 +1,354 @@
+package com.etheller.interpreter.ast.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.etheller.interpreter.ast.debug.DebuggingJassStatement;
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.expression.ArrayRefJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionReferenceJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.JassExpressionVisitor;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.NegateJassExpression;
+import com.etheller.interpreter.ast.expression.NotJassExpression;
+import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.statement.JassArrayedAssignmentStatement;
+import com.etheller.interpreter.ast.statement.JassCallStatement;
+import com.etheller.interpreter.ast.statement.JassDoNothingStatement;
+import com.etheller.interpreter.ast.statement.JassExitWhenStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseIfStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseStatement;
+import com.etheller.interpreter.ast.statement.JassIfStatement;
+import com.etheller.interpreter.ast.statement.JassLocalDefinitionStatement;
+import com.etheller.interpreter.ast.statement.JassLocalStatement;
+import com.etheller.interpreter.ast.statement.JassLoopStatement;
+import com.etheller.interpreter.ast.statement.JassReturnNothingStatement;
+import com.etheller.interpreter.ast.statement.JassReturnStatement;
+import com.etheller.interpreter.ast.statement.JassSetStatement;
+import com.etheller.interpreter.ast.statement.JassStatement;
+import com.etheller.interpreter.ast.statement.JassStatementVisitor;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.StringJassValue;
+
+/**
+ * Records the declarations of one JASS file as a program image, in the order
+ * the parser makes them, see {@link JassProgramImageReader} for reading them
+ * back.
+ */
+public class JassProgramImageWriter implements JassStatementVisitor<Void>, JassExpressionVisitor<Void> {
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final DataOutputStream output = new DataOutputStream(this.bytes);
+
+	public void writeTypeDefinition(final String type, final String supertype) {
+		writeByte(JassProgramImageReader.TYPE_DEFINITION);
+		writeString(type);
+		writeString(supertype);
+	}
+
+	public void writeGlobal(final String name, final JassType type, final JassExpression initializer) {
+		writeByte(JassProgramImageReader.GLOBAL);
+		writeString(name);
+		writeType(type);
+		writeBoolean(initializer != null);
+		if (initializer != null) {
+			initializer.accept(this);
+		}
+	}
+
+	public void writeNative(final int lineNo, final String name, final List<JassParameter> parameters,
+			final JassType returnType) {
+		writeByte(JassProgramImageReader.NATIVE);
+		writeInt(lineNo);
+		writeString(name);
+		writeParameters(parameters);
+		writeType(returnType);
+	}
+
+	public void writeFunction(final int lineNo, final String name, final UserJassFunction function) {
+		writeByte(JassProgramImageReader.FUNCTION);
+		writeInt(lineNo);
+		writeString(name);
+		writeParameters(function.getParameters());
+		writeType(function.getReturnType());
+		writeStatements(function.getStatements());
+	}
+
+	public byte[] toByteArray() {
+		return this.bytes.toByteArray();
+	}
+
+	private void writeParameters(final List<JassParameter> parameters) {
+		writeInt(parameters.size());
+		for (final JassParameter parameter : parameters) {
+			writeString(parameter.getIdentifier());
+			writeType(parameter.getType());
+		}
+	}
+
+	private void writeType(final JassType type) {
+		writeString(type.getName());
+	}
+
+	private void writeStatements(final List<JassStatement> statements) {
+		writeInt(statements.size());
+		for (final JassStatement statement : statements) {
+			statement.accept(this);
+		}
+	}
+
+	private void writeExpressions(final List<JassExpression> expressions) {
+		writeInt(expressions.size());
+		for (final JassExpression expression : expressions) {
+			expression.accept(this);
+		}
+	}
+
+	@Override
+	public Void visit(final JassArrayedAssignmentStatement statement) {
+		writeByte(JassProgramImageReader.ARRAYED_ASSIGNMENT_STATEMENT);
+		writeString(statement.getIdentifier());
+		statement.getIndexExpression().accept(this);
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassCallStatement statement) {
+		writeByte(JassProgramImageReader.CALL_STATEMENT);
+		writeString(statement.getFunctionName());
+		writeExpressions(statement.getArguments());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassDoNothingStatement statement) {
+		writeByte(JassProgramImageReader.DO_NOTHING_STATEMENT);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassExitWhenStatement statement) {
+		writeByte(JassProgramImageReader.EXIT_WHEN_STATEMENT);
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfElseIfStatement statement) {
+		writeByte(JassProgramImageReader.IF_ELSE_IF_STATEMENT);
+		statement.getCondition().accept(this);
+		writeStatements(statement.getThenStatements());
+		statement.getElseifTail().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfElseStatement statement) {
+		writeByte(JassProgramImageReader.IF_ELSE_STATEMENT);
+		statement.getCondition().accept(this);
+		writeStatements(statement.getThenStatements());
+		writeStatements(statement.getElseStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfStatement statement) {
+		writeByte(JassProgramImageReader.IF_STATEMENT);
+		statement.getCondition().accept(this);
+		writeStatements(statement.getThenStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLocalDefinitionStatement statement) {
+		writeByte(JassProgramImageReader.LOCAL_DEFINITION_STATEMENT);
+		writeString(statement.getIdentifier());
+		writeType(statement.getType());
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLocalStatement statement) {
+		writeByte(JassProgramImageReader.LOCAL_STATEMENT);
+		writeString(statement.getIdentifier());
+		writeType(statement.getType());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLoopStatement statement) {
+		writeByte(JassProgramImageReader.LOOP_STATEMENT);
+		writeStatements(statement.getStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassReturnNothingStatement statement) {
+		writeByte(JassProgramImageReader.RETURN_NOTHING_STATEMENT);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassReturnStatement statement) {
+		writeByte(JassProgramImageReader.RETURN_STATEMENT);
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassSetStatement statement) {
+		writeByte(JassProgramImageReader.SET_STATEMENT);
+		writeString(statement.getIdentifier());
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final DebuggingJassStatement statement) {
+		writeByte(JassProgramImageReader.DEBUGGING_STATEMENT);
+		writeInt(statement.getLineNo());
+		statement.getDelegate().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final ArithmeticJassExpression expression) {
+		if (!(expression.getArithmeticSign() instanceof ArithmeticSigns)) {
+			throw new IllegalStateException("Unknown arithmetic sign: " + expression.getArithmeticSign());
+		}
+		writeByte(JassProgramImageReader.ARITHMETIC_EXPRESSION);
+		writeByte(((ArithmeticSigns) expression.getArithmeticSign()).ordinal());
+		expression.getLeftExpression().accept(this);
+		expression.getRightExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final ArrayRefJassExpression expression) {
+		writeByte(JassProgramImageReader.ARRAY_REF_EXPRESSION);
+		writeString(expression.getIdentifier());
+		expression.getIndexExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final FunctionCallJassExpression expression) {
+		writeByte(JassProgramImageReader.FUNCTION_CALL_EXPRESSION);
+		writeString(expression.getFunctionName());
+		writeExpressions(expression.getArguments());
+		return null;
+	}
+
+	@Override
+	public Void visit(final FunctionReferenceJassExpression expression) {
+		writeByte(JassProgramImageReader.FUNCTION_REFERENCE_EXPRESSION);
+		writeString(expression.getIdentifier());
+		return null;
+	}
+
+	@Override
+	public Void visit(final LiteralJassExpression expression) {
+		final JassValue value = expression.getValue();
+		if (value == null) {
+			writeByte(JassProgramImageReader.NULL_LITERAL);
+		}
+		else if (value instanceof IntegerJassValue) {
+			writeByte(JassProgramImageReader.INTEGER_LITERAL);
+			writeInt(((IntegerJassValue) value).getValue());
+		}
+		else if (value instanceof RealJassValue) {
+			writeByte(JassProgramImageReader.REAL_LITERAL);
+			writeDouble(((RealJassValue) value).getValue());
+		}
+		else if (value instanceof StringJassValue) {
+			writeByte(JassProgramImageReader.STRING_LITERAL);
+			writeString(((StringJassValue) value).getValue());
+		}
+		else if (value instanceof BooleanJassValue) {
+			writeByte(JassProgramImageReader.BOOLEAN_LITERAL);
+			writeBoolean(((BooleanJassValue) value).getValue());
+		}
+		else {
+			throw new IllegalStateException("Unable to store literal: " + value);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(final NegateJassExpression expression) {
+		writeByte(JassProgramImageReader.NEGATE_EXPRESSION);
+		expression.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final NotJassExpression expression) {
+		writeByte(JassProgramImageReader.NOT_EXPRESSION);
+		expression.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final ReferenceJassExpression expression) {
+		writeByte(JassProgramImageReader.REFERENCE_EXPRESSION);
+		writeString(expression.getIdentifier());
+		return null;
+	}
+
+	private void writeByte(final int value) {
+		try {
+			this.output.writeByte(value);
+		}
+		catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writeBoolean(final boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+
+	private void writeInt(final int value) {
+		try {
+			this.output.writeInt(value);
+		}
+		catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writeDouble(final double value) {
+		try {
+			this.output.writeDouble(value);
+		}
+		catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	// not writeUTF, which is limited to 64k and changes how the null character is
+	// stored
+	private void writeString(final String value) {
+		final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+		writeInt(utf8.length);
+		try {
+			this.output.write(utf8);
+		}
+		catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -2,7 +2,9 @@ package com.etheller.interpreter.ast.debug;
 
 import java.util.List;
 
+import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.StackJassFunction;
 import com.etheller.interpreter.ast.scope.GlobalScope;
 import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
 import com.etheller.interpreter.ast.value.JassValue;
@@ -34,6 +36,22 @@ public class DebuggingJassFunction implements JassFunction {
 		}
 	}
 
+	/**
+	 * Calls a native that works on the stack frame, keeping this function on the
+	 * JASS stack the same way {@link #call} does for the delegate.
+	 */
+	public void call(final StackJassFunction stackImplementation, final JassStackFrame arguments,
+			final GlobalScope globalScope, final TriggerExecutionScope triggerScope) {
+		globalScope.pushJassStack(new JassStackElement(this.sourceFile, this.functionName, this.lineNo));
+		globalScope.setLineNumber(this.lineNo);
+		try {
+			stackImplementation.call(arguments, globalScope, triggerScope);
+		}
+		finally {
+			globalScope.popJassStack();
+		}
+	}
+
 	public JassFunction getDelegate() {
 		return this.delegate;
 	}
@@ -6,7 +6,7 @@ import com.etheller.interpreter.ast.scope.GlobalScope;
 
 public class JassException extends RuntimeException {
 
-	public JassException(final GlobalScope globalScope, final String message, final Exception javaCause) {
+	public JassException(final GlobalScope globalScope, final String message, final Throwable javaCause) {
 		super(message(globalScope, message), javaCause);
 	}
 
@@ -0,0 +1,160 @@
+package com.etheller.interpreter.ast.debug;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.etheller.interpreter.ast.execution.instruction.BeginFunctionInstruction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.trigger.Trigger;
+
+/**
+ * Keeps track of what the scripts of one {@link GlobalScope} cost, so that
+ * expensive map scripts can be found. Functions count their own calls,
+ * instructions and time on their {@link BeginFunctionInstruction}, triggers are
+ * counted here, including anything that their conditions and actions ran, along
+ * with how long they took.
+ */
+public class JassProfiler {
+	private final Map<Trigger, TriggerProfile> triggerProfiles = new IdentityHashMap<>();
+	private long tickCount;
+	private long maxTickInstructionCount;
+	private long preemptedThreadCount;
+
+	public TriggerProfile getTriggerProfile(final Trigger trigger) {
+		TriggerProfile triggerProfile = this.triggerProfiles.get(trigger);
+		if (triggerProfile == null) {
+			triggerProfile = new TriggerProfile(trigger);
+			this.triggerProfiles.put(trigger, triggerProfile);
+		}
+		return triggerProfile;
+	}
+
+	public void countTick(final long instructionCount) {
+		this.tickCount++;
+		this.maxTickInstructionCount = Math.max(this.maxTickInstructionCount, instructionCount);
+	}
+
+	public void countPreemptedThread() {
+		this.preemptedThreadCount++;
+	}
+
+	public long getTickCount() {
+		return this.tickCount;
+	}
+
+	public long getMaxTickInstructionCount() {
+		return this.maxTickInstructionCount;
+	}
+
+	/**
+	 * @return how many times a thread was stopped because the instructions of its
+	 *         tick ran out
+	 */
+	public long getPreemptedThreadCount() {
+		return this.preemptedThreadCount;
+	}
+
+	/**
+	 * @return the triggers that took the most time, most expensive first
+	 */
+	public List<TriggerProfile> getTopTriggers(final int count) {
+		final List<TriggerProfile> profiles = new ArrayList<>(this.triggerProfiles.values());
+		profiles.sort(Comparator.comparingLong(TriggerProfile::getNanos).reversed());
+		return profiles.subList(0, Math.min(count, profiles.size()));
+	}
+
+	/**
+	 * @return the functions that ran the most instructions themselves, most
+	 *         expensive first
+	 */
+	public List<BeginFunctionInstruction> getTopFunctions(final GlobalScope globalScope, final int count) {
+		final List<BeginFunctionInstruction> functions = globalScope.getUserFunctionMetaData();
+		functions.sort(Comparator.comparingLong(BeginFunctionInstruction::getProfiledInstructionCount).reversed());
+		return functions.subList(0, Math.min(count, functions.size()));
+	}
+
+	/**
+	 * @return the functions that took the most time themselves, most expensive
+	 *         first
+	 */
+	public List<BeginFunctionInstruction> getSlowestFunctions(final GlobalScope globalScope, final int count) {
+		final List<BeginFunctionInstruction> functions = globalScope.getUserFunctionMetaData();
+		functions.sort(Comparator.comparingLong(BeginFunctionInstruction::getProfiledNanos).reversed());
+		return functions.subList(0, Math.min(count, functions.size()));
+	}
+
+	public String getReport(final GlobalScope globalScope, final int count) {
+		final StringBuilder report = new StringBuilder();
+		report.append("JASS profile after " + this.tickCount + " ticks, most instructions in a tick: "
+				+ this.maxTickInstructionCount + ", threads preempted: " + this.preemptedThreadCount);
+		report.append("\nTop triggers by cost:");
+		for (final TriggerProfile triggerProfile : getTopTriggers(count)) {
+			report.append(String.format("\n  %10.3f ms %12d instructions %8d evaluations %8d executions  %s",
+					triggerProfile.getNanos() / 1000000.0, triggerProfile.getInstructionCount(),
+					triggerProfile.getEvaluationCount(), triggerProfile.getExecutionCount(),
+					triggerProfile.getTrigger().getName(globalScope)));
+		}
+		report.append("\nTop functions by time:");
+		for (final BeginFunctionInstruction function : getSlowestFunctions(globalScope, count)) {
+			appendFunction(report, function);
+		}
+		report.append("\nTop functions by instructions:");
+		for (final BeginFunctionInstruction function : getTopFunctions(globalScope, count)) {
+			appendFunction(report, function);
+		}
+		return report.toString();
+	}
+
+	private static void appendFunction(final StringBuilder report, final BeginFunctionInstruction function) {
+		report.append(String.format("\n  %10.3f ms %12d instructions %8d calls  %s (%s:%d)",
+				function.getProfiledNanos() / 1000000.0, function.getProfiledInstructionCount(),
+				function.getProfiledCallCount(), function.getName(), function.getSourceFile(), function.getLineNo()));
+	}
+
+	public static final class TriggerProfile {
+		private final Trigger trigger;
+		private long evaluationCount;
+		private long executionCount;
+		private long instructionCount;
+		private long nanos;
+
+		public TriggerProfile(final Trigger trigger) {
+			this.trigger = trigger;
+		}
+
+		public void countEvaluation(final long instructionCount, final long nanos) {
+			this.evaluationCount++;
+			this.instructionCount += instructionCount;
+			this.nanos += nanos;
+		}
+
+		public void countExecution(final long instructionCount, final long nanos) {
+			this.executionCount++;
+			this.instructionCount += instructionCount;
+			this.nanos += nanos;
+		}
+
+		public Trigger getTrigger() {
+			return this.trigger;
+		}
+
+		public long getEvaluationCount() {
+			return this.evaluationCount;
+		}
+
+		public long getExecutionCount() {
+			return this.executionCount;
+		}
+
+		public long getInstructionCount() {
+			return this.instructionCount;
+		}
+
+		public long getNanos() {
+			return this.nanos;
+		}
+	}
+}
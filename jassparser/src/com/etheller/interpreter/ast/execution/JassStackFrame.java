@@ -1,45 +1,303 @@
 package com.etheller.interpreter.ast.execution;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import com.etheller.interpreter.ast.execution.instruction.BeginFunctionInstruction;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
 import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.visitor.BooleanJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.IntegerJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.ObjectJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.RealJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.StringJassValueVisitor;
 
+/**
+ * Locals and operand stack of one function call. Integers, reals and booleans
+ * that the typed instructions produce are kept unboxed in parallel arrays, with
+ * a kind per slot saying which array holds the slot, and only become
+ * {@link JassValue} objects when something reads them as one.
+ *
+ * Typed reads of a null value, which natives without an implementation return,
+ * give 0, 0.0 or false.
+ */
 public class JassStackFrame {
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final byte KIND_VALUE = 0;
+	private static final byte KIND_INTEGER = 1;
+	private static final byte KIND_REAL = 2;
+	private static final byte KIND_BOOLEAN = 3;
+
 	public BeginFunctionInstruction functionNameMetaData;
 	public int returnAddressInstructionPtr;
 	public JassStackFrame stackBase;
-	public List<JassValue> contents;
 	public int debugLineNo;
+	private byte[] kinds;
+	private JassValue[] values;
+	private int[] integers;
+	private double[] reals;
+	private int size;
 
 	public JassStackFrame(final int argumentCount) {
-		this.contents = new ArrayList<>(argumentCount);
+		final int capacity = argumentCount + DEFAULT_CAPACITY;
+		this.kinds = new byte[capacity];
+		this.values = new JassValue[capacity];
+		this.integers = new int[capacity];
+		this.reals = new double[capacity];
 	}
 
 	public JassStackFrame() {
-		this.contents = new ArrayList<>();
+		this(0);
+	}
+
+	public int size() {
+		return this.size;
 	}
 
 	public JassValue getLast(final int offset) {
-		final int index = this.contents.size() - 1 - offset;
-		if ((index >= this.contents.size()) || (index < 0)) {
+		final int index = this.size - 1 - offset;
+		if ((index >= this.size) || (index < 0)) {
 			System.err.println("bad");
 		}
-		return this.contents.get(index);
+		return get(index);
 	}
 
 	public void push(final JassValue value) {
-		this.contents.add(value);
+		final int index = grow();
+		this.kinds[index] = KIND_VALUE;
+		this.values[index] = value;
+	}
+
+	public void pushInteger(final int value) {
+		final int index = grow();
+		this.kinds[index] = KIND_INTEGER;
+		this.integers[index] = value;
+	}
+
+	public void pushReal(final double value) {
+		final int index = grow();
+		this.kinds[index] = KIND_REAL;
+		this.reals[index] = value;
+	}
+
+	public void pushBoolean(final boolean value) {
+		final int index = grow();
+		this.kinds[index] = KIND_BOOLEAN;
+		this.integers[index] = value ? 1 : 0;
 	}
 
 	public JassValue pop() {
-		final int lastIndex = this.contents.size() - 1;
+		final int lastIndex = this.size - 1;
 		if (lastIndex == -1) {
 			System.err.println("bad");
 		}
-		final JassValue jassValue = this.contents.get(lastIndex);
-		this.contents.remove(lastIndex);
+		final JassValue jassValue = get(lastIndex);
+		release(lastIndex);
 		return jassValue;
 	}
+
+	public int popInteger() {
+		final int lastIndex = this.size - 1;
+		final int value = getInteger(lastIndex);
+		release(lastIndex);
+		return value;
+	}
+
+	public double popReal() {
+		final int lastIndex = this.size - 1;
+		final double value = getReal(lastIndex);
+		release(lastIndex);
+		return value;
+	}
+
+	public boolean popBoolean() {
+		final int lastIndex = this.size - 1;
+		final boolean value = getBoolean(lastIndex);
+		release(lastIndex);
+		return value;
+	}
+
+	public void drop(final int count) {
+		for (int i = 0; i < count; i++) {
+			release(this.size - 1);
+		}
+	}
+
+	public JassValue get(final int index) {
+		switch (this.kinds[index]) {
+		case KIND_INTEGER:
+			return IntegerJassValue.of(this.integers[index]);
+		case KIND_REAL:
+			return new RealJassValue(this.reals[index]);
+		case KIND_BOOLEAN:
+			return BooleanJassValue.of(this.integers[index] != 0);
+		default:
+			return this.values[index];
+		}
+	}
+
+	public int getInteger(final int index) {
+		if (this.kinds[index] == KIND_INTEGER) {
+			return this.integers[index];
+		}
+		final JassValue value = get(index);
+		if (value == null) {
+			return 0;
+		}
+		return value.visit(IntegerJassValueVisitor.getInstance());
+	}
+
+	public double getReal(final int index) {
+		switch (this.kinds[index]) {
+		case KIND_REAL:
+			return this.reals[index];
+		case KIND_INTEGER:
+			return this.integers[index];
+		default:
+			final JassValue value = get(index);
+			if (value == null) {
+				return 0;
+			}
+			return value.visit(RealJassValueVisitor.getInstance());
+		}
+	}
+
+	public boolean getBoolean(final int index) {
+		if (this.kinds[index] == KIND_BOOLEAN) {
+			return this.integers[index] != 0;
+		}
+		final JassValue value = get(index);
+		if (value == null) {
+			return false;
+		}
+		return value.visit(BooleanJassValueVisitor.getInstance());
+	}
+
+	public String getString(final int index) {
+		final JassValue value = get(index);
+		if (value == null) {
+			return null;
+		}
+		return value.visit(StringJassValueVisitor.getInstance());
+	}
+
+	/**
+	 * @return the Java object behind a handle, or null
+	 */
+	public <T> T getObject(final int index) {
+		final JassValue value = get(index);
+		if (value == null) {
+			return null;
+		}
+		return value.visit(ObjectJassValueVisitor.<T>getInstance());
+	}
+
+	public void set(final int index, final JassValue value) {
+		this.kinds[index] = KIND_VALUE;
+		this.values[index] = value;
+	}
+
+	/**
+	 * @return true if the slot this far below the top holds an integer, boxed or
+	 *         not
+	 */
+	public boolean isInteger(final int offset) {
+		final int index = this.size - 1 - offset;
+		return (this.kinds[index] == KIND_INTEGER) || (this.values[index] instanceof IntegerJassValue);
+	}
+
+	public boolean isReal(final int offset) {
+		final int index = this.size - 1 - offset;
+		return (this.kinds[index] == KIND_REAL) || (this.values[index] instanceof RealJassValue);
+	}
+
+	public boolean isBoolean(final int offset) {
+		final int index = this.size - 1 - offset;
+		return (this.kinds[index] == KIND_BOOLEAN) || (this.values[index] instanceof BooleanJassValue);
+	}
+
+	/**
+	 * Pushes a copy of a slot of this frame, without boxing it.
+	 */
+	public void load(final int index) {
+		copySlot(this, index, grow());
+	}
+
+	/**
+	 * Pops the top of the stack into a slot of this frame, without boxing it.
+	 */
+	public void store(final int index) {
+		final int lastIndex = this.size - 1;
+		copySlot(this, lastIndex, index);
+		release(lastIndex);
+	}
+
+	/**
+	 * Moves the top of this stack onto another frame, without boxing it.
+	 */
+	public void moveTopTo(final JassStackFrame stackFrame) {
+		final int lastIndex = this.size - 1;
+		stackFrame.copySlot(this, lastIndex, stackFrame.grow());
+		release(lastIndex);
+	}
+
+	/**
+	 * Moves the top count values of another frame onto this one, keeping their
+	 * order.
+	 */
+	public void moveArgumentsFrom(final JassStackFrame stackFrame, final int count) {
+		final int firstIndex = stackFrame.size - count;
+		for (int i = 0; i < count; i++) {
+			copySlot(stackFrame, firstIndex + i, grow());
+		}
+		stackFrame.drop(count);
+	}
+
+	private void copySlot(final JassStackFrame source, final int sourceIndex, final int index) {
+		final byte kind = source.kinds[sourceIndex];
+		this.kinds[index] = kind;
+		switch (kind) {
+		case KIND_REAL:
+			this.reals[index] = source.reals[sourceIndex];
+			this.values[index] = null;
+			break;
+		case KIND_VALUE:
+			this.values[index] = source.values[sourceIndex];
+			break;
+		default:
+			this.integers[index] = source.integers[sourceIndex];
+			this.values[index] = null;
+			break;
+		}
+	}
+
+	/**
+	 * Empties the frame so that it can be used for another call.
+	 */
+	public void reset() {
+		Arrays.fill(this.values, 0, this.size, null);
+		this.size = 0;
+		this.functionNameMetaData = null;
+		this.returnAddressInstructionPtr = 0;
+		this.stackBase = null;
+		this.debugLineNo = 0;
+	}
+
+	private int grow() {
+		final int index = this.size++;
+		if (index == this.kinds.length) {
+			final int capacity = index * 2;
+			this.kinds = Arrays.copyOf(this.kinds, capacity);
+			this.values = Arrays.copyOf(this.values, capacity);
+			this.integers = Arrays.copyOf(this.integers, capacity);
+			this.reals = Arrays.copyOf(this.reals, capacity);
+		}
+		return index;
+	}
+
+	private void release(final int index) {
+		this.values[index] = null;
+		this.size = index;
+	}
 }
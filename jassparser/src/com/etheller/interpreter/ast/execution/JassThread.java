@@ -1,5 +1,7 @@
 package com.etheller.interpreter.ast.execution;
 
+import java.util.ArrayDeque;
+
 import com.etheller.interpreter.ast.scope.GlobalScope;
 import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
 
@@ -10,6 +12,10 @@ public class JassThread {
 	public int instructionPtr;
 	public boolean sleeping = false;
 	public JassThread parent;
+	// whether the thread may be stopped when the tick runs out of instructions,
+	// leaving it to whoever started it to queue it
+	public boolean preemptible;
+	private final ArrayDeque<JassStackFrame> freeStackFrames = new ArrayDeque<>();
 
 	public JassThread(final JassStackFrame stackFrame, final GlobalScope globalScope,
 			final TriggerExecutionScope triggerScope, final int instructionPtr) {
@@ -26,4 +32,21 @@ public class JassThread {
 	public boolean isSleeping() {
 		return this.sleeping;
 	}
+
+	/**
+	 * @return an empty stack frame for a call, reusing one from a call that
+	 *         already returned if there is one
+	 */
+	public JassStackFrame obtainStackFrame() {
+		final JassStackFrame stackFrame = this.freeStackFrames.poll();
+		if (stackFrame == null) {
+			return new JassStackFrame();
+		}
+		return stackFrame;
+	}
+
+	public void releaseStackFrame(final JassStackFrame stackFrame) {
+		stackFrame.reset();
+		this.freeStackFrames.push(stackFrame);
+	}
 }
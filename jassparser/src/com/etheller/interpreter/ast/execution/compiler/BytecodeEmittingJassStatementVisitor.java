@@ -0,0 +1,1009 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.etheller.interpreter.ast.debug.DebuggingJassStatement;
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.execution.instruction.ArithmeticInstruction;
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSign;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.expression.ArrayRefJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionReferenceJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.JassExpressionVisitor;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.NegateJassExpression;
+import com.etheller.interpreter.ast.expression.NotJassExpression;
+import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.function.AbstractJassFunction;
+import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.GlobalScopeAssignable;
+import com.etheller.interpreter.ast.statement.JassArrayedAssignmentStatement;
+import com.etheller.interpreter.ast.statement.JassCallStatement;
+import com.etheller.interpreter.ast.statement.JassDoNothingStatement;
+import com.etheller.interpreter.ast.statement.JassExitWhenStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseIfStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseStatement;
+import com.etheller.interpreter.ast.statement.JassIfStatement;
+import com.etheller.interpreter.ast.statement.JassLocalDefinitionStatement;
+import com.etheller.interpreter.ast.statement.JassLocalStatement;
+import com.etheller.interpreter.ast.statement.JassLoopStatement;
+import com.etheller.interpreter.ast.statement.JassReturnNothingStatement;
+import com.etheller.interpreter.ast.statement.JassReturnStatement;
+import com.etheller.interpreter.ast.statement.JassSetStatement;
+import com.etheller.interpreter.ast.statement.JassStatement;
+import com.etheller.interpreter.ast.statement.JassStatementVisitor;
+import com.etheller.interpreter.ast.value.ArrayJassType;
+import com.etheller.interpreter.ast.value.ArrayJassValue;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.DummyJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassStringTable;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.visitor.ArrayTypeVisitor;
+
+/**
+ * Generates the JVM class for one user function, from the same statements that
+ * {@link InstructionAppendingJassStatementVisitor} turns into instructions.
+ * The class has a static method "call" that takes the thread and the typed
+ * arguments, in which integer, real and boolean locals are JVM primitives, and
+ * an instance method implementing {@link JassCompiledFunction} for the
+ * interpreter to enter it through.
+ *
+ * Values that the code needs but that cannot be written into a class file, like
+ * string literals and globals, go into public static fields named "constant0",
+ * "constant1" and so on, which {@link JassCompiler} fills in from
+ * {@link #getConstants()} after defining the class.
+ */
+public class BytecodeEmittingJassStatementVisitor
+		implements JassStatementVisitor<Void>, JassExpressionVisitor<JassJvmType> {
+	private static final String RUNTIME = Type.getInternalName(JassCompiledRuntime.class);
+	private static final String JASS_VALUE = Type.getInternalName(JassValue.class);
+	private static final String ARRAY_JASS_VALUE = Type.getInternalName(ArrayJassValue.class);
+	private static final String GLOBAL_SCOPE_ASSIGNABLE = Type.getInternalName(GlobalScopeAssignable.class);
+	private static final String JASS_THREAD = Type.getInternalName(JassThread.class);
+	private static final String JASS_STACK_FRAME = Type.getInternalName(JassStackFrame.class);
+	private static final String CONSTANT_FIELD_PREFIX = "constant";
+
+	private final JassCompiler compiler;
+	private final GlobalScope globalScope;
+	private final String className;
+	private final UserJassFunction function;
+	private final JassJvmType returnType;
+	private final List<Object> constants = new ArrayList<>();
+	private final List<Class<?>> constantTypes = new ArrayList<>();
+	private final Map<Object, Integer> constantToIndex = new IdentityHashMap<>();
+	private final Map<String, LocalImpl> nameToLocal = new HashMap<>();
+	private final ArrayDeque<Label> loopEndLabels = new ArrayDeque<>();
+	private final TypeInferringVisitor typeInferringVisitor = new TypeInferringVisitor();
+	private MethodVisitor method;
+	private int nextLocalSlot;
+
+	public BytecodeEmittingJassStatementVisitor(final JassCompiler compiler, final GlobalScope globalScope,
+			final String className, final UserJassFunction function) {
+		this.compiler = compiler;
+		this.globalScope = globalScope;
+		this.className = className;
+		this.function = function;
+		this.returnType = JassJvmType.of(function.getReturnType());
+	}
+
+	public byte[] generate() {
+		final ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+			@Override
+			protected String getCommonSuperClass(final String type1, final String type2) {
+				// the only reference types that meet at a branch are JassValues, and the
+				// verifier lets those through as Object
+				return "java/lang/Object";
+			}
+		};
+		classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, this.className,
+				null, "java/lang/Object", new String[] { Type.getInternalName(JassCompiledFunction.class) });
+		generateConstructor(classWriter);
+		generateCall(classWriter);
+		generateInvoke(classWriter);
+		for (int i = 0; i < this.constants.size(); i++) {
+			classWriter.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, CONSTANT_FIELD_PREFIX + i,
+					Type.getDescriptor(this.constantTypes.get(i)), null, null).visitEnd();
+		}
+		classWriter.visitEnd();
+		return classWriter.toByteArray();
+	}
+
+	public List<Object> getConstants() {
+		return this.constants;
+	}
+
+	public static String getConstantFieldName(final int index) {
+		return CONSTANT_FIELD_PREFIX + index;
+	}
+
+	private void generateConstructor(final ClassWriter classWriter) {
+		final MethodVisitor constructor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		constructor.visitCode();
+		constructor.visitVarInsn(Opcodes.ALOAD, 0);
+		constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		constructor.visitInsn(Opcodes.RETURN);
+		constructor.visitMaxs(0, 0);
+		constructor.visitEnd();
+	}
+
+	private void generateCall(final ClassWriter classWriter) {
+		this.method = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, JassCompiler.CALL_METHOD_NAME,
+				this.compiler.getCallDescriptor(this.function), null, null);
+		this.method.visitCode();
+		this.nextLocalSlot = 1;
+		for (final JassParameter parameter : this.function.getParameters()) {
+			declareLocal(parameter.getIdentifier(), parameter.getType());
+		}
+		for (final JassStatement statement : this.function.getStatements()) {
+			statement.accept(this);
+		}
+		insertDefaultReturn();
+		this.method.visitMaxs(0, 0);
+		this.method.visitEnd();
+	}
+
+	private void generateInvoke(final ClassWriter classWriter) {
+		this.method = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "invoke",
+				"(L" + JASS_THREAD + ";L" + JASS_STACK_FRAME + ";)V", null, null);
+		this.method.visitCode();
+		this.method.visitVarInsn(Opcodes.ALOAD, 2);
+		this.method.visitVarInsn(Opcodes.ALOAD, 1);
+		final List<JassParameter> parameters = this.function.getParameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			final JassJvmType parameterType = JassJvmType.of(parameters.get(i).getType());
+			this.method.visitVarInsn(Opcodes.ALOAD, 2);
+			insertInt(i);
+			switch (parameterType) {
+			case INTEGER:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "getInteger", "(I)I", false);
+				break;
+			case REAL:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "getReal", "(I)D", false);
+				break;
+			case BOOLEAN:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "getBoolean", "(I)Z", false);
+				break;
+			default:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "get",
+						"(I)L" + JASS_VALUE + ";", false);
+				insertConversion(JassJvmType.VALUE, parameterType);
+				break;
+			}
+		}
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, this.className, JassCompiler.CALL_METHOD_NAME,
+				this.compiler.getCallDescriptor(this.function), false);
+		switch (this.returnType) {
+		case INTEGER:
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "pushInteger", "(I)V", false);
+			break;
+		case REAL:
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "pushReal", "(D)V", false);
+			break;
+		case BOOLEAN:
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "pushBoolean", "(Z)V", false);
+			break;
+		case NOTHING:
+			insertReturnNothingNotice();
+			// fall through
+		default:
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "push", "(L" + JASS_VALUE + ";)V",
+					false);
+			break;
+		}
+		this.method.visitInsn(Opcodes.RETURN);
+		this.method.visitMaxs(0, 0);
+		this.method.visitEnd();
+	}
+
+	private LocalImpl declareLocal(final String identifier, final JassType type) {
+		final LocalImpl local = new LocalImpl(this.nextLocalSlot, type);
+		this.nextLocalSlot += local.jvmType.getSize();
+		this.nameToLocal.put(identifier, local);
+		return local;
+	}
+
+	// Statements
+	private void insertStatements(final List<JassStatement> statements) {
+		for (final JassStatement statement : statements) {
+			statement.accept(this);
+		}
+	}
+
+	@Override
+	public Void visit(final JassArrayedAssignmentStatement statement) {
+		this.method.visitVarInsn(Opcodes.ALOAD, 0);
+		final ArrayJassType arrayType = insertArrayReference(statement.getIdentifier());
+		insertExpression(statement.getIndexExpression(), JassJvmType.INTEGER);
+		insertExpression(statement.getExpression(), JassJvmType.of(arrayType.getPrimitiveType()));
+		insertConversion(JassJvmType.of(arrayType.getPrimitiveType()), JassJvmType.VALUE);
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "arraySet",
+				"(L" + JASS_THREAD + ";L" + ARRAY_JASS_VALUE + ";IL" + JASS_VALUE + ";)V", false);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassCallStatement statement) {
+		insertPop(insertFunctionCall(statement.getFunctionName(), statement.getArguments()));
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassDoNothingStatement statement) {
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassExitWhenStatement statement) {
+		insertExpression(statement.getExpression(), JassJvmType.BOOLEAN);
+		this.method.visitJumpInsn(Opcodes.IFNE, this.loopEndLabels.peek());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfElseIfStatement statement) {
+		final Label elseLabel = new Label();
+		final Label endLabel = new Label();
+		insertExpression(statement.getCondition(), JassJvmType.BOOLEAN);
+		this.method.visitJumpInsn(Opcodes.IFEQ, elseLabel);
+		insertStatements(statement.getThenStatements());
+		this.method.visitJumpInsn(Opcodes.GOTO, endLabel);
+		this.method.visitLabel(elseLabel);
+		statement.getElseifTail().accept(this);
+		this.method.visitLabel(endLabel);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfElseStatement statement) {
+		final Label elseLabel = new Label();
+		final Label endLabel = new Label();
+		insertExpression(statement.getCondition(), JassJvmType.BOOLEAN);
+		this.method.visitJumpInsn(Opcodes.IFEQ, elseLabel);
+		insertStatements(statement.getThenStatements());
+		this.method.visitJumpInsn(Opcodes.GOTO, endLabel);
+		this.method.visitLabel(elseLabel);
+		insertStatements(statement.getElseStatements());
+		this.method.visitLabel(endLabel);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfStatement statement) {
+		final Label endLabel = new Label();
+		insertExpression(statement.getCondition(), JassJvmType.BOOLEAN);
+		this.method.visitJumpInsn(Opcodes.IFEQ, endLabel);
+		insertStatements(statement.getThenStatements());
+		this.method.visitLabel(endLabel);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLocalDefinitionStatement statement) {
+		final JassJvmType jvmType = JassJvmType.of(statement.getType());
+		insertExpression(statement.getExpression(), jvmType);
+		final LocalImpl local = declareLocal(statement.getIdentifier(), statement.getType());
+		this.method.visitVarInsn(jvmType.getStoreOpcode(), local.slot);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLocalStatement statement) {
+		final JassType type = statement.getType();
+		final LocalImpl local = declareLocal(statement.getIdentifier(), type);
+		switch (local.jvmType) {
+		case INTEGER:
+		case BOOLEAN:
+			this.method.visitInsn(Opcodes.ICONST_0);
+			break;
+		case REAL:
+			this.method.visitInsn(Opcodes.DCONST_0);
+			break;
+		case ARRAY:
+			this.method.visitTypeInsn(Opcodes.NEW, ARRAY_JASS_VALUE);
+			this.method.visitInsn(Opcodes.DUP);
+			insertConstant(type.visit(ArrayTypeVisitor.getInstance()), ArrayJassType.class);
+			this.method.visitMethodInsn(Opcodes.INVOKESPECIAL, ARRAY_JASS_VALUE, "<init>",
+					"(" + Type.getDescriptor(ArrayJassType.class) + ")V", false);
+			break;
+		default:
+			insertConstant(type.getNullValue(), JassValue.class);
+			break;
+		}
+		this.method.visitVarInsn(local.jvmType.getStoreOpcode(), local.slot);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLoopStatement statement) {
+		final Label startLabel = new Label();
+		final Label endLabel = new Label();
+		this.method.visitLabel(startLabel);
+		this.loopEndLabels.push(endLabel);
+		insertStatements(statement.getStatements());
+		this.loopEndLabels.pop();
+		this.method.visitJumpInsn(Opcodes.GOTO, startLabel);
+		this.method.visitLabel(endLabel);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassReturnNothingStatement statement) {
+		insertDefaultReturn();
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassReturnStatement statement) {
+		insertExpression(statement.getExpression(), this.returnType);
+		this.method.visitInsn(this.returnType.getReturnOpcode());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassSetStatement statement) {
+		final String identifier = statement.getIdentifier();
+		final LocalImpl local = this.nameToLocal.get(identifier);
+		if (local != null) {
+			insertExpression(statement.getExpression(), local.jvmType);
+			this.method.visitVarInsn(local.jvmType.getStoreOpcode(), local.slot);
+		}
+		else {
+			final GlobalScopeAssignable global = getGlobal(identifier);
+			final JassJvmType jvmType = JassJvmType.of(global.getType());
+			insertConstant(global, GlobalScopeAssignable.class);
+			insertExpression(statement.getExpression(), jvmType);
+			insertConversion(jvmType, JassJvmType.VALUE);
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, GLOBAL_SCOPE_ASSIGNABLE, "setValue",
+					"(L" + JASS_VALUE + ";)V", false);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(final DebuggingJassStatement statement) {
+		statement.getDelegate().accept(this);
+		return null;
+	}
+
+	private void insertDefaultReturn() {
+		switch (this.returnType) {
+		case NOTHING:
+			this.method.visitInsn(Opcodes.RETURN);
+			return;
+		case INTEGER:
+		case BOOLEAN:
+			this.method.visitInsn(Opcodes.ICONST_0);
+			break;
+		case REAL:
+			this.method.visitInsn(Opcodes.DCONST_0);
+			break;
+		case ARRAY:
+			this.method.visitInsn(Opcodes.ACONST_NULL);
+			break;
+		default:
+			insertReturnNothingNotice();
+			break;
+		}
+		this.method.visitInsn(this.returnType.getReturnOpcode());
+	}
+
+	private void insertReturnNothingNotice() {
+		this.method.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(JassReturnNothingStatement.class),
+				"RETURN_NOTHING_NOTICE", Type.getDescriptor(DummyJassValue.class));
+	}
+
+	// Expressions
+	private void insertExpression(final JassExpression expression, final JassJvmType jvmType) {
+		insertConversion(expression.accept(this), jvmType);
+	}
+
+	@Override
+	public JassJvmType visit(final ArithmeticJassExpression expression) {
+		final ArithmeticSign sign = expression.getArithmeticSign();
+		final JassJvmType leftType = expression.getLeftExpression().accept(this.typeInferringVisitor);
+		final JassJvmType rightType = expression.getRightExpression().accept(this.typeInferringVisitor);
+		final JassJvmType operandType = getOperandType(sign, leftType, rightType);
+		insertExpression(expression.getLeftExpression(), operandType);
+		insertExpression(expression.getRightExpression(), operandType);
+		if (operandType == JassJvmType.VALUE) {
+			if (sign instanceof ArithmeticSigns) {
+				this.method.visitFieldInsn(Opcodes.GETSTATIC, Type.getInternalName(ArithmeticSigns.class),
+						((ArithmeticSigns) sign).name(), Type.getDescriptor(ArithmeticSigns.class));
+			}
+			else {
+				insertConstant(sign, ArithmeticSign.class);
+			}
+			this.method.visitVarInsn(Opcodes.ALOAD, 0);
+			this.method.visitFieldInsn(Opcodes.GETFIELD, JASS_THREAD, "globalScope",
+					Type.getDescriptor(GlobalScope.class));
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getInternalName(GlobalScope.class), "getStrings",
+					"()" + Type.getDescriptor(JassStringTable.class), false);
+			this.method.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(ArithmeticInstruction.class),
+					"apply", "(L" + JASS_VALUE + ";L" + JASS_VALUE + ";" + Type.getDescriptor(ArithmeticSign.class)
+							+ Type.getDescriptor(JassStringTable.class) + ")L" + JASS_VALUE + ";",
+					false);
+			return JassJvmType.VALUE;
+		}
+		final ArithmeticSigns arithmeticSign = (ArithmeticSigns) sign;
+		if (operandType == JassJvmType.BOOLEAN) {
+			switch (arithmeticSign) {
+			case AND:
+				this.method.visitInsn(Opcodes.IAND);
+				break;
+			case OR:
+				this.method.visitInsn(Opcodes.IOR);
+				break;
+			case NOT_EQUALS:
+				this.method.visitInsn(Opcodes.IXOR);
+				break;
+			default:
+				this.method.visitInsn(Opcodes.IXOR);
+				this.method.visitInsn(Opcodes.ICONST_1);
+				this.method.visitInsn(Opcodes.IXOR);
+				break;
+			}
+			return JassJvmType.BOOLEAN;
+		}
+		final boolean integer = operandType == JassJvmType.INTEGER;
+		switch (arithmeticSign) {
+		case ADD:
+			this.method.visitInsn(integer ? Opcodes.IADD : Opcodes.DADD);
+			return operandType;
+		case SUBTRACT:
+			this.method.visitInsn(integer ? Opcodes.ISUB : Opcodes.DSUB);
+			return operandType;
+		case MULTIPLY:
+			this.method.visitInsn(integer ? Opcodes.IMUL : Opcodes.DMUL);
+			return operandType;
+		case DIVIDE:
+			if (integer) {
+				this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "integerDivide", "(II)I", false);
+			}
+			else {
+				this.method.visitInsn(Opcodes.DDIV);
+			}
+			return operandType;
+		default:
+			this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME,
+					(integer ? "integer" : "real") + getComparisonName(arithmeticSign),
+					integer ? "(II)Z" : "(DD)Z", false);
+			return JassJvmType.BOOLEAN;
+		}
+	}
+
+	@Override
+	public JassJvmType visit(final ArrayRefJassExpression expression) {
+		final ArrayJassType arrayType = insertArrayReference(expression.getIdentifier());
+		insertExpression(expression.getIndexExpression(), JassJvmType.INTEGER);
+		this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ARRAY_JASS_VALUE, "get", "(I)L" + JASS_VALUE + ";",
+				false);
+		final JassJvmType elementType = JassJvmType.of(arrayType.getPrimitiveType());
+		insertConversion(JassJvmType.VALUE, elementType);
+		return elementType;
+	}
+
+	@Override
+	public JassJvmType visit(final FunctionCallJassExpression expression) {
+		return insertFunctionCall(expression.getFunctionName(), expression.getArguments());
+	}
+
+	private JassJvmType insertFunctionCall(final String functionName, final List<JassExpression> arguments) {
+		final UserJassFunction userFunction = this.compiler.getUserFunction(functionName);
+		if (userFunction != null) {
+			final List<JassParameter> parameters = userFunction.getParameters();
+			checkArgumentCount(functionName, parameters, arguments);
+			this.method.visitVarInsn(Opcodes.ALOAD, 0);
+			for (int i = 0; i < arguments.size(); i++) {
+				insertExpression(arguments.get(i), JassJvmType.of(parameters.get(i).getType()));
+			}
+			this.method.visitMethodInsn(Opcodes.INVOKESTATIC, this.compiler.getClassName(functionName),
+					JassCompiler.CALL_METHOD_NAME, this.compiler.getCallDescriptor(userFunction), false);
+			return JassJvmType.of(userFunction.getReturnType());
+		}
+		final Integer nativeId = this.globalScope.getNativeId(functionName);
+		if (nativeId == null) {
+			throw new IllegalStateException("Undefined function: " + functionName);
+		}
+		final AbstractJassFunction nativeFunction = (AbstractJassFunction) JassCompiler
+				.unwrap(this.globalScope.getNativeById(nativeId));
+		final List<JassParameter> parameters = nativeFunction.getParameters();
+		checkArgumentCount(functionName, parameters, arguments);
+		if (this.globalScope.getNativeImplementationById(nativeId).getStackImplementation() != null) {
+			insertStackNativeCall(nativeId, parameters, arguments);
+		}
+		else {
+			insertNativeCall(nativeId, parameters, arguments);
+		}
+		final JassJvmType returnType = getNativeReturnType(nativeFunction);
+		insertConversion(JassJvmType.VALUE, returnType);
+		return returnType;
+	}
+
+	/**
+	 * Pushes the arguments straight onto a pooled stack frame, unboxed where they
+	 * can be, for a native that works on the stack frame.
+	 */
+	private void insertStackNativeCall(final int nativeId, final List<JassParameter> parameters,
+			final List<JassExpression> arguments) {
+		this.method.visitVarInsn(Opcodes.ALOAD, 0);
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "obtainNativeFrame",
+				"(L" + JASS_THREAD + ";)L" + JASS_STACK_FRAME + ";", false);
+		for (int i = 0; i < arguments.size(); i++) {
+			final JassJvmType parameterType = JassJvmType.of(parameters.get(i).getType());
+			this.method.visitInsn(Opcodes.DUP);
+			insertExpression(arguments.get(i), parameterType);
+			switch (parameterType) {
+			case INTEGER:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "pushInteger", "(I)V", false);
+				break;
+			case REAL:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "pushReal", "(D)V", false);
+				break;
+			case BOOLEAN:
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "pushBoolean", "(Z)V", false);
+				break;
+			default:
+				insertConversion(parameterType, JassJvmType.VALUE);
+				this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, JASS_STACK_FRAME, "push",
+						"(L" + JASS_VALUE + ";)V", false);
+				break;
+			}
+		}
+		this.method.visitVarInsn(Opcodes.ALOAD, 0);
+		this.method.visitInsn(Opcodes.SWAP);
+		insertInt(nativeId);
+		insertInt(arguments.size());
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "callStackNative",
+				"(L" + JASS_THREAD + ";L" + JASS_STACK_FRAME + ";II)L" + JASS_VALUE + ";", false);
+	}
+
+	private void insertNativeCall(final int nativeId, final List<JassParameter> parameters,
+			final List<JassExpression> arguments) {
+		this.method.visitVarInsn(Opcodes.ALOAD, 0);
+		insertInt(nativeId);
+		insertInt(arguments.size());
+		this.method.visitTypeInsn(Opcodes.ANEWARRAY, JASS_VALUE);
+		for (int i = 0; i < arguments.size(); i++) {
+			final JassJvmType parameterType = JassJvmType.of(parameters.get(i).getType());
+			this.method.visitInsn(Opcodes.DUP);
+			insertInt(i);
+			insertExpression(arguments.get(i), parameterType);
+			insertConversion(parameterType, JassJvmType.VALUE);
+			this.method.visitInsn(Opcodes.AASTORE);
+		}
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "callNative",
+				"(L" + JASS_THREAD + ";I[L" + JASS_VALUE + ";)L" + JASS_VALUE + ";", false);
+	}
+
+	private static void checkArgumentCount(final String functionName, final List<JassParameter> parameters,
+			final List<JassExpression> arguments) {
+		if (parameters.size() != arguments.size()) {
+			throw new IllegalStateException("Invalid number of arguments passed to function: " + functionName);
+		}
+	}
+
+	@Override
+	public JassJvmType visit(final FunctionReferenceJassExpression expression) {
+		final String identifier = expression.getIdentifier();
+		final int userFunctionId = this.globalScope.getUserFunctionId(identifier);
+		if (userFunctionId == -1) {
+			throw new IllegalStateException("Unable to find function: " + identifier);
+		}
+		insertConstant(this.globalScope.getUserFunctionCodeValue(userFunctionId), JassValue.class);
+		return JassJvmType.VALUE;
+	}
+
+	@Override
+	public JassJvmType visit(final LiteralJassExpression expression) {
+		final JassValue value = expression.getValue();
+		if (value instanceof IntegerJassValue) {
+			insertInt(((IntegerJassValue) value).getValue());
+			return JassJvmType.INTEGER;
+		}
+		else if (value instanceof RealJassValue) {
+			this.method.visitLdcInsn(((RealJassValue) value).getValue());
+			return JassJvmType.REAL;
+		}
+		else if (value instanceof BooleanJassValue) {
+			this.method.visitInsn(((BooleanJassValue) value).getValue() ? Opcodes.ICONST_1 : Opcodes.ICONST_0);
+			return JassJvmType.BOOLEAN;
+		}
+		insertConstant(value, JassValue.class);
+		return JassJvmType.VALUE;
+	}
+
+	@Override
+	public JassJvmType visit(final NegateJassExpression expression) {
+		final JassJvmType jvmType = expression.getExpression().accept(this);
+		if (jvmType == JassJvmType.INTEGER) {
+			this.method.visitInsn(Opcodes.INEG);
+			return jvmType;
+		}
+		else if (jvmType == JassJvmType.REAL) {
+			this.method.visitInsn(Opcodes.DNEG);
+			return jvmType;
+		}
+		insertConversion(jvmType, JassJvmType.VALUE);
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "negate",
+				"(L" + JASS_VALUE + ";)L" + JASS_VALUE + ";", false);
+		return JassJvmType.VALUE;
+	}
+
+	@Override
+	public JassJvmType visit(final NotJassExpression expression) {
+		final JassJvmType jvmType = expression.getExpression().accept(this);
+		if (jvmType == JassJvmType.BOOLEAN) {
+			this.method.visitInsn(Opcodes.ICONST_1);
+			this.method.visitInsn(Opcodes.IXOR);
+			return jvmType;
+		}
+		insertConversion(jvmType, JassJvmType.VALUE);
+		this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "not", "(L" + JASS_VALUE + ";)L" + JASS_VALUE + ";",
+				false);
+		return JassJvmType.VALUE;
+	}
+
+	@Override
+	public JassJvmType visit(final ReferenceJassExpression expression) {
+		final String identifier = expression.getIdentifier();
+		final LocalImpl local = this.nameToLocal.get(identifier);
+		if (local != null) {
+			this.method.visitVarInsn(local.jvmType.getLoadOpcode(), local.slot);
+			return local.jvmType;
+		}
+		final GlobalScopeAssignable global = getGlobal(identifier);
+		final JassJvmType jvmType = JassJvmType.of(global.getType());
+		insertConstant(global, GlobalScopeAssignable.class);
+		this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, GLOBAL_SCOPE_ASSIGNABLE, "getValue",
+				"()L" + JASS_VALUE + ";", false);
+		insertConversion(JassJvmType.VALUE, jvmType);
+		return jvmType;
+	}
+
+	private GlobalScopeAssignable getGlobal(final String identifier) {
+		final int globalId = this.globalScope.getGlobalId(identifier);
+		if (globalId == -1) {
+			throw new IllegalArgumentException("No such identifier: " + identifier);
+		}
+		return this.globalScope.getAssignableGlobalById(globalId);
+	}
+
+	/**
+	 * Pushes the array that a local or global array variable holds.
+	 *
+	 * @return the type of the array
+	 */
+	private ArrayJassType insertArrayReference(final String identifier) {
+		final LocalImpl local = this.nameToLocal.get(identifier);
+		final JassType type;
+		if (local != null) {
+			this.method.visitVarInsn(local.jvmType.getLoadOpcode(), local.slot);
+			insertConversion(local.jvmType, JassJvmType.ARRAY);
+			type = local.type;
+		}
+		else {
+			final GlobalScopeAssignable global = getGlobal(identifier);
+			insertConstant(global, GlobalScopeAssignable.class);
+			this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, GLOBAL_SCOPE_ASSIGNABLE, "getValue",
+					"()L" + JASS_VALUE + ";", false);
+			insertConversion(JassJvmType.VALUE, JassJvmType.ARRAY);
+			type = global.getType();
+		}
+		final ArrayJassType arrayType = type.visit(ArrayTypeVisitor.getInstance());
+		if (arrayType == null) {
+			throw new IllegalStateException("Not an array: " + identifier);
+		}
+		return arrayType;
+	}
+
+	/**
+	 * Converts the value on top of the stack, the way the interpreter's value
+	 * visitors would when something reads it as that type.
+	 */
+	private void insertConversion(final JassJvmType from, final JassJvmType to) {
+		if (from == to) {
+			return;
+		}
+		if (from == JassJvmType.NOTHING) {
+			this.method.visitInsn(Opcodes.ACONST_NULL);
+			insertConversion(JassJvmType.VALUE, to);
+			return;
+		}
+		switch (to) {
+		case NOTHING:
+			insertPop(from);
+			break;
+		case VALUE:
+			switch (from) {
+			case INTEGER:
+				this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "boxInteger", "(I)L" + JASS_VALUE + ";",
+						false);
+				break;
+			case REAL:
+				this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "boxReal", "(D)L" + JASS_VALUE + ";",
+						false);
+				break;
+			case BOOLEAN:
+				this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "boxBoolean", "(Z)L" + JASS_VALUE + ";",
+						false);
+				break;
+			default:
+				break;
+			}
+			break;
+		case INTEGER:
+			if (from == JassJvmType.REAL) {
+				this.method.visitInsn(Opcodes.D2I);
+			}
+			else {
+				insertConversion(from, JassJvmType.VALUE);
+				this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "unboxInteger", "(L" + JASS_VALUE + ";)I",
+						false);
+			}
+			break;
+		case REAL:
+			if (from == JassJvmType.INTEGER) {
+				this.method.visitInsn(Opcodes.I2D);
+			}
+			else {
+				insertConversion(from, JassJvmType.VALUE);
+				this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "unboxReal", "(L" + JASS_VALUE + ";)D",
+						false);
+			}
+			break;
+		case BOOLEAN:
+			insertConversion(from, JassJvmType.VALUE);
+			this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "unboxBoolean", "(L" + JASS_VALUE + ";)Z",
+					false);
+			break;
+		case ARRAY:
+			insertConversion(from, JassJvmType.VALUE);
+			this.method.visitMethodInsn(Opcodes.INVOKESTATIC, RUNTIME, "unboxArray",
+					"(L" + JASS_VALUE + ";)L" + ARRAY_JASS_VALUE + ";", false);
+			break;
+		}
+	}
+
+	private void insertPop(final JassJvmType jvmType) {
+		if (jvmType == JassJvmType.REAL) {
+			this.method.visitInsn(Opcodes.POP2);
+		}
+		else if (jvmType != JassJvmType.NOTHING) {
+			this.method.visitInsn(Opcodes.POP);
+		}
+	}
+
+	private void insertInt(final int value) {
+		if ((value >= -1) && (value <= 5)) {
+			this.method.visitInsn(Opcodes.ICONST_0 + value);
+		}
+		else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE)) {
+			this.method.visitIntInsn(Opcodes.BIPUSH, value);
+		}
+		else if ((value >= Short.MIN_VALUE) && (value <= Short.MAX_VALUE)) {
+			this.method.visitIntInsn(Opcodes.SIPUSH, value);
+		}
+		else {
+			this.method.visitLdcInsn(value);
+		}
+	}
+
+	private void insertConstant(final Object value, final Class<?> type) {
+		if (value == null) {
+			this.method.visitInsn(Opcodes.ACONST_NULL);
+			return;
+		}
+		Integer index = this.constantToIndex.get(value);
+		if (index == null) {
+			index = this.constants.size();
+			this.constants.add(value);
+			this.constantTypes.add(type);
+			this.constantToIndex.put(value, index);
+		}
+		this.method.visitFieldInsn(Opcodes.GETSTATIC, this.className, CONSTANT_FIELD_PREFIX + index,
+				Type.getDescriptor(this.constantTypes.get(index)));
+	}
+
+	/**
+	 * The type that both operands are converted to before the operation, which is
+	 * also the type of the result unless the sign is a comparison. JVM arithmetic
+	 * is only used where it gives the same answer as {@link ArithmeticSigns}, and
+	 * everything else goes through {@link ArithmeticInstruction#apply}.
+	 */
+	private static JassJvmType getOperandType(final ArithmeticSign sign, final JassJvmType leftType,
+			final JassJvmType rightType) {
+		if (!(sign instanceof ArithmeticSigns)) {
+			return JassJvmType.VALUE;
+		}
+		final ArithmeticSigns arithmeticSign = (ArithmeticSigns) sign;
+		final boolean leftNumeric = (leftType == JassJvmType.INTEGER) || (leftType == JassJvmType.REAL);
+		final boolean rightNumeric = (rightType == JassJvmType.INTEGER) || (rightType == JassJvmType.REAL);
+		if (leftNumeric && rightNumeric) {
+			if ((arithmeticSign == ArithmeticSigns.AND) || (arithmeticSign == ArithmeticSigns.OR)) {
+				return JassJvmType.VALUE;
+			}
+			if ((leftType == JassJvmType.INTEGER) && (rightType == JassJvmType.INTEGER)) {
+				return JassJvmType.INTEGER;
+			}
+			return JassJvmType.REAL;
+		}
+		if ((leftType == JassJvmType.BOOLEAN) && (rightType == JassJvmType.BOOLEAN)) {
+			switch (arithmeticSign) {
+			case AND:
+			case OR:
+			case EQUALS:
+			case NOT_EQUALS:
+				return JassJvmType.BOOLEAN;
+			default:
+				return JassJvmType.VALUE;
+			}
+		}
+		return JassJvmType.VALUE;
+	}
+
+	private static JassJvmType getResultType(final ArithmeticSign sign, final JassJvmType operandType) {
+		if (operandType == JassJvmType.VALUE) {
+			return JassJvmType.VALUE;
+		}
+		switch ((ArithmeticSigns) sign) {
+		case ADD:
+		case SUBTRACT:
+		case MULTIPLY:
+		case DIVIDE:
+			return operandType;
+		default:
+			return JassJvmType.BOOLEAN;
+		}
+	}
+
+	private static String getComparisonName(final ArithmeticSigns sign) {
+		switch (sign) {
+		case EQUALS:
+			return "Equals";
+		case NOT_EQUALS:
+			return "NotEquals";
+		case LESS:
+			return "Less";
+		case LESS_OR_EQUALS:
+			return "LessOrEquals";
+		case GREATER:
+			return "Greater";
+		case GREATER_OR_EQUALS:
+			return "GreaterOrEquals";
+		default:
+			throw new IllegalArgumentException(sign.name());
+		}
+	}
+
+	private static JassJvmType getNativeReturnType(final AbstractJassFunction nativeFunction) {
+		final JassJvmType returnType = JassJvmType.of(nativeFunction.getReturnType());
+		if (returnType == JassJvmType.NOTHING) {
+			// natives always hand back a value, even if it is null
+			return JassJvmType.VALUE;
+		}
+		return returnType;
+	}
+
+	private static final class LocalImpl {
+		private final int slot;
+		private final JassType type;
+		private final JassJvmType jvmType;
+
+		public LocalImpl(final int slot, final JassType type) {
+			this.slot = slot;
+			this.type = type;
+			this.jvmType = JassJvmType.of(type);
+		}
+	}
+
+	/**
+	 * Works out what an expression would leave on the stack, without emitting
+	 * anything, so that the operands of arithmetic can be converted as they are
+	 * emitted.
+	 */
+	private final class TypeInferringVisitor implements JassExpressionVisitor<JassJvmType> {
+		@Override
+		public JassJvmType visit(final ArithmeticJassExpression expression) {
+			final ArithmeticSign sign = expression.getArithmeticSign();
+			return getResultType(sign, getOperandType(sign, expression.getLeftExpression().accept(this),
+					expression.getRightExpression().accept(this)));
+		}
+
+		@Override
+		public JassJvmType visit(final ArrayRefJassExpression expression) {
+			final String identifier = expression.getIdentifier();
+			final LocalImpl local = BytecodeEmittingJassStatementVisitor.this.nameToLocal.get(identifier);
+			final JassType type = local != null ? local.type : getGlobal(identifier).getType();
+			final ArrayJassType arrayType = type.visit(ArrayTypeVisitor.getInstance());
+			if (arrayType == null) {
+				throw new IllegalStateException("Not an array: " + identifier);
+			}
+			return JassJvmType.of(arrayType.getPrimitiveType());
+		}
+
+		@Override
+		public JassJvmType visit(final FunctionCallJassExpression expression) {
+			final String functionName = expression.getFunctionName();
+			final UserJassFunction userFunction = BytecodeEmittingJassStatementVisitor.this.compiler
+					.getUserFunction(functionName);
+			if (userFunction != null) {
+				return JassJvmType.of(userFunction.getReturnType());
+			}
+			final Integer nativeId = BytecodeEmittingJassStatementVisitor.this.globalScope.getNativeId(functionName);
+			if (nativeId == null) {
+				throw new IllegalStateException("Undefined function: " + functionName);
+			}
+			return getNativeReturnType((AbstractJassFunction) JassCompiler
+					.unwrap(BytecodeEmittingJassStatementVisitor.this.globalScope.getNativeById(nativeId)));
+		}
+
+		@Override
+		public JassJvmType visit(final FunctionReferenceJassExpression expression) {
+			return JassJvmType.VALUE;
+		}
+
+		@Override
+		public JassJvmType visit(final LiteralJassExpression expression) {
+			final JassValue value = expression.getValue();
+			if (value instanceof IntegerJassValue) {
+				return JassJvmType.INTEGER;
+			}
+			else if (value instanceof RealJassValue) {
+				return JassJvmType.REAL;
+			}
+			else if (value instanceof BooleanJassValue) {
+				return JassJvmType.BOOLEAN;
+			}
+			return JassJvmType.VALUE;
+		}
+
+		@Override
+		public JassJvmType visit(final NegateJassExpression expression) {
+			final JassJvmType jvmType = expression.getExpression().accept(this);
+			if ((jvmType == JassJvmType.INTEGER) || (jvmType == JassJvmType.REAL)) {
+				return jvmType;
+			}
+			return JassJvmType.VALUE;
+		}
+
+		@Override
+		public JassJvmType visit(final NotJassExpression expression) {
+			final JassJvmType jvmType = expression.getExpression().accept(this);
+			if (jvmType == JassJvmType.BOOLEAN) {
+				return jvmType;
+			}
+			return JassJvmType.VALUE;
+		}
+
+		@Override
+		public JassJvmType visit(final ReferenceJassExpression expression) {
+			final String identifier = expression.getIdentifier();
+			final LocalImpl local = BytecodeEmittingJassStatementVisitor.this.nameToLocal.get(identifier);
+			if (local != null) {
+				return local.jvmType;
+			}
+			return JassJvmType.of(getGlobal(identifier).getType());
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import java.util.List;
+import java.util.Set;
+
+import com.etheller.interpreter.ast.debug.DebuggingJassStatement;
+import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArrayRefJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
+import com.etheller.interpreter.ast.expression.FunctionReferenceJassExpression;
+import com.etheller.interpreter.ast.expression.JassExpression;
+import com.etheller.interpreter.ast.expression.JassExpressionVisitor;
+import com.etheller.interpreter.ast.expression.LiteralJassExpression;
+import com.etheller.interpreter.ast.expression.NegateJassExpression;
+import com.etheller.interpreter.ast.expression.NotJassExpression;
+import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.statement.JassArrayedAssignmentStatement;
+import com.etheller.interpreter.ast.statement.JassCallStatement;
+import com.etheller.interpreter.ast.statement.JassDoNothingStatement;
+import com.etheller.interpreter.ast.statement.JassExitWhenStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseIfStatement;
+import com.etheller.interpreter.ast.statement.JassIfElseStatement;
+import com.etheller.interpreter.ast.statement.JassIfStatement;
+import com.etheller.interpreter.ast.statement.JassLocalDefinitionStatement;
+import com.etheller.interpreter.ast.statement.JassLocalStatement;
+import com.etheller.interpreter.ast.statement.JassLoopStatement;
+import com.etheller.interpreter.ast.statement.JassReturnNothingStatement;
+import com.etheller.interpreter.ast.statement.JassReturnStatement;
+import com.etheller.interpreter.ast.statement.JassSetStatement;
+import com.etheller.interpreter.ast.statement.JassStatement;
+import com.etheller.interpreter.ast.statement.JassStatementVisitor;
+
+/**
+ * Collects the name of every function that a function body calls directly.
+ * Function references are not calls, since the referenced function only runs
+ * on a thread of its own.
+ */
+public class FunctionCallCollectingJassStatementVisitor
+		implements JassStatementVisitor<Void>, JassExpressionVisitor<Void> {
+	private final Set<String> calledFunctionNames;
+
+	public FunctionCallCollectingJassStatementVisitor(final Set<String> calledFunctionNames) {
+		this.calledFunctionNames = calledFunctionNames;
+	}
+
+	public void collect(final List<JassStatement> statements) {
+		for (final JassStatement statement : statements) {
+			statement.accept(this);
+		}
+	}
+
+	private void collectCall(final String functionName, final List<JassExpression> arguments) {
+		this.calledFunctionNames.add(functionName);
+		for (final JassExpression argument : arguments) {
+			argument.accept(this);
+		}
+	}
+
+	@Override
+	public Void visit(final JassArrayedAssignmentStatement statement) {
+		statement.getIndexExpression().accept(this);
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassCallStatement statement) {
+		collectCall(statement.getFunctionName(), statement.getArguments());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassDoNothingStatement statement) {
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassExitWhenStatement statement) {
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfElseIfStatement statement) {
+		statement.getCondition().accept(this);
+		collect(statement.getThenStatements());
+		statement.getElseifTail().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfElseStatement statement) {
+		statement.getCondition().accept(this);
+		collect(statement.getThenStatements());
+		collect(statement.getElseStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassIfStatement statement) {
+		statement.getCondition().accept(this);
+		collect(statement.getThenStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLocalDefinitionStatement statement) {
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLocalStatement statement) {
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassLoopStatement statement) {
+		collect(statement.getStatements());
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassReturnNothingStatement statement) {
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassReturnStatement statement) {
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final JassSetStatement statement) {
+		statement.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final DebuggingJassStatement statement) {
+		statement.getDelegate().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final ArithmeticJassExpression expression) {
+		expression.getLeftExpression().accept(this);
+		expression.getRightExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final ArrayRefJassExpression expression) {
+		expression.getIndexExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final FunctionCallJassExpression expression) {
+		collectCall(expression.getFunctionName(), expression.getArguments());
+		return null;
+	}
+
+	@Override
+	public Void visit(final FunctionReferenceJassExpression expression) {
+		return null;
+	}
+
+	@Override
+	public Void visit(final LiteralJassExpression expression) {
+		return null;
+	}
+
+	@Override
+	public Void visit(final NegateJassExpression expression) {
+		expression.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final NotJassExpression expression) {
+		expression.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visit(final ReferenceJassExpression expression) {
+		return null;
+	}
+}
@@ -0,0 +1,13 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+
+/**
+ * Entry point of a user function that {@link JassCompiler} turned into a JVM
+ * class. It reads the arguments from the interpreter's new stack frame and
+ * pushes the return value onto it.
+ */
+public interface JassCompiledFunction {
+	void invoke(JassThread thread, JassStackFrame stackFrame);
+}
@@ -0,0 +1,189 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import java.util.Arrays;
+
+import com.etheller.interpreter.ast.debug.JassException;
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.execution.instruction.NativeInstruction;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.value.ArrayJassValue;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.visitor.ArrayJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.BooleanJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.IntegerJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.NegateJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.NotJassValueVisitor;
+import com.etheller.interpreter.ast.value.visitor.RealJassValueVisitor;
+
+/**
+ * Static helpers that the classes generated by {@link JassCompiler} call into,
+ * for everything that is not a single JVM instruction. Where these do
+ * arithmetic they do it exactly the way {@link ArithmeticSigns} does.
+ */
+public final class JassCompiledRuntime {
+	public static JassValue boxInteger(final int value) {
+		return IntegerJassValue.of(value);
+	}
+
+	public static JassValue boxReal(final double value) {
+		return new RealJassValue(value);
+	}
+
+	public static JassValue boxBoolean(final boolean value) {
+		return BooleanJassValue.of(value);
+	}
+
+	// natives without a real implementation hand back null, which reads as the
+	// null value of the type here rather than failing later on
+	public static int unboxInteger(final JassValue value) {
+		if (value == null) {
+			return 0;
+		}
+		return value.visit(IntegerJassValueVisitor.getInstance());
+	}
+
+	public static double unboxReal(final JassValue value) {
+		if (value == null) {
+			return 0;
+		}
+		return value.visit(RealJassValueVisitor.getInstance());
+	}
+
+	public static boolean unboxBoolean(final JassValue value) {
+		if (value == null) {
+			return false;
+		}
+		return value.visit(BooleanJassValueVisitor.getInstance());
+	}
+
+	public static ArrayJassValue unboxArray(final JassValue value) {
+		if (value == null) {
+			throw new RuntimeException("Unable to use subscript on uninitialized variable");
+		}
+		final ArrayJassValue arrayValue = value.visit(ArrayJassValueVisitor.getInstance());
+		if (arrayValue == null) {
+			throw new RuntimeException("Not an array");
+		}
+		return arrayValue;
+	}
+
+	public static int integerDivide(final int left, final int right) {
+		try {
+			return left / right;
+		}
+		catch (final ArithmeticException exception) {
+			exception.printStackTrace();
+			return 0;
+		}
+	}
+
+	public static boolean integerEquals(final int left, final int right) {
+		return Math.abs(left - right) <= 0.00001;
+	}
+
+	public static boolean integerNotEquals(final int left, final int right) {
+		return left != right;
+	}
+
+	public static boolean integerLess(final int left, final int right) {
+		return left < right;
+	}
+
+	public static boolean integerLessOrEquals(final int left, final int right) {
+		return left <= right;
+	}
+
+	public static boolean integerGreater(final int left, final int right) {
+		return left > right;
+	}
+
+	public static boolean integerGreaterOrEquals(final int left, final int right) {
+		return left >= right;
+	}
+
+	public static boolean realEquals(final double left, final double right) {
+		return Math.abs(left - right) <= 0.00001;
+	}
+
+	public static boolean realNotEquals(final double left, final double right) {
+		return left != right;
+	}
+
+	public static boolean realLess(final double left, final double right) {
+		return left < right;
+	}
+
+	public static boolean realLessOrEquals(final double left, final double right) {
+		return left <= right;
+	}
+
+	public static boolean realGreater(final double left, final double right) {
+		return left > right;
+	}
+
+	public static boolean realGreaterOrEquals(final double left, final double right) {
+		return left >= right;
+	}
+
+	public static JassValue negate(final JassValue value) {
+		return value.visit(NegateJassValueVisitor.getInstance());
+	}
+
+	public static JassValue not(final JassValue value) {
+		return value.visit(NotJassValueVisitor.getInstance());
+	}
+
+	public static void arraySet(final JassThread thread, final ArrayJassValue arrayValue, final int index,
+			final JassValue value) {
+		if (index < 0) {
+			throw new JassException(thread.globalScope,
+					"Attempted to assign array[" + index + "], which was an illegal index", null);
+		}
+		arrayValue.set(thread.globalScope, index, value);
+	}
+
+	public static JassValue callNative(final JassThread thread, final int nativeId, final JassValue[] arguments) {
+		final GlobalScope globalScope = thread.globalScope;
+		final boolean wasSleeping = thread.isSleeping();
+		final JassValue returnValue = globalScope.getNativeById(nativeId).call(Arrays.asList(arguments),
+				globalScope, thread.triggerScope);
+		if (!wasSleeping && thread.isSleeping()) {
+			// compiled code cannot stop in the middle, so the thread goes to sleep when the
+			// compiled function returns instead, and nothing calling this native is
+			// compiled again
+			globalScope.getCompiler().onUnexpectedYield(nativeId);
+		}
+		return returnValue;
+	}
+
+	/**
+	 * @return an empty stack frame for the arguments of a native that works on
+	 *         the stack frame, see {@link #callStackNative}
+	 */
+	public static JassStackFrame obtainNativeFrame(final JassThread thread) {
+		return thread.obtainStackFrame();
+	}
+
+	public static JassValue callStackNative(final JassThread thread, final JassStackFrame arguments,
+			final int nativeId, final int argumentCount) {
+		final GlobalScope globalScope = thread.globalScope;
+		final boolean wasSleeping = thread.isSleeping();
+		NativeInstruction.callStackImplementation(globalScope, nativeId,
+				globalScope.getNativeImplementationById(nativeId).getStackImplementation(), arguments,
+				thread.triggerScope);
+		final JassValue returnValue = arguments.size() > argumentCount ? arguments.pop() : null;
+		thread.releaseStackFrame(arguments);
+		if (!wasSleeping && thread.isSleeping()) {
+			globalScope.getCompiler().onUnexpectedYield(nativeId);
+		}
+		return returnValue;
+	}
+
+	private JassCompiledRuntime() {
+	}
+}
@@ -0,0 +1,263 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.asm.Type;
+
+import com.etheller.interpreter.ast.debug.DebuggingJassFunction;
+import com.etheller.interpreter.ast.debug.JassException;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.UserJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.util.JassSettings;
+
+/**
+ * Turns user functions that the interpreter found to be hot into JVM classes,
+ * see {@link BytecodeEmittingJassStatementVisitor}. A compiled function calls
+ * the other user functions it needs directly, so those are compiled along with
+ * it.
+ *
+ * Compiled code runs to completion, so a function that might reach a yielding
+ * native like TriggerSleepAction, directly or through the functions it calls,
+ * is never compiled and stays with the interpreter. For the same reason
+ * nothing is compiled while {@link JassSettings#TICK_INSTRUCTION_BUDGET} is
+ * set, and like the other {@link JassSettings} this must be the same on every
+ * client of a lockstep game.
+ */
+public class JassCompiler {
+	public static final String CALL_METHOD_NAME = "call";
+	private static final String CLASS_NAME_PREFIX = "jass/compiled/";
+
+	private final GlobalScope globalScope;
+	private final Set<String> failedFunctionNames = new HashSet<>();
+	private final Map<String, Set<String>> functionNameToCalledFunctionNames = new HashMap<>();
+	private Set<String> yieldingFunctionNames;
+	private JassClassLoader classLoader;
+
+	public JassCompiler(final GlobalScope globalScope) {
+		this.globalScope = globalScope;
+		this.classLoader = new JassClassLoader();
+	}
+
+	/**
+	 * Failing to compile a function is reported like any other script error: it
+	 * is thrown as a {@link JassException}, unless
+	 * {@link JassSettings#CONTINUE_EXECUTING_ON_ERROR} is set, in which case the
+	 * error is printed and the function stays with the interpreter.
+	 *
+	 * @return the compiled function, or null if it has to stay with the
+	 *         interpreter
+	 */
+	public JassCompiledFunction compile(final String functionName) {
+		if (this.failedFunctionNames.contains(functionName) || isYieldingFunction(functionName)) {
+			return null;
+		}
+		final Map<String, GeneratedClass> newClasses = new LinkedHashMap<>();
+		try {
+			generate(functionName, newClasses);
+			for (final Map.Entry<String, GeneratedClass> entry : newClasses.entrySet()) {
+				this.classLoader.addClass(entry.getKey(), entry.getValue());
+			}
+			for (final String newFunctionName : newClasses.keySet()) {
+				// verify everything now, instead of when the first call reaches it
+				Class.forName(getBinaryClassName(newFunctionName), true, this.classLoader);
+			}
+			return (JassCompiledFunction) this.classLoader.loadClass(getBinaryClassName(functionName))
+					.getConstructor().newInstance();
+		}
+		catch (final RuntimeException | ReflectiveOperationException | LinkageError exc) {
+			this.failedFunctionNames.add(functionName);
+			this.failedFunctionNames.addAll(newClasses.keySet());
+			final JassException exception = new JassException(this.globalScope,
+					"Unable to compile JASS function " + functionName, exc);
+			if (!JassSettings.CONTINUE_EXECUTING_ON_ERROR) {
+				throw exception;
+			}
+			exception.printStackTrace();
+			return null;
+		}
+	}
+
+	private void generate(final String functionName, final Map<String, GeneratedClass> newClasses) {
+		if (this.classLoader.hasClass(functionName) || newClasses.containsKey(functionName)) {
+			return;
+		}
+		if (this.failedFunctionNames.contains(functionName)) {
+			throw new IllegalStateException("Calls " + functionName + ", which could not be compiled");
+		}
+		final BytecodeEmittingJassStatementVisitor visitor = new BytecodeEmittingJassStatementVisitor(this,
+				this.globalScope, getClassName(functionName), getUserFunction(functionName));
+		newClasses.put(functionName, new GeneratedClass(visitor.generate(), visitor.getConstants()));
+		for (final String calledFunctionName : getCalledFunctionNames(functionName)) {
+			if (getUserFunction(calledFunctionName) != null) {
+				generate(calledFunctionName, newClasses);
+			}
+		}
+	}
+
+	/**
+	 * Called when a native that was not known to yield put the thread to sleep
+	 * from within compiled code. The sleep only takes effect once the compiled
+	 * function returns, so every compiled function goes back to the interpreter
+	 * and gets compiled again knowing about the native.
+	 */
+	public void onUnexpectedYield(final int nativeId) {
+		final String nativeName = this.globalScope.getNativeName(nativeId);
+		System.err.println("JASS native " + nativeName
+				+ " yielded from compiled code, the rest of the function ran before sleeping");
+		this.globalScope.registerYieldingNative(nativeName);
+		this.globalScope.deoptimizeCompiledFunctions();
+		this.classLoader = new JassClassLoader();
+	}
+
+	/**
+	 * Forgets which functions might yield, after natives or functions were
+	 * added.
+	 */
+	public void invalidateAnalysis() {
+		this.yieldingFunctionNames = null;
+	}
+
+	private boolean isYieldingFunction(final String functionName) {
+		if (this.yieldingFunctionNames == null) {
+			this.yieldingFunctionNames = findYieldingFunctions();
+		}
+		return this.yieldingFunctionNames.contains(functionName);
+	}
+
+	private Set<String> findYieldingFunctions() {
+		final Set<String> yieldingFunctionNames = new HashSet<>();
+		final List<String> userFunctionNames = new ArrayList<>(this.globalScope.getUserFunctionNames());
+		for (final String functionName : userFunctionNames) {
+			for (final String calledFunctionName : getCalledFunctionNames(functionName)) {
+				if (this.globalScope.isYieldingNative(calledFunctionName)
+						|| ((getUserFunction(calledFunctionName) == null)
+								&& (this.globalScope.getNativeId(calledFunctionName) == null))) {
+					yieldingFunctionNames.add(functionName);
+					break;
+				}
+			}
+		}
+		boolean changed;
+		do {
+			changed = false;
+			for (final String functionName : userFunctionNames) {
+				if (!yieldingFunctionNames.contains(functionName)) {
+					for (final String calledFunctionName : getCalledFunctionNames(functionName)) {
+						if (yieldingFunctionNames.contains(calledFunctionName)) {
+							yieldingFunctionNames.add(functionName);
+							changed = true;
+							break;
+						}
+					}
+				}
+			}
+		}
+		while (changed);
+		return yieldingFunctionNames;
+	}
+
+	private Set<String> getCalledFunctionNames(final String functionName) {
+		Set<String> calledFunctionNames = this.functionNameToCalledFunctionNames.get(functionName);
+		if (calledFunctionNames == null) {
+			calledFunctionNames = new HashSet<>();
+			new FunctionCallCollectingJassStatementVisitor(calledFunctionNames)
+					.collect(getUserFunction(functionName).getStatements());
+			this.functionNameToCalledFunctionNames.put(functionName, calledFunctionNames);
+		}
+		return calledFunctionNames;
+	}
+
+	public UserJassFunction getUserFunction(final String functionName) {
+		final JassFunction function = unwrap(this.globalScope.getFunctionByName(functionName));
+		if (function instanceof UserJassFunction) {
+			return (UserJassFunction) function;
+		}
+		return null;
+	}
+
+	public String getClassName(final String functionName) {
+		return CLASS_NAME_PREFIX + functionName;
+	}
+
+	private String getBinaryClassName(final String functionName) {
+		return getClassName(functionName).replace('/', '.');
+	}
+
+	public String getCallDescriptor(final UserJassFunction function) {
+		final StringBuilder descriptor = new StringBuilder();
+		descriptor.append('(');
+		descriptor.append(Type.getDescriptor(JassThread.class));
+		for (final JassParameter parameter : function.getParameters()) {
+			descriptor.append(JassJvmType.of(parameter.getType()).getDescriptor());
+		}
+		descriptor.append(')');
+		descriptor.append(JassJvmType.of(function.getReturnType()).getDescriptor());
+		return descriptor.toString();
+	}
+
+	public static JassFunction unwrap(final JassFunction function) {
+		if (function instanceof DebuggingJassFunction) {
+			return ((DebuggingJassFunction) function).getDelegate();
+		}
+		return function;
+	}
+
+	private final class JassClassLoader extends ClassLoader {
+		private final Map<String, GeneratedClass> binaryNameToPendingClass = new HashMap<>();
+		private final Set<String> functionNames = new HashSet<>();
+
+		public JassClassLoader() {
+			super(JassCompiler.class.getClassLoader());
+		}
+
+		public boolean hasClass(final String functionName) {
+			return this.functionNames.contains(functionName);
+		}
+
+		public void addClass(final String functionName, final GeneratedClass generatedClass) {
+			this.functionNames.add(functionName);
+			this.binaryNameToPendingClass.put(getBinaryClassName(functionName), generatedClass);
+		}
+
+		@Override
+		protected Class<?> findClass(final String name) throws ClassNotFoundException {
+			final GeneratedClass generatedClass = this.binaryNameToPendingClass.remove(name);
+			if (generatedClass == null) {
+				throw new ClassNotFoundException(name);
+			}
+			final Class<?> definedClass = defineClass(name, generatedClass.bytes, 0, generatedClass.bytes.length);
+			final List<Object> constants = generatedClass.constants;
+			try {
+				for (int i = 0; i < constants.size(); i++) {
+					final Field field = definedClass
+							.getField(BytecodeEmittingJassStatementVisitor.getConstantFieldName(i));
+					field.set(null, constants.get(i));
+				}
+			}
+			catch (final ReflectiveOperationException exc) {
+				throw new ClassNotFoundException(name, exc);
+			}
+			return definedClass;
+		}
+	}
+
+	private static final class GeneratedClass {
+		private final byte[] bytes;
+		private final List<Object> constants;
+
+		public GeneratedClass(final byte[] bytes, final List<Object> constants) {
+			this.bytes = bytes;
+			this.constants = constants;
+		}
+	}
+}
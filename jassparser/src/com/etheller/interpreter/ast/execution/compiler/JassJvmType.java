@@ -0,0 +1,71 @@
+package com.etheller.interpreter.ast.execution.compiler;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.etheller.interpreter.ast.value.ArrayJassValue;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.visitor.ArrayTypeVisitor;
+
+/**
+ * How a value of some JASS type is held in compiled code. The three primitive
+ * types get real JVM primitives, everything else stays a {@link JassValue}.
+ */
+public enum JassJvmType {
+	INTEGER(Type.INT_TYPE),
+	REAL(Type.DOUBLE_TYPE),
+	BOOLEAN(Type.BOOLEAN_TYPE),
+	VALUE(Type.getType(JassValue.class)),
+	ARRAY(Type.getType(ArrayJassValue.class)),
+	NOTHING(Type.VOID_TYPE);
+
+	private final Type type;
+
+	private JassJvmType(final Type type) {
+		this.type = type;
+	}
+
+	public Type getType() {
+		return this.type;
+	}
+
+	public String getDescriptor() {
+		return this.type.getDescriptor();
+	}
+
+	public int getSize() {
+		return this.type.getSize();
+	}
+
+	public int getLoadOpcode() {
+		return this.type.getOpcode(Opcodes.ILOAD);
+	}
+
+	public int getStoreOpcode() {
+		return this.type.getOpcode(Opcodes.ISTORE);
+	}
+
+	public int getReturnOpcode() {
+		return this.type.getOpcode(Opcodes.IRETURN);
+	}
+
+	public static JassJvmType of(final JassType type) {
+		if (type == JassType.INTEGER) {
+			return INTEGER;
+		}
+		else if (type == JassType.REAL) {
+			return REAL;
+		}
+		else if (type == JassType.BOOLEAN) {
+			return BOOLEAN;
+		}
+		else if (type == JassType.NOTHING) {
+			return NOTHING;
+		}
+		else if (type.visit(ArrayTypeVisitor.getInstance()) != null) {
+			return ARRAY;
+		}
+		return VALUE;
+	}
+}
@@ -1,9 +1,14 @@
 package com.etheller.interpreter.ast.execution.instruction;
 
+import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.expression.ArithmeticSign;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
 import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassStringTable;
 import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.StringJassValue;
 import com.etheller.interpreter.ast.value.visitor.ArithmeticJassValueVisitor;
 import com.etheller.interpreter.ast.value.visitor.ArithmeticLeftHandNullJassValueVisitor;
 
@@ -16,27 +21,65 @@ public class ArithmeticInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		final JassValue rightValue = thread.stackFrame.pop();
-		final JassValue leftValue = thread.stackFrame.pop();
+		final JassStackFrame stackFrame = thread.stackFrame;
+		final JassValue rightValue = stackFrame.pop();
+		final JassValue leftValue = stackFrame.pop();
+		stackFrame.push(apply(leftValue, rightValue, this.arithmeticSign, thread.globalScope.getStrings()));
+	}
+
+	public static void run(final JassStackFrame stackFrame, final ArithmeticSign arithmeticSign) {
+		final JassValue rightValue = stackFrame.pop();
+		final JassValue leftValue = stackFrame.pop();
+		stackFrame.push(apply(leftValue, rightValue, arithmeticSign));
+	}
+
+	/**
+	 * Same as {@link #apply(JassValue, JassValue, ArithmeticSign)}, except that
+	 * strings are joined through the string table, and compared by reference
+	 * before comparing their characters.
+	 */
+	public static JassValue apply(final JassValue leftValue, final JassValue rightValue,
+			final ArithmeticSign arithmeticSign, final JassStringTable strings) {
+		if ((leftValue instanceof StringJassValue) && (rightValue instanceof StringJassValue)) {
+			if (arithmeticSign == ArithmeticSigns.ADD) {
+				return strings.concatenate((StringJassValue) leftValue, (StringJassValue) rightValue);
+			}
+			if (leftValue == rightValue) {
+				if (arithmeticSign == ArithmeticSigns.EQUALS) {
+					return BooleanJassValue.TRUE;
+				}
+				if (arithmeticSign == ArithmeticSigns.NOT_EQUALS) {
+					return BooleanJassValue.FALSE;
+				}
+			}
+		}
+		return apply(leftValue, rightValue, arithmeticSign);
+	}
+
+	public static JassValue apply(final JassValue leftValue, final JassValue rightValue,
+			final ArithmeticSign arithmeticSign) {
 		JassValue result;
 		try {
 			if (leftValue == null) {
 				if (rightValue == null) {
-					result = this.arithmeticSign.apply((String) null, (String) null);
+					result = arithmeticSign.apply((String) null, (String) null);
 				}
 				else {
-					result = rightValue
-							.visit(ArithmeticLeftHandNullJassValueVisitor.INSTANCE.reset(this.arithmeticSign));
+					result = rightValue.visit(ArithmeticLeftHandNullJassValueVisitor.INSTANCE.reset(arithmeticSign));
 				}
 			}
 			else {
-				result = leftValue.visit(ArithmeticJassValueVisitor.INSTANCE.reset(rightValue, this.arithmeticSign));
+				result = leftValue.visit(ArithmeticJassValueVisitor.INSTANCE.reset(rightValue, arithmeticSign));
 			}
 		}
 		catch (final ArithmeticException exception) {
 			exception.printStackTrace();
 			result = IntegerJassValue.ZERO;
 		}
-		thread.stackFrame.push(result);
+		return result;
+	}
+
+	public ArithmeticSign getArithmeticSign() {
+		return this.arithmeticSign;
 	}
 }
@@ -1,11 +1,16 @@
 package com.etheller.interpreter.ast.execution.instruction;
 
 import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.util.JassSettings;
 
 public class BeginFunctionInstruction implements JassInstruction {
 	private final int lineNo;
 	private final String sourceFile;
 	private final String name;
+	private int entryCount;
+	private long profiledCallCount;
+	private long profiledInstructionCount;
+	private long profiledNanos;
 
 	public BeginFunctionInstruction(final int lineNo, final String sourceFile, final String name) {
 		this.lineNo = lineNo;
@@ -20,6 +25,15 @@ public class BeginFunctionInstruction implements JassInstruction {
 			throw new IllegalStateException();
 		}
 		thread.stackFrame.functionNameMetaData = this;
+		if (thread.globalScope.getProfiler() != null) {
+			this.profiledCallCount++;
+		}
+		// compiled code runs as one instruction and could not be stopped at the tick
+		// budget, so it is only used when there is no budget
+		if (JassSettings.COMPILE_HOT_FUNCTIONS && (JassSettings.TICK_INSTRUCTION_BUDGET <= 0)
+				&& (++this.entryCount == JassSettings.HOT_FUNCTION_THRESHOLD)) {
+			thread.globalScope.compileHotFunction(this, thread.instructionPtr - 1);
+		}
 
 //		final JassStackFrame jassStackFrame = new JassStackFrame();
 //		jassStackFrame.functionNameMetaData = this.functionNameMetaData;
@@ -39,4 +53,43 @@ public class BeginFunctionInstruction implements JassInstruction {
 		return this.name;
 	}
 
+	public void resetEntryCount() {
+		this.entryCount = 0;
+	}
+
+	public void countProfiledCall() {
+		this.profiledCallCount++;
+	}
+
+	public void countProfiledInstruction() {
+		this.profiledInstructionCount++;
+	}
+
+	public void addProfiledNanos(final long nanos) {
+		this.profiledNanos += nanos;
+	}
+
+	public long getProfiledCallCount() {
+		return this.profiledCallCount;
+	}
+
+	/**
+	 * @return the instructions run inside this function itself, not counting the
+	 *         functions it called, or the code of the function after it was
+	 *         compiled
+	 */
+	public long getProfiledInstructionCount() {
+		return this.profiledInstructionCount;
+	}
+
+	/**
+	 * @return the time spent running this function itself, including the natives
+	 *         it called and anything they ran, but not the user functions it
+	 *         called. A compiled function is timed as a whole, along with the
+	 *         compiled functions it called
+	 */
+	public long getProfiledNanos() {
+		return this.profiledNanos;
+	}
+
 }
@@ -13,4 +13,8 @@ public class BranchInstruction implements JassInstruction {
 	public void run(final JassThread thread) {
 		thread.instructionPtr = this.newInstructionPointer;
 	}
+
+	public int getNewInstructionPointer() {
+		return this.newInstructionPointer;
+	}
 }
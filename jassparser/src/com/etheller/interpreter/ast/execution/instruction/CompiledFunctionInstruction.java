@@ -0,0 +1,36 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.execution.compiler.JassCompiledFunction;
+
+/**
+ * Takes the place of the {@link BeginFunctionInstruction} of a user function
+ * once it has been compiled, running the whole function in one go with the
+ * arguments from the new stack frame.
+ */
+public class CompiledFunctionInstruction implements JassInstruction {
+	private final BeginFunctionInstruction beginFunctionInstruction;
+	private final JassCompiledFunction compiledFunction;
+
+	public CompiledFunctionInstruction(final BeginFunctionInstruction beginFunctionInstruction,
+			final JassCompiledFunction compiledFunction) {
+		this.beginFunctionInstruction = beginFunctionInstruction;
+		this.compiledFunction = compiledFunction;
+	}
+
+	@Override
+	public void run(final JassThread thread) {
+		final JassStackFrame stackFrame = thread.stackFrame;
+		stackFrame.functionNameMetaData = this.beginFunctionInstruction;
+		if (thread.globalScope.getProfiler() != null) {
+			this.beginFunctionInstruction.countProfiledCall();
+		}
+		this.compiledFunction.invoke(thread, stackFrame);
+		ReturnInstruction.INSTANCE.run(thread);
+	}
+
+	public BeginFunctionInstruction getBeginFunctionInstruction() {
+		return this.beginFunctionInstruction;
+	}
+}
@@ -5,7 +5,6 @@ import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.value.ArrayJassValue;
 import com.etheller.interpreter.ast.value.JassValue;
 import com.etheller.interpreter.ast.value.visitor.ArrayJassValueVisitor;
-import com.etheller.interpreter.ast.value.visitor.IntegerJassValueVisitor;
 
 public class GlobalArrayAssignmentInstruction implements JassInstruction {
 	private final int globalId;
@@ -17,7 +16,7 @@ public class GlobalArrayAssignmentInstruction implements JassInstruction {
 	@Override
 	public void run(final JassThread thread) {
 		final JassValue value = thread.stackFrame.pop();
-		final JassValue index = thread.stackFrame.pop();
+		final int indexInt = thread.stackFrame.popInteger();
 		final JassValue globalValue = thread.globalScope.getGlobalById(this.globalId);
 
 		if (globalValue == null) {
@@ -25,8 +24,7 @@ public class GlobalArrayAssignmentInstruction implements JassInstruction {
 		}
 		final ArrayJassValue arrayValue = globalValue.visit(ArrayJassValueVisitor.getInstance());
 		if (arrayValue != null) {
-			final Integer indexInt = index.visit(IntegerJassValueVisitor.getInstance());
-			if ((indexInt != null) && (indexInt >= 0)) {
+			if (indexInt >= 0) {
 				arrayValue.set(thread.globalScope, indexInt, value);
 			}
 			else {
@@ -6,9 +6,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.etheller.interpreter.ast.debug.DebuggingJassFunction;
 import com.etheller.interpreter.ast.debug.DebuggingJassStatement;
 import com.etheller.interpreter.ast.debug.JassException;
 import com.etheller.interpreter.ast.expression.ArithmeticJassExpression;
+import com.etheller.interpreter.ast.expression.ArithmeticSign;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
 import com.etheller.interpreter.ast.expression.ArrayRefJassExpression;
 import com.etheller.interpreter.ast.expression.FunctionCallJassExpression;
 import com.etheller.interpreter.ast.expression.FunctionReferenceJassExpression;
@@ -18,6 +21,7 @@ import com.etheller.interpreter.ast.expression.LiteralJassExpression;
 import com.etheller.interpreter.ast.expression.NegateJassExpression;
 import com.etheller.interpreter.ast.expression.NotJassExpression;
 import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
+import com.etheller.interpreter.ast.function.AbstractJassFunction;
 import com.etheller.interpreter.ast.function.JassFunction;
 import com.etheller.interpreter.ast.function.JassParameter;
 import com.etheller.interpreter.ast.scope.GlobalScope;
@@ -37,9 +41,10 @@ import com.etheller.interpreter.ast.statement.JassSetStatement;
 import com.etheller.interpreter.ast.statement.JassStatement;
 import com.etheller.interpreter.ast.statement.JassStatementVisitor;
 import com.etheller.interpreter.ast.value.ArrayJassType;
-import com.etheller.interpreter.ast.value.CodeJassValue;
 import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.JassValue;
 import com.etheller.interpreter.ast.value.visitor.ArrayTypeVisitor;
+import com.etheller.interpreter.ast.value.visitor.JassTypeGettingValueVisitor;
 
 public class InstructionAppendingJassStatementVisitor
 		implements JassStatementVisitor<Void>, JassExpressionVisitor<Void> {
@@ -48,6 +53,8 @@ public class InstructionAppendingJassStatementVisitor
 	private final List<JassInstruction> instructions;
 	private final GlobalScope globalScope;
 	private final Map<String, Integer> nameToLocalId = new HashMap<>();
+	private final Map<String, JassType> nameToLocalType = new HashMap<>();
+	private final ExpressionTypeVisitor expressionTypeVisitor = new ExpressionTypeVisitor();
 	private int nextLocalId;
 	private final ArrayDeque<LoopImpl> loopStartInstructionPtrs = new ArrayDeque<>();
 
@@ -58,6 +65,7 @@ public class InstructionAppendingJassStatementVisitor
 		this.nextLocalId = 0;
 		for (final JassParameter parameter : parameters) {
 			this.nameToLocalId.put(parameter.getIdentifier(), this.nextLocalId++);
+			this.nameToLocalType.put(parameter.getIdentifier(), parameter.getType());
 		}
 	}
 
@@ -163,6 +171,7 @@ public class InstructionAppendingJassStatementVisitor
 	public Void visit(final JassLocalDefinitionStatement statement) {
 		final String identifier = statement.getIdentifier();
 		this.nameToLocalId.put(identifier, this.nextLocalId++);
+		this.nameToLocalType.put(identifier, statement.getType());
 		insertExpressionInstructions(statement.getExpression());
 		return null;
 	}
@@ -172,6 +181,7 @@ public class InstructionAppendingJassStatementVisitor
 		final String identifier = statement.getIdentifier();
 		final JassType type = statement.getType();
 		this.nameToLocalId.put(identifier, this.nextLocalId++);
+		this.nameToLocalType.put(identifier, type);
 		final ArrayJassType arrayType = type.visit(ArrayTypeVisitor.getInstance());
 		if (arrayType != null) {
 			this.instructions.add(new DeclareLocalArrayInstruction(arrayType));
@@ -263,7 +273,68 @@ public class InstructionAppendingJassStatementVisitor
 	public Void visit(final ArithmeticJassExpression expression) {
 		insertExpressionInstructions(expression.getLeftExpression());
 		insertExpressionInstructions(expression.getRightExpression());
-		this.instructions.add(new ArithmeticInstruction(expression.getArithmeticSign()));
+		this.instructions.add(createArithmeticInstruction(expression.getArithmeticSign(),
+				expression.getLeftExpression().accept(this.expressionTypeVisitor),
+				expression.getRightExpression().accept(this.expressionTypeVisitor)));
+		return null;
+	}
+
+	/**
+	 * Picks an instruction specialized for the declared types of the operands.
+	 * The specialized instructions still check what is actually on the stack,
+	 * since an integer can end up in a real variable, and fall back to
+	 * {@link ArithmeticInstruction} when it is not what was declared.
+	 */
+	private static JassInstruction createArithmeticInstruction(final ArithmeticSign arithmeticSign,
+			final JassType leftType, final JassType rightType) {
+		if (arithmeticSign instanceof ArithmeticSigns) {
+			final ArithmeticSigns sign = (ArithmeticSigns) arithmeticSign;
+			if ((leftType == JassType.INTEGER) && (rightType == JassType.INTEGER)) {
+				switch (sign) {
+				case ADD:
+					return IntAddInstruction.INSTANCE;
+				case SUBTRACT:
+					return IntSubtractInstruction.INSTANCE;
+				case MULTIPLY:
+					return IntMultiplyInstruction.INSTANCE;
+				case DIVIDE:
+				case AND:
+				case OR:
+					break;
+				default:
+					return new IntCompareInstruction(sign);
+				}
+			}
+			else if (isNumeric(leftType) && isNumeric(rightType)) {
+				switch (sign) {
+				case ADD:
+				case SUBTRACT:
+				case MULTIPLY:
+				case DIVIDE:
+					return new RealArithmeticInstruction(sign);
+				case AND:
+				case OR:
+					break;
+				default:
+					return new RealCompareInstruction(sign);
+				}
+			}
+		}
+		return new ArithmeticInstruction(arithmeticSign);
+	}
+
+	private static boolean isNumeric(final JassType type) {
+		return (type == JassType.INTEGER) || (type == JassType.REAL);
+	}
+
+	private static JassType getReturnType(final JassFunction function) {
+		JassFunction innerFunction = function;
+		if (innerFunction instanceof DebuggingJassFunction) {
+			innerFunction = ((DebuggingJassFunction) innerFunction).getDelegate();
+		}
+		if (innerFunction instanceof AbstractJassFunction) {
+			return ((AbstractJassFunction) innerFunction).getReturnType();
+		}
 		return null;
 	}
 
@@ -310,13 +381,11 @@ public class InstructionAppendingJassStatementVisitor
 	@Override
 	public Void visit(final FunctionReferenceJassExpression expression) {
 		final String identifier = expression.getIdentifier();
-		final JassFunction functionByName = this.globalScope.getFunctionByName(identifier);
-		final Integer userFunctionInstructionPtr = this.globalScope.getUserFunctionInstructionPtr(identifier);
-		if ((functionByName == null) || (userFunctionInstructionPtr == null)) {
+		final int userFunctionId = this.globalScope.getUserFunctionId(identifier);
+		if (userFunctionId == -1) {
 			throw new RuntimeException("Unable to find function: " + identifier);
 		}
-		this.instructions
-				.add(new PushLiteralInstruction(new CodeJassValue(functionByName, userFunctionInstructionPtr)));
+		this.instructions.add(new PushLiteralInstruction(this.globalScope.getUserFunctionCodeValue(userFunctionId)));
 		return null;
 	}
 
@@ -347,6 +416,100 @@ public class InstructionAppendingJassStatementVisitor
 		return null;
 	}
 
+	/**
+	 * Finds the declared type of an expression, or null where it is not known.
+	 */
+	private final class ExpressionTypeVisitor implements JassExpressionVisitor<JassType> {
+		@Override
+		public JassType visit(final ArithmeticJassExpression expression) {
+			final JassType leftType = expression.getLeftExpression().accept(this);
+			final JassType rightType = expression.getRightExpression().accept(this);
+			if (!(expression.getArithmeticSign() instanceof ArithmeticSigns)) {
+				return null;
+			}
+			switch ((ArithmeticSigns) expression.getArithmeticSign()) {
+			case ADD:
+				if ((leftType == JassType.STRING) && (rightType == JassType.STRING)) {
+					return JassType.STRING;
+				}
+				// fall through
+			case SUBTRACT:
+			case MULTIPLY:
+			case DIVIDE:
+				if ((leftType == JassType.INTEGER) && (rightType == JassType.INTEGER)) {
+					return JassType.INTEGER;
+				}
+				else if (isNumeric(leftType) && isNumeric(rightType)) {
+					return JassType.REAL;
+				}
+				return null;
+			default:
+				return JassType.BOOLEAN;
+			}
+		}
+
+		@Override
+		public JassType visit(final ArrayRefJassExpression expression) {
+			final JassType arrayType = getVariableType(expression.getIdentifier());
+			if (arrayType != null) {
+				final ArrayJassType arrayJassType = arrayType.visit(ArrayTypeVisitor.getInstance());
+				if (arrayJassType != null) {
+					return arrayJassType.getPrimitiveType();
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public JassType visit(final FunctionCallJassExpression expression) {
+			final JassFunction function = InstructionAppendingJassStatementVisitor.this.globalScope
+					.getFunctionByName(expression.getFunctionName());
+			return getReturnType(function);
+		}
+
+		@Override
+		public JassType visit(final FunctionReferenceJassExpression expression) {
+			return JassType.CODE;
+		}
+
+		@Override
+		public JassType visit(final LiteralJassExpression expression) {
+			final JassValue value = expression.getValue();
+			if (value == null) {
+				return null;
+			}
+			return value.visit(JassTypeGettingValueVisitor.getInstance());
+		}
+
+		@Override
+		public JassType visit(final NegateJassExpression expression) {
+			return expression.getExpression().accept(this);
+		}
+
+		@Override
+		public JassType visit(final NotJassExpression expression) {
+			return JassType.BOOLEAN;
+		}
+
+		@Override
+		public JassType visit(final ReferenceJassExpression expression) {
+			return getVariableType(expression.getIdentifier());
+		}
+
+		private JassType getVariableType(final String identifier) {
+			final JassType localType = InstructionAppendingJassStatementVisitor.this.nameToLocalType.get(identifier);
+			if (localType != null) {
+				return localType;
+			}
+			final GlobalScope globalScope = InstructionAppendingJassStatementVisitor.this.globalScope;
+			final int globalId = globalScope.getGlobalId(identifier);
+			if (globalId != -1) {
+				return globalScope.getAssignableGlobalById(globalId).getType();
+			}
+			return null;
+		}
+	}
+
 	private static final class LoopImpl {
 		private final List<Integer> exitWhenInstPtrs = new ArrayList<>();
 	}
@@ -0,0 +1,53 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+
+/**
+ * Comparison of two integers, with the same tolerance on equality as
+ * {@link ArithmeticSigns}.
+ */
+public class IntCompareInstruction implements JassInstruction {
+	private final ArithmeticSigns arithmeticSign;
+
+	public IntCompareInstruction(final ArithmeticSigns arithmeticSign) {
+		this.arithmeticSign = arithmeticSign;
+	}
+
+	@Override
+	public void run(final JassThread thread) {
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (stackFrame.isInteger(0) && stackFrame.isInteger(1)) {
+			final int rightValue = stackFrame.popInteger();
+			final int leftValue = stackFrame.popInteger();
+			stackFrame.pushBoolean(compare(leftValue, rightValue, this.arithmeticSign));
+		}
+		else {
+			ArithmeticInstruction.run(stackFrame, this.arithmeticSign);
+		}
+	}
+
+	public static boolean compare(final int leftValue, final int rightValue, final ArithmeticSigns arithmeticSign) {
+		switch (arithmeticSign) {
+		case EQUALS:
+			return Math.abs(leftValue - rightValue) <= 0.00001;
+		case NOT_EQUALS:
+			return leftValue != rightValue;
+		case LESS:
+			return leftValue < rightValue;
+		case LESS_OR_EQUALS:
+			return leftValue <= rightValue;
+		case GREATER:
+			return leftValue > rightValue;
+		case GREATER_OR_EQUALS:
+			return leftValue >= rightValue;
+		default:
+			throw new IllegalArgumentException("Not a comparison: " + arithmeticSign);
+		}
+	}
+
+	public ArithmeticSigns getArithmeticSign() {
+		return this.arithmeticSign;
+	}
+}
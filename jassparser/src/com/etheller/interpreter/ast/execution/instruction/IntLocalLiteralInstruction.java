@@ -0,0 +1,58 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+
+/**
+ * An integer local, an integer literal and the integer arithmetic or comparison
+ * between them, such as the "i + 1" and "i > 10" of a loop, fused into one
+ * instruction by {@link JassInstructionOptimizer}. When the local does not
+ * hold an integer, it runs the three instructions it replaced.
+ */
+public class IntLocalLiteralInstruction implements JassInstruction {
+	private final int localId;
+	private final IntegerJassValue literal;
+	private final ArithmeticSigns arithmeticSign;
+	private final JassInstruction arithmeticInstruction;
+
+	public IntLocalLiteralInstruction(final int localId, final IntegerJassValue literal,
+			final ArithmeticSigns arithmeticSign, final JassInstruction arithmeticInstruction) {
+		this.localId = localId;
+		this.literal = literal;
+		this.arithmeticSign = arithmeticSign;
+		this.arithmeticInstruction = arithmeticInstruction;
+	}
+
+	@Override
+	public void run(final JassThread thread) {
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (!stackFrame.isInteger(stackFrame.size() - 1 - this.localId)) {
+			stackFrame.load(this.localId);
+			stackFrame.push(this.literal);
+			this.arithmeticInstruction.run(thread);
+			return;
+		}
+		final int leftValue = stackFrame.getInteger(this.localId);
+		final int rightValue = this.literal.getValue();
+		switch (this.arithmeticSign) {
+		case ADD:
+			stackFrame.pushInteger(leftValue + rightValue);
+			break;
+		case SUBTRACT:
+			stackFrame.pushInteger(leftValue - rightValue);
+			break;
+		case MULTIPLY:
+			stackFrame.pushInteger(leftValue * rightValue);
+			break;
+		default:
+			stackFrame.pushBoolean(IntCompareInstruction.compare(leftValue, rightValue, this.arithmeticSign));
+			break;
+		}
+	}
+
+	public int getLocalId() {
+		return this.localId;
+	}
+}
@@ -0,0 +1,22 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+
+public class IntMultiplyInstruction implements JassInstruction {
+	public static final IntMultiplyInstruction INSTANCE = new IntMultiplyInstruction();
+
+	@Override
+	public void run(final JassThread thread) {
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (stackFrame.isInteger(0) && stackFrame.isInteger(1)) {
+			final int rightValue = stackFrame.popInteger();
+			final int leftValue = stackFrame.popInteger();
+			stackFrame.pushInteger(leftValue * rightValue);
+		}
+		else {
+			ArithmeticInstruction.run(stackFrame, ArithmeticSigns.MULTIPLY);
+		}
+	}
+}
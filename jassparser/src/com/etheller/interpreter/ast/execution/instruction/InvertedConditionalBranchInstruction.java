@@ -1,8 +1,6 @@
 package com.etheller.interpreter.ast.execution.instruction;
 
 import com.etheller.interpreter.ast.execution.JassThread;
-import com.etheller.interpreter.ast.value.JassValue;
-import com.etheller.interpreter.ast.value.visitor.BooleanJassValueVisitor;
 
 public class InvertedConditionalBranchInstruction implements JassInstruction {
 	private final int newInstructionPointer;
@@ -13,9 +11,12 @@ public class InvertedConditionalBranchInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		final JassValue topStackValue = thread.stackFrame.pop();
-		if (!topStackValue.visit(BooleanJassValueVisitor.getInstance())) {
+		if (!thread.stackFrame.popBoolean()) {
 			thread.instructionPtr = this.newInstructionPointer;
 		}
 	}
+
+	public int getNewInstructionPointer() {
+		return this.newInstructionPointer;
+	}
 }
@@ -0,0 +1,504 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.etheller.interpreter.ast.expression.ArithmeticSign;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.util.JassSettings;
+import com.etheller.interpreter.ast.value.BooleanJassValue;
+import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassValue;
+import com.etheller.interpreter.ast.value.RealJassValue;
+import com.etheller.interpreter.ast.value.StringJassValue;
+
+/**
+ * Rewrites the instructions of a user function once
+ * {@link InstructionAppendingJassStatementVisitor} has emitted them, until
+ * nothing changes any more:
+ * <ul>
+ * <li>arithmetic, "not" and negation of literals is done once here, and a
+ * branch on a literal condition either always jumps or is removed</li>
+ * <li>values that are pushed and popped right away, and line numbers that are
+ * replaced right away, are removed</li>
+ * <li>branches to branches go straight to where the last one goes, and
+ * branches to the next instruction are removed</li>
+ * <li>instructions that cannot be reached are removed</li>
+ * <li>stores to locals that are never read again become pops</li>
+ * <li>an integer local, an integer literal and the arithmetic between them
+ * become one {@link IntLocalLiteralInstruction}</li>
+ * </ul>
+ *
+ * The function keeps starting at the same instruction, since calls to it branch
+ * there, and the other functions are not touched. An instruction that a branch
+ * lands on is never fused with the ones before it.
+ *
+ * Fewer instructions also means a preemptible thread reaches the tick budget at
+ * a different place, so {@link JassSettings#OPTIMIZE_INSTRUCTIONS} must be the
+ * same on every client of a lockstep game.
+ */
+public final class JassInstructionOptimizer {
+	private static final int MAX_ROUNDS = 16;
+
+	private final GlobalScope globalScope;
+	private final int start;
+	private List<JassInstruction> code;
+
+	/**
+	 * Optimizes the function that starts at the instruction pointer and runs to
+	 * the end of the instructions.
+	 */
+	public static void optimize(final List<JassInstruction> instructions, final int start,
+			final GlobalScope globalScope) {
+		final List<JassInstruction> function = instructions.subList(start, instructions.size());
+		final JassInstructionOptimizer optimizer = new JassInstructionOptimizer(globalScope, start,
+				new ArrayList<>(function));
+		optimizer.optimize();
+		function.clear();
+		function.addAll(optimizer.code);
+	}
+
+	private JassInstructionOptimizer(final GlobalScope globalScope, final int start,
+			final List<JassInstruction> code) {
+		this.globalScope = globalScope;
+		this.start = start;
+		this.code = code;
+	}
+
+	private void optimize() {
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			boolean changed = simplify();
+			changed |= threadJumps();
+			changed |= removeUnreachable();
+			changed |= removeDeadStores();
+			if (!changed) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Appends the instructions one by one to a new list, simplifying its tail
+	 * after each one.
+	 */
+	private boolean simplify() {
+		final boolean[] targets = findTargets();
+		final int size = this.code.size();
+		final List<JassInstruction> output = new ArrayList<>(size);
+		final boolean[] outputTargets = new boolean[size];
+		final int[] newIndices = new int[size + 1];
+		boolean changed = false;
+		for (int i = 0; i < size; i++) {
+			newIndices[i] = output.size();
+			final JassInstruction instruction = this.code.get(i);
+			if (JassSettings.STRIP_DEBUG_LINE_NUMBERS && (instruction instanceof SetDebugLineNoInstruction)) {
+				changed = true;
+				continue;
+			}
+			outputTargets[output.size()] = targets[i];
+			output.add(instruction);
+			while (simplifyTail(output, outputTargets)) {
+				changed = true;
+			}
+		}
+		newIndices[size] = output.size();
+		this.code = output;
+		relocate(newIndices);
+		return changed;
+	}
+
+	private boolean simplifyTail(final List<JassInstruction> output, final boolean[] outputTargets) {
+		final int last = output.size() - 1;
+		if ((last < 2) || outputTargets[last]) {
+			return false;
+		}
+		final JassInstruction instruction = output.get(last);
+		final JassInstruction previous = output.get(last - 1);
+		final JassInstruction beforePrevious = outputTargets[last - 1] ? null : output.get(last - 2);
+		if (previous instanceof PushLiteralInstruction) {
+			final JassValue value = ((PushLiteralInstruction) previous).getValue();
+			if (beforePrevious instanceof PushLiteralInstruction) {
+				final JassValue folded = fold(((PushLiteralInstruction) beforePrevious).getValue(), value,
+						instruction);
+				if (folded != null) {
+					replaceTail(output, 3, new PushLiteralInstruction(folded));
+					return true;
+				}
+			}
+			if ((beforePrevious instanceof LocalReferenceInstruction) && (value instanceof IntegerJassValue)) {
+				final ArithmeticSigns sign = getIntegerArithmeticSign(instruction);
+				if (sign != null) {
+					replaceTail(output, 3,
+							new IntLocalLiteralInstruction(((LocalReferenceInstruction) beforePrevious).getLocalId(),
+									(IntegerJassValue) value, sign, instruction));
+					return true;
+				}
+			}
+			if (instruction instanceof PopInstruction) {
+				replaceTail(output, 2, null);
+				return true;
+			}
+			if ((instruction instanceof NotInstruction) && (value instanceof BooleanJassValue)) {
+				replaceTail(output, 2,
+						new PushLiteralInstruction(BooleanJassValue.of(!((BooleanJassValue) value).getValue())));
+				return true;
+			}
+			if (instruction instanceof NegateInstruction) {
+				if (value instanceof IntegerJassValue) {
+					replaceTail(output, 2,
+							new PushLiteralInstruction(IntegerJassValue.of(-((IntegerJassValue) value).getValue())));
+					return true;
+				}
+				if (value instanceof RealJassValue) {
+					replaceTail(output, 2,
+							new PushLiteralInstruction(new RealJassValue(-((RealJassValue) value).getValue())));
+					return true;
+				}
+			}
+			if (value instanceof BooleanJassValue) {
+				final boolean condition = ((BooleanJassValue) value).getValue();
+				if (instruction instanceof ConditionalBranchInstruction) {
+					replaceTail(output, 2, condition
+							? new BranchInstruction(((ConditionalBranchInstruction) instruction).getNewInstructionPointer())
+							: null);
+					return true;
+				}
+				if (instruction instanceof InvertedConditionalBranchInstruction) {
+					replaceTail(output, 2, condition ? null
+							: new BranchInstruction(
+									((InvertedConditionalBranchInstruction) instruction).getNewInstructionPointer()));
+					return true;
+				}
+			}
+		}
+		if ((previous instanceof LocalReferenceInstruction) && (instruction instanceof PopInstruction)) {
+			replaceTail(output, 2, null);
+			return true;
+		}
+		if ((previous instanceof SetDebugLineNoInstruction) && (instruction instanceof SetDebugLineNoInstruction)) {
+			replaceTail(output, 2, instruction);
+			return true;
+		}
+		return false;
+	}
+
+	private static void replaceTail(final List<JassInstruction> output, final int count,
+			final JassInstruction replacement) {
+		for (int i = 0; i < count; i++) {
+			output.remove(output.size() - 1);
+		}
+		if (replacement != null) {
+			output.add(replacement);
+		}
+	}
+
+	/**
+	 * @return the result of the instruction on two literals, or null if it has to
+	 *         be left for when it runs, such as an integer division by zero
+	 */
+	private JassValue fold(final JassValue leftValue, final JassValue rightValue, final JassInstruction instruction) {
+		final ArithmeticSign sign = getArithmeticSign(instruction);
+		if ((sign == null) || !isFoldable(leftValue) || !isFoldable(rightValue)) {
+			return null;
+		}
+		if ((sign == ArithmeticSigns.DIVIDE) && (leftValue instanceof IntegerJassValue)
+				&& (rightValue instanceof IntegerJassValue) && (((IntegerJassValue) rightValue).getValue() == 0)) {
+			return null;
+		}
+		try {
+			return ArithmeticInstruction.apply(leftValue, rightValue, sign, this.globalScope.getStrings());
+		}
+		catch (final RuntimeException exception) {
+			// the script is wrong, and will say so when it runs
+			return null;
+		}
+	}
+
+	private static boolean isFoldable(final JassValue value) {
+		if (value instanceof StringJassValue) {
+			return ((StringJassValue) value).getValue() != null;
+		}
+		return (value instanceof IntegerJassValue) || (value instanceof RealJassValue)
+				|| (value instanceof BooleanJassValue);
+	}
+
+	private static ArithmeticSign getArithmeticSign(final JassInstruction instruction) {
+		if (instruction instanceof ArithmeticInstruction) {
+			return ((ArithmeticInstruction) instruction).getArithmeticSign();
+		}
+		if (instruction instanceof RealArithmeticInstruction) {
+			return ((RealArithmeticInstruction) instruction).getArithmeticSign();
+		}
+		if (instruction instanceof RealCompareInstruction) {
+			return ((RealCompareInstruction) instruction).getArithmeticSign();
+		}
+		return getIntegerArithmeticSign(instruction);
+	}
+
+	private static ArithmeticSigns getIntegerArithmeticSign(final JassInstruction instruction) {
+		if (instruction instanceof IntAddInstruction) {
+			return ArithmeticSigns.ADD;
+		}
+		if (instruction instanceof IntSubtractInstruction) {
+			return ArithmeticSigns.SUBTRACT;
+		}
+		if (instruction instanceof IntMultiplyInstruction) {
+			return ArithmeticSigns.MULTIPLY;
+		}
+		if (instruction instanceof IntCompareInstruction) {
+			return ((IntCompareInstruction) instruction).getArithmeticSign();
+		}
+		return null;
+	}
+
+	/**
+	 * Points branches that land on an unconditional branch to where that one
+	 * goes, and removes branches to the next instruction.
+	 */
+	private boolean threadJumps() {
+		final int size = this.code.size();
+		final boolean[] removed = new boolean[size];
+		boolean changed = false;
+		for (int i = 0; i < size; i++) {
+			final JassInstruction instruction = this.code.get(i);
+			if ((instruction instanceof NewStackFrameInstruction) || !isInternal(getTarget(instruction))) {
+				continue;
+			}
+			final int target = getTarget(instruction);
+			int finalTarget = target;
+			for (int hops = 0; hops < size; hops++) {
+				final int finalIndex = finalTarget - this.start;
+				if (finalIndex >= size) {
+					break;
+				}
+				final JassInstruction targetInstruction = this.code.get(finalIndex);
+				if (!(targetInstruction instanceof BranchInstruction)
+						|| !isInternal(getTarget(targetInstruction))) {
+					break;
+				}
+				finalTarget = getTarget(targetInstruction);
+			}
+			if (finalTarget != target) {
+				this.code.set(i, retarget(instruction, finalTarget));
+				changed = true;
+			}
+			if ((instruction instanceof BranchInstruction) && (finalTarget == (this.start + i + 1))) {
+				removed[i] = true;
+				changed = true;
+			}
+		}
+		if (changed) {
+			remove(removed);
+		}
+		return changed;
+	}
+
+	private boolean removeUnreachable() {
+		final int size = this.code.size();
+		final boolean[] reachable = new boolean[size];
+		final ArrayDeque<Integer> pending = new ArrayDeque<>();
+		reachable[0] = true;
+		pending.add(0);
+		final int[] successors = new int[2];
+		while (!pending.isEmpty()) {
+			final int index = pending.poll();
+			final int successorCount = getSuccessors(index, successors);
+			for (int i = 0; i < successorCount; i++) {
+				final int successor = successors[i];
+				if ((successor < size) && !reachable[successor]) {
+					reachable[successor] = true;
+					pending.add(successor);
+				}
+			}
+		}
+		final boolean[] removed = new boolean[size];
+		boolean changed = false;
+		for (int i = 0; i < size; i++) {
+			if (!reachable[i]) {
+				removed[i] = true;
+				changed = true;
+			}
+		}
+		if (changed) {
+			remove(removed);
+		}
+		return changed;
+	}
+
+	/**
+	 * Replaces stores to locals that are not read again before the function
+	 * returns or stores to them again with pops, which {@link #simplify()} can
+	 * then remove together with what was stored.
+	 */
+	private boolean removeDeadStores() {
+		final int size = this.code.size();
+		final BitSet[] liveOut = new BitSet[size];
+		final BitSet[] liveIn = new BitSet[size];
+		for (int i = 0; i < size; i++) {
+			liveOut[i] = new BitSet();
+			liveIn[i] = new BitSet();
+		}
+		final int[] successors = new int[2];
+		boolean changed;
+		do {
+			changed = false;
+			for (int i = size - 1; i >= 0; i--) {
+				final BitSet out = liveOut[i];
+				final int successorCount = getSuccessors(i, successors);
+				for (int j = 0; j < successorCount; j++) {
+					if (successors[j] < size) {
+						out.or(liveIn[successors[j]]);
+					}
+				}
+				final BitSet in = (BitSet) out.clone();
+				final JassInstruction instruction = this.code.get(i);
+				if (instruction instanceof LocalAssignmentInstruction) {
+					in.clear(((LocalAssignmentInstruction) instruction).getLocalId());
+				}
+				final int usedLocalId = getUsedLocalId(instruction);
+				if (usedLocalId != -1) {
+					in.set(usedLocalId);
+				}
+				if (!in.equals(liveIn[i])) {
+					liveIn[i] = in;
+					changed = true;
+				}
+			}
+		}
+		while (changed);
+		boolean removedAny = false;
+		for (int i = 0; i < size; i++) {
+			final JassInstruction instruction = this.code.get(i);
+			if ((instruction instanceof LocalAssignmentInstruction)
+					&& !liveOut[i].get(((LocalAssignmentInstruction) instruction).getLocalId())) {
+				this.code.set(i, PopInstruction.INSTANCE);
+				removedAny = true;
+			}
+		}
+		return removedAny;
+	}
+
+	private static int getUsedLocalId(final JassInstruction instruction) {
+		if (instruction instanceof LocalReferenceInstruction) {
+			return ((LocalReferenceInstruction) instruction).getLocalId();
+		}
+		if (instruction instanceof LocalArrayAssignmentInstruction) {
+			return ((LocalArrayAssignmentInstruction) instruction).getLocalId();
+		}
+		if (instruction instanceof IntLocalLiteralInstruction) {
+			return ((IntLocalLiteralInstruction) instruction).getLocalId();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return how many instructions may run after the one at the index, written
+	 *         to the array as indices. A call continues at the return address of
+	 *         its {@link NewStackFrameInstruction}.
+	 */
+	private int getSuccessors(final int index, final int[] successors) {
+		final JassInstruction instruction = this.code.get(index);
+		if (instruction instanceof ReturnInstruction) {
+			return 0;
+		}
+		final int target = getTarget(instruction);
+		if (instruction instanceof BranchInstruction) {
+			if (!isInternal(target)) {
+				// a call to a user function
+				return 0;
+			}
+			successors[0] = target - this.start;
+			return 1;
+		}
+		successors[0] = index + 1;
+		if (isInternal(target)) {
+			successors[1] = target - this.start;
+			return 2;
+		}
+		return 1;
+	}
+
+	private boolean[] findTargets() {
+		final boolean[] targets = new boolean[this.code.size() + 1];
+		for (final JassInstruction instruction : this.code) {
+			final int target = getTarget(instruction);
+			if (isInternal(target)) {
+				targets[target - this.start] = true;
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * Removes instructions, pointing branches to a removed one at the first one
+	 * after it that stays.
+	 */
+	private void remove(final boolean[] removed) {
+		final int size = this.code.size();
+		final List<JassInstruction> output = new ArrayList<>(size);
+		final int[] newIndices = new int[size + 1];
+		for (int i = 0; i < size; i++) {
+			newIndices[i] = output.size();
+			if (!removed[i]) {
+				output.add(this.code.get(i));
+			}
+		}
+		newIndices[size] = output.size();
+		this.code = output;
+		relocate(newIndices);
+	}
+
+	private void relocate(final int[] newIndices) {
+		for (int i = 0; i < this.code.size(); i++) {
+			final JassInstruction instruction = this.code.get(i);
+			final int target = getTarget(instruction);
+			if (isInternal(target)) {
+				final int newTarget = this.start + newIndices[target - this.start];
+				if (newTarget != target) {
+					this.code.set(i, retarget(instruction, newTarget));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the instruction pointer is inside this function, and not
+	 *         the start of this or another function, which calls branch to
+	 */
+	private boolean isInternal(final int instructionPtr) {
+		return instructionPtr > this.start;
+	}
+
+	private static int getTarget(final JassInstruction instruction) {
+		if (instruction instanceof BranchInstruction) {
+			return ((BranchInstruction) instruction).getNewInstructionPointer();
+		}
+		if (instruction instanceof ConditionalBranchInstruction) {
+			return ((ConditionalBranchInstruction) instruction).getNewInstructionPointer();
+		}
+		if (instruction instanceof InvertedConditionalBranchInstruction) {
+			return ((InvertedConditionalBranchInstruction) instruction).getNewInstructionPointer();
+		}
+		if (instruction instanceof NewStackFrameInstruction) {
+			return ((NewStackFrameInstruction) instruction).getReturnAddressInstructionPtr();
+		}
+		return -1;
+	}
+
+	private static JassInstruction retarget(final JassInstruction instruction, final int target) {
+		if (instruction instanceof BranchInstruction) {
+			return new BranchInstruction(target);
+		}
+		if (instruction instanceof ConditionalBranchInstruction) {
+			return new ConditionalBranchInstruction(target);
+		}
+		if (instruction instanceof InvertedConditionalBranchInstruction) {
+			return new InvertedConditionalBranchInstruction(target);
+		}
+		return new NewStackFrameInstruction(target,
+				((NewStackFrameInstruction) instruction).getArgumentCount());
+	}
+}
@@ -5,7 +5,6 @@ import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.value.ArrayJassValue;
 import com.etheller.interpreter.ast.value.JassValue;
 import com.etheller.interpreter.ast.value.visitor.ArrayJassValueVisitor;
-import com.etheller.interpreter.ast.value.visitor.IntegerJassValueVisitor;
 
 public class LocalArrayAssignmentInstruction implements JassInstruction {
 	private final int localId;
@@ -17,16 +16,15 @@ public class LocalArrayAssignmentInstruction implements JassInstruction {
 	@Override
 	public void run(final JassThread thread) {
 		final JassValue value = thread.stackFrame.pop();
-		final JassValue index = thread.stackFrame.pop();
-		final JassValue localValue = thread.stackFrame.contents.get(this.localId);
+		final int indexInt = thread.stackFrame.popInteger();
+		final JassValue localValue = thread.stackFrame.get(this.localId);
 
 		if (localValue == null) {
 			throw new JassException(thread.globalScope, "Unable to assign uninitialized array", null);
 		}
 		final ArrayJassValue arrayValue = localValue.visit(ArrayJassValueVisitor.getInstance());
 		if (arrayValue != null) {
-			final Integer indexInt = index.visit(IntegerJassValueVisitor.getInstance());
-			if ((indexInt != null) && (indexInt >= 0)) {
+			if (indexInt >= 0) {
 				arrayValue.set(thread.globalScope, indexInt, value);
 			}
 			else {
@@ -40,4 +38,7 @@ public class LocalArrayAssignmentInstruction implements JassInstruction {
 
 	}
 
+	public int getLocalId() {
+		return this.localId;
+	}
 }
@@ -11,7 +11,10 @@ public class LocalAssignmentInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		thread.stackFrame.contents.set(this.localId, thread.stackFrame.pop());
+		thread.stackFrame.store(this.localId);
 	}
 
+	public int getLocalId() {
+		return this.localId;
+	}
 }
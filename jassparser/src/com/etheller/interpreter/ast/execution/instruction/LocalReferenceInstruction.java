@@ -11,7 +11,10 @@ public class LocalReferenceInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		thread.stackFrame.push(thread.stackFrame.contents.get(this.localId));
+		thread.stackFrame.load(this.localId);
 	}
 
+	public int getLocalId() {
+		return this.localId;
+	}
 }
@@ -1,9 +1,15 @@
 package com.etheller.interpreter.ast.execution.instruction;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 
+import com.etheller.interpreter.ast.debug.DebuggingJassFunction;
+import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.function.JassFunction;
+import com.etheller.interpreter.ast.function.StackJassFunction;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
 import com.etheller.interpreter.ast.value.JassValue;
 
 public class NativeInstruction implements JassInstruction {
@@ -17,14 +23,40 @@ public class NativeInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		final JassFunction nativeFromId = thread.globalScope.getNativeById(this.nativeId);
-		final LinkedList<JassValue> arguments = new LinkedList<>();
-		for (int i = 0; i < this.argumentCount; i++) {
-			arguments.addFirst(thread.stackFrame.pop());
+		final GlobalScope globalScope = thread.globalScope;
+		final JassStackFrame stackFrame = thread.stackFrame;
+		final StackJassFunction stackImplementation = globalScope.getNativeImplementationById(this.nativeId)
+				.getStackImplementation();
+		if (stackImplementation != null) {
+			callStackImplementation(globalScope, this.nativeId, stackImplementation, stackFrame, thread.triggerScope);
+			if (stackFrame.size() == this.argumentCount) {
+				stackFrame.push(null);
+			}
+		}
+		else {
+			final List<JassValue> arguments = new ArrayList<>(this.argumentCount);
+			for (int i = 0; i < this.argumentCount; i++) {
+				arguments.add(stackFrame.get(i));
+			}
+			stackFrame.push(globalScope.getNativeById(this.nativeId).call(arguments, globalScope,
+					thread.triggerScope));
 		}
-		final JassValue nativeReturnValue = nativeFromId.call(arguments, thread.globalScope, thread.triggerScope);
-		thread.stackFrame.push(nativeReturnValue);
 		ReturnInstruction.INSTANCE.run(thread);
+	}
 
+	/**
+	 * Calls a native that works on the stack frame, through the debugging wrapper
+	 * if the native has one so that it still shows up in JASS stack traces.
+	 */
+	public static void callStackImplementation(final GlobalScope globalScope, final int nativeId,
+			final StackJassFunction stackImplementation, final JassStackFrame stackFrame,
+			final TriggerExecutionScope triggerScope) {
+		final JassFunction nativeFunction = globalScope.getNativeById(nativeId);
+		if (nativeFunction instanceof DebuggingJassFunction) {
+			((DebuggingJassFunction) nativeFunction).call(stackImplementation, stackFrame, globalScope, triggerScope);
+		}
+		else {
+			stackImplementation.call(stackFrame, globalScope, triggerScope);
+		}
 	}
 }
@@ -1,5 +1,6 @@
 package com.etheller.interpreter.ast.execution.instruction;
 
+import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.value.visitor.NegateJassValueVisitor;
 
@@ -7,7 +8,16 @@ public class NegateInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		thread.stackFrame.push(thread.stackFrame.pop().visit(NegateJassValueVisitor.getInstance()));
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (stackFrame.isInteger(0)) {
+			stackFrame.pushInteger(-stackFrame.popInteger());
+		}
+		else if (stackFrame.isReal(0)) {
+			stackFrame.pushReal(-stackFrame.popReal());
+		}
+		else {
+			stackFrame.push(stackFrame.pop().visit(NegateJassValueVisitor.getInstance()));
+		}
 	}
 
 }
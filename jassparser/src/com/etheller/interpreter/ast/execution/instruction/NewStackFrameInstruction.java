@@ -15,16 +15,18 @@ public class NewStackFrameInstruction implements JassInstruction {
 	@Override
 	public void run(final JassThread thread) {
 		final JassStackFrame baseStackFrame = thread.stackFrame;
-		final JassStackFrame jassStackFrame = new JassStackFrame(this.argumentCount);
+		final JassStackFrame jassStackFrame = thread.obtainStackFrame();
 		jassStackFrame.stackBase = baseStackFrame;
 		jassStackFrame.returnAddressInstructionPtr = this.returnAddressInstructionPtr;
-		for (int i = 0; i < this.argumentCount; i++) {
-			jassStackFrame.push(baseStackFrame.getLast((this.argumentCount - i) - 1));
-		}
-		for (int i = 0; i < this.argumentCount; i++) {
-			baseStackFrame.pop();
-		}
+		jassStackFrame.moveArgumentsFrom(baseStackFrame, this.argumentCount);
 		thread.stackFrame = jassStackFrame;
 	}
 
+	public int getReturnAddressInstructionPtr() {
+		return this.returnAddressInstructionPtr;
+	}
+
+	public int getArgumentCount() {
+		return this.argumentCount;
+	}
 }
@@ -1,5 +1,6 @@
 package com.etheller.interpreter.ast.execution.instruction;
 
+import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.value.visitor.NotJassValueVisitor;
 
@@ -7,7 +8,13 @@ public class NotInstruction implements JassInstruction {
 
 	@Override
 	public void run(final JassThread thread) {
-		thread.stackFrame.push(thread.stackFrame.pop().visit(NotJassValueVisitor.getInstance()));
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (stackFrame.isBoolean(0)) {
+			stackFrame.pushBoolean(!stackFrame.popBoolean());
+		}
+		else {
+			stackFrame.push(stackFrame.pop().visit(NotJassValueVisitor.getInstance()));
+		}
 	}
 
 }
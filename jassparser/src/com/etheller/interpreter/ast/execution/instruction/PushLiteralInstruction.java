@@ -15,4 +15,7 @@ public class PushLiteralInstruction implements JassInstruction {
 		thread.stackFrame.push(this.value);
 	}
 
+	public JassValue getValue() {
+		return this.value;
+	}
 }
@@ -0,0 +1,63 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+
+/**
+ * Add, subtract, multiply or divide where at least one side is a real, so that
+ * the other side is promoted like {@link ArithmeticSigns} would.
+ */
+public class RealArithmeticInstruction implements JassInstruction {
+	private final ArithmeticSigns arithmeticSign;
+
+	public RealArithmeticInstruction(final ArithmeticSigns arithmeticSign) {
+		this.arithmeticSign = arithmeticSign;
+	}
+
+	@Override
+	public void run(final JassThread thread) {
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (isRealOperation(stackFrame)) {
+			final double rightValue = stackFrame.popReal();
+			final double leftValue = stackFrame.popReal();
+			switch (this.arithmeticSign) {
+			case ADD:
+				stackFrame.pushReal(leftValue + rightValue);
+				break;
+			case SUBTRACT:
+				stackFrame.pushReal(leftValue - rightValue);
+				break;
+			case MULTIPLY:
+				stackFrame.pushReal(leftValue * rightValue);
+				break;
+			case DIVIDE:
+				stackFrame.pushReal(leftValue / rightValue);
+				break;
+			default:
+				throw new IllegalStateException("Not arithmetic: " + this.arithmeticSign);
+			}
+		}
+		else {
+			ArithmeticInstruction.run(stackFrame, this.arithmeticSign);
+		}
+	}
+
+	/**
+	 * @return true if the top two values are numbers and at least one of them is
+	 *         a real
+	 */
+	public static boolean isRealOperation(final JassStackFrame stackFrame) {
+		if (stackFrame.isReal(0)) {
+			return stackFrame.isReal(1) || stackFrame.isInteger(1);
+		}
+		else if (stackFrame.isReal(1)) {
+			return stackFrame.isInteger(0);
+		}
+		return false;
+	}
+
+	public ArithmeticSigns getArithmeticSign() {
+		return this.arithmeticSign;
+	}
+}
@@ -0,0 +1,54 @@
+package com.etheller.interpreter.ast.execution.instruction;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.expression.ArithmeticSigns;
+
+/**
+ * Comparison where at least one side is a real, with the same tolerance on
+ * equality as {@link ArithmeticSigns}.
+ */
+public class RealCompareInstruction implements JassInstruction {
+	private final ArithmeticSigns arithmeticSign;
+
+	public RealCompareInstruction(final ArithmeticSigns arithmeticSign) {
+		this.arithmeticSign = arithmeticSign;
+	}
+
+	@Override
+	public void run(final JassThread thread) {
+		final JassStackFrame stackFrame = thread.stackFrame;
+		if (RealArithmeticInstruction.isRealOperation(stackFrame)) {
+			final double rightValue = stackFrame.popReal();
+			final double leftValue = stackFrame.popReal();
+			stackFrame.pushBoolean(compare(leftValue, rightValue, this.arithmeticSign));
+		}
+		else {
+			ArithmeticInstruction.run(stackFrame, this.arithmeticSign);
+		}
+	}
+
+	public static boolean compare(final double leftValue, final double rightValue,
+			final ArithmeticSigns arithmeticSign) {
+		switch (arithmeticSign) {
+		case EQUALS:
+			return Math.abs(leftValue - rightValue) <= 0.00001;
+		case NOT_EQUALS:
+			return leftValue != rightValue;
+		case LESS:
+			return leftValue < rightValue;
+		case LESS_OR_EQUALS:
+			return leftValue <= rightValue;
+		case GREATER:
+			return leftValue > rightValue;
+		case GREATER_OR_EQUALS:
+			return leftValue >= rightValue;
+		default:
+			throw new IllegalArgumentException("Not a comparison: " + arithmeticSign);
+		}
+	}
+
+	public ArithmeticSigns getArithmeticSign() {
+		return this.arithmeticSign;
+	}
+}
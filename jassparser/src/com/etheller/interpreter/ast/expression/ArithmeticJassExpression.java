@@ -1,12 +1,10 @@
 package com.etheller.interpreter.ast.expression;
 
+import com.etheller.interpreter.ast.execution.instruction.ArithmeticInstruction;
 import com.etheller.interpreter.ast.scope.GlobalScope;
 import com.etheller.interpreter.ast.scope.LocalScope;
 import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
-import com.etheller.interpreter.ast.value.IntegerJassValue;
 import com.etheller.interpreter.ast.value.JassValue;
-import com.etheller.interpreter.ast.value.visitor.ArithmeticJassValueVisitor;
-import com.etheller.interpreter.ast.value.visitor.ArithmeticLeftHandNullJassValueVisitor;
 
 public class ArithmeticJassExpression implements JassExpression {
 
@@ -26,21 +24,7 @@ public class ArithmeticJassExpression implements JassExpression {
 			final TriggerExecutionScope triggerScope) {
 		final JassValue leftValue = this.leftExpression.evaluate(globalScope, localScope, triggerScope);
 		final JassValue rightValue = this.rightExpression.evaluate(globalScope, localScope, triggerScope);
-		try {
-			if (leftValue == null) {
-				if (rightValue == null) {
-					return this.arithmeticSign.apply((String) null, (String) null);
-				}
-				else {
-					return rightValue.visit(ArithmeticLeftHandNullJassValueVisitor.INSTANCE.reset(this.arithmeticSign));
-				}
-			}
-			return leftValue.visit(ArithmeticJassValueVisitor.INSTANCE.reset(rightValue, this.arithmeticSign));
-		}
-		catch (final ArithmeticException exception) {
-			exception.printStackTrace();
-			return IntegerJassValue.ZERO;
-		}
+		return ArithmeticInstruction.apply(leftValue, rightValue, this.arithmeticSign, globalScope.getStrings());
 	}
 
 	@Override
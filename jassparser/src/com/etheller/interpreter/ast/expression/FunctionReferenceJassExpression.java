@@ -1,10 +1,8 @@
 package com.etheller.interpreter.ast.expression;
 
-import com.etheller.interpreter.ast.function.JassFunction;
 import com.etheller.interpreter.ast.scope.GlobalScope;
 import com.etheller.interpreter.ast.scope.LocalScope;
 import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
-import com.etheller.interpreter.ast.value.CodeJassValue;
 import com.etheller.interpreter.ast.value.JassValue;
 
 public class FunctionReferenceJassExpression implements JassExpression {
@@ -17,12 +15,11 @@ public class FunctionReferenceJassExpression implements JassExpression {
 	@Override
 	public JassValue evaluate(final GlobalScope globalScope, final LocalScope localScope,
 			final TriggerExecutionScope triggerScope) {
-		final JassFunction functionByName = globalScope.getFunctionByName(this.identifier);
-		final Integer userFunctionInstructionPtr = globalScope.getUserFunctionInstructionPtr(this.identifier);
-		if ((functionByName == null) || (userFunctionInstructionPtr == null)) {
+		final int userFunctionId = globalScope.getUserFunctionId(this.identifier);
+		if (userFunctionId == -1) {
 			throw new RuntimeException("Unable to find function: " + this.identifier);
 		}
-		return new CodeJassValue(functionByName, userFunctionInstructionPtr);
+		return globalScope.getUserFunctionCodeValue(userFunctionId);
 	}
 
 	@Override
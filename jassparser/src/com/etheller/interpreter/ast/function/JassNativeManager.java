@@ -11,6 +11,7 @@ import com.etheller.interpreter.ast.value.JassType;
 
 public class JassNativeManager {
 	private final Map<String, JassFunction> nameToNativeCode;
+	private final Map<String, StackJassFunction> nameToStackNativeCode = new HashMap<>();
 	private final Set<String> registeredNativeNames = new HashSet<>();
 
 	public JassNativeManager() {
@@ -21,14 +22,29 @@ public class JassNativeManager {
 		this.nameToNativeCode.put(name, nativeCode);
 	}
 
+	/**
+	 * Same as {@link #createNative(String, JassFunction)}, for a native called
+	 * without boxing its arguments into a list.
+	 */
+	public void createStackNative(final String name, final StackJassFunction nativeCode) {
+		this.nameToStackNativeCode.put(name, nativeCode);
+	}
+
 	public void registerNativeCode(final int lineNo, final String sourceFile, final String name,
 			final List<JassParameter> parameters, final JassType returnType, final GlobalScope globals) {
 		if (this.registeredNativeNames.contains(name)) {
 			throw new RuntimeException("Native already registered: " + name);
 		}
+		final StackJassFunction stackNativeCode = this.nameToStackNativeCode.remove(name);
 		final JassFunction nativeCode = this.nameToNativeCode.remove(name);
-		globals.defineFunction(lineNo, sourceFile, name,
-				new NativeJassFunction(parameters, returnType, name, nativeCode));
+		if (stackNativeCode != null) {
+			globals.defineFunction(lineNo, sourceFile, name,
+					new NativeJassFunction(parameters, returnType, name, stackNativeCode));
+		}
+		else {
+			globals.defineFunction(lineNo, sourceFile, name,
+					new NativeJassFunction(parameters, returnType, name, nativeCode));
+		}
 		this.registeredNativeNames.add(name);
 	}
 
@@ -0,0 +1,37 @@
+package com.etheller.interpreter.ast.function;
+
+import java.util.List;
+
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+import com.etheller.interpreter.ast.value.JassValue;
+
+/**
+ * The function behind a code value of a user function. Calling it runs the
+ * function's instructions on a thread of its own, where every variable and
+ * function was already resolved to a slot, instead of walking the statements
+ * of the {@link UserJassFunction} and looking names up as they are reached.
+ */
+public final class LinkedUserJassFunction implements JassFunction {
+	private final UserJassFunction userFunction;
+	private final int instructionPtr;
+
+	public LinkedUserJassFunction(final UserJassFunction userFunction, final int instructionPtr) {
+		this.userFunction = userFunction;
+		this.instructionPtr = instructionPtr;
+	}
+
+	@Override
+	public JassValue call(final List<JassValue> arguments, final GlobalScope globalScope,
+			final TriggerExecutionScope triggerScope) {
+		return globalScope.callUserFunction(this.instructionPtr, arguments, triggerScope);
+	}
+
+	public UserJassFunction getUserFunction() {
+		return this.userFunction;
+	}
+
+	public int getInstructionPtr() {
+		return this.instructionPtr;
+	}
+}
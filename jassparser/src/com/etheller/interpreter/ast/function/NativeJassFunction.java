@@ -2,6 +2,7 @@ package com.etheller.interpreter.ast.function;
 
 import java.util.List;
 
+import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.scope.GlobalScope;
 import com.etheller.interpreter.ast.scope.LocalScope;
 import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
@@ -11,12 +12,30 @@ import com.etheller.interpreter.ast.value.JassValue;
 public class NativeJassFunction extends AbstractJassFunction {
 	private final String name;
 	private final JassFunction implementation;
+	private final StackJassFunction stackImplementation;
 
 	public NativeJassFunction(final List<JassParameter> parameters, final JassType returnType, final String name,
 			final JassFunction impl) {
 		super(parameters, returnType);
 		this.name = name;
 		this.implementation = impl;
+		this.stackImplementation = null;
+	}
+
+	public NativeJassFunction(final List<JassParameter> parameters, final JassType returnType, final String name,
+			final StackJassFunction impl) {
+		super(parameters, returnType);
+		this.name = name;
+		this.implementation = null;
+		this.stackImplementation = impl;
+	}
+
+	/**
+	 * @return the implementation to call straight from the interpreter's stack,
+	 *         or null if this native takes a list of arguments
+	 */
+	public StackJassFunction getStackImplementation() {
+		return this.stackImplementation;
 	}
 
 	@Override
@@ -25,11 +44,22 @@ public class NativeJassFunction extends AbstractJassFunction {
 		if (!checkNativeExists()) {
 			return this.returnType.getNullValue();
 		}
+		if (this.stackImplementation != null) {
+			final JassStackFrame stackFrame = new JassStackFrame(arguments.size());
+			for (final JassValue argument : arguments) {
+				stackFrame.push(argument);
+			}
+			this.stackImplementation.call(stackFrame, globalScope, triggerScope);
+			if (stackFrame.size() > arguments.size()) {
+				return stackFrame.pop();
+			}
+			return null;
+		}
 		return this.implementation.call(arguments, globalScope, triggerScope);
 	}
 
 	private boolean checkNativeExists() {
-		if (this.implementation == null) {
+		if ((this.implementation == null) && (this.stackImplementation == null)) {
 			System.err.println(
 					"Call to native function that was declared but had no native implementation: " + this.name);
 			return false;
@@ -0,0 +1,15 @@
+package com.etheller.interpreter.ast.function;
+
+import com.etheller.interpreter.ast.execution.JassStackFrame;
+import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
+
+/**
+ * A native that works on the interpreter's stack frame instead of a list of
+ * boxed values. The arguments are in slots 0 to n-1 of the frame, read with the
+ * typed getters, and a native that returns something pushes it onto the frame
+ * with the typed push methods. A native returning nothing pushes nothing.
+ */
+public interface StackJassFunction {
+	void call(JassStackFrame arguments, GlobalScope globalScope, TriggerExecutionScope triggerScope);
+}
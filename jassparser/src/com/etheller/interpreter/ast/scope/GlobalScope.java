@@ -2,25 +2,35 @@ package com.etheller.interpreter.ast.scope;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.etheller.interpreter.ast.Assignable;
 import com.etheller.interpreter.ast.debug.DebuggingJassFunction;
 import com.etheller.interpreter.ast.debug.JassException;
+import com.etheller.interpreter.ast.debug.JassProfiler;
 import com.etheller.interpreter.ast.debug.JassStackElement;
 import com.etheller.interpreter.ast.execution.JassStackFrame;
 import com.etheller.interpreter.ast.execution.JassThread;
+import com.etheller.interpreter.ast.execution.compiler.JassCompiledFunction;
+import com.etheller.interpreter.ast.execution.compiler.JassCompiler;
 import com.etheller.interpreter.ast.execution.instruction.BeginFunctionInstruction;
+import com.etheller.interpreter.ast.execution.instruction.CompiledFunctionInstruction;
 import com.etheller.interpreter.ast.execution.instruction.InstructionAppendingJassStatementVisitor;
 import com.etheller.interpreter.ast.execution.instruction.JassInstruction;
+import com.etheller.interpreter.ast.execution.instruction.JassInstructionOptimizer;
 import com.etheller.interpreter.ast.execution.instruction.PushLiteralInstruction;
 import com.etheller.interpreter.ast.execution.instruction.ReturnInstruction;
 import com.etheller.interpreter.ast.function.JassFunction;
 import com.etheller.interpreter.ast.function.JassParameter;
+import com.etheller.interpreter.ast.function.LinkedUserJassFunction;
 import com.etheller.interpreter.ast.function.NativeJassFunction;
 import com.etheller.interpreter.ast.function.UserJassFunction;
 import com.etheller.interpreter.ast.scope.trigger.RemovableTriggerEvent;
@@ -34,6 +44,7 @@ import com.etheller.interpreter.ast.value.ArrayJassType;
 import com.etheller.interpreter.ast.value.ArrayJassValue;
 import com.etheller.interpreter.ast.value.CodeJassValue;
 import com.etheller.interpreter.ast.value.HandleJassType;
+import com.etheller.interpreter.ast.value.JassStringTable;
 import com.etheller.interpreter.ast.value.JassType;
 import com.etheller.interpreter.ast.value.JassValue;
 import com.etheller.interpreter.ast.value.PrimitiveJassType;
@@ -43,14 +54,30 @@ import com.etheller.interpreter.ast.value.visitor.HandleTypeSuperTypeLoadingVisi
 import com.etheller.interpreter.ast.value.visitor.JassTypeGettingValueVisitor;
 
 public final class GlobalScope {
-	private final List<GlobalScopeAssignable> indexedGlobals = new ArrayList<GlobalScopeAssignable>();
+	private static final int DEFAULT_SLOT_CAPACITY = 64;
+	// names that ExecuteFunc was given, which are nearly always the same string
+	// literals, so this is emptied instead of growing once scripts build names
+	private static final int MAX_FUNCTION_NAME_CACHE_SIZE = 1024;
+
+	// names are only looked up while a function is turned into instructions, the
+	// instructions use the slot numbers
+	private GlobalScopeAssignable[] globalSlots = new GlobalScopeAssignable[DEFAULT_SLOT_CAPACITY];
+	private int globalCount;
+	private CodeJassValue[] userFunctionSlots = new CodeJassValue[DEFAULT_SLOT_CAPACITY];
+	private int userFunctionCount;
+	private final IdentityHashMap<String, Integer> functionNameCache = new IdentityHashMap<>();
 	private final List<JassInstruction> instructions = new ArrayList<JassInstruction>();
 	private final Map<String, Integer> globals = new HashMap<>();
-	private final Map<String, GlobalScopeAssignable> fastGlobals = new HashMap<>();
 	private final Map<String, JassFunction> functions = new HashMap<>();
 	private final Map<String, Integer> functionNameToInstructionPtr = new HashMap<>();
+	private final Map<String, Integer> functionNameToUserFunctionId = new HashMap<>();
 	private final Map<String, Integer> functionNameToNativeId = new HashMap<>();
 	private final List<JassFunction> indexedNativeFunctions = new ArrayList<>();
+	private final List<String> indexedNativeFunctionNames = new ArrayList<>();
+	private final List<NativeJassFunction> indexedNativeFunctionImplementations = new ArrayList<>();
+	private final Set<String> yieldingNativeNames = new HashSet<>();
+	private final List<Integer> compiledFunctionInstructionPtrs = new ArrayList<>();
+	private JassCompiler compiler;
 	private final Map<String, JassType> types = new HashMap<>();
 	private final HandleTypeSuperTypeLoadingVisitor handleTypeSuperTypeLoadingVisitor = new HandleTypeSuperTypeLoadingVisitor();
 	private final ArrayDeque<QueuedCallback> triggerQueue = new ArrayDeque<>();
@@ -59,6 +86,12 @@ public final class GlobalScope {
 	private final List<JassThread> newThreads = new ArrayList<>();
 	private JassThread currentThread;
 	private boolean yieldedCurrentThread = false;
+	private long executedInstructionCount;
+	private long tickStartInstructionCount;
+	// threads that may be stopped stop once this many instructions have run
+	private long tickInstructionLimit = Long.MAX_VALUE;
+	private JassProfiler profiler = JassSettings.PROFILE_SCRIPTS ? new JassProfiler() : null;
+	private final JassStringTable strings = new JassStringTable();
 
 	public final HandleJassType handleType;
 
@@ -135,10 +168,12 @@ public final class GlobalScope {
 	}
 
 	private void putGlobal(final String name, final GlobalScopeAssignable globalScopeAssignable) {
-		final int index = this.indexedGlobals.size();
-		this.indexedGlobals.add(globalScopeAssignable);
+		final int index = this.globalCount++;
+		if (index == this.globalSlots.length) {
+			this.globalSlots = Arrays.copyOf(this.globalSlots, index * 2);
+		}
+		this.globalSlots[index] = globalScopeAssignable;
 		this.globals.put(name, index);
-		this.fastGlobals.put(name, globalScopeAssignable);
 	}
 
 	public void createGlobalArray(final String name, final JassType type) {
@@ -165,7 +200,7 @@ public final class GlobalScope {
 	}
 
 	public void setGlobal(final String name, final JassValue value) {
-		final GlobalScopeAssignable assignable = this.fastGlobals.get(name);
+		final GlobalScopeAssignable assignable = getAssignableGlobal(name);
 		if (assignable == null) {
 			throw new RuntimeException("Undefined global: " + name);
 		}
@@ -176,7 +211,7 @@ public final class GlobalScope {
 	}
 
 	public JassValue getGlobal(final String name) {
-		final Assignable global = this.fastGlobals.get(name);
+		final Assignable global = getAssignableGlobal(name);
 		if (global == null) {
 			throw new RuntimeException("Undefined global: " + name);
 		}
@@ -184,11 +219,11 @@ public final class GlobalScope {
 	}
 
 	public JassValue getGlobalById(final int globalId) {
-		return getAssignableGlobalById(globalId).getValue();
+		return this.globalSlots[globalId].getValue();
 	}
 
 	public GlobalScopeAssignable getAssignableGlobalById(final int globalId) {
-		return this.indexedGlobals.get(globalId);
+		return this.globalSlots[globalId];
 	}
 
 	/**
@@ -204,7 +239,11 @@ public final class GlobalScope {
 	}
 
 	public GlobalScopeAssignable getAssignableGlobal(final String name) {
-		return this.fastGlobals.get(name);
+		final Integer globalId = this.globals.get(name);
+		if (globalId == null) {
+			return null;
+		}
+		return this.globalSlots[globalId];
 	}
 
 	private JassFunction internalDefineFunction(final int lineNo, final String sourceFile, final String name,
@@ -226,12 +265,24 @@ public final class GlobalScope {
 		final int nativeId = this.indexedNativeFunctions.size();
 		this.functionNameToNativeId.put(name, nativeId);
 		this.indexedNativeFunctions.add(definedFunction);
+		this.indexedNativeFunctionNames.add(name);
+		this.indexedNativeFunctionImplementations.add(function);
+		invalidateCompilerAnalysis();
 	}
 
 	public void defineFunction(final int lineNo, final String sourceFile, final String name,
 			final UserJassFunction function) {
 		internalDefineFunction(lineNo, sourceFile, name, function);
-		this.functionNameToInstructionPtr.put(name, this.instructions.size());
+		final int instructionPtr = this.instructions.size();
+		this.functionNameToInstructionPtr.put(name, instructionPtr);
+		final int userFunctionId = this.userFunctionCount++;
+		if (userFunctionId == this.userFunctionSlots.length) {
+			this.userFunctionSlots = Arrays.copyOf(this.userFunctionSlots, userFunctionId * 2);
+		}
+		this.userFunctionSlots[userFunctionId] = new CodeJassValue(
+				new LinkedUserJassFunction(function, instructionPtr), instructionPtr);
+		this.functionNameToUserFunctionId.put(name, userFunctionId);
+		this.functionNameCache.clear();
 		final List<JassStatement> statements = function.getStatements();
 		this.instructions.add(new BeginFunctionInstruction(lineNo, sourceFile, name));
 		final InstructionAppendingJassStatementVisitor visitor = new InstructionAppendingJassStatementVisitor(
@@ -241,6 +292,10 @@ public final class GlobalScope {
 		}
 		this.instructions.add(new PushLiteralInstruction(JassType.NOTHING.getNullValue()));
 		this.instructions.add(new ReturnInstruction());
+		if (JassSettings.OPTIMIZE_INSTRUCTIONS) {
+			JassInstructionOptimizer.optimize(this.instructions, instructionPtr, this);
+		}
+		invalidateCompilerAnalysis();
 	}
 
 	public JassFunction getFunctionByName(final String name) {
@@ -251,6 +306,43 @@ public final class GlobalScope {
 		return this.functionNameToInstructionPtr.get(name);
 	}
 
+	/**
+	 * @return the slot of the user function, or else -1 if no such function exists
+	 */
+	public int getUserFunctionId(final String name) {
+		final Integer userFunctionId = this.functionNameToUserFunctionId.get(name);
+		if (userFunctionId == null) {
+			return -1;
+		}
+		return userFunctionId;
+	}
+
+	/**
+	 * Same as {@link #getUserFunctionId(String)}, for names that come from running
+	 * scripts, like the one given to ExecuteFunc. These are remembered by identity,
+	 * so the same string object is only looked up by name once.
+	 */
+	public int findUserFunctionId(final String name) {
+		final Integer cachedUserFunctionId = this.functionNameCache.get(name);
+		if (cachedUserFunctionId != null) {
+			return cachedUserFunctionId;
+		}
+		if (this.functionNameCache.size() >= MAX_FUNCTION_NAME_CACHE_SIZE) {
+			this.functionNameCache.clear();
+		}
+		final int userFunctionId = getUserFunctionId(name);
+		this.functionNameCache.put(name, userFunctionId);
+		return userFunctionId;
+	}
+
+	/**
+	 * @return the code value that refers to the user function in this slot, shared
+	 *         by every "function" reference to it
+	 */
+	public CodeJassValue getUserFunctionCodeValue(final int userFunctionId) {
+		return this.userFunctionSlots[userFunctionId];
+	}
+
 	public Integer getNativeId(final String name) {
 		return this.functionNameToNativeId.get(name);
 	}
@@ -259,6 +351,91 @@ public final class GlobalScope {
 		return this.indexedNativeFunctions.get(id);
 	}
 
+	/**
+	 * @return the native itself, without the debugging wrapper that
+	 *         {@link #getNativeById(int)} may return
+	 */
+	public NativeJassFunction getNativeImplementationById(final int id) {
+		return this.indexedNativeFunctionImplementations.get(id);
+	}
+
+	public String getNativeName(final int id) {
+		return this.indexedNativeFunctionNames.get(id);
+	}
+
+	/**
+	 * @return the debug info of the user function that starts at this instruction
+	 */
+	public BeginFunctionInstruction getUserFunctionMetaData(final int instructionPtr) {
+		final JassInstruction instruction = this.instructions.get(instructionPtr);
+		if (instruction instanceof CompiledFunctionInstruction) {
+			return ((CompiledFunctionInstruction) instruction).getBeginFunctionInstruction();
+		}
+		return (BeginFunctionInstruction) instruction;
+	}
+
+	public List<BeginFunctionInstruction> getUserFunctionMetaData() {
+		final List<BeginFunctionInstruction> userFunctions = new ArrayList<>(this.userFunctionCount);
+		for (int i = 0; i < this.userFunctionCount; i++) {
+			userFunctions.add(getUserFunctionMetaData(this.userFunctionSlots[i].getUserFunctionInstructionPtr()));
+		}
+		return userFunctions;
+	}
+
+	public Set<String> getUserFunctionNames() {
+		return this.functionNameToInstructionPtr.keySet();
+	}
+
+	/**
+	 * Marks a native as one that can put the current thread to sleep, so that
+	 * functions calling it are left to the interpreter.
+	 */
+	public void registerYieldingNative(final String name) {
+		this.yieldingNativeNames.add(name);
+		invalidateCompilerAnalysis();
+	}
+
+	public boolean isYieldingNative(final String name) {
+		return this.yieldingNativeNames.contains(name);
+	}
+
+	public JassCompiler getCompiler() {
+		if (this.compiler == null) {
+			this.compiler = new JassCompiler(this);
+		}
+		return this.compiler;
+	}
+
+	public JassStringTable getStrings() {
+		return this.strings;
+	}
+
+	private void invalidateCompilerAnalysis() {
+		if (this.compiler != null) {
+			this.compiler.invalidateAnalysis();
+		}
+	}
+
+	public void compileHotFunction(final BeginFunctionInstruction beginFunctionInstruction,
+			final int instructionPtr) {
+		final JassCompiledFunction compiledFunction = getCompiler().compile(beginFunctionInstruction.getName());
+		if (compiledFunction != null) {
+			this.instructions.set(instructionPtr,
+					new CompiledFunctionInstruction(beginFunctionInstruction, compiledFunction));
+			this.compiledFunctionInstructionPtrs.add(instructionPtr);
+		}
+	}
+
+	public void deoptimizeCompiledFunctions() {
+		for (final Integer instructionPtr : this.compiledFunctionInstructionPtrs) {
+			final BeginFunctionInstruction beginFunctionInstruction = ((CompiledFunctionInstruction) this.instructions
+					.get(instructionPtr)).getBeginFunctionInstruction();
+			beginFunctionInstruction.resetEntryCount();
+			this.instructions.set(instructionPtr, beginFunctionInstruction);
+		}
+		this.compiledFunctionInstructionPtrs.clear();
+	}
+
 	public JassType parseType(final String text) {
 		final JassType type = this.types.get(text);
 		if (type != null) {
@@ -363,6 +540,40 @@ public final class GlobalScope {
 		}
 	}
 
+	/**
+	 * Starts a simulation tick, giving the threads that may be stopped
+	 * {@link JassSettings#TICK_INSTRUCTION_BUDGET} instructions to share. The
+	 * budget counts instructions and not time, so that every client of a game
+	 * stops the same threads at the same place.
+	 */
+	public void beginTick() {
+		if (this.profiler != null) {
+			this.profiler.countTick(this.executedInstructionCount - this.tickStartInstructionCount);
+		}
+		this.tickStartInstructionCount = this.executedInstructionCount;
+		if (JassSettings.TICK_INSTRUCTION_BUDGET > 0) {
+			this.tickInstructionLimit = this.executedInstructionCount + JassSettings.TICK_INSTRUCTION_BUDGET;
+		}
+		else {
+			this.tickInstructionLimit = Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @return how many instructions all threads of this scope have run so far
+	 */
+	public long getExecutedInstructionCount() {
+		return this.executedInstructionCount;
+	}
+
+	public JassProfiler getProfiler() {
+		return this.profiler;
+	}
+
+	public void setProfiler(final JassProfiler profiler) {
+		this.profiler = profiler;
+	}
+
 	/**
 	 * @return true if all threads have terminated
 	 */
@@ -374,10 +585,15 @@ public final class GlobalScope {
 			this.threads.addAll(this.newThreads);
 			this.newThreads.clear();
 		}
-		while (anyThreadsAdded);
+		while (anyThreadsAdded && (this.executedInstructionCount < this.tickInstructionLimit));
 		return this.threads.isEmpty();
 	}
 
+	/**
+	 * Runs the thread until it finishes or sleeps, or until the tick runs out of
+	 * instructions if the thread is {@link JassThread#preemptible}. Callers
+	 * should check whether the thread finished.
+	 */
 	public void runThreadUntilCompletion(final JassThread thread) {
 		final JassThread parentThread = this.currentThread;
 		thread.parent = parentThread;
@@ -387,8 +603,14 @@ public final class GlobalScope {
 				if (thread.instructionPtr == -1) {
 					break;
 				}
+				else if (thread.preemptible && (this.executedInstructionCount >= this.tickInstructionLimit)) {
+					if (this.profiler != null) {
+						this.profiler.countPreemptedThread();
+					}
+					break;
+				}
 				else {
-					this.instructions.get(thread.instructionPtr++).run(thread);
+					runInstruction(thread);
 				}
 			}
 		}
@@ -398,6 +620,27 @@ public final class GlobalScope {
 		this.currentThread = parentThread;
 	}
 
+	/**
+	 * Runs a user function to completion on a thread of its own and returns what
+	 * it returned. If it goes to sleep, it is dropped.
+	 */
+	public JassValue callUserFunction(final int instructionPtr, final List<JassValue> arguments,
+			final TriggerExecutionScope triggerScope) {
+		final JassStackFrame returnStackFrame = new JassStackFrame();
+		final JassStackFrame jassStackFrame = new JassStackFrame(arguments.size());
+		jassStackFrame.stackBase = returnStackFrame;
+		jassStackFrame.returnAddressInstructionPtr = -1;
+		for (int i = 0; i < arguments.size(); i++) {
+			jassStackFrame.push(arguments.get(i));
+		}
+		final JassThread thread = new JassThread(jassStackFrame, this, triggerScope, instructionPtr);
+		runThreadUntilCompletion(thread);
+		if ((thread.instructionPtr != -1) || (returnStackFrame.size() == 0)) {
+			return null;
+		}
+		return returnStackFrame.pop();
+	}
+
 	private void runOneThreadLooop() {
 		for (int threadIndex = this.threads.size() - 1; threadIndex >= 0; threadIndex--) {
 			final JassThread thread = this.threads.get(threadIndex);
@@ -409,8 +652,18 @@ public final class GlobalScope {
 						this.yieldedCurrentThread = false;
 						break;
 					}
+					else if (this.executedInstructionCount >= this.tickInstructionLimit) {
+						// out of instructions for this tick, this thread goes last next tick so
+						// that the threads that did not get to run this tick go first
+						if (this.profiler != null) {
+							this.profiler.countPreemptedThread();
+						}
+						this.threads.add(0, this.threads.remove(threadIndex));
+						this.currentThread = null;
+						return;
+					}
 					else {
-						this.instructions.get(thread.instructionPtr++).run(thread);
+						runInstruction(thread);
 					}
 				}
 			}
@@ -425,6 +678,40 @@ public final class GlobalScope {
 		this.currentThread = null;
 	}
 
+	private void runInstruction(final JassThread thread) {
+		if (this.profiler != null) {
+			runProfiledInstruction(thread);
+			return;
+		}
+		this.executedInstructionCount++;
+		this.instructions.get(thread.instructionPtr++).run(thread);
+	}
+
+	private void runProfiledInstruction(final JassThread thread) {
+		final JassInstruction instruction = this.instructions.get(thread.instructionPtr++);
+		final JassStackFrame stackFrame = thread.stackFrame;
+		BeginFunctionInstruction function = stackFrame.functionNameMetaData;
+		if (function != null) {
+			function.countProfiledInstruction();
+		}
+		else if (instruction instanceof CompiledFunctionInstruction) {
+			// the whole compiled function runs as the first instruction of its frame
+			function = ((CompiledFunctionInstruction) instruction).getBeginFunctionInstruction();
+		}
+		else if (stackFrame.stackBase != null) {
+			// natives run on a frame of their own, their time goes to the caller
+			function = stackFrame.stackBase.functionNameMetaData;
+		}
+		this.executedInstructionCount++;
+		if (function == null) {
+			instruction.run(thread);
+			return;
+		}
+		final long startNanos = System.nanoTime();
+		instruction.run(thread);
+		function.addProfiledNanos(System.nanoTime() - startNanos);
+	}
+
 	public JassThread getCurrentThread() {
 		return this.currentThread;
 	}
@@ -465,6 +752,10 @@ public final class GlobalScope {
 		this.triggerQueue.add(new QueuedFunction(function, scope));
 	}
 
+	public void queueCallback(final QueuedCallback callback) {
+		this.triggerQueue.add(callback);
+	}
+
 	public void replayQueuedTriggers() {
 		this.runningTriggerQueue.clear();
 		this.runningTriggerQueue.addAll(this.triggerQueue);
@@ -474,7 +765,7 @@ public final class GlobalScope {
 		}
 	}
 
-	private static interface QueuedCallback {
+	public static interface QueuedCallback {
 		void fire(GlobalScope globalScope);
 	}
 
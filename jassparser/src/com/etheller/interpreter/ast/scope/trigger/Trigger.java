@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.List;
 
 import com.etheller.interpreter.ast.debug.JassException;
+import com.etheller.interpreter.ast.debug.JassProfiler;
 import com.etheller.interpreter.ast.execution.JassThread;
 import com.etheller.interpreter.ast.function.JassFunction;
 import com.etheller.interpreter.ast.scope.GlobalScope;
@@ -24,6 +25,9 @@ public class Trigger implements CHandle {
 	// used for eval
 	private transient final TriggerExecutionScope triggerExecutionScope = new TriggerExecutionScope(this);
 	private boolean waitOnSleeps = true;
+	// event indexes built from the conditions of this trigger, to be built again
+	// when they change
+	private final List<ConditionsChangeListener> conditionsChangeListeners = new ArrayList<>();
 
 	public int addAction(final JassFunction function) {
 		final int index = this.actions.size();
@@ -40,19 +44,41 @@ public class Trigger implements CHandle {
 	public int addCondition(final TriggerBooleanExpression boolexpr) {
 		final int index = this.conditions.size();
 		this.conditions.add(boolexpr);
+		fireConditionsChanged();
 		return index;
 	}
 
 	public void removeCondition(final TriggerBooleanExpression boolexpr) {
 		this.conditions.remove(boolexpr);
+		fireConditionsChanged();
 	}
 
 	public void removeConditionAtIndex(final int conditionIndex) {
 		this.conditions.remove(conditionIndex);
+		fireConditionsChanged();
 	}
 
 	public void clearConditions() {
 		this.conditions.clear();
+		fireConditionsChanged();
+	}
+
+	public List<TriggerBooleanExpression> getConditions() {
+		return this.conditions;
+	}
+
+	public void addConditionsChangeListener(final ConditionsChangeListener listener) {
+		this.conditionsChangeListeners.add(listener);
+	}
+
+	public void removeConditionsChangeListener(final ConditionsChangeListener listener) {
+		this.conditionsChangeListeners.remove(listener);
+	}
+
+	private void fireConditionsChanged() {
+		for (int i = 0; i < this.conditionsChangeListeners.size(); i++) {
+			this.conditionsChangeListeners.get(i).onConditionsChanged(this);
+		}
 	}
 
 	public int getEvalCount() {
@@ -64,6 +90,22 @@ public class Trigger implements CHandle {
 	}
 
 	public boolean evaluate(final GlobalScope globalScope, final TriggerExecutionScope triggerScope) {
+		final JassProfiler profiler = globalScope.getProfiler();
+		if (profiler == null) {
+			return evaluateConditions(globalScope, triggerScope);
+		}
+		final long startInstructionCount = globalScope.getExecutedInstructionCount();
+		final long startNanos = System.nanoTime();
+		try {
+			return evaluateConditions(globalScope, triggerScope);
+		}
+		finally {
+			profiler.getTriggerProfile(this).countEvaluation(
+					globalScope.getExecutedInstructionCount() - startInstructionCount, System.nanoTime() - startNanos);
+		}
+	}
+
+	private boolean evaluateConditions(final GlobalScope globalScope, final TriggerExecutionScope triggerScope) {
 		for (final TriggerBooleanExpression condition : this.conditions) {
 			if (!condition.evaluate(globalScope, triggerScope)) {
 				return false;
@@ -76,6 +118,23 @@ public class Trigger implements CHandle {
 		if (!this.enabled) {
 			return;
 		}
+		final JassProfiler profiler = globalScope.getProfiler();
+		if (profiler == null) {
+			executeActions(globalScope, triggerScope);
+			return;
+		}
+		final long startInstructionCount = globalScope.getExecutedInstructionCount();
+		final long startNanos = System.nanoTime();
+		try {
+			executeActions(globalScope, triggerScope);
+		}
+		finally {
+			profiler.getTriggerProfile(this).countExecution(
+					globalScope.getExecutedInstructionCount() - startInstructionCount, System.nanoTime() - startNanos);
+		}
+	}
+
+	private void executeActions(final GlobalScope globalScope, final TriggerExecutionScope triggerScope) {
 		for (final JassFunction action : this.actions) {
 			try {
 				action.call(Collections.emptyList(), globalScope, triggerScope);
@@ -86,6 +145,23 @@ public class Trigger implements CHandle {
 		}
 	}
 
+	/**
+	 * Triggers have no names in JASS, so this is the name of the function of the
+	 * first action, which is usually named after the trigger by the editor.
+	 */
+	public String getName(final GlobalScope globalScope) {
+		for (final JassFunction action : this.actions) {
+			if (action instanceof JassThreadActionFunc) {
+				final Integer instructionPtr = ((JassThreadActionFunc) action).codeJassValue
+						.getUserFunctionInstructionPtr();
+				if ((instructionPtr != null) && (instructionPtr != -1)) {
+					return globalScope.getUserFunctionMetaData(instructionPtr).getName();
+				}
+			}
+		}
+		return "trigger " + this.handleId;
+	}
+
 	public boolean isEnabled() {
 		return this.enabled;
 	}
@@ -101,6 +177,7 @@ public class Trigger implements CHandle {
 	public void reset() {
 		this.actions.clear();
 		this.conditions.clear();
+		fireConditionsChanged();
 		this.evalCount = 0;
 		this.execCount = 0;
 		this.enabled = true;
@@ -131,6 +208,7 @@ public class Trigger implements CHandle {
 		public JassValue call(final List<JassValue> arguments, final GlobalScope globalScope,
 				final TriggerExecutionScope triggerScope) {
 			final JassThread triggerThread = globalScope.createThread(this.codeJassValue, triggerScope);
+			triggerThread.preemptible = isWaitOnSleeps();
 			globalScope.runThreadUntilCompletion(triggerThread);
 			if (isWaitOnSleeps() && (triggerThread.instructionPtr != -1)) {
 				globalScope.queueThread(triggerThread);
@@ -139,4 +217,8 @@ public class Trigger implements CHandle {
 		}
 
 	}
+
+	public interface ConditionsChangeListener {
+		void onConditionsChanged(Trigger trigger);
+	}
 }
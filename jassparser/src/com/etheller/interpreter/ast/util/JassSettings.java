@@ -1,8 +1,36 @@
 package com.etheller.interpreter.ast.util;
 
+/**
+ * The settings that change where a preemptible thread can be stopped at the
+ * tick budget (COMPILE_HOT_FUNCTIONS, HOT_FUNCTION_THRESHOLD,
+ * TICK_INSTRUCTION_BUDGET, OPTIMIZE_INSTRUCTIONS and STRIP_DEBUG_LINE_NUMBERS)
+ * change how many instructions a script runs, so they must be the same on every
+ * client of a lockstep game or the clients will desync.
+ */
 public class JassSettings {
 	public static final boolean LOG_FUNCTION_DEFINITIONS = false;
 	public static final int MAX_ARRAY_SIZE = 32768; // so dumb
 	public static boolean DEBUG = true;
 	public static boolean CONTINUE_EXECUTING_ON_ERROR = true;
+	// compile user functions to JVM classes once they have been entered this many
+	// times, see JassCompiler. Not done while there is a TICK_INSTRUCTION_BUDGET,
+	// because compiled code cannot be stopped at the budget
+	public static boolean COMPILE_HOT_FUNCTIONS = false;
+	public static int HOT_FUNCTION_THRESHOLD = 100;
+	// folder to keep parsed common.j, Blizzard.j and other scripts in, so that they
+	// are only parsed again when they change, see JassProgramImageCache
+	public static String PROGRAM_IMAGE_CACHE_DIRECTORY = null;
+	// how many instructions the scheduled threads, trigger actions and ExecuteFunc
+	// calls of one simulation tick may run before they are put off to the next
+	// tick, or 0 for no limit
+	public static int TICK_INSTRUCTION_BUDGET = 0;
+	// count calls, instructions and time per function and trigger, see
+	// JassProfiler
+	public static boolean PROFILE_SCRIPTS = false;
+	// fold constants, thread jumps and drop dead code in each user function as it
+	// is defined, see JassInstructionOptimizer
+	public static boolean OPTIMIZE_INSTRUCTIONS = true;
+	// leave out the instructions that track line numbers for error messages, for
+	// release builds that do not need them
+	public static boolean STRIP_DEBUG_LINE_NUMBERS = false;
 }
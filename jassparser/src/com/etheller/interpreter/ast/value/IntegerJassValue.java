@@ -1,7 +1,15 @@
 package com.etheller.interpreter.ast.value;
 
 public class IntegerJassValue implements JassValue {
-	public static final IntegerJassValue ZERO = new IntegerJassValue(0);
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1023;
+	private static final IntegerJassValue[] CACHE = new IntegerJassValue[(CACHE_HIGH - CACHE_LOW) + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = new IntegerJassValue(i + CACHE_LOW);
+		}
+	}
+	public static final IntegerJassValue ZERO = of(0);
 	private final int value;
 
 	public IntegerJassValue(final int value) {
@@ -21,4 +29,15 @@ public class IntegerJassValue implements JassValue {
 	public String toString() {
 		return Integer.toString(this.value);
 	}
+
+	/**
+	 * Same as the constructor, but shares the value objects for small integers,
+	 * which are most of the integers a map script computes.
+	 */
+	public static IntegerJassValue of(final int value) {
+		if ((value >= CACHE_LOW) && (value <= CACHE_HIGH)) {
+			return CACHE[value - CACHE_LOW];
+		}
+		return new IntegerJassValue(value);
+	}
 }
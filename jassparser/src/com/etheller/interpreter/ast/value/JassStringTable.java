@@ -0,0 +1,97 @@
+package com.etheller.interpreter.ast.value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The strings of one JASS program. Like the game's own string table, it hands
+ * out a single {@link StringJassValue} for each distinct string, so that script
+ * strings can be compared by reference before comparing their characters, and
+ * a UI script that rebuilds the same text every frame keeps reusing the same
+ * values instead of allocating new ones.
+ *
+ * Unlike the game's, the table stops growing at a fixed size, after which new
+ * strings are still returned but no longer interned.
+ */
+public final class JassStringTable {
+	private static final int MAX_INTERNED_STRINGS = 1 << 16;
+	private static final int MAX_INTERNED_LENGTH = 256;
+	private static final int MIN_CACHED_INTEGER = -128;
+	private static final int MAX_CACHED_INTEGER = 1023;
+	private static final int CACHE_SIZE = 256;
+	private static final int CACHE_MASK = CACHE_SIZE - 1;
+
+	private final Map<String, StringJassValue> stringToValue = new HashMap<>();
+	private final StringJassValue[] integerStrings = new StringJassValue[(MAX_CACHED_INTEGER - MIN_CACHED_INTEGER)
+			+ 1];
+	private final long[] realKeys = new long[CACHE_SIZE];
+	private final StringJassValue[] realStrings = new StringJassValue[CACHE_SIZE];
+	private final StringJassValue[] concatenationLefts = new StringJassValue[CACHE_SIZE];
+	private final StringJassValue[] concatenationRights = new StringJassValue[CACHE_SIZE];
+	private final StringJassValue[] concatenationResults = new StringJassValue[CACHE_SIZE];
+
+	public StringJassValue intern(final String value) {
+		if (value == null) {
+			return new StringJassValue(null);
+		}
+		StringJassValue internedValue = this.stringToValue.get(value);
+		if (internedValue == null) {
+			internedValue = new StringJassValue(value);
+			if ((this.stringToValue.size() < MAX_INTERNED_STRINGS) && (value.length() <= MAX_INTERNED_LENGTH)) {
+				this.stringToValue.put(value, internedValue);
+			}
+		}
+		return internedValue;
+	}
+
+	/**
+	 * @return I2S of the value, from a cache for small values
+	 */
+	public StringJassValue ofInteger(final int value) {
+		if ((value < MIN_CACHED_INTEGER) || (value > MAX_CACHED_INTEGER)) {
+			return new StringJassValue(Integer.toString(value));
+		}
+		final int index = value - MIN_CACHED_INTEGER;
+		StringJassValue string = this.integerStrings[index];
+		if (string == null) {
+			string = intern(Integer.toString(value));
+			this.integerStrings[index] = string;
+		}
+		return string;
+	}
+
+	/**
+	 * @return R2S of the value, from a cache of the most recent values
+	 */
+	public StringJassValue ofReal(final double value) {
+		final long bits = Double.doubleToLongBits(value);
+		final int slot = (int) ((bits * 0x9E3779B97F4A7C15L) >>> 56) & CACHE_MASK;
+		StringJassValue string = this.realStrings[slot];
+		if ((string == null) || (this.realKeys[slot] != bits)) {
+			string = intern(Double.toString(value));
+			this.realKeys[slot] = bits;
+			this.realStrings[slot] = string;
+		}
+		return string;
+	}
+
+	/**
+	 * @return the two strings joined, from a cache of the most recent pairs of
+	 *         values, which only hits for values that were interned
+	 */
+	public StringJassValue concatenate(final StringJassValue left, final StringJassValue right) {
+		final int slot = ((System.identityHashCode(left) * 31) + System.identityHashCode(right)) & CACHE_MASK;
+		if ((this.concatenationLefts[slot] == left) && (this.concatenationRights[slot] == right)) {
+			return this.concatenationResults[slot];
+		}
+		final StringJassValue result = intern(left.getValue() + right.getValue());
+		this.concatenationLefts[slot] = left;
+		this.concatenationRights[slot] = right;
+		this.concatenationResults[slot] = result;
+		return result;
+	}
+
+	public int size() {
+		return this.stringToValue.size();
+	}
+}
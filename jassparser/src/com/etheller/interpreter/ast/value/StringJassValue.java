@@ -4,9 +4,11 @@ public class StringJassValue implements JassValue {
 	public static final JassValue EMPTY_STRING = StringJassValue.of("");
 	private final String value;
 
+	/**
+	 * Always makes a new value. Strings that a script makes while running should
+	 * come from {@link JassStringTable} instead, which interns them.
+	 */
 	public static StringJassValue of(final String value) {
-		// later this could do that dumb thing jass does with making sure we dont create
-		// duplicate instances, maybe
 		return new StringJassValue(value);
 	}
 
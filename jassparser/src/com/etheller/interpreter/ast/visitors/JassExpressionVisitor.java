@@ -45,15 +45,18 @@ import com.etheller.interpreter.ast.expression.NotJassExpression;
 import com.etheller.interpreter.ast.expression.ReferenceJassExpression;
 import com.etheller.interpreter.ast.value.BooleanJassValue;
 import com.etheller.interpreter.ast.value.IntegerJassValue;
+import com.etheller.interpreter.ast.value.JassStringTable;
 import com.etheller.interpreter.ast.value.RealJassValue;
-import com.etheller.interpreter.ast.value.StringJassValue;
 import com.etheller.warsmash.util.RawcodeUtils;
 
 public class JassExpressionVisitor extends JassBaseVisitor<JassExpression> {
 	private final ArgumentExpressionHandler argumentExpressionHandler;
+	private final JassStringTable strings;
 
-	public JassExpressionVisitor(final ArgumentExpressionHandler argumentExpressionHandler) {
+	public JassExpressionVisitor(final ArgumentExpressionHandler argumentExpressionHandler,
+			final JassStringTable strings) {
 		this.argumentExpressionHandler = argumentExpressionHandler;
+		this.strings = strings;
 	}
 
 	@Override
@@ -71,7 +74,7 @@ public class JassExpressionVisitor extends JassBaseVisitor<JassExpression> {
 		final String stringLiteralText = ctx.STRING_LITERAL().getText();
 		final String parsedString = stringLiteralText.substring(1, stringLiteralText.length() - 1).replace("\\\\",
 				"\\");
-		return new LiteralJassExpression(new StringJassValue(parsedString));
+		return new LiteralJassExpression(this.strings.intern(parsedString));
 	}
 
 	@Override
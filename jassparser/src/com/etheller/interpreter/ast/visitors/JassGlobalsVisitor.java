@@ -3,50 +3,30 @@ package com.etheller.interpreter.ast.visitors;
 import com.etheller.interpreter.JassBaseVisitor;
 import com.etheller.interpreter.JassParser.BasicGlobalContext;
 import com.etheller.interpreter.JassParser.DefinitionGlobalContext;
-import com.etheller.interpreter.ast.scope.GlobalScope;
-import com.etheller.interpreter.ast.scope.LocalScope;
-import com.etheller.interpreter.ast.value.JassType;
-import com.etheller.interpreter.ast.value.visitor.ArrayPrimitiveTypeVisitor;
 
 public class JassGlobalsVisitor extends JassBaseVisitor<Void> {
-	private static final LocalScope EMPTY_LOCAL_SCOPE = new LocalScope();
-	private final GlobalScope globals;
+	private final JassProgramVisitor programVisitor;
 	private final JassTypeVisitor jassTypeVisitor;
 	private final JassExpressionVisitor jassExpressionVisitor;
 
-	public JassGlobalsVisitor(final GlobalScope globals, final JassTypeVisitor jassTypeVisitor,
+	public JassGlobalsVisitor(final JassProgramVisitor programVisitor, final JassTypeVisitor jassTypeVisitor,
 			final JassExpressionVisitor jassExpressionVisitor) {
-		this.globals = globals;
+		this.programVisitor = programVisitor;
 		this.jassTypeVisitor = jassTypeVisitor;
 		this.jassExpressionVisitor = jassExpressionVisitor;
 	}
 
 	@Override
 	public Void visitBasicGlobal(final BasicGlobalContext ctx) {
-		final JassType type = this.jassTypeVisitor.visit(ctx.type());
-		final JassType arrayPrimType = type.visit(ArrayPrimitiveTypeVisitor.getInstance());
-		if (arrayPrimType != null) {
-			this.globals.createGlobalArray(ctx.ID().getText(), type);
-		}
-		else {
-			this.globals.createGlobal(ctx.ID().getText(), type);
-		}
+		this.programVisitor.defineGlobal(ctx.ID().getText(), this.jassTypeVisitor.visit(ctx.type()), null);
 		return null;
 	}
 
 	@Override
 	public Void visitDefinitionGlobal(final DefinitionGlobalContext ctx) {
-		final JassType type = this.jassTypeVisitor.visit(ctx.type());
-		final JassType arrayPrimType = type.visit(ArrayPrimitiveTypeVisitor.getInstance());
 		try {
-			if (arrayPrimType != null) {
-				this.globals.createGlobalArray(ctx.ID().getText(), type);
-			}
-			else {
-				this.globals.createGlobal(ctx.ID().getText(), type,
-						this.jassExpressionVisitor.visit(ctx.assignTail().expression()).evaluate(this.globals,
-								EMPTY_LOCAL_SCOPE, JassProgramVisitor.EMPTY_TRIGGER_SCOPE));
-			}
+			this.programVisitor.defineGlobal(ctx.ID().getText(), this.jassTypeVisitor.visit(ctx.type()),
+					this.jassExpressionVisitor.visit(ctx.assignTail().expression()));
 		}
 		catch (final Exception exc) {
 			throw new RuntimeException(ctx.getText(), exc);
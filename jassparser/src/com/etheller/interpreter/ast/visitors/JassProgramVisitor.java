@@ -10,32 +10,40 @@ import com.etheller.interpreter.JassParser.GlobalContext;
 import com.etheller.interpreter.JassParser.ProgramContext;
 import com.etheller.interpreter.JassParser.StatementContext;
 import com.etheller.interpreter.JassParser.TypeDeclarationContext;
+import com.etheller.interpreter.ast.cache.JassProgramImageWriter;
+import com.etheller.interpreter.ast.expression.JassExpression;
 import com.etheller.interpreter.ast.function.JassNativeManager;
+import com.etheller.interpreter.ast.function.JassParameter;
 import com.etheller.interpreter.ast.function.UserJassFunction;
 import com.etheller.interpreter.ast.scope.GlobalScope;
+import com.etheller.interpreter.ast.scope.LocalScope;
 import com.etheller.interpreter.ast.scope.TriggerExecutionScope;
 import com.etheller.interpreter.ast.statement.JassStatement;
 import com.etheller.interpreter.ast.util.JassSettings;
+import com.etheller.interpreter.ast.value.JassType;
+import com.etheller.interpreter.ast.value.visitor.ArrayPrimitiveTypeVisitor;
 
 public class JassProgramVisitor extends JassBaseVisitor<Void> {
 	public static final TriggerExecutionScope EMPTY_TRIGGER_SCOPE = new TriggerExecutionScope(null);
+	private static final LocalScope EMPTY_LOCAL_SCOPE = new LocalScope();
 	private final GlobalScope globals = new GlobalScope();
 	private final JassNativeManager jassNativeManager = new JassNativeManager();
 	private final JassTypeVisitor jassTypeVisitor = new JassTypeVisitor(this.globals);
 	private final ArgumentExpressionHandler argumentExpressionHandler = new ArgumentExpressionHandler();
 	private final JassExpressionVisitor jassExpressionVisitor = new JassExpressionVisitor(
-			this.argumentExpressionHandler);
+			this.argumentExpressionHandler, this.globals.getStrings());
 	private final JassArgumentsVisitor jassArgumentsVisitor = new JassArgumentsVisitor(this.argumentExpressionHandler);
 	{
 		this.argumentExpressionHandler.setJassArgumentsVisitor(this.jassArgumentsVisitor);
 		this.argumentExpressionHandler.setJassExpressionVisitor(this.jassExpressionVisitor);
 	}
-	private final JassGlobalsVisitor jassGlobalsVisitor = new JassGlobalsVisitor(this.globals, this.jassTypeVisitor,
+	private final JassGlobalsVisitor jassGlobalsVisitor = new JassGlobalsVisitor(this, this.jassTypeVisitor,
 			this.jassExpressionVisitor);
 	private final JassParametersVisitor jassParametersVisitor = new JassParametersVisitor(this.jassTypeVisitor);
 	private final JassStatementVisitor jassStatementVisitor = new JassStatementVisitor(this.argumentExpressionHandler,
 			this.jassTypeVisitor);
 	private String jassFileName;
+	private JassProgramImageWriter programImageWriter;
 
 	@Override
 	public Void visitBlock(final BlockContext ctx) {
@@ -49,9 +57,8 @@ public class JassProgramVisitor extends JassBaseVisitor<Void> {
 			if (JassSettings.LOG_FUNCTION_DEFINITIONS) {
 				System.out.println("Registering native: " + text);
 			}
-			this.jassNativeManager.registerNativeCode(ctx.getStart().getLine(), this.jassFileName, text,
-					this.jassParametersVisitor.visit(ctx.nativeBlock().paramList()),
-					this.jassTypeVisitor.visit(ctx.nativeBlock().type()), this.globals);
+			defineNative(ctx.getStart().getLine(), text, this.jassParametersVisitor.visit(ctx.nativeBlock().paramList()),
+					this.jassTypeVisitor.visit(ctx.nativeBlock().type()));
 		}
 		return null;
 	}
@@ -64,15 +71,14 @@ public class JassProgramVisitor extends JassBaseVisitor<Void> {
 		}
 		final UserJassFunction userJassFunction = new UserJassFunction(statements,
 				this.jassParametersVisitor.visit(ctx.paramList()), this.jassTypeVisitor.visit(ctx.type()));
-		this.globals.defineFunction(ctx.getStart().getLine(), this.jassFileName, ctx.ID().getText(), userJassFunction);
+		defineFunction(ctx.getStart().getLine(), ctx.ID().getText(), userJassFunction);
 		return null;
 	}
 
 	@Override
 	public Void visitProgram(final ProgramContext ctx) {
 		for (final TypeDeclarationContext typeDefinitionContext : ctx.typeDeclarationBlock().typeDeclaration()) {
-			this.globals.loadTypeDefinition(typeDefinitionContext.ID(0).getText(),
-					typeDefinitionContext.ID(1).getText());
+			loadTypeDefinition(typeDefinitionContext.ID(0).getText(), typeDefinitionContext.ID(1).getText());
 		}
 		for (final BlockContext blockContext : ctx.block()) {
 			visit(blockContext);
@@ -85,8 +91,7 @@ public class JassProgramVisitor extends JassBaseVisitor<Void> {
 			final UserJassFunction userJassFunction = new UserJassFunction(statements,
 					this.jassParametersVisitor.visit(functionBlockContext.paramList()),
 					this.jassTypeVisitor.visit(functionBlockContext.type()));
-			this.globals.defineFunction(ctx.getStart().getLine(), this.jassFileName,
-					functionBlockContext.ID().getText(), userJassFunction);
+			defineFunction(ctx.getStart().getLine(), functionBlockContext.ID().getText(), userJassFunction);
 			if (JassSettings.LOG_FUNCTION_DEFINITIONS) {
 				System.out.println("Defining jass user function: " + functionBlockContext.ID().getText());
 			}
@@ -94,6 +99,61 @@ public class JassProgramVisitor extends JassBaseVisitor<Void> {
 		return null;
 	}
 
+	// everything a program declares goes through the methods below, both when it
+	// is parsed and when it is loaded from a program image, so that the two build
+	// the same program
+
+	public void loadTypeDefinition(final String type, final String supertype) {
+		this.globals.loadTypeDefinition(type, supertype);
+		if (this.programImageWriter != null) {
+			this.programImageWriter.writeTypeDefinition(type, supertype);
+		}
+	}
+
+	/**
+	 * @param initializer the expression the global is set to, or null
+	 */
+	public void defineGlobal(final String name, final JassType type, final JassExpression initializer) {
+		if (this.programImageWriter != null) {
+			this.programImageWriter.writeGlobal(name, type, initializer);
+		}
+		final JassType arrayPrimType = type.visit(ArrayPrimitiveTypeVisitor.getInstance());
+		if (arrayPrimType != null) {
+			this.globals.createGlobalArray(name, type);
+		}
+		else if (initializer == null) {
+			this.globals.createGlobal(name, type);
+		}
+		else {
+			this.globals.createGlobal(name, type,
+					initializer.evaluate(this.globals, EMPTY_LOCAL_SCOPE, EMPTY_TRIGGER_SCOPE));
+		}
+	}
+
+	public void defineNative(final int lineNo, final String name, final List<JassParameter> parameters,
+			final JassType returnType) {
+		if (this.programImageWriter != null) {
+			this.programImageWriter.writeNative(lineNo, name, parameters, returnType);
+		}
+		this.jassNativeManager.registerNativeCode(lineNo, this.jassFileName, name, parameters, returnType,
+				this.globals);
+	}
+
+	public void defineFunction(final int lineNo, final String name, final UserJassFunction function) {
+		if (this.programImageWriter != null) {
+			this.programImageWriter.writeFunction(lineNo, name, function);
+		}
+		this.globals.defineFunction(lineNo, this.jassFileName, name, function);
+	}
+
+	/**
+	 * @param programImageWriter records every declaration from now on, or null to
+	 *                           stop recording
+	 */
+	public void setProgramImageWriter(final JassProgramImageWriter programImageWriter) {
+		this.programImageWriter = programImageWriter;
+	}
+
 	public GlobalScope getGlobals() {
 		return this.globals;
 	}
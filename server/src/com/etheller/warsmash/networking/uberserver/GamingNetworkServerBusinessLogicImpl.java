@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
+import com.etheller.warsmash.networking.WarsmashGameHost;
 import com.etheller.warsmash.networking.WarsmashServer;
 import com.etheller.warsmash.networking.uberserver.users.PasswordAuthentication;
 import com.etheller.warsmash.networking.uberserver.users.User;
@@ -36,6 +37,7 @@ public class GamingNetworkServerBusinessLogicImpl {
 	private final Map<String, ChatChannel> nameLowerCaseToChannel = new HashMap<>();
 	private final Map<String, HostedGame> nameLowerCaseToGame = new HashMap<>();
 	private final Random random;
+	private WarsmashGameHost gameHost;
 
 	public GamingNetworkServerBusinessLogicImpl(final Set<AcceptedGameListKey> acceptedGames,
 			final UserManager userManager, final String welcomeMessage, GamingNetworkServerTracker tracker) {
@@ -403,7 +405,7 @@ public class GamingNetworkServerBusinessLogicImpl {
 				final HostedGame game = this.nameLowerCaseToGame.get(channelKey);
 				if (game != null) {
 					if (game.getHostUser() == session.getUser()) {
-						game.onStartGame();
+						game.onStartGame(getGameHost());
 						tracker.gameLobbyStartGame(connectionContext.getAddressString(), session.getUser(), channelKey);
 					}
 					else {
@@ -449,6 +451,7 @@ public class GamingNetworkServerBusinessLogicImpl {
 			session.currentGameName = null;
 			if (previousGame.isEmpty()) {
 				this.nameLowerCaseToGame.remove(previousGameKey);
+				previousGame.onCloseGame();
 			}
 			else if (session.getUser() == previousGame.getHostUser()) {
 				// host leaves the game, but it is not empty.
@@ -461,6 +464,24 @@ public class GamingNetworkServerBusinessLogicImpl {
 		}
 	}
 
+	/**
+	 * @return the socket and thread shared by all started games, started with the
+	 *         first of them
+	 */
+	private WarsmashGameHost getGameHost() {
+		if (this.gameHost == null) {
+			try {
+				this.gameHost = new WarsmashGameHost(0);
+			}
+			catch (final IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+			this.gameHost.startThread();
+		}
+		return this.gameHost;
+	}
+
 	private void closeGame(final String previousGameKey, final HostedGame previousGame) {
 		// 1.) notify clients that they were booted from game
 		for (final SessionImpl nonHostUserSession : previousGame.userSessionSlots) {
@@ -961,9 +982,13 @@ public class GamingNetworkServerBusinessLogicImpl {
 			if (this.mapFile != null) {
 				this.mapFile.delete();
 			}
+			// the lobby closes when the host's connection drops or its session expires,
+			// which must not end a game in progress, so the game host closes the game
+			// once its players go quiet instead
+			this.warsmashGameServer = null;
 		}
 
-		public void onStartGame() {
+		public void onStartGame(final WarsmashGameHost gameHost) {
 			final Map<Long, Integer> sessionTokenToSlot = new HashMap<>();
 			for (int i = 0; i < this.userSessionSlotsGameData.length; i++) {
 				if (this.userSessionSlotsGameData[i].type == LobbyPlayerType.USER) {
@@ -971,14 +996,16 @@ public class GamingNetworkServerBusinessLogicImpl {
 				}
 			}
 
+			if (gameHost == null) {
+				return;
+			}
 			try {
-				this.warsmashGameServer = new WarsmashServer(0, sessionTokenToSlot);
+				this.warsmashGameServer = gameHost.createGame(sessionTokenToSlot);
 			}
 			catch (final IOException e) {
 				e.printStackTrace();
 			}
 			if (this.warsmashGameServer != null) {
-				this.warsmashGameServer.startThread();
 				final InetSocketAddress localAddress = this.warsmashGameServer.getLocalAddress();
 				if (localAddress != null) {
 					InetAddress localHost;
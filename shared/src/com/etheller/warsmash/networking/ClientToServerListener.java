@@ -24,8 +24,16 @@ public interface ClientToServerListener {
 
 	void issueGuiPlayerEvent(SocketAddress sourceAddress, long sessionToken, int eventId);
 
-	void finishedTurn(SocketAddress sourceAddress, long sessionToken, int gameTurnTick);
+	/**
+	 * @param stateHash the hash of the simulation after the turn, or
+	 *                  {@link ClientToServerProtocol#NO_STATE_HASH} on turns
+	 *                  that are not checked
+	 */
+	void finishedTurn(SocketAddress sourceAddress, long sessionToken, int gameTurnTick, long stateHash);
 
 	void framesSkipped(long sessionToken, int nFramesSkipped);
 
+	void clientTiming(SocketAddress sourceAddress, long sessionToken, long serverTimeMillis, int frameMillis,
+			int tickMillis);
+
 }
@@ -12,4 +12,10 @@ public class ClientToServerProtocol {
 	public static final int JOIN_GAME = 7;
 	public static final int FRAMES_SKIPPED = 8;
 	public static final int ISSUE_GUI_PLAYER_EVENT = 10;
+	public static final int CLIENT_TIMING = 11;
+	// turns between the simulation state hashes that ride along with
+	// FINISHED_TURN, about once a second at full speed
+	public static final int STATE_HASH_INTERVAL_TURNS = 20;
+	// the state hash of a FINISHED_TURN on any other turn
+	public static final long NO_STATE_HASH = 0;
 }
@@ -7,6 +7,20 @@ public interface GameTurnManager {
 
 	void framesSkipped(float skippedCount);
 
+	/**
+	 * @return how much longer than a simulation step a turn should take, 1 unless
+	 *         the server slowed the game down for a player that cannot keep up
+	 */
+	float getTurnLengthScale();
+
+	/**
+	 * Called after each frame that ran the simulation.
+	 *
+	 * @param frameTime the time since the previous frame
+	 * @param tickTime  the time that one simulation step took during the frame
+	 */
+	void frameTimed(float frameTime, float tickTime);
+
 	GameTurnManager PAUSED = new GameTurnManager() {
 		@Override
 		public int getLatestCompletedTurn() {
@@ -21,6 +35,15 @@ public interface GameTurnManager {
 		@Override
 		public void framesSkipped(final float skippedCount) {
 		}
+
+		@Override
+		public float getTurnLengthScale() {
+			return 1;
+		}
+
+		@Override
+		public void frameTimed(final float frameTime, final float tickTime) {
+		}
 	};
 
 	GameTurnManager LOCAL = new GameTurnManager() {
@@ -36,6 +59,15 @@ public interface GameTurnManager {
 		@Override
 		public void framesSkipped(final float skippedCount) {
 		}
+
+		@Override
+		public float getTurnLengthScale() {
+			return 1;
+		}
+
+		@Override
+		public void frameTimed(final float frameTime, final float tickTime) {
+		}
 	};
 
 }
@@ -0,0 +1,164 @@
+package com.etheller.warsmash.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decides when the lockstep server may start a turn, and adapts two things to
+ * the players of the game:
+ * <ul>
+ * <li>the input delay, the number of turns the server may run ahead of the
+ * slowest player, which is also how many turns after it was given an order is
+ * run. It follows the worst round trip plus frame time of the players, so that
+ * the turns a player needs have usually arrived before it needs them.</li>
+ * <li>the turn length, the time the players take for a turn. It follows the
+ * player whose simulation steps take longest, so that everyone slows down
+ * evenly instead of stalling on that player every few turns.</li>
+ * </ul>
+ * It keeps no clock of its own, the server passes in what it measured, which
+ * lets the tests drive it with simulated players.
+ */
+public class LockstepPacer {
+	// WarsmashConstants.SIMULATION_STEP_TIME of the clients, the turn length when
+	// nobody is slow
+	public static final int SIMULATION_STEP_MILLIS = 50;
+	// a player whose steps take nearly all of a turn falls behind on any hiccup
+	private static final float TICK_MARGIN = 1.25f;
+
+	private final int minInputDelay;
+	private final int maxInputDelay;
+	private final int maxTurnMillis;
+	private final Map<Integer, PlayerTiming> indexToPlayer = new TreeMap<>();
+	private int inputDelay;
+	private int turnMillis = SIMULATION_STEP_MILLIS;
+
+	public LockstepPacer(final int initialInputDelay, final int minInputDelay, final int maxInputDelay,
+			final int maxTurnMillis) {
+		this.minInputDelay = minInputDelay;
+		this.maxInputDelay = maxInputDelay;
+		this.maxTurnMillis = maxTurnMillis;
+		this.inputDelay = clamp(initialInputDelay, minInputDelay, maxInputDelay);
+	}
+
+	public void addPlayer(final int playerIndex) {
+		if (!this.indexToPlayer.containsKey(playerIndex)) {
+			this.indexToPlayer.put(playerIndex, new PlayerTiming());
+		}
+	}
+
+	public void turnFinished(final int playerIndex, final int gameTurnTick) {
+		final PlayerTiming player = this.indexToPlayer.get(playerIndex);
+		if ((player != null) && (gameTurnTick > player.finishedTurn)) {
+			player.finishedTurn = gameTurnTick;
+		}
+	}
+
+	public boolean canStartTurn(final int gameTurnTick) {
+		for (final PlayerTiming player : this.indexToPlayer.values()) {
+			if ((player.finishedTurn + this.inputDelay) < gameTurnTick) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the players that keep the turn from starting
+	 */
+	public int[] getLaggingPlayers(final int gameTurnTick) {
+		final List<Integer> laggingPlayers = new ArrayList<>();
+		for (final Map.Entry<Integer, PlayerTiming> entry : this.indexToPlayer.entrySet()) {
+			if ((entry.getValue().finishedTurn + this.inputDelay) < gameTurnTick) {
+				laggingPlayers.add(entry.getKey());
+			}
+		}
+		final int[] laggingPlayerIndices = new int[laggingPlayers.size()];
+		for (int i = 0; i < laggingPlayerIndices.length; i++) {
+			laggingPlayerIndices[i] = laggingPlayers.get(i);
+		}
+		return laggingPlayerIndices;
+	}
+
+	public void roundTrip(final int playerIndex, final long roundTripMillis) {
+		final PlayerTiming player = this.indexToPlayer.get(playerIndex);
+		if (player == null) {
+			return;
+		}
+		// RFC 6298, like the retransmit timer of the udp layer
+		if (player.smoothedRoundTripMillis == -1) {
+			player.smoothedRoundTripMillis = roundTripMillis;
+			player.roundTripVarianceMillis = roundTripMillis / 2;
+		}
+		else {
+			player.roundTripVarianceMillis = ((3 * player.roundTripVarianceMillis)
+					+ Math.abs(player.smoothedRoundTripMillis - roundTripMillis)) / 4;
+			player.smoothedRoundTripMillis = ((7 * player.smoothedRoundTripMillis) + roundTripMillis) / 8;
+		}
+	}
+
+	public void clientTimes(final int playerIndex, final int frameMillis, final int tickMillis) {
+		final PlayerTiming player = this.indexToPlayer.get(playerIndex);
+		if (player != null) {
+			player.frameMillis = frameMillis;
+			player.tickMillis = tickMillis;
+		}
+	}
+
+	/**
+	 * Moves the turn length and input delay towards what the latest measurements
+	 * call for. Both grow at once, since a player falling behind stalls everyone,
+	 * and shrink a step at a time, so that one quiet second does not undo them.
+	 */
+	public void adjust() {
+		int slowestTickMillis = 0;
+		long worstLatencyMillis = 0;
+		for (final PlayerTiming player : this.indexToPlayer.values()) {
+			slowestTickMillis = Math.max(slowestTickMillis, player.tickMillis);
+			long latencyMillis = player.frameMillis;
+			if (player.smoothedRoundTripMillis != -1) {
+				latencyMillis += player.smoothedRoundTripMillis + (4 * player.roundTripVarianceMillis);
+			}
+			worstLatencyMillis = Math.max(worstLatencyMillis, latencyMillis);
+		}
+
+		final int targetTurnMillis = clamp((int) Math.ceil(slowestTickMillis * TICK_MARGIN), SIMULATION_STEP_MILLIS,
+				Math.max(SIMULATION_STEP_MILLIS, this.maxTurnMillis));
+		if (targetTurnMillis >= this.turnMillis) {
+			this.turnMillis = targetTurnMillis;
+		}
+		else {
+			this.turnMillis -= Math.max(1, (this.turnMillis - targetTurnMillis) / 2);
+		}
+
+		final int targetInputDelay = clamp((int) ((worstLatencyMillis + this.turnMillis - 1) / this.turnMillis),
+				this.minInputDelay, this.maxInputDelay);
+		if (targetInputDelay >= this.inputDelay) {
+			this.inputDelay = targetInputDelay;
+		}
+		else {
+			this.inputDelay--;
+		}
+	}
+
+	public int getInputDelay() {
+		return this.inputDelay;
+	}
+
+	public int getTurnMillis() {
+		return this.turnMillis;
+	}
+
+	private static int clamp(final int value, final int min, final int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	private static final class PlayerTiming {
+		private int finishedTurn;
+		private long smoothedRoundTripMillis = -1;
+		private long roundTripVarianceMillis;
+		private int frameMillis;
+		private int tickMillis;
+	}
+}
@@ -26,4 +26,22 @@ public interface ServerToClientListener {
 	void finishedTurn(int gameTurnTick);
 
 	void heartbeat();
+
+	/**
+	 * @param turnMillis       how long a turn should take
+	 * @param inputDelayTurns  how many turns after it was given an order is run
+	 * @param serverTimeMillis to be sent back, for the server to measure the
+	 *                         round trip
+	 * @param laggingPlayers   the players that the server is waiting for
+	 */
+	void lagReport(int turnMillis, int inputDelayTurns, long serverTimeMillis, int[] laggingPlayers);
+
+	/**
+	 * @param desyncTurnTick the first turn after which the players' simulations
+	 *                       were found to differ
+	 * @param dumpTurnTick   the turn after which every player should write out
+	 *                       its simulation state, the same for all of them so that
+	 *                       the dumps can be compared
+	 */
+	void desync(int desyncTurnTick, int dumpTurnTick);
 }
@@ -13,4 +13,13 @@ public class ServerToClientProtocol {
 	public static final int ACCEPT_JOIN = 7;
 	public static final int START_GAME = 8;
 	public static final int HEARTBEAT = 9;
+	// header of a datagram with the orders of one turn, followed by that many
+	// order messages
+	public static final int TURN_FRAME = 12;
+	// the pacing the server wants and the players it is waiting for, which the
+	// client answers with CLIENT_TIMING
+	public static final int LAG_REPORT = 13;
+	// the players' state hashes differed, with the turn at which they should
+	// write their state out for comparison
+	public static final int DESYNC = 14;
 }
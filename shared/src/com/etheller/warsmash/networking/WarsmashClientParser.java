@@ -6,6 +6,8 @@ import net.warsmash.networking.udp.OrderedUdpClientListener;
 
 public class WarsmashClientParser implements OrderedUdpClientListener {
 	private final ServerToClientListener listener;
+	private int turnFrameTurnTick = -1;
+	private int turnFrameOrdersRemaining;
 
 	public WarsmashClientParser(final ServerToClientListener listener) {
 		this.listener = listener;
@@ -13,7 +15,8 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 
 	@Override
 	public void cantReplay(final int seqNo) {
-		throw new IllegalStateException("Cant replay seqNo=" + seqNo + " !");
+		// runs on the network thread, so report it rather than throw
+		System.err.println("Lost the connection to the server, it never acknowledged seqNo=" + seqNo + " !!");
 	}
 
 	@Override
@@ -30,6 +33,7 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 				final int protocol = buffer.getInt();
 				switch (protocol) {
 				case ServerToClientProtocol.ISSUE_TARGET_ORDER: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int unitHandleId = buffer.getInt();
 					final int abilityHandleId = buffer.getInt();
@@ -41,6 +45,7 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					break;
 				}
 				case ServerToClientProtocol.ISSUE_POINT_ORDER: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int unitHandleId = buffer.getInt();
 					final int abilityHandleId = buffer.getInt();
@@ -52,6 +57,7 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					break;
 				}
 				case ServerToClientProtocol.ISSUE_DROP_ITEM_ORDER: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int unitHandleId = buffer.getInt();
 					final int abilityHandleId = buffer.getInt();
@@ -65,6 +71,7 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					break;
 				}
 				case ServerToClientProtocol.ISSUE_DROP_ITEM_ON_TARGET_ORDER: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int unitHandleId = buffer.getInt();
 					final int abilityHandleId = buffer.getInt();
@@ -77,6 +84,7 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					break;
 				}
 				case ServerToClientProtocol.ISSUE_IMMEDIATE_ORDER: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int unitHandleId = buffer.getInt();
 					final int abilityHandleId = buffer.getInt();
@@ -86,6 +94,7 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					break;
 				}
 				case ServerToClientProtocol.UNIT_CANCEL_TRAINING: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int unitHandleId = buffer.getInt();
 					final int cancelIndex = buffer.getInt();
@@ -93,13 +102,27 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					break;
 				}
 				case ServerToClientProtocol.ISSUE_GUI_PLAYER_EVENT: {
+					countTurnFrameOrder();
 					final int playerIndex = buffer.getInt();
 					final int eventId = buffer.getInt();
 					this.listener.issueGuiPlayerEvent(playerIndex, eventId);
 					break;
 				}
+				case ServerToClientProtocol.TURN_FRAME: {
+					final int gameTurnTick = buffer.getInt();
+					final int orderCount = buffer.getInt();
+					checkTurnFrameComplete();
+					this.turnFrameTurnTick = gameTurnTick;
+					this.turnFrameOrdersRemaining = orderCount;
+					break;
+				}
 				case ServerToClientProtocol.FINISHED_TURN: {
 					final int gameTurnTick = buffer.getInt();
+					checkTurnFrameComplete();
+					if ((this.turnFrameTurnTick != -1) && (this.turnFrameTurnTick != gameTurnTick)) {
+						System.err.println("Got finishedTurn(" + gameTurnTick + ") in the turn frame of turn "
+								+ this.turnFrameTurnTick + "!!");
+					}
 					this.listener.finishedTurn(gameTurnTick);
 					break;
 				}
@@ -116,6 +139,23 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 					this.listener.heartbeat();
 					break;
 				}
+				case ServerToClientProtocol.LAG_REPORT: {
+					final int turnMillis = buffer.getInt();
+					final int inputDelayTurns = buffer.getInt();
+					final long serverTimeMillis = buffer.getLong();
+					final int[] laggingPlayers = new int[buffer.getInt()];
+					for (int i = 0; i < laggingPlayers.length; i++) {
+						laggingPlayers[i] = buffer.getInt();
+					}
+					this.listener.lagReport(turnMillis, inputDelayTurns, serverTimeMillis, laggingPlayers);
+					break;
+				}
+				case ServerToClientProtocol.DESYNC: {
+					final int desyncTurnTick = buffer.getInt();
+					final int dumpTurnTick = buffer.getInt();
+					this.listener.desync(desyncTurnTick, dumpTurnTick);
+					break;
+				}
 
 				default:
 					System.err.println("Got unknown protocol: " + protocol);
@@ -127,4 +167,18 @@ public class WarsmashClientParser implements OrderedUdpClientListener {
 			buffer.position(initialLimit);
 		}
 	}
+
+	private void countTurnFrameOrder() {
+		if (this.turnFrameOrdersRemaining > 0) {
+			this.turnFrameOrdersRemaining--;
+		}
+	}
+
+	private void checkTurnFrameComplete() {
+		if (this.turnFrameOrdersRemaining != 0) {
+			System.err.println("Turn frame of turn " + this.turnFrameTurnTick + " ended "
+					+ this.turnFrameOrdersRemaining + " orders short!!");
+			this.turnFrameOrdersRemaining = 0;
+		}
+	}
 }
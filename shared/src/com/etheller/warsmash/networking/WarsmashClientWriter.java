@@ -101,12 +101,13 @@ public class WarsmashClientWriter {
 		this.sendBuffer.putInt(eventId);
 	}
 
-	public void finishedTurn(final int gameTurnTick) {
+	public void finishedTurn(final int gameTurnTick, final long stateHash) {
 		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 8 + 4);
+		this.sendBuffer.putInt(4 + 8 + 4 + 8);
 		this.sendBuffer.putInt(ClientToServerProtocol.FINISHED_TURN);
 		this.sendBuffer.putLong(this.sessionToken);
 		this.sendBuffer.putInt(gameTurnTick);
+		this.sendBuffer.putLong(stateHash);
 	}
 
 	public void framesSkipped(final int skippedCount) {
@@ -117,6 +118,16 @@ public class WarsmashClientWriter {
 		this.sendBuffer.putInt(skippedCount);
 	}
 
+	public void clientTiming(final long serverTimeMillis, final int frameMillis, final int tickMillis) {
+		this.sendBuffer.clear();
+		this.sendBuffer.putInt(4 + 8 + 8 + 4 + 4);
+		this.sendBuffer.putInt(ClientToServerProtocol.CLIENT_TIMING);
+		this.sendBuffer.putLong(this.sessionToken);
+		this.sendBuffer.putLong(serverTimeMillis);
+		this.sendBuffer.putInt(frameMillis);
+		this.sendBuffer.putInt(tickMillis);
+	}
+
 	public void joinGame() {
 		this.sendBuffer.clear();
 		this.sendBuffer.putInt(4 + 8);
@@ -0,0 +1,124 @@
+package com.etheller.warsmash.networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.warsmash.networking.udp.OrderedUdpCommuncation;
+import net.warsmash.networking.udp.UdpServer;
+import net.warsmash.networking.udp.UdpServerListener;
+
+/**
+ * Runs any number of games on one UDP socket and one thread, instead of a
+ * socket and a thread for each {@link WarsmashServer}. Every message from a
+ * client starts with its length, its protocol and its session token, so a
+ * datagram carrying messages goes to the game of that session token, and the
+ * address it came from is remembered for the acknowledgements, which carry no
+ * session token. Games are created from other threads, such as the one of the
+ * lobby server, and closed once none of their players has sent anything for
+ * a while, since players keep sending every turn, or every frame while they
+ * wait for one, as long as they are in the game. The lobby can come and go
+ * without ending a game that is being played.
+ */
+public class WarsmashGameHost implements UdpServerListener, Runnable {
+	private static final long UPDATE_INTERVAL_MILLIS = 10;
+	private static final int SESSION_TOKEN_OFFSET = 4 + 4;
+	// long enough for the slowest player to load the map before joining
+	private static final long IDLE_GAME_TIMEOUT_MILLIS = 5 * 60 * 1000;
+	private final UdpServer udpServer;
+	private final Map<Long, WarsmashServer> sessionTokenToGame = new ConcurrentHashMap<>();
+	private final Map<SocketAddress, WarsmashServer> addressToGame = new ConcurrentHashMap<>();
+	private final Set<WarsmashServer> games = ConcurrentHashMap.newKeySet();
+	private final long idleGameTimeoutMillis;
+	private long lastUpdateTime;
+
+	public WarsmashGameHost(final int port) throws IOException {
+		this(port, IDLE_GAME_TIMEOUT_MILLIS);
+	}
+
+	WarsmashGameHost(final int port, final long idleGameTimeoutMillis) throws IOException {
+		this.udpServer = new UdpServer(port, this);
+		this.idleGameTimeoutMillis = idleGameTimeoutMillis;
+	}
+
+	public int getPort() {
+		return this.udpServer.getPort();
+	}
+
+	public InetSocketAddress getLocalAddress() {
+		return this.udpServer.getLocalAddress();
+	}
+
+	public void startThread() {
+		new Thread(this).start();
+	}
+
+	public void stop() {
+		this.udpServer.setRunning(false);
+	}
+
+	public WarsmashServer createGame(final Map<Long, Integer> sessionTokenToPermittedSlot) throws IOException {
+		final WarsmashServer game = new WarsmashServer(this.udpServer, sessionTokenToPermittedSlot);
+		for (final Long sessionToken : game.getSessionTokens()) {
+			this.sessionTokenToGame.put(sessionToken, game);
+		}
+		this.games.add(game);
+		return game;
+	}
+
+	public void closeGame(final WarsmashServer game) {
+		this.games.remove(game);
+		this.sessionTokenToGame.values().removeIf(otherGame -> otherGame == game);
+		this.addressToGame.values().removeIf(otherGame -> otherGame == game);
+	}
+
+	public int getGameCount() {
+		return this.games.size();
+	}
+
+	@Override
+	public void parse(final SocketAddress sourceAddress, final ByteBuffer buffer) {
+		WarsmashServer game = null;
+		final int dataIndex = OrderedUdpCommuncation.getDataIndex(buffer);
+		if ((dataIndex != -1) && ((dataIndex + SESSION_TOKEN_OFFSET + 8) <= buffer.limit())) {
+			game = this.sessionTokenToGame.get(buffer.getLong(dataIndex + SESSION_TOKEN_OFFSET));
+			if (game != null) {
+				this.addressToGame.put(sourceAddress, game);
+			}
+		}
+		if (game == null) {
+			game = this.addressToGame.get(sourceAddress);
+			if (game == null) {
+				// not from a player of any game we host
+				return;
+			}
+		}
+		game.parse(sourceAddress, buffer);
+	}
+
+	@Override
+	public void run() {
+		this.udpServer.setRunning(true);
+		while (this.udpServer.isRunning()) {
+			this.udpServer.receive(UPDATE_INTERVAL_MILLIS);
+			final long currentTimeMillis = System.currentTimeMillis();
+			if ((currentTimeMillis - this.lastUpdateTime) >= UPDATE_INTERVAL_MILLIS) {
+				for (final WarsmashServer game : this.games) {
+					if ((currentTimeMillis - game.getLastReceiveTimeMillis()) >= this.idleGameTimeoutMillis) {
+						System.out.println("Closing game " + game.getSessionTokens()
+								+ ", none of its players sent anything for " + this.idleGameTimeoutMillis + "ms");
+						closeGame(game);
+					}
+					else {
+						game.update();
+					}
+				}
+				this.lastUpdateTime = currentTimeMillis;
+			}
+		}
+	}
+}
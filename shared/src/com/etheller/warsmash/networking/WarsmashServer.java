@@ -3,6 +3,7 @@ package com.etheller.warsmash.networking;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,23 +11,41 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.warsmash.networking.udp.OrderedUdpServer;
+import net.warsmash.networking.udp.UdpServer;
 import net.warsmash.uberserver.GamingNetwork;
 
 public class WarsmashServer implements ClientToServerListener {
 	private static final boolean VERBOSE_LOGGING = false;
-	private static final int MAGIC_DELAY_OFFSET = 4; // 4
+	// turns of input delay, before the pacer has measured the players
+	private static final int INITIAL_INPUT_DELAY = 4;
+	private static final int MIN_INPUT_DELAY = 2;
+	private static final int MAX_INPUT_DELAY = 20;
+	// at most half speed for a player whose simulation cannot keep up
+	private static final int MAX_TURN_MILLIS = 2 * LockstepPacer.SIMULATION_STEP_MILLIS;
+	// about once a second at full speed
+	private static final int LAG_REPORT_INTERVAL_TURNS = 20;
+	private static final long STALLED_LAG_REPORT_INTERVAL_MILLIS = 1000;
+	// hashes of players that stopped reporting are forgotten after this
+	private static final int STATE_HASH_HISTORY_TURNS = 10 * ClientToServerProtocol.STATE_HASH_INTERVAL_TURNS;
 	private final OrderedUdpServer udpServer;
 	private final Set<SocketAddress> socketAddressesKnown = new HashSet<>();
 	private final Map<Long, Integer> sessionTokenToPermittedSlot;
-	private final Map<SocketAddress, Integer> clientToTurnFinished = new HashMap<>();
+	private final LockstepPacer pacer = new LockstepPacer(INITIAL_INPUT_DELAY, MIN_INPUT_DELAY, MAX_INPUT_DELAY,
+			MAX_TURN_MILLIS);
 	private final List<Runnable> turnActions = new ArrayList<>();
+	// turns that not every player has sent its state hash for yet
+	private final TreeMap<Integer, Map<Integer, Long>> turnToPlayerStateHashes = new TreeMap<>();
+	private int desyncTurnTick = -1;
 	private final WarsmashServerWriter writer;
-	private int currentTurnTick = MAGIC_DELAY_OFFSET;
+	private int currentTurnTick;
 	private boolean gameStarted = false;
 	private long lastServerHeartbeatTime = 0;
+	private long lastLagReportTime = 0;
 	private int joinCount = 0;
+	private long lastReceiveTimeMillis = System.currentTimeMillis();
 
 	public WarsmashServer(final int port, final Map<Long, Integer> sessionTokenToPermittedSlot) throws IOException {
 		this.udpServer = new OrderedUdpServer(port, new WarsmashServerParser(this));
@@ -34,6 +53,17 @@ public class WarsmashServer implements ClientToServerListener {
 		this.sessionTokenToPermittedSlot = sessionTokenToPermittedSlot;
 	}
 
+	/**
+	 * A game that shares its socket with the other games of a
+	 * {@link WarsmashGameHost}, which runs it instead of {@link #startThread()}.
+	 */
+	WarsmashServer(final UdpServer sharedUdpServer, final Map<Long, Integer> sessionTokenToPermittedSlot)
+			throws IOException {
+		this.udpServer = new OrderedUdpServer(sharedUdpServer, new WarsmashServerParser(this));
+		this.writer = new WarsmashServerWriter(this.udpServer, this.socketAddressesKnown);
+		this.sessionTokenToPermittedSlot = sessionTokenToPermittedSlot;
+	}
+
 	// Useful for if they pass 0 as port and get an auto-assigned one
 	public int getPort() {
 		return this.udpServer.getPort();
@@ -47,8 +77,34 @@ public class WarsmashServer implements ClientToServerListener {
 		new Thread(this.udpServer).start();
 	}
 
+	Set<Long> getSessionTokens() {
+		return this.sessionTokenToPermittedSlot.keySet();
+	}
+
+	void parse(final SocketAddress sourceAddress, final ByteBuffer buffer) {
+		this.lastReceiveTimeMillis = System.currentTimeMillis();
+		this.udpServer.parse(sourceAddress, buffer);
+	}
+
+	/**
+	 * @return when a datagram from a player was last passed to
+	 *         {@link #parse(SocketAddress, ByteBuffer)}, or when the game was
+	 *         created
+	 */
+	long getLastReceiveTimeMillis() {
+		return this.lastReceiveTimeMillis;
+	}
+
+	void update() {
+		this.udpServer.update();
+	}
+
 	public void startGame() {
 		this.gameStarted = true;
+		for (final Integer playerIndex : this.sessionTokenToPermittedSlot.values()) {
+			this.pacer.addPlayer(playerIndex);
+		}
+		this.currentTurnTick = this.pacer.getInputDelay();
 		WarsmashServer.this.writer.startGame();
 		WarsmashServer.this.writer.send();
 		startTurn();
@@ -56,11 +112,27 @@ public class WarsmashServer implements ClientToServerListener {
 
 	private void startTurn() {
 		System.out.println("sending finishedTurn " + this.currentTurnTick);
+		WarsmashServer.this.writer.beginTurnFrame(this.currentTurnTick);
+		for (final Runnable turnAction : this.turnActions) {
+			turnAction.run();
+		}
+		this.turnActions.clear();
+		if ((this.currentTurnTick % LAG_REPORT_INTERVAL_TURNS) == 0) {
+			this.pacer.adjust();
+			writeLagReport();
+		}
 		WarsmashServer.this.writer.finishedTurn(this.currentTurnTick);
-		WarsmashServer.this.writer.send();
+		WarsmashServer.this.writer.sendTurnFrame();
 		this.currentTurnTick++;
 	}
 
+	private void writeLagReport() {
+		final long currentTimeMillis = System.currentTimeMillis();
+		WarsmashServer.this.writer.lagReport(this.pacer.getTurnMillis(), this.pacer.getInputDelay(),
+				currentTimeMillis, this.pacer.getLaggingPlayers(this.currentTurnTick));
+		this.lastLagReportTime = currentTimeMillis;
+	}
+
 	private int getPlayerIndex(final SocketAddress sourceAddress, final long sessionToken) {
 		final Integer permittedSlot = this.sessionTokenToPermittedSlot.get(sessionToken);
 		if (permittedSlot != null) {
@@ -100,7 +172,6 @@ public class WarsmashServer implements ClientToServerListener {
 			public void run() {
 				WarsmashServer.this.writer.issueTargetOrder(playerIndex, unitHandleId, abilityHandleId, orderId,
 						targetHandleId, queue);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
@@ -118,7 +189,6 @@ public class WarsmashServer implements ClientToServerListener {
 			public void run() {
 				WarsmashServer.this.writer.issuePointOrder(playerIndex, unitHandleId, abilityHandleId, orderId, x, y,
 						queue);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
@@ -137,7 +207,6 @@ public class WarsmashServer implements ClientToServerListener {
 			public void run() {
 				WarsmashServer.this.writer.issueDropItemAtPointOrder(playerIndex, unitHandleId, abilityHandleId,
 						orderId, targetHandleId, x, y, queue);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
@@ -156,7 +225,6 @@ public class WarsmashServer implements ClientToServerListener {
 			public void run() {
 				WarsmashServer.this.writer.issueDropItemAtTargetOrder(playerIndex, unitHandleId, abilityHandleId,
 						orderId, targetHandleId, targetHeroHandleId, queue);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
@@ -174,7 +242,6 @@ public class WarsmashServer implements ClientToServerListener {
 			public void run() {
 				WarsmashServer.this.writer.issueImmediateOrder(playerIndex, unitHandleId, abilityHandleId, orderId,
 						queue);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
@@ -191,7 +258,6 @@ public class WarsmashServer implements ClientToServerListener {
 			@Override
 			public void run() {
 				WarsmashServer.this.writer.unitCancelTrainingItem(playerIndex, unitHandleId, cancelIndex);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
@@ -207,36 +273,87 @@ public class WarsmashServer implements ClientToServerListener {
 			@Override
 			public void run() {
 				WarsmashServer.this.writer.issueGuiPlayerEvent(playerIndex, eventId);
-				WarsmashServer.this.writer.send();
 			}
 		});
 	}
 
 	@Override
-	public void finishedTurn(final SocketAddress sourceAddress, final long sessionToken, final int clientGameTurnTick) {
-		final int gameTurnTick = clientGameTurnTick + MAGIC_DELAY_OFFSET;
+	public void finishedTurn(final SocketAddress sourceAddress, final long sessionToken, final int clientGameTurnTick,
+			final long stateHash) {
 		if (VERBOSE_LOGGING) {
-			System.out.println("finishedTurn(" + gameTurnTick + ") from " + sourceAddress);
+			System.out.println("finishedTurn(" + clientGameTurnTick + ") from " + sourceAddress);
 		}
 		if (!this.gameStarted) {
 			throw new IllegalStateException(
 					"Client should not send us finishedTurn() message when game has not started!");
 		}
-		this.clientToTurnFinished.put(sourceAddress, gameTurnTick);
-		boolean allDone = true;
-		for (final SocketAddress clientAddress : this.socketAddressesKnown) {
-			final Integer turnFinishedValue = this.clientToTurnFinished.get(clientAddress);
-			if ((turnFinishedValue == null) || (turnFinishedValue < gameTurnTick)) {
-				allDone = false;
+		final int playerIndex = getPlayerIndex(sourceAddress, sessionToken);
+		if (playerIndex == -1) {
+			return;
+		}
+		if ((stateHash != ClientToServerProtocol.NO_STATE_HASH) && (this.desyncTurnTick == -1)) {
+			checkStateHash(playerIndex, clientGameTurnTick, stateHash);
+		}
+		this.pacer.turnFinished(playerIndex, clientGameTurnTick);
+		// several at once when the input delay just grew
+		while (this.pacer.canStartTurn(this.currentTurnTick)) {
+			startTurn();
+		}
+	}
+
+	private void checkStateHash(final int playerIndex, final int gameTurnTick, final long stateHash) {
+		Map<Integer, Long> playerToStateHash = this.turnToPlayerStateHashes.get(gameTurnTick);
+		if (playerToStateHash == null) {
+			playerToStateHash = new TreeMap<>();
+			this.turnToPlayerStateHashes.put(gameTurnTick, playerToStateHash);
+			this.turnToPlayerStateHashes.headMap(gameTurnTick - STATE_HASH_HISTORY_TURNS).clear();
+		}
+		playerToStateHash.put(playerIndex, stateHash);
+		for (final Long otherStateHash : playerToStateHash.values()) {
+			if (otherStateHash != stateHash) {
+				desync(gameTurnTick, playerToStateHash);
+				return;
 			}
 		}
-		if (allDone) {
-			for (final Runnable turnAction : this.turnActions) {
-				turnAction.run();
+		if (playerToStateHash.size() == this.sessionTokenToPermittedSlot.size()) {
+			this.turnToPlayerStateHashes.remove(gameTurnTick);
+		}
+	}
+
+	private void desync(final int gameTurnTick, final Map<Integer, Long> playerToStateHash) {
+		this.desyncTurnTick = gameTurnTick;
+		System.err.println("Desync after turn " + gameTurnTick + "!!");
+		for (final Map.Entry<Integer, Long> entry : playerToStateHash.entrySet()) {
+			System.err.println("player " + entry.getKey() + " state hash " + Long.toHexString(entry.getValue()));
+		}
+		this.turnActions.add(new Runnable() {
+			@Override
+			public void run() {
+				// the players cannot finish the turn after this one before they get this
+				// turn frame, so they can all still dump their state after it
+				final int dumpTurnTick = WarsmashServer.this.currentTurnTick + 1;
+				System.err.println("Asking players to dump their state after turn " + dumpTurnTick);
+				WarsmashServer.this.writer.desync(gameTurnTick, dumpTurnTick);
 			}
-			this.turnActions.clear();
-			startTurn();
+		});
+	}
+
+	/**
+	 * @return the first turn after which the players' simulations differed, or -1
+	 */
+	public int getDesyncTurnTick() {
+		return this.desyncTurnTick;
+	}
+
+	@Override
+	public void clientTiming(final SocketAddress sourceAddress, final long sessionToken, final long serverTimeMillis,
+			final int frameMillis, final int tickMillis) {
+		final int playerIndex = getPlayerIndex(sourceAddress, sessionToken);
+		if (playerIndex == -1) {
+			return;
 		}
+		this.pacer.roundTrip(playerIndex, System.currentTimeMillis() - serverTimeMillis);
+		this.pacer.clientTimes(playerIndex, frameMillis, tickMillis);
 	}
 
 	@Override
@@ -251,6 +368,12 @@ public class WarsmashServer implements ClientToServerListener {
 				WarsmashServer.this.writer.send();
 				this.lastServerHeartbeatTime = currentTimeMillis;
 			}
+			if ((currentTimeMillis - this.lastLagReportTime) > STALLED_LAG_REPORT_INTERVAL_MILLIS) {
+				// no turns are going out to carry lag reports, so tell the players who we
+				// are waiting for
+				writeLagReport();
+				WarsmashServer.this.writer.send();
+			}
 		}
 	}
 
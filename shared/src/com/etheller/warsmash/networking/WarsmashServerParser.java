@@ -102,7 +102,8 @@ public class WarsmashServerParser implements OrderedUdpServerListener {
 				case ClientToServerProtocol.FINISHED_TURN: {
 					final long sessionToken = buffer.getLong();
 					final int gameTurnTick = buffer.getInt();
-					this.listener.finishedTurn(sourceAddress, sessionToken, gameTurnTick);
+					final long stateHash = buffer.getLong();
+					this.listener.finishedTurn(sourceAddress, sessionToken, gameTurnTick, stateHash);
 					break;
 				}
 				case ClientToServerProtocol.JOIN_GAME: {
@@ -116,6 +117,14 @@ public class WarsmashServerParser implements OrderedUdpServerListener {
 					this.listener.framesSkipped(sessionToken, nFramesSkipped);
 					break;
 				}
+				case ClientToServerProtocol.CLIENT_TIMING: {
+					final long sessionToken = buffer.getLong();
+					final long serverTimeMillis = buffer.getLong();
+					final int frameMillis = buffer.getInt();
+					final int tickMillis = buffer.getInt();
+					this.listener.clientTiming(sourceAddress, sessionToken, serverTimeMillis, frameMillis, tickMillis);
+					break;
+				}
 
 				default:
 					System.err.println("Got unknown protocol: " + protocol);
@@ -130,6 +139,7 @@ public class WarsmashServerParser implements OrderedUdpServerListener {
 
 	@Override
 	public void cantReplay(final SocketAddress sourceAddress, final int seqNo) {
-		throw new IllegalStateException("Cant replay " + seqNo + " to " + sourceAddress + " !");
+		// runs on the network thread, which the other players still need
+		System.err.println("Lost the connection to " + sourceAddress + ", it never acknowledged " + seqNo + " !!");
 	}
 }
@@ -6,12 +6,26 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Set;
 
+import net.warsmash.networking.udp.OrderedUdpCommuncation;
 import net.warsmash.networking.udp.OrderedUdpServer;
 
+/**
+ * Writes one message at a time, which {@link #send()} sends, except between
+ * {@link #beginTurnFrame(int)} and {@link #sendTurnFrame()}, where the orders
+ * and the finishedTurn of a turn are packed into as few datagrams as they fit
+ * in. Each of those datagrams starts with a
+ * {@link ServerToClientProtocol#TURN_FRAME} header with the turn and how many
+ * orders follow it.
+ */
 public class WarsmashServerWriter implements ServerToClientListener {
 	private final OrderedUdpServer server;
-	private final ByteBuffer sendBuffer = ByteBuffer.allocate(1024).order(ByteOrder.BIG_ENDIAN);
+	private final ByteBuffer sendBuffer = ByteBuffer.allocate(OrderedUdpCommuncation.MAX_DATA_SIZE)
+			.order(ByteOrder.BIG_ENDIAN);
 	private final Set<SocketAddress> allKnownAddressesToSend;
+	private boolean inTurnFrame;
+	private int turnFrameTurnTick;
+	private int turnFrameOrderCountPosition;
+	private int turnFrameOrderCount;
 
 	public WarsmashServerWriter(final OrderedUdpServer server, final Set<SocketAddress> allKnownAddressesToSend) {
 		this.server = server;
@@ -21,8 +35,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 	@Override
 	public void issueTargetOrder(final int playerIndex, final int unitHandleId, final int abilityHandleId,
 			final int orderId, final int targetHandleId, final boolean queue) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4 + 4 + 4 + 4 + 1);
+		beginOrder(4 + 4 + 4 + 4 + 4 + 4 + 1);
 		this.sendBuffer.putInt(ServerToClientProtocol.ISSUE_TARGET_ORDER);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(unitHandleId);
@@ -35,8 +48,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 	@Override
 	public void issuePointOrder(final int playerIndex, final int unitHandleId, final int abilityHandleId,
 			final int orderId, final float x, final float y, final boolean queue) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4 + 4 + 4 + 4 + 4 + 1);
+		beginOrder(4 + 4 + 4 + 4 + 4 + 4 + 4 + 1);
 		this.sendBuffer.putInt(ServerToClientProtocol.ISSUE_POINT_ORDER);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(unitHandleId);
@@ -50,8 +62,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 	@Override
 	public void issueDropItemAtPointOrder(final int playerIndex, final int unitHandleId, final int abilityHandleId,
 			final int orderId, final int targetHandleId, final float x, final float y, final boolean queue) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 1);
+		beginOrder(4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 1);
 		this.sendBuffer.putInt(ServerToClientProtocol.ISSUE_DROP_ITEM_ORDER);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(unitHandleId);
@@ -66,8 +77,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 	@Override
 	public void issueDropItemAtTargetOrder(final int playerIndex, final int unitHandleId, final int abilityHandleId,
 			final int orderId, final int targetHandleId, final int targetHeroHandleId, final boolean queue) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4 + 4 + 4 + 4 + 4 + 1);
+		beginOrder(4 + 4 + 4 + 4 + 4 + 4 + 4 + 1);
 		this.sendBuffer.putInt(ServerToClientProtocol.ISSUE_DROP_ITEM_ON_TARGET_ORDER);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(unitHandleId);
@@ -81,8 +91,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 	@Override
 	public void issueImmediateOrder(final int playerIndex, final int unitHandleId, final int abilityHandleId,
 			final int orderId, final boolean queue) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4 + 4 + 4 + 1);
+		beginOrder(4 + 4 + 4 + 4 + 4 + 1);
 		this.sendBuffer.putInt(ServerToClientProtocol.ISSUE_IMMEDIATE_ORDER);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(unitHandleId);
@@ -93,8 +102,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 
 	@Override
 	public void unitCancelTrainingItem(final int playerIndex, final int unitHandleId, final int cancelIndex) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4 + 4);
+		beginOrder(4 + 4 + 4 + 4);
 		this.sendBuffer.putInt(ServerToClientProtocol.UNIT_CANCEL_TRAINING);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(unitHandleId);
@@ -103,8 +111,7 @@ public class WarsmashServerWriter implements ServerToClientListener {
 
 	@Override
 	public void issueGuiPlayerEvent(final int playerIndex, final int eventId) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4 + 4);
+		beginOrder(4 + 4 + 4);
 		this.sendBuffer.putInt(ServerToClientProtocol.ISSUE_GUI_PLAYER_EVENT);
 		this.sendBuffer.putInt(playerIndex);
 		this.sendBuffer.putInt(eventId);
@@ -112,34 +119,100 @@ public class WarsmashServerWriter implements ServerToClientListener {
 
 	@Override
 	public void finishedTurn(final int gameTurnTick) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4);
+		beginMessage(4 + 4);
 		this.sendBuffer.putInt(ServerToClientProtocol.FINISHED_TURN);
 		this.sendBuffer.putInt(gameTurnTick);
 	}
 
 	@Override
 	public void heartbeat() {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4);
+		beginMessage(4);
 		this.sendBuffer.putInt(ServerToClientProtocol.HEARTBEAT);
 	}
 
+	@Override
+	public void lagReport(final int turnMillis, final int inputDelayTurns, final long serverTimeMillis,
+			final int[] laggingPlayers) {
+		beginMessage(4 + 4 + 4 + 8 + 4 + (4 * laggingPlayers.length));
+		this.sendBuffer.putInt(ServerToClientProtocol.LAG_REPORT);
+		this.sendBuffer.putInt(turnMillis);
+		this.sendBuffer.putInt(inputDelayTurns);
+		this.sendBuffer.putLong(serverTimeMillis);
+		this.sendBuffer.putInt(laggingPlayers.length);
+		for (final int laggingPlayer : laggingPlayers) {
+			this.sendBuffer.putInt(laggingPlayer);
+		}
+	}
+
+	@Override
+	public void desync(final int desyncTurnTick, final int dumpTurnTick) {
+		beginMessage(4 + 4 + 4);
+		this.sendBuffer.putInt(ServerToClientProtocol.DESYNC);
+		this.sendBuffer.putInt(desyncTurnTick);
+		this.sendBuffer.putInt(dumpTurnTick);
+	}
+
 	@Override
 	public void acceptJoin(final int playerIndex) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4 + 4);
+		beginMessage(4 + 4);
 		this.sendBuffer.putInt(ServerToClientProtocol.ACCEPT_JOIN);
 		this.sendBuffer.putInt(playerIndex);
 	}
 
 	@Override
 	public void startGame() {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(4);
+		beginMessage(4);
 		this.sendBuffer.putInt(ServerToClientProtocol.START_GAME);
 	}
 
+	public void beginTurnFrame(final int gameTurnTick) {
+		this.inTurnFrame = true;
+		this.turnFrameTurnTick = gameTurnTick;
+		beginTurnFrameDatagram();
+	}
+
+	/**
+	 * Sends what is left of the turn frame, which should end with the
+	 * finishedTurn of the turn.
+	 */
+	public void sendTurnFrame() {
+		sendTurnFrameDatagram();
+		this.inTurnFrame = false;
+	}
+
+	private void beginTurnFrameDatagram() {
+		this.sendBuffer.clear();
+		this.sendBuffer.putInt(4 + 4 + 4);
+		this.sendBuffer.putInt(ServerToClientProtocol.TURN_FRAME);
+		this.sendBuffer.putInt(this.turnFrameTurnTick);
+		this.turnFrameOrderCountPosition = this.sendBuffer.position();
+		this.sendBuffer.putInt(0);
+		this.turnFrameOrderCount = 0;
+	}
+
+	private void sendTurnFrameDatagram() {
+		this.sendBuffer.putInt(this.turnFrameOrderCountPosition, this.turnFrameOrderCount);
+		send();
+	}
+
+	private void beginMessage(final int length) {
+		if (!this.inTurnFrame) {
+			this.sendBuffer.clear();
+		}
+		else if (this.sendBuffer.remaining() < (4 + length)) {
+			sendTurnFrameDatagram();
+			beginTurnFrameDatagram();
+		}
+		this.sendBuffer.putInt(length);
+	}
+
+	private void beginOrder(final int length) {
+		beginMessage(length);
+		if (this.inTurnFrame) {
+			this.turnFrameOrderCount++;
+		}
+	}
+
 	public void send(final SocketAddress sourceAddress) {
 		this.sendBuffer.flip();
 		try {
@@ -6,6 +6,7 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
 public class OrderedUdpClient extends OrderedUdpCommuncation implements Runnable {
+	private static final long UPDATE_INTERVAL_MILLIS = 10;
 	private final UdpClient udpClient;
 
 	public OrderedUdpClient(final InetAddress serverAddress, final int portNumber,
@@ -26,6 +27,10 @@ public class OrderedUdpClient extends OrderedUdpCommuncation implements Runnable
 
 	@Override
 	public void run() {
-		this.udpClient.run();
+		this.udpClient.setRunning(true);
+		while (this.udpClient.isRunning()) {
+			this.udpClient.receive(UPDATE_INTERVAL_MILLIS);
+			update();
+		}
 	}
 }
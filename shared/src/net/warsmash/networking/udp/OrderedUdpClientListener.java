@@ -1,5 +1,10 @@
 package net.warsmash.networking.udp;
 
 public interface OrderedUdpClientListener extends UdpClientListener {
+	/**
+	 * The other side stopped acknowledging, and the connection was closed with
+	 * this message the oldest it never acknowledged. Called from the thread that
+	 * drives the connection.
+	 */
 	void cantReplay(int seqNo);
 }
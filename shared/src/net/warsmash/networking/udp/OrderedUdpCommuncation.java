@@ -4,105 +4,375 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayDeque;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Queue;
 
+/**
+ * Delivers messages in order over UDP. Every message carries its sequence
+ * number, the next sequence number this side expects, and a bitfield of the
+ * messages after that one that arrived out of order, so the other side learns
+ * what is missing from any message and resends exactly that, within about one
+ * round trip. Messages that stay unacknowledged are resent when a timer based
+ * on the measured round trip time runs out, which needs
+ * {@link #update()} to be called every few milliseconds.
+ *
+ * Sent messages are kept until acknowledged, and messages that arrive early
+ * are kept until the ones before them arrive, each in a fixed window of
+ * buffers that is allocated once. Messages sent while the send window is full,
+ * such as during an outage, wait in a backlog and go out as acknowledgements
+ * free the window, so no message is ever left out of the stream. If the other
+ * side acknowledges nothing for {@link #CONNECTION_TIMEOUT_MILLIS}, or the
+ * backlog fills up, the connection is closed and reported to
+ * {@link OrderedUdpClientListener#cantReplay(int)}, after which nothing more
+ * is sent.
+ */
 public abstract class OrderedUdpCommuncation implements UdpClientListener {
-	private static final int MAX_STORED_SENT_DATA_SIZE = 10000;
+	private static final int MAX_MESSAGE_SIZE = 1024;
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+	// the most data that fits in one message along with its header
+	public static final int MAX_DATA_SIZE = MAX_MESSAGE_SIZE - HEADER_SIZE;
+	// a power of two, and no more than the bits of the selective acknowledgement
+	// plus one
+	private static final int WINDOW_SIZE = 64;
+	private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+	// as many as the replay buffer of the old protocol kept, minutes of turns
+	private static final int MAX_BACKLOG_MESSAGES = 10000;
+	public static final long CONNECTION_TIMEOUT_MILLIS = 60000;
+
+	private static final int INITIAL_RETRANSMIT_MILLIS = 250;
+	private static final int MIN_RETRANSMIT_MILLIS = 30;
+	private static final int MAX_RETRANSMIT_MILLIS = 2000;
+	private static final int MAX_BACKOFF_SHIFT = 4;
+	private static final int ACK_DELAY_MILLIS = 10;
 
 	private static final int ORDERED_UDP_MESSAGE = 'M';
-	private static final int ORDERED_UDP_REPLAY_REQUEST = 'R';
+	private static final int ORDERED_UDP_ACK = 'A';
+
+	private final OrderedUdpClientListener delegate;
 
-	private final Map<Integer, ByteBuffer> seqNoToDataSent;
-	private final Map<Integer, ByteBuffer> seqNoToDataReceived;
-	private final Queue<Integer> seqNosStored;
+	private final ByteBuffer[] sendWindow = createWindow();
+	private final long[] sendTimes = new long[WINDOW_SIZE];
+	private final long[] lastSendTimes = new long[WINDOW_SIZE];
+	private final int[] sendCounts = new int[WINDOW_SIZE];
+	private final boolean[] sendAcked = new boolean[WINDOW_SIZE];
+	private int oldestUnackedSeqNo;
 	private int nextSendSeqNo;
+	private long latestDeliveredSendTime;
+	private final ArrayDeque<ByteBuffer> sendBacklog = new ArrayDeque<>();
+	private boolean closed;
+
+	private final ByteBuffer[] receiveWindow = createWindow();
+	private final boolean[] received = new boolean[WINDOW_SIZE];
 	private int nextReceiveSeqNo;
-	private final OrderedUdpClientListener delegate;
-	private final ByteBuffer sendBuffer;
+	private int unackedReceiveCount;
+	private long oldestUnackedReceiveTime;
+
+	private final ByteBuffer ackBuffer;
+
+	private long smoothedRoundTripMillis = -1;
+	private long roundTripVarianceMillis;
+	private long retransmitMillis = INITIAL_RETRANSMIT_MILLIS;
+	private int retransmitCount;
 
 	public OrderedUdpCommuncation(final OrderedUdpClientListener delegate) {
-		this.seqNoToDataSent = new HashMap<>();
-		this.seqNoToDataReceived = new HashMap<>();
-		this.seqNosStored = new ArrayDeque<>();
-		this.sendBuffer = ByteBuffer.allocate(1024).order(ByteOrder.BIG_ENDIAN);
+		this.ackBuffer = ByteBuffer.allocate(4 + 4 + 8).order(ByteOrder.BIG_ENDIAN);
 		this.delegate = delegate;
 	}
 
-	public void send(final ByteBuffer data) throws IOException {
-		final ByteBuffer writeBuffer = ByteBuffer.allocate(1024).order(ByteOrder.BIG_ENDIAN);
+	private static ByteBuffer[] createWindow() {
+		final ByteBuffer arena = ByteBuffer.allocate(WINDOW_SIZE * MAX_MESSAGE_SIZE);
+		final ByteBuffer[] window = new ByteBuffer[WINDOW_SIZE];
+		for (int i = 0; i < WINDOW_SIZE; i++) {
+			arena.limit((i + 1) * MAX_MESSAGE_SIZE);
+			arena.position(i * MAX_MESSAGE_SIZE);
+			window[i] = arena.slice().order(ByteOrder.BIG_ENDIAN);
+		}
+		return window;
+	}
+
+	public synchronized void send(final ByteBuffer data) throws IOException {
+		if (this.closed) {
+			return;
+		}
+		if (((this.nextSendSeqNo - this.oldestUnackedSeqNo) == WINDOW_SIZE) || !this.sendBacklog.isEmpty()) {
+			if (this.sendBacklog.size() == MAX_BACKLOG_MESSAGES) {
+				close();
+				return;
+			}
+			final ByteBuffer backlogData = ByteBuffer.allocate(data.remaining()).order(ByteOrder.BIG_ENDIAN);
+			backlogData.put(data);
+			backlogData.flip();
+			this.sendBacklog.add(backlogData);
+			return;
+		}
+		sendInWindow(data, currentTimeMillis());
+	}
+
+	private void sendInWindow(final ByteBuffer data, final long currentTimeMillis) {
+		final int seqNo = this.nextSendSeqNo++;
+		final int slot = seqNo & WINDOW_MASK;
+		final ByteBuffer writeBuffer = this.sendWindow[slot];
 		writeBuffer.clear();
-		final Integer seqNo = this.nextSendSeqNo; // only autobox once, would be ideal to not box at all
 		writeBuffer.putInt(ORDERED_UDP_MESSAGE);
 		writeBuffer.putInt(seqNo);
+		writeBuffer.putInt(0); // acknowledgement, filled in when sending
+		writeBuffer.putLong(0);
 		writeBuffer.put(data);
 		writeBuffer.flip();
-		final int position = writeBuffer.position();
-		trySend(writeBuffer);
-		writeBuffer.position(position);
-		if (this.seqNosStored.size() == MAX_STORED_SENT_DATA_SIZE) {
-			this.seqNoToDataSent.remove(this.seqNosStored.poll());
-		}
-		this.seqNosStored.offer(seqNo);
-		this.seqNoToDataSent.put(seqNo, writeBuffer);
-		this.nextSendSeqNo++;
+		this.sendAcked[slot] = false;
+		this.sendCounts[slot] = 0;
+		this.sendTimes[slot] = currentTimeMillis;
+		transmit(slot, currentTimeMillis);
 	}
 
 	// it's udp so we're just trying, we don't really know if it'll drop or not
 	protected abstract void trySend(final ByteBuffer data);
 
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the index of the data within a datagram, without reading it, or -1
+	 *         if the datagram carries no data, such as an acknowledgement
+	 */
+	public static int getDataIndex(final ByteBuffer datagram) {
+		if ((datagram.remaining() > HEADER_SIZE) && (datagram.getInt(datagram.position()) == ORDERED_UDP_MESSAGE)) {
+			return datagram.position() + HEADER_SIZE;
+		}
+		return -1;
+	}
+
+	/**
+	 * Resends messages whose retransmit timer ran out, and acknowledges messages
+	 * that were received and not yet acknowledged by a message going the other
+	 * way.
+	 */
+	public synchronized void update() {
+		if (this.closed) {
+			return;
+		}
+		final long currentTimeMillis = currentTimeMillis();
+		if (((this.oldestUnackedSeqNo - this.nextSendSeqNo) < 0) && ((currentTimeMillis
+				- this.sendTimes[this.oldestUnackedSeqNo & WINDOW_MASK]) >= CONNECTION_TIMEOUT_MILLIS)) {
+			close();
+			return;
+		}
+		for (int seqNo = this.oldestUnackedSeqNo; (seqNo - this.nextSendSeqNo) < 0; seqNo++) {
+			final int slot = seqNo & WINDOW_MASK;
+			if (!this.sendAcked[slot]) {
+				final int backoffShift = Math.min(this.sendCounts[slot] - 1, MAX_BACKOFF_SHIFT);
+				if ((currentTimeMillis - this.lastSendTimes[slot]) >= (this.retransmitMillis << backoffShift)) {
+					this.retransmitCount++;
+					transmit(slot, currentTimeMillis);
+				}
+			}
+		}
+		if ((this.unackedReceiveCount > 0)
+				&& ((currentTimeMillis - this.oldestUnackedReceiveTime) >= ACK_DELAY_MILLIS)) {
+			sendAck();
+		}
+	}
+
 	@Override
-	public void parse(ByteBuffer readBuffer) {
+	public synchronized void parse(final ByteBuffer readBuffer) {
 		final int messageType = readBuffer.getInt();
 		switch (messageType) {
 		case ORDERED_UDP_MESSAGE: {
-			final int serverSeqNo = readBuffer.getInt();
-			if (serverSeqNo > this.nextReceiveSeqNo) {
-				// ahead, need to queue it and request replay
-				for (int i = this.nextReceiveSeqNo; i < serverSeqNo; i++) {
-					requestReplay(i);
-				}
-				final ByteBuffer queuedReceivedData = ByteBuffer.allocate(readBuffer.remaining())
-						.order(ByteOrder.BIG_ENDIAN);
+			final int seqNo = readBuffer.getInt();
+			final int ackSeqNo = readBuffer.getInt();
+			final long ackBits = readBuffer.getLong();
+			final long currentTimeMillis = currentTimeMillis();
+			acknowledged(ackSeqNo, ackBits, currentTimeMillis);
+			received(seqNo, readBuffer, currentTimeMillis);
+			break;
+		}
+		case ORDERED_UDP_ACK: {
+			final int ackSeqNo = readBuffer.getInt();
+			final long ackBits = readBuffer.getLong();
+			acknowledged(ackSeqNo, ackBits, currentTimeMillis());
+			break;
+		}
+		default:
+			System.err.println("Got unknown ordered udp message type: " + messageType);
+			break;
+		}
+	}
+
+	private void received(final int seqNo, final ByteBuffer readBuffer, final long currentTimeMillis) {
+		final int distance = seqNo - this.nextReceiveSeqNo;
+		if (distance == 0) {
+			// counted before parsing, so that anything the delegate sends in reply
+			// acknowledges it
+			receivedInOrder(currentTimeMillis);
+			this.delegate.parse(readBuffer);
+			while (this.received[this.nextReceiveSeqNo & WINDOW_MASK]) {
+				final int slot = this.nextReceiveSeqNo & WINDOW_MASK;
+				this.received[slot] = false;
+				receivedInOrder(currentTimeMillis);
+				this.delegate.parse(this.receiveWindow[slot]);
+			}
+			if (this.unackedReceiveCount >= 2) {
+				sendAck();
+			}
+		}
+		else if ((distance > 0) && (distance < WINDOW_SIZE)) {
+			// ahead, keep it until the ones before it arrive, and tell the other side
+			// right away what is missing
+			final int slot = seqNo & WINDOW_MASK;
+			if (!this.received[slot]) {
+				final ByteBuffer queuedReceivedData = this.receiveWindow[slot];
+				queuedReceivedData.clear();
 				queuedReceivedData.put(readBuffer);
 				queuedReceivedData.flip();
-				this.seqNoToDataReceived.put(serverSeqNo, queuedReceivedData);
-			}
-			else if (serverSeqNo < this.nextReceiveSeqNo) {
-				// dup, ignore
+				this.received[slot] = true;
 			}
-			else {
-				// exactly equal
-				do {
-					this.delegate.parse(readBuffer);
-					this.nextReceiveSeqNo++;
+			sendAck();
+		}
+		else {
+			// a duplicate, so our acknowledgement was lost, or too far ahead to keep
+			sendAck();
+		}
+	}
+
+	private void receivedInOrder(final long currentTimeMillis) {
+		this.nextReceiveSeqNo++;
+		if (this.unackedReceiveCount++ == 0) {
+			this.oldestUnackedReceiveTime = currentTimeMillis;
+		}
+	}
+
+	private void acknowledged(final int ackSeqNo, final long ackBits, final long currentTimeMillis) {
+		if (((ackSeqNo - this.oldestUnackedSeqNo) < 0) || ((ackSeqNo - this.nextSendSeqNo) > 0)) {
+			// stale, or nonsense
+			return;
+		}
+		for (int seqNo = this.oldestUnackedSeqNo; (seqNo - ackSeqNo) < 0; seqNo++) {
+			acknowledged(seqNo, currentTimeMillis);
+		}
+		int highestSelectiveAck = ackSeqNo;
+		for (int i = 0; i < Long.SIZE; i++) {
+			if ((ackBits & (1L << i)) != 0) {
+				final int seqNo = ackSeqNo + 1 + i;
+				if ((seqNo - this.nextSendSeqNo) >= 0) {
+					break;
 				}
-				while ((readBuffer = this.seqNoToDataReceived.remove(this.nextReceiveSeqNo)) != null);
+				acknowledged(seqNo, currentTimeMillis);
+				highestSelectiveAck = seqNo;
 			}
-			break;
 		}
-		case ORDERED_UDP_REPLAY_REQUEST:
-			final int requestedSeqNo = readBuffer.getInt();
-			final ByteBuffer replayData = this.seqNoToDataSent.get(requestedSeqNo);
-			if (replayData == null) {
-				this.delegate.cantReplay(requestedSeqNo);
+		advanceSendWindow();
+		while (!this.sendBacklog.isEmpty() && ((this.nextSendSeqNo - this.oldestUnackedSeqNo) < WINDOW_SIZE)) {
+			sendInWindow(this.sendBacklog.poll(), currentTimeMillis);
+		}
+		// a message is lost once one sent clearly after it has arrived, which
+		// tolerates some reordering and does not resend a message again before
+		// its resend could have been acknowledged (RACK, RFC 8985)
+		final long reorderingMillis = Math.max(this.smoothedRoundTripMillis / 4, 1);
+		for (int seqNo = this.oldestUnackedSeqNo; (seqNo - highestSelectiveAck) < 0; seqNo++) {
+			final int slot = seqNo & WINDOW_MASK;
+			if (!this.sendAcked[slot]
+					&& ((this.lastSendTimes[slot] + reorderingMillis) < this.latestDeliveredSendTime)) {
+				this.retransmitCount++;
+				transmit(slot, currentTimeMillis);
 			}
-			else {
-				System.err.println("Replay requested for packet with seqNo=" + requestedSeqNo + ", we will send it!");
-				final int position = replayData.position();
-				trySend(replayData);
-				replayData.position(position);
+		}
+	}
+
+	private void acknowledged(final int seqNo, final long currentTimeMillis) {
+		final int slot = seqNo & WINDOW_MASK;
+		if (this.sendAcked[slot]) {
+			return;
+		}
+		this.sendAcked[slot] = true;
+		this.latestDeliveredSendTime = Math.max(this.latestDeliveredSendTime, this.lastSendTimes[slot]);
+		if (this.sendCounts[slot] == 1) {
+			// only sent once, so we know which send this acknowledges
+			updateRoundTrip(currentTimeMillis - this.sendTimes[slot]);
+		}
+	}
+
+	private void advanceSendWindow() {
+		while (((this.oldestUnackedSeqNo - this.nextSendSeqNo) < 0)
+				&& this.sendAcked[this.oldestUnackedSeqNo & WINDOW_MASK]) {
+			this.oldestUnackedSeqNo++;
+		}
+	}
+
+	private void close() {
+		this.closed = true;
+		this.sendBacklog.clear();
+		this.delegate.cantReplay(this.oldestUnackedSeqNo);
+	}
+
+	/**
+	 * @return whether the connection was given up on, see
+	 *         {@link OrderedUdpClientListener#cantReplay(int)}
+	 */
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Estimates the retransmit timeout from round trip samples the way TCP does
+	 * (RFC 6298).
+	 */
+	private void updateRoundTrip(final long sampleMillis) {
+		if (this.smoothedRoundTripMillis < 0) {
+			this.smoothedRoundTripMillis = sampleMillis;
+			this.roundTripVarianceMillis = sampleMillis / 2;
+		}
+		else {
+			this.roundTripVarianceMillis = ((3 * this.roundTripVarianceMillis)
+					+ Math.abs(this.smoothedRoundTripMillis - sampleMillis)) / 4;
+			this.smoothedRoundTripMillis = ((7 * this.smoothedRoundTripMillis) + sampleMillis) / 8;
+		}
+		this.retransmitMillis = Math.max(MIN_RETRANSMIT_MILLIS, Math.min(MAX_RETRANSMIT_MILLIS,
+				this.smoothedRoundTripMillis + (4 * this.roundTripVarianceMillis)));
+	}
+
+	private void transmit(final int slot, final long currentTimeMillis) {
+		final ByteBuffer writeBuffer = this.sendWindow[slot];
+		writeBuffer.putInt(8, this.nextReceiveSeqNo);
+		writeBuffer.putLong(12, getReceivedBits());
+		this.unackedReceiveCount = 0;
+		this.sendCounts[slot]++;
+		this.lastSendTimes[slot] = currentTimeMillis;
+		final int position = writeBuffer.position();
+		trySend(writeBuffer);
+		writeBuffer.position(position);
+	}
+
+	private void sendAck() {
+		this.ackBuffer.clear();
+		this.ackBuffer.putInt(ORDERED_UDP_ACK);
+		this.ackBuffer.putInt(this.nextReceiveSeqNo);
+		this.ackBuffer.putLong(getReceivedBits());
+		this.ackBuffer.flip();
+		this.unackedReceiveCount = 0;
+		trySend(this.ackBuffer);
+	}
+
+	private long getReceivedBits() {
+		long bits = 0;
+		for (int i = 0; i < (WINDOW_SIZE - 1); i++) {
+			if (this.received[(this.nextReceiveSeqNo + 1 + i) & WINDOW_MASK]) {
+				bits |= 1L << i;
 			}
-			break;
 		}
+		return bits;
+	}
+
+	/**
+	 * @return the smoothed round trip time in milliseconds, or -1 before the
+	 *         first message was acknowledged
+	 */
+	public synchronized long getRoundTripMillis() {
+		return this.smoothedRoundTripMillis;
 	}
 
-	private void requestReplay(final int i) {
-		this.sendBuffer.clear();
-		this.sendBuffer.putInt(ORDERED_UDP_REPLAY_REQUEST);
-		this.sendBuffer.putInt(i);
-		this.sendBuffer.flip();
-		trySend(this.sendBuffer);
+	/**
+	 * @return how many messages were sent again because they seemed lost
+	 */
+	public synchronized int getRetransmitCount() {
+		return this.retransmitCount;
 	}
 }
@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class OrderedUdpServer implements UdpServerListener, Runnable {
+	private static final long UPDATE_INTERVAL_MILLIS = 10;
 	private final OrderedUdpServerListener listener;
 	private final UdpServer udpServer;
 	private final Map<SocketAddress, OrderedKnownClient> addrToClient = new HashMap<>();
@@ -17,6 +18,16 @@ public class OrderedUdpServer implements UdpServerListener, Runnable {
 		this.udpServer = new UdpServer(port, this);
 	}
 
+	/**
+	 * Sends through a socket that is shared with other servers. Its owner passes
+	 * on the datagrams meant for this server to {@link #parse(SocketAddress, ByteBuffer)}
+	 * and calls {@link #update()}, instead of running this server.
+	 */
+	public OrderedUdpServer(final UdpServer udpServer, final OrderedUdpServerListener listener) {
+		this.listener = listener;
+		this.udpServer = udpServer;
+	}
+
 	public int getPort() {
 		return this.udpServer.getPort();
 	}
@@ -83,8 +94,18 @@ public class OrderedUdpServer implements UdpServerListener, Runnable {
 
 	}
 
+	public void update() {
+		for (final OrderedKnownClient client : this.addrToClient.values()) {
+			client.update();
+		}
+	}
+
 	@Override
 	public void run() {
-		this.udpServer.run();
+		this.udpServer.setRunning(true);
+		while (this.udpServer.isRunning()) {
+			this.udpServer.receive(UPDATE_INTERVAL_MILLIS);
+			update();
+		}
 	}
 }
@@ -7,9 +7,12 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 
 public class UdpClient implements Runnable {
 	private final DatagramChannel channel;
+	private final Selector selector;
 	private final ByteBuffer readBuffer;
 	private boolean running;
 	private final UdpClientListener clientListener;
@@ -17,7 +20,9 @@ public class UdpClient implements Runnable {
 	public UdpClient(final InetAddress serverAddress, final int portNumber, final UdpClientListener clientListener)
 			throws UnknownHostException, IOException {
 		this.channel = DatagramChannel.open().connect(new InetSocketAddress(serverAddress, portNumber));
-		this.channel.configureBlocking(true);
+		this.channel.configureBlocking(false);
+		this.selector = Selector.open();
+		this.channel.register(this.selector, SelectionKey.OP_READ);
 		this.readBuffer = ByteBuffer.allocate(1024);
 		this.clientListener = clientListener;
 		this.readBuffer.order(ByteOrder.BIG_ENDIAN);
@@ -31,21 +36,40 @@ public class UdpClient implements Runnable {
 		this.running = running;
 	}
 
+	public boolean isRunning() {
+		return this.running;
+	}
+
 	@Override
 	public void run() {
 		this.running = true;
 		while (this.running) {
-			try {
-				this.readBuffer.clear();
-				this.channel.receive(this.readBuffer);
-				this.readBuffer.flip();
-				this.clientListener.parse(this.readBuffer);
-			}
-			catch (final IOException e) {
-				System.err.println("Error reading from channel:");
-				e.printStackTrace();
+			receive(0);
+		}
+	}
+
+	/**
+	 * Waits until datagrams arrive or the timeout runs out, and parses them. A
+	 * timeout of 0 waits for as long as it takes.
+	 */
+	public void receive(final long timeoutMillis) {
+		try {
+			if (this.selector.select(timeoutMillis) > 0) {
+				this.selector.selectedKeys().clear();
+				while (true) {
+					this.readBuffer.clear();
+					if (this.channel.receive(this.readBuffer) == null) {
+						break;
+					}
+					this.readBuffer.flip();
+					this.clientListener.parse(this.readBuffer);
+				}
 			}
 		}
+		catch (final IOException e) {
+			System.err.println("Error reading from channel:");
+			e.printStackTrace();
+		}
 	}
 
 }
@@ -26,7 +26,7 @@ public class UdpServer implements Runnable {
 		this.selector = Selector.open();
 		this.channel = DatagramChannel.open(StandardProtocolFamily.INET).bind(new InetSocketAddress(portNumber));
 		this.channel.configureBlocking(false);
-		this.key = this.channel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		this.key = this.channel.register(this.selector, SelectionKey.OP_READ);
 		this.readBuffer = ByteBuffer.allocate(1024);
 		this.readBuffer.order(ByteOrder.BIG_ENDIAN);
 	}
@@ -57,32 +57,40 @@ public class UdpServer implements Runnable {
 	public void run() {
 		this.running = true;
 		while (this.running) {
-			try {
-				final int selectedKeyCount = this.selector.select();
-				if (selectedKeyCount > 0) {
-					final Set<SelectionKey> selectedKeys = this.selector.selectedKeys();
+			receive(0);
+		}
+	}
 
-					final Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
+	/**
+	 * Waits until a datagram arrives or the timeout runs out, and parses it. A
+	 * timeout of 0 waits for as long as it takes.
+	 */
+	public void receive(final long timeoutMillis) {
+		try {
+			final int selectedKeyCount = this.selector.select(timeoutMillis);
+			if (selectedKeyCount > 0) {
+				final Set<SelectionKey> selectedKeys = this.selector.selectedKeys();
 
-					while (keyIterator.hasNext()) {
-						final SelectionKey key = keyIterator.next();
+				final Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
 
-						if (key.isReadable()) {
-							final DatagramChannel channel = (DatagramChannel) key.channel();
-							this.readBuffer.clear();
-							final SocketAddress receiveAddr = channel.receive(this.readBuffer);
-							this.readBuffer.flip();
-							this.serverListener.parse(receiveAddr, this.readBuffer);
-						}
+				while (keyIterator.hasNext()) {
+					final SelectionKey key = keyIterator.next();
 
-						keyIterator.remove();
+					if (key.isReadable()) {
+						final DatagramChannel channel = (DatagramChannel) key.channel();
+						this.readBuffer.clear();
+						final SocketAddress receiveAddr = channel.receive(this.readBuffer);
+						this.readBuffer.flip();
+						this.serverListener.parse(receiveAddr, this.readBuffer);
 					}
+
+					keyIterator.remove();
 				}
 			}
-			catch (final IOException e) {
-				System.err.println("Error reading from channel:");
-				e.printStackTrace();
-			}
+		}
+		catch (final IOException e) {
+			System.err.println("Error reading from channel:");
+			e.printStackTrace();
 		}
 	}
 
@@ -90,4 +98,8 @@ public class UdpServer implements Runnable {
 		this.running = running;
 	}
 
+	public boolean isRunning() {
+		return this.running;
+	}
+
 }
@@ -48,8 +48,7 @@ public class SelectableChannelOpener implements ChannelOpener {
 			readBuffer.order(byteOrder);
 			final UDPServerKeyAttachment udpServerKeyAttachment = new UDPServerKeyAttachment(readBuffer, listener,
 					channel, exceptionListener, this.channelListener);
-			udpServerKeyAttachment.setKey(channel.register(this.selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE,
-					udpServerKeyAttachment));
+			udpServerKeyAttachment.setKey(channel.register(this.selector, SelectionKey.OP_READ, udpServerKeyAttachment));
 			this.channelListener.channelOpened();
 			return udpServerKeyAttachment;
 		}